@@ -0,0 +1,61 @@
+package com.cgvsu;
+
+import com.cgvsu.model.DetailLevels;
+import com.cgvsu.model.Model;
+import javafx.concurrent.Task;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Построение уровней детализации загруженной модели в фоне, чтобы она появилась на экране сразу,
+ * а уровни подключились, когда будут готовы. Пока задача идет, она читает модель, поэтому перед правкой
+ * или закрытием модели нужно вызвать cancelAndWait().
+ */
+public class DetailLevelsTask extends Task<DetailLevels> {
+    private final Model model;
+
+    private volatile boolean started = false;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    public DetailLevelsTask(Model model) {
+        this.model = model;
+    }
+
+    @Override
+    protected DetailLevels call() {
+        started = true;
+        try {
+            // Отмена могла прийти, когда исполнитель уже взял задачу, но cancelAndWait еще не видел started
+            if (isCancelled()) {
+                return null;
+            }
+            return DetailLevels.build(model, ForkJoinPool.commonPool(), this::isCancelled);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Отменяет задачу и ждет, пока она перестанет читать модель: упрощение проверяет отмену через каждые
+     * несколько тысяч шагов, так что ждать приходится миллисекунды, а не построение целого уровня.
+     */
+    public void cancelAndWait() {
+        cancel();
+        if (!started) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -7,19 +7,37 @@ import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.event.ActionEvent;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Alert;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.Stage;
 import javafx.stage.FileChooser;
+import javafx.scene.paint.Color;
 import javafx.util.Duration;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.io.IOException;
 import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.DetailLevels;
 import com.cgvsu.model.Model;
-import com.cgvsu.objreader.ObjReader;
+import com.cgvsu.model.PolygonsRemover;
+import com.cgvsu.model.RayHit;
+import com.cgvsu.model.VertexRemover;
+import com.cgvsu.objreader.ObjModelCache;
 import com.cgvsu.render_engine.Camera;
+import com.cgvsu.render_engine.LevelSelector;
+import com.cgvsu.render_engine.MousePicker;
+import com.cgvsu.render_engine.RegionSelector;
+import com.cgvsu.render_engine.ScreenRegion;
 
 public class GuiController {
 
@@ -31,7 +49,51 @@ public class GuiController {
     @FXML
     private Canvas canvas;
 
+    @FXML
+    private ProgressBar loadingProgressBar;
+
+    @FXML
+    private MenuItem cancelLoadingMenuItem;
+
+    @FXML
+    private CheckMenuItem selectVisibleOnlyMenuItem;
+
     private Model mesh = null;
+    // Последняя полностью загруженная модель: mesh во время загрузки может быть частичным снимком
+    private Model loadedMesh = null;
+
+    // Модели грузятся в фоне, чтобы не подвешивать интерфейс и цикл отрисовки
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ModelLoadTask loadTask = null;
+
+    // Уровни детализации loadedMesh строятся в своем потоке, чтобы не задерживать следующую загрузку.
+    // Выбор и удаление всегда работают с самой моделью, уровни только рисуются
+    private final ExecutorService levelsExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "detail-levels");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private DetailLevelsTask levelsTask = null;
+    private DetailLevels detailLevels = null;
+    private final LevelSelector levelSelector = new LevelSelector();
+
+    // Выбранные мышью полигоны и вершины mesh (номера с нуля), их удаляют VertexRemover и PolygonsRemover
+    private final BitSet selectedPolygons = new BitSet();
+    private final BitSet selectedVertices = new BitSet();
+
+    // Точки протягиваемой рамки или лассо (x, y подряд), null - мышь не протягивают
+    private float[] dragPoints = null;
+    private int dragPointCount = 0;
+    private boolean dragLasso = false;
+
+    private final ObjModelCache modelCache = new ObjModelCache(
+            Path.of(System.getProperty("user.home"), ".simple3dviewer", "cache"));
 
     private Camera camera = new Camera(
             new Vector3f(0, 00, 100),
@@ -56,18 +118,203 @@ public class GuiController {
             camera.setAspectRatio((float) (width / height));
 
             if (mesh != null) {
-                RenderEngine.render(canvas.getGraphicsContext2D(), camera, mesh, (int) width, (int) height);
+                RenderEngine.render(canvas.getGraphicsContext2D(), camera, mesh, detailLevels, levelSelector,
+                        (int) width, (int) height);
+                if (!selectedPolygons.isEmpty() || !selectedVertices.isEmpty()) {
+                    RenderEngine.renderSelection(canvas.getGraphicsContext2D(), camera, mesh,
+                            selectedPolygons, selectedVertices, (int) width, (int) height);
+                }
+            }
+            if (dragPoints != null) {
+                renderDragRegion(canvas.getGraphicsContext2D());
             }
         });
 
         timeline.getKeyFrames().add(frame);
         timeline.play();
+
+        canvas.setOnMouseClicked(this::onCanvasMouseClicked);
+        canvas.setOnMousePressed(this::onCanvasMousePressed);
+        canvas.setOnMouseDragged(this::onCanvasMouseDragged);
+        canvas.setOnMouseReleased(this::onCanvasMouseReleased);
+    }
+
+    /**
+     * Щелчок выбирает полигон под курсором, с Ctrl - ближайшую к курсору вершину этого полигона.
+     * С Shift выбор добавляется к прежнему (повторный щелчок снимает), без него - заменяет его.
+     */
+    private void onCanvasMouseClicked(MouseEvent event) {
+        // Пока модель грузится, на экране может быть неполный снимок - выбирать в нем нечего
+        if (event.getButton() != MouseButton.PRIMARY || mesh == null || loadTask != null) {
+            return;
+        }
+        // Конец протягивания рамки обрабатывает onCanvasMouseReleased
+        if (!event.isStillSincePress()) {
+            return;
+        }
+        RayHit hit = MousePicker.pickPolygon(
+                camera, mesh, event.getX(), event.getY(), (int) canvas.getWidth(), (int) canvas.getHeight());
+        if (!event.isShiftDown()) {
+            clearSelection();
+        }
+        if (hit == null) {
+            return;
+        }
+        if (event.isControlDown()) {
+            selectedVertices.flip(MousePicker.pickVertex(mesh, hit));
+        } else {
+            selectedPolygons.flip(hit.getFace());
+        }
+    }
+
+    /**
+     * Протягивание мышью выделяет вершины в рамке, с Alt - внутри нарисованного лассо, и полигоны,
+     * все вершины которых попали в область. С Shift выделение добавляется к прежнему.
+     */
+    private void onCanvasMousePressed(MouseEvent event) {
+        if (event.getButton() != MouseButton.PRIMARY || mesh == null || loadTask != null) {
+            return;
+        }
+        dragPoints = new float[64];
+        dragPointCount = 0;
+        dragLasso = event.isAltDown();
+        addDragPoint(event);
+    }
+
+    private void onCanvasMouseDragged(MouseEvent event) {
+        if (dragPoints == null) {
+            return;
+        }
+        // Для рамки нужны только два угла: начальный и текущий
+        if (!dragLasso && dragPointCount > 1) {
+            dragPointCount = 1;
+        }
+        addDragPoint(event);
+    }
+
+    private void onCanvasMouseReleased(MouseEvent event) {
+        if (dragPoints == null) {
+            return;
+        }
+        final float[] points = Arrays.copyOf(dragPoints, 2 * dragPointCount);
+        final boolean lasso = dragLasso;
+        dragPoints = null;
+        // Модель могла смениться, пока тянули мышь, а щелчок на месте обрабатывает onCanvasMouseClicked
+        if (event.isStillSincePress() || points.length < 4 || mesh == null || loadTask != null) {
+            return;
+        }
+
+        final int width = (int) canvas.getWidth();
+        final int height = (int) canvas.getHeight();
+        final ScreenRegion region = lasso
+                ? ScreenRegion.lasso(points, width, height)
+                : ScreenRegion.rectangle(points[0], points[1], points[2], points[3]);
+        final RegionSelector.Filter filter = selectVisibleOnlyMenuItem.isSelected()
+                ? RegionSelector.Filter.VISIBLE : RegionSelector.Filter.ALL;
+        final BitSet vertices = RegionSelector.selectVertices(camera, mesh, width, height, region, filter);
+        final BitSet polygons = RegionSelector.selectPolygons(mesh, vertices, true);
+        if (!event.isShiftDown()) {
+            clearSelection();
+        }
+        selectedVertices.or(vertices);
+        selectedPolygons.or(polygons);
+    }
+
+    private void addDragPoint(MouseEvent event) {
+        if (2 * dragPointCount == dragPoints.length) {
+            dragPoints = Arrays.copyOf(dragPoints, 2 * dragPoints.length);
+        }
+        dragPoints[2 * dragPointCount] = (float) event.getX();
+        dragPoints[2 * dragPointCount + 1] = (float) event.getY();
+        ++dragPointCount;
+    }
+
+    private void renderDragRegion(GraphicsContext graphicsContext) {
+        if (dragPointCount < 2) {
+            return;
+        }
+        graphicsContext.setStroke(Color.DODGERBLUE);
+        graphicsContext.setLineWidth(1);
+        if (!dragLasso) {
+            final double x = Math.min(dragPoints[0], dragPoints[2]);
+            final double y = Math.min(dragPoints[1], dragPoints[3]);
+            graphicsContext.strokeRect(x, y, Math.abs(dragPoints[2] - dragPoints[0]), Math.abs(dragPoints[3] - dragPoints[1]));
+            return;
+        }
+        final double[] xs = new double[dragPointCount];
+        final double[] ys = new double[dragPointCount];
+        for (int i = 0; i < dragPointCount; ++i) {
+            xs[i] = dragPoints[2 * i];
+            ys[i] = dragPoints[2 * i + 1];
+        }
+        graphicsContext.strokePolygon(xs, ys, dragPointCount);
+    }
+
+    private void clearSelection() {
+        selectedPolygons.clear();
+        selectedVertices.clear();
+    }
+
+    @FXML
+    private void onClearSelectionMenuItemClick() {
+        clearSelection();
+    }
+
+    @FXML
+    private void onDeleteSelectedPolygonsMenuItemClick() {
+        if (mesh == null || loadTask != null || selectedPolygons.isEmpty()) {
+            return;
+        }
+        stopBuildingDetailLevels();
+        PolygonsRemover.removePolygons(mesh, selectedPolygons, true);
+        // Номера вершин и полигонов после удаления сдвинулись
+        clearSelection();
+        startBuildingDetailLevels();
+    }
+
+    @FXML
+    private void onDeleteSelectedVerticesMenuItemClick() {
+        if (mesh == null || loadTask != null || selectedVertices.isEmpty()) {
+            return;
+        }
+        stopBuildingDetailLevels();
+        VertexRemover.removeVertices(mesh, selectedVertices);
+        clearSelection();
+        startBuildingDetailLevels();
+    }
+
+    // Уровни строятся заново после загрузки и после каждой правки loadedMesh
+    private void startBuildingDetailLevels() {
+        DetailLevelsTask task = new DetailLevelsTask(loadedMesh);
+        task.setOnSucceeded(event -> {
+            if (levelsTask == task) {
+                detailLevels = task.getValue();
+                levelsTask = null;
+            }
+        });
+        // Не вышло - рисуем модель целиком, как и до построения
+        task.setOnFailed(event -> {
+            if (levelsTask == task) {
+                levelsTask = null;
+            }
+        });
+        levelsTask = task;
+        levelsExecutor.execute(task);
+    }
+
+    // Вызывается перед правкой или закрытием модели: фоновое построение ее в это время читает
+    private void stopBuildingDetailLevels() {
+        if (levelsTask != null) {
+            levelsTask.cancelAndWait();
+            levelsTask = null;
+        }
+        detailLevels = null;
     }
 
     @FXML
     private void onOpenModelMenuItemClick() {
         FileChooser fileChooser = new FileChooser();
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Model (*.obj)", "*.obj"));
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Model (*.obj, *.obj.gz, *.zip)", "*.obj", "*.obj.gz", "*.zip"));
         fileChooser.setTitle("Load Model");
 
         File file = fileChooser.showOpenDialog((Stage) canvas.getScene().getWindow());
@@ -77,13 +324,81 @@ public class GuiController {
 
         Path fileName = Path.of(file.getAbsolutePath());
 
-        try {
-            String fileContent = Files.readString(fileName);
-            mesh = ObjReader.read(fileContent);
-            // todo: обработка ошибок
-        } catch (IOException exception) {
+        // Одновременно грузится только одна модель
+        if (loadTask != null) {
+            loadTask.cancel();
+        }
+
+        ModelLoadTask task = new ModelLoadTask(fileName, modelCache);
+        // Все обработчики Task вызываются в потоке JavaFX, поэтому mesh подменяется целиком и между кадрами
+        task.setOnSucceeded(event -> {
+            Model previous = loadedMesh;
+            stopBuildingDetailLevels();
+            mesh = task.getValue();
+            loadedMesh = mesh;
+            clearSelection();
+            // Прежнюю модель больше никто не рисует: память вне кучи отдаем сразу, а не когда дойдет сборщик
+            if (previous != null) {
+                previous.close();
+            }
+            finishLoading(task);
+            startBuildingDetailLevels();
+        });
+        // Пока файл читается, показываем уже прочитанную часть; при ошибке или отмене возвращаем прежнюю модель
+        task.setOnSnapshot(snapshot -> {
+            if (loadTask == task) {
+                mesh = snapshot;
+            }
+        });
+        task.setOnFailed(event -> {
+            restoreMesh(task);
+            task.closeUnusedModel();
+            finishLoading(task);
+            showLoadError(fileName, task.getException());
+        });
+        task.setOnCancelled(event -> {
+            restoreMesh(task);
+            task.closeUnusedModel();
+            finishLoading(task);
+        });
+
+        loadTask = task;
+        loadingProgressBar.progressProperty().bind(task.progressProperty());
+        loadingProgressBar.setVisible(true);
+        cancelLoadingMenuItem.setDisable(false);
+        loadExecutor.execute(task);
+    }
+
+    @FXML
+    private void onCancelLoadingMenuItemClick() {
+        if (loadTask != null) {
+            loadTask.cancel();
+        }
+    }
+
+    private void restoreMesh(ModelLoadTask task) {
+        if (loadTask == task) {
+            mesh = loadedMesh;
+        }
+    }
 
+    private void finishLoading(ModelLoadTask task) {
+        // Отмененная задача может закончиться уже после того, как запустили следующую
+        if (loadTask != task) {
+            return;
         }
+        loadTask = null;
+        loadingProgressBar.progressProperty().unbind();
+        loadingProgressBar.setVisible(false);
+        cancelLoadingMenuItem.setDisable(true);
+    }
+
+    private void showLoadError(Path fileName, Throwable exception) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Load Model");
+        alert.setHeaderText("Failed to load " + fileName.getFileName());
+        alert.setContentText(exception == null ? "Unknown error" : exception.getMessage());
+        alert.show();
     }
 
     @FXML
@@ -0,0 +1,105 @@
+package com.cgvsu;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ModelStorage;
+import com.cgvsu.objreader.ObjModelCache;
+import com.cgvsu.objreader.ObjReadMonitor;
+import com.cgvsu.objreader.ObjReaderOptions;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Загрузка модели в фоновом потоке. Прогресс считается в байтах файла,
+ * отмена задачи (cancel()) останавливает разбор на ближайшей границе буфера.
+ * Пока файл читается, в onSnapshot приходят снимки уже прочитанной части модели.
+ */
+public class ModelLoadTask extends Task<Model> implements ObjReadMonitor {
+    private final Path file;
+    private final ObjModelCache modelCache;
+
+    // Полигонов между снимками: чаще нет смысла, кадр с миллионами полигонов рисуется дольше, чем они читаются
+    public static final int SNAPSHOT_INTERVAL = 250_000;
+
+    // Модели из файлов от этого размера хранятся вне кучи, чтобы не упираться в -Xmx и не нагружать сборщик
+    public static final long OFF_HEAP_THRESHOLD = 512L << 20;
+
+    private Consumer<Model> onSnapshot = null;
+    // Как и прогресс в Task, снимки склеиваются: поток JavaFX получает только самый свежий
+    private final AtomicReference<Model> pendingSnapshot = new AtomicReference<>();
+    // Прочитанная модель, пока ее не забрал onSucceeded или не закрыл closeUnusedModel()
+    private final AtomicReference<Model> loadedModel = new AtomicReference<>();
+
+    public ModelLoadTask(Path file, ObjModelCache modelCache) {
+        this.file = file;
+        this.modelCache = modelCache;
+        updateTitle(file.getFileName().toString());
+    }
+
+    @Override
+    protected Model call() throws Exception {
+        ObjReaderOptions options = new ObjReaderOptions();
+        options.setMonitor(this);
+        options.setSnapshotInterval(SNAPSHOT_INTERVAL);
+        options.setComputeMissingNormals(true);
+        if (Files.size(file) >= OFF_HEAP_THRESHOLD) {
+            options.setStorage(ModelStorage.OFF_HEAP);
+        }
+        Model model = modelCache.load(file, options);
+        try {
+            // Дерево полигонов для выбора и отсечения строим здесь же, в фоне, а не при первом щелчке по модели
+            model.getFaceBvh();
+        } finally {
+            // Отдаем модель только когда перестали ею пользоваться: закрыть ее раньше нельзя
+            loadedModel.set(model);
+        }
+        // Задачу отменили, когда модель уже была прочитана: onCancelled мог отработать раньше и ее не застать.
+        // Снимки к этому времени уже не рисуются - onCancelled вернул прежнюю модель
+        if (isCancelled()) {
+            closeUnusedModel();
+        }
+        return model;
+    }
+
+    /**
+     * Сразу освобождает память прочитанной модели, если она так и не досталась onSucceeded:
+     * задачу отменили уже после чтения или она упала после него. Вызывается из onCancelled и onFailed,
+     * после того как снимки этой загрузки перестали рисоваться. Повторный вызов ничего не делает.
+     */
+    public void closeUnusedModel() {
+        Model model = loadedModel.getAndSet(null);
+        if (model != null) {
+            model.close();
+        }
+    }
+
+    // updateProgress можно звать из любого потока: Task сам склеивает частые обновления
+    @Override
+    public void onProgress(long bytesRead, long totalBytes) {
+        updateProgress(bytesRead, totalBytes);
+    }
+
+    @Override
+    public void onSnapshot(Model snapshot) {
+        if (pendingSnapshot.getAndSet(snapshot) == null) {
+            Platform.runLater(() -> {
+                Model latest = pendingSnapshot.getAndSet(null);
+                // Снимок, пришедший после завершения задачи, уже устарел
+                if (onSnapshot != null && !isDone()) {
+                    onSnapshot.accept(latest);
+                }
+            });
+        }
+    }
+
+    /**
+     * Обработчик снимков, вызывается в потоке JavaFX.
+     */
+    public void setOnSnapshot(Consumer<Model> onSnapshot) {
+        this.onSnapshot = onSnapshot;
+    }
+}
@@ -5,4 +5,30 @@ package com.cgvsu.math;
  * все изично, чтобы класс не потерялся в другом паке
  */
 public class Point2f {
+    private float x;
+    private float y;
+
+    public Point2f(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public Point2f() {
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public void setX(float x) {
+        this.x = x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public void setY(float y) {
+        this.y = y;
+    }
 }
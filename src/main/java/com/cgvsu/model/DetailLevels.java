@@ -0,0 +1,182 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector3f;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Уровни детализации модели: уровень 0 - сама модель, каждый следующий упрощен из предыдущего (MeshSimplifier)
+ * примерно в LEVEL_RATIO раз, пока не останется около MIN_LEVEL_FACES треугольников.
+ * У каждого уровня есть оценка его отклонения от модели в единицах модели, у всех вместе - ограничивающая сфера:
+ * по ним рендер выбирает самый грубый уровень, отклонение которого на экране меньше допуска в пикселях.
+ * Уровни соответствуют модели, пока та не изменилась, см. isCurrentFor(Model).
+ */
+public final class DetailLevels {
+    // Во сколько раз каждый уровень меньше предыдущего по числу треугольников
+    private static final int LEVEL_RATIO = 4;
+    // Меньше этого уровни не строятся: такую модель рисовать уже дешево
+    private static final int MIN_LEVEL_FACES = 1024;
+    // Уровень, который упростился меньше чем до этой доли предыдущего, последний: дальше стягивать нечего
+    private static final float MIN_REDUCTION = 0.9F;
+
+    private final Model[] levels;
+    private final float[] errors;
+    private final Vector3f center;
+    private final float radius;
+
+    // Состояние модели, по которому строились уровни
+    private final PolygonList polygons;
+    private final int polygonsVersion;
+    private final Vector3fList vertices;
+    private final int vertexCount;
+
+    private DetailLevels(Model[] levels, float[] errors, Vector3f center, float radius,
+                         int polygonsVersion, int vertexCount) {
+        this.levels = levels;
+        this.errors = errors;
+        this.center = center;
+        this.radius = radius;
+        this.polygons = levels[0].getPolygons();
+        this.polygonsVersion = polygonsVersion;
+        this.vertices = levels[0].getVertices();
+        this.vertexCount = vertexCount;
+    }
+
+    /**
+     * Уровни в общем пуле fork/join, см. build(Model, ForkJoinPool, BooleanSupplier).
+     */
+    public static DetailLevels build(Model model) {
+        return build(model, ForkJoinPool.commonPool(), () -> false);
+    }
+
+    /**
+     * Строит уровни модели. pool == null - в текущем потоке. cancelled проверяется перед каждым уровнем
+     * и по ходу упрощения (см. MeshSimplifier), и если он вернул true - бросается CancellationException. Модель читается до конца построения
+     * первого упрощенного уровня; менять ее, пока build не вернулся, нельзя.
+     */
+    public static DetailLevels build(Model model, ForkJoinPool pool, BooleanSupplier cancelled) {
+        final int polygonsVersion = model.getPolygons().getVersion();
+        final int vertexCount = model.getVertices().size();
+        final float[] sphere = boundingSphere(model.getVertices());
+        final Vector3f center = new Vector3f(sphere[0], sphere[1], sphere[2]);
+
+        final Model[] levels = new Model[32];
+        final float[] errors = new float[32];
+        levels[0] = model;
+        int count = 1;
+        int faces = triangleCount(model.getPolygons());
+        final float[] deviation = new float[1];
+        while (faces / LEVEL_RATIO >= MIN_LEVEL_FACES && count < levels.length) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            final Model level = MeshSimplifier.simplify(
+                    levels[count - 1], faces / LEVEL_RATIO, pool, deviation, cancelled);
+            final int levelFaces = level.getPolygons().size();
+            if (levelFaces > MIN_REDUCTION * faces) {
+                break;
+            }
+            // Отклонения уровней от своих предшественников складываются: так ошибка уровней растет монотонно
+            errors[count] = errors[count - 1] + deviation[0];
+            levels[count++] = level;
+            faces = levelFaces;
+        }
+
+        final Model[] result = new Model[count];
+        System.arraycopy(levels, 0, result, 0, count);
+        final float[] resultErrors = new float[count];
+        System.arraycopy(errors, 0, resultErrors, 0, count);
+        return new DetailLevels(result, resultErrors, center, sphere[3], polygonsVersion, vertexCount);
+    }
+
+    // Треугольников после разбиения многоугольников веером
+    private static int triangleCount(PolygonList polygons) {
+        final IntStorage offsets = polygons.getOffsets();
+        int count = 0;
+        for (int i = 0; i < polygons.size(); ++i) {
+            final int corners = offsets.get(i + 1) - offsets.get(i);
+            if (corners > 2) {
+                count += corners - 2;
+            }
+        }
+        return count;
+    }
+
+    // Центр ограничивающего параллелепипеда и наибольшее расстояние от него до вершин: x, y, z, радиус
+    private static float[] boundingSphere(Vector3fList vertices) {
+        final FloatStorage positions = vertices.getStorage();
+        final int n = vertices.size();
+        final float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        final float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int i = 0; i < n; ++i) {
+            for (int axis = 0; axis < 3; ++axis) {
+                final float value = positions.get(3 * i + axis);
+                if (value < min[axis]) {
+                    min[axis] = value;
+                }
+                if (value > max[axis]) {
+                    max[axis] = value;
+                }
+            }
+        }
+        if (n == 0) {
+            return new float[4];
+        }
+        final float[] sphere = new float[4];
+        for (int axis = 0; axis < 3; ++axis) {
+            sphere[axis] = (min[axis] + max[axis]) / 2;
+        }
+        float radiusSquared = 0;
+        for (int i = 0; i < n; ++i) {
+            final float dx = positions.get(3 * i) - sphere[0];
+            final float dy = positions.get(3 * i + 1) - sphere[1];
+            final float dz = positions.get(3 * i + 2) - sphere[2];
+            final float distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared > radiusSquared) {
+                radiusSquared = distanceSquared;
+            }
+        }
+        sphere[3] = (float) Math.sqrt(radiusSquared);
+        return sphere;
+    }
+
+    /**
+     * true - уровни построены по текущему состоянию model: ее полигоны и вершины с тех пор не менялись
+     * (перемещение вершин без изменения полигонов не отслеживается).
+     */
+    public boolean isCurrentFor(Model model) {
+        return levels[0] == model
+                && model.getPolygons() == polygons
+                && polygons.getVersion() == polygonsVersion
+                && model.getVertices() == vertices
+                && vertices.size() == vertexCount;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Уровень level, от 0 (сама модель) до getLevelCount() - 1 (самый грубый).
+     */
+    public Model getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Оценка отклонения уровня от модели в единицах модели; у уровня 0 - ноль, дальше не убывает.
+     */
+    public float getError(int level) {
+        return errors[level];
+    }
+
+    public Vector3f getCenter() {
+        return center;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+}
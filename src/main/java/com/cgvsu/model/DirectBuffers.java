@@ -0,0 +1,48 @@
+package com.cgvsu.model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Немедленное освобождение прямых и отображенных в память буферов.
+ * Без этого память вернется только когда сборщик мусора доберется до объекта буфера, а для
+ * многогигабайтной модели ждать этого нельзя. Если Unsafe недоступен, остается ожидание сборщика.
+ * Unsafe ищется по имени во время работы: ссылка на него в коде дает предупреждения при каждой сборке
+ * и требует модуль jdk.unsupported.
+ */
+final class DirectBuffers {
+
+    // Unsafe.invokeCleaner(ByteBuffer), привязанный к экземпляру Unsafe; null - недоступен
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    private DirectBuffers() {
+    }
+
+    static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER != null && buffer != null && buffer.isDirect()) {
+            try {
+                INVOKE_CLEANER.invokeExact(buffer);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,864 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Иерархия ограничивающих объемов (BVH) над полигонами модели: двоичное дерево, узлы которого -
+ * выровненные по осям параллелепипеды (AABB), а в листьях лежит по несколько полигонов.
+ * Разбиение выбирается по SAH (оценка стоимости через площади поверхностей) среди границ корзин,
+ * на которые делятся центры полигонов; большие поддеревья строятся параллельно в пуле fork/join.
+ * Запросы: ближайшее пересечение с лучом, полигоны в параллелепипеде и в пирамиде видимости.
+ * Номера полигонов - с нуля, как в списках модели. Полигоны со ссылками за пределы вершин в дерево не попадают.
+ * Обычно берется готовой из Model.getFaceBvh(). Дерево смотрит в списки модели, поэтому после перемещения
+ * вершин его нужно обновить через refit(); удаление через VertexRemover и PolygonsRemover обновляет его само.
+ */
+public final class FaceBvh {
+    // Корзин на ось при выборе разбиения
+    private static final int BIN_COUNT = 16;
+
+    // Столько полигонов и меньше всегда идут в лист
+    private static final int MIN_LEAF_SIZE = 2;
+
+    // Больше стольких полигонов лист не делается, даже если SAH считает разбиение невыгодным
+    private static final int MAX_LEAF_SIZE = 8;
+
+    // Стоимость обхода узла относительно проверки одного полигона
+    private static final float TRAVERSAL_COST = 1.0F;
+
+    // Признак внутреннего узла в поле числа полигонов
+    private static final int INNER = -1;
+
+    private final Vector3fList vertices;
+    private final PolygonList polygons;
+
+    // Узел n: bounds[6n..6n+6) = minX, minY, minZ, maxX, maxY, maxZ; data[2n] - у листа начало его полигонов
+    // в faces, у внутреннего узла - номер левого потомка (правый идет следом); data[2n + 1] - число полигонов
+    // листа или INNER. Узлы лежат в порядке обхода в глубину, потомки всегда дальше родителя
+    private final float[] bounds;
+    private final int[] data;
+    private final int[] faces;
+
+    private FaceBvh(Vector3fList vertices, PolygonList polygons, float[] bounds, int[] data, int[] faces) {
+        this.vertices = vertices;
+        this.polygons = polygons;
+        this.bounds = bounds;
+        this.data = data;
+        this.faces = faces;
+    }
+
+    public static FaceBvh build(Model model) {
+        return build(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Строит дерево в пуле pool (null - в текущем потоке). Результат от пула не зависит.
+     */
+    public static FaceBvh build(Model model, ForkJoinPool pool) {
+        final Vector3fList vertices = model.getVertices();
+        final PolygonList polygons = model.getPolygons();
+        final int polygonCount = polygons.size();
+
+        // Параллелепипеды полигонов нужны только на время сборки; у полигона без вершин или с битой ссылкой - NaN
+        final float[] faceBounds = new float[6 * polygonCount];
+        ParallelRanges.forEach(pool, polygonCount, (from, to) -> {
+            for (int face = from; face < to; ++face) {
+                if (!computeFaceBounds(vertices, polygons, face, faceBounds, 6 * face)) {
+                    faceBounds[6 * face] = Float.NaN;
+                }
+            }
+        });
+        // Границы дальше лежат в том же порядке, что и номера полигонов, и переставляются вместе с ними:
+        // при разделении узлов память читается подряд, а не вразброс по номерам
+        int faceCount = 0;
+        final int[] faces = new int[polygonCount];
+        for (int face = 0; face < polygonCount; ++face) {
+            if (!Float.isNaN(faceBounds[6 * face])) {
+                System.arraycopy(faceBounds, 6 * face, faceBounds, 6 * faceCount, 6);
+                faces[faceCount++] = face;
+            }
+        }
+
+        final NodeArena arena = new NodeArena(Math.max(1, 2 * faceCount - 1));
+        final int root = arena.allocate(1);
+        final float[] rootBox = new float[6];
+        computeBox(faceBounds, 0, faceCount, rootBox, 0);
+        final BuildTask task = new BuildTask(arena, faceBounds, faces, root, 0, faceCount, rootBox, pool);
+        if (ParallelRanges.isParallel(pool, faceCount)) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+
+        return arena.flatten(vertices, polygons, root, Arrays.copyOf(faces, faceCount));
+    }
+
+    Vector3fList getVertices() {
+        return vertices;
+    }
+
+    PolygonList getPolygons() {
+        return polygons;
+    }
+
+    public int getNodeCount() {
+        return data.length / 2;
+    }
+
+    /**
+     * Число полигонов в дереве.
+     */
+    public int getFaceCount() {
+        int count = 0;
+        for (int node = 0; node < getNodeCount(); ++node) {
+            if (data[2 * node + 1] != INNER) {
+                count += data[2 * node + 1];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Границы всей модели: minX, minY, minZ, maxX, maxY, maxZ. У пустого дерева min больше max.
+     */
+    public float[] getBounds() {
+        return Arrays.copyOf(bounds, 6);
+    }
+
+    /**
+     * Ближайшее пересечение луча origin + t * direction (t >= 0) с полигонами, или null.
+     * Полигоны считаются двусторонними и разбиваются веером треугольников от первой вершины.
+     */
+    public RayHit intersectRay(Vector3f origin, Vector3f direction) {
+        return intersectRay(
+                origin.getX(), origin.getY(), origin.getZ(),
+                direction.getX(), direction.getY(), direction.getZ(), Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * То же, но без векторов и только до t = maxDistance.
+     */
+    public RayHit intersectRay(float originX, float originY, float originZ,
+                               float directionX, float directionY, float directionZ, float maxDistance) {
+        final float inverseX = 1.0F / directionX;
+        final float inverseY = 1.0F / directionY;
+        final float inverseZ = 1.0F / directionZ;
+        final FloatStorage positions = vertices.getStorage();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+
+        float best = maxDistance;
+        int bestFace = -1;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            if (slabDistance(node, originX, originY, originZ, inverseX, inverseY, inverseZ, best) < 0) {
+                continue;
+            }
+            final int count = data[2 * node + 1];
+            if (count == INNER) {
+                // Сначала обходим ближний потомок: пересечение в нем отсечет дальний
+                final int left = data[2 * node];
+                final float leftDistance = slabDistance(left, originX, originY, originZ, inverseX, inverseY, inverseZ, best);
+                final float rightDistance = slabDistance(left + 1, originX, originY, originZ, inverseX, inverseY, inverseZ, best);
+                if (stack.length < top + 2) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                final boolean leftFirst = leftDistance <= rightDistance;
+                final float farDistance = leftFirst ? rightDistance : leftDistance;
+                final float nearDistance = leftFirst ? leftDistance : rightDistance;
+                if (farDistance >= 0) {
+                    stack[top++] = leftFirst ? left + 1 : left;
+                }
+                if (nearDistance >= 0) {
+                    stack[top++] = leftFirst ? left : left + 1;
+                }
+                continue;
+            }
+            final int first = data[2 * node];
+            for (int i = first; i < first + count; ++i) {
+                final float distance = intersectFace(positions, offsets, vertexIndices, faces[i],
+                        originX, originY, originZ, directionX, directionY, directionZ, best);
+                if (distance >= 0) {
+                    best = distance;
+                    bestFace = faces[i];
+                }
+            }
+        }
+        if (bestFace < 0) {
+            return null;
+        }
+        return new RayHit(bestFace, best, new Vector3f(
+                originX + best * directionX, originY + best * directionY, originZ + best * directionZ));
+    }
+
+    /**
+     * Отмечает в result полигоны, параллелепипед которых пересекается с заданным.
+     */
+    public void queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, BitSet result) {
+        final float[] box = {minX, minY, minZ, maxX, maxY, maxZ};
+        final float[] faceBox = new float[6];
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int base = 6 * node;
+            if (!overlaps(bounds, base, box, 0)) {
+                continue;
+            }
+            if (contains(box, bounds, base)) {
+                collectFaces(node, result);
+                continue;
+            }
+            final int count = data[2 * node + 1];
+            if (count == INNER) {
+                if (stack.length < top + 2) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[top++] = data[2 * node] + 1;
+                stack[top++] = data[2 * node];
+                continue;
+            }
+            final int first = data[2 * node];
+            for (int i = first; i < first + count; ++i) {
+                computeFaceBounds(vertices, polygons, faces[i], faceBox, 0);
+                if (overlaps(faceBox, 0, box, 0)) {
+                    result.set(faces[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Отмечает в result полигоны, параллелепипед которых хотя бы частично попадает в пирамиду видимости.
+     * modelViewProjection - матрица для вектора-столбца, как в RenderEngine после транспонирования;
+     * отсечение по -w <= x, y, z <= w. Проверка консервативная: у краев могут попасть и невидимые полигоны.
+     */
+    public void queryFrustum(Matrix4f modelViewProjection, BitSet result) {
+        final float[] planes = frustumPlanes(modelViewProjection);
+        final float[] faceBox = new float[6];
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int side = classify(planes, bounds, 6 * node);
+            if (side < 0) {
+                continue;
+            }
+            if (side > 0) {
+                collectFaces(node, result);
+                continue;
+            }
+            final int count = data[2 * node + 1];
+            if (count == INNER) {
+                if (stack.length < top + 2) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[top++] = data[2 * node] + 1;
+                stack[top++] = data[2 * node];
+                continue;
+            }
+            final int first = data[2 * node];
+            for (int i = first; i < first + count; ++i) {
+                computeFaceBounds(vertices, polygons, faces[i], faceBox, 0);
+                if (classify(planes, faceBox, 0) >= 0) {
+                    result.set(faces[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает параллелепипеды узлов по текущим положениям вершин, не меняя структуры дерева.
+     * Нужен после перемещения вершин; при сильных перемещениях дерево лучше построить заново.
+     */
+    public void refit() {
+        refit(ForkJoinPool.commonPool());
+    }
+
+    void refit(ForkJoinPool pool) {
+        final int nodeCount = getNodeCount();
+        // Листья независимы друг от друга и считаются параллельно
+        ParallelRanges.forEach(pool, nodeCount, (from, to) -> {
+            final float[] faceBox = new float[6];
+            for (int node = from; node < to; ++node) {
+                final int count = data[2 * node + 1];
+                if (count == INNER) {
+                    continue;
+                }
+                setEmpty(bounds, 6 * node);
+                final int first = data[2 * node];
+                for (int i = first; i < first + count; ++i) {
+                    computeFaceBounds(vertices, polygons, faces[i], faceBox, 0);
+                    include(bounds, 6 * node, faceBox, 0);
+                }
+            }
+        });
+        // Потомки лежат дальше родителя, поэтому обратного прохода достаточно, чтобы собрать внутренние узлы
+        for (int node = nodeCount - 1; node >= 0; --node) {
+            if (data[2 * node + 1] == INNER) {
+                final int left = data[2 * node];
+                System.arraycopy(bounds, 6 * left, bounds, 6 * node, 6);
+                include(bounds, 6 * node, bounds, 6 * (left + 1));
+            }
+        }
+    }
+
+    /**
+     * Убирает из листьев удаленные полигоны (removed - номера до удаления, oldCount - сколько их было),
+     * переводит остальные в новую нумерацию и пересчитывает параллелепипеды. Вызывается после сжатия полигонов.
+     */
+    void removeFaces(BitSet removed, int oldCount) {
+        final int[] remap = new int[oldCount];
+        int next = 0;
+        for (int i = 0; i < oldCount; ++i) {
+            remap[i] = next;
+            if (!removed.get(i)) {
+                ++next;
+            }
+        }
+        for (int node = 0; node < getNodeCount(); ++node) {
+            final int count = data[2 * node + 1];
+            if (count == INNER) {
+                continue;
+            }
+            final int first = data[2 * node];
+            int kept = 0;
+            for (int i = first; i < first + count; ++i) {
+                if (faces[i] < oldCount && !removed.get(faces[i])) {
+                    faces[first + kept++] = remap[faces[i]];
+                }
+            }
+            data[2 * node + 1] = kept;
+        }
+        refit();
+    }
+
+    // Отмечает все полигоны поддерева node
+    private void collectFaces(int node, BitSet result) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            final int current = stack[--top];
+            final int count = data[2 * current + 1];
+            if (count == INNER) {
+                if (stack.length < top + 2) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[top++] = data[2 * current] + 1;
+                stack[top++] = data[2 * current];
+                continue;
+            }
+            final int first = data[2 * current];
+            for (int i = first; i < first + count; ++i) {
+                result.set(faces[i]);
+            }
+        }
+    }
+
+    // Расстояние входа луча в параллелепипед узла или -1, если луч его не задевает раньше maxDistance
+    private float slabDistance(int node, float originX, float originY, float originZ,
+                               float inverseX, float inverseY, float inverseZ, float maxDistance) {
+        final int base = 6 * node;
+        float near = 0;
+        float far = maxDistance;
+
+        float t1 = (bounds[base] - originX) * inverseX;
+        float t2 = (bounds[base + 3] - originX) * inverseX;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        t1 = (bounds[base + 1] - originY) * inverseY;
+        t2 = (bounds[base + 4] - originY) * inverseY;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        t1 = (bounds[base + 2] - originZ) * inverseZ;
+        t2 = (bounds[base + 5] - originZ) * inverseZ;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        if (near > far) {
+            return -1;
+        }
+        // NaN - луч параллелен грани и лежит в ее плоскости: узел тогда не отсекаем
+        return Float.isNaN(near) ? 0 : near;
+    }
+
+    // Пересечение луча с полигоном (веер треугольников, алгоритм Мёллера - Трумбора): t или -1
+    private static float intersectFace(FloatStorage positions, IntStorage offsets, IntStorage vertexIndices, int face,
+                                       float originX, float originY, float originZ,
+                                       float directionX, float directionY, float directionZ, float maxDistance) {
+        final int start = offsets.get(face);
+        final int end = offsets.get(face + 1);
+        if (end - start < 3) {
+            return -1;
+        }
+        final int first = 3 * vertexIndices.get(start);
+        final float x0 = positions.get(first);
+        final float y0 = positions.get(first + 1);
+        final float z0 = positions.get(first + 2);
+        final float sx = originX - x0;
+        final float sy = originY - y0;
+        final float sz = originZ - z0;
+
+        float best = -1;
+        int previous = 3 * vertexIndices.get(start + 1);
+        for (int corner = start + 2; corner < end; ++corner) {
+            final int current = 3 * vertexIndices.get(corner);
+            final float e1x = positions.get(previous) - x0;
+            final float e1y = positions.get(previous + 1) - y0;
+            final float e1z = positions.get(previous + 2) - z0;
+            final float e2x = positions.get(current) - x0;
+            final float e2y = positions.get(current + 1) - y0;
+            final float e2z = positions.get(current + 2) - z0;
+            previous = current;
+
+            final float px = directionY * e2z - directionZ * e2y;
+            final float py = directionZ * e2x - directionX * e2z;
+            final float pz = directionX * e2y - directionY * e2x;
+            final float determinant = e1x * px + e1y * py + e1z * pz;
+            if (Math.abs(determinant) < 1e-20F) {
+                continue;
+            }
+            final float inverse = 1.0F / determinant;
+            final float u = (sx * px + sy * py + sz * pz) * inverse;
+            if (u < 0 || u > 1) {
+                continue;
+            }
+            final float qx = sy * e1z - sz * e1y;
+            final float qy = sz * e1x - sx * e1z;
+            final float qz = sx * e1y - sy * e1x;
+            final float v = (directionX * qx + directionY * qy + directionZ * qz) * inverse;
+            if (v < 0 || u + v > 1) {
+                continue;
+            }
+            final float t = (e2x * qx + e2y * qy + e2z * qz) * inverse;
+            if (t >= 0 && t < maxDistance && (best < 0 || t < best)) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    // Плоскости отсечения a, b, c, d (внутри - где ax + by + cz + d >= 0): левая, правая, нижняя, верхняя, ближняя, дальняя
+    static float[] frustumPlanes(Matrix4f matrix) {
+        final float[] planes = new float[24];
+        for (int plane = 0; plane < 6; ++plane) {
+            final int row = plane / 2;
+            final float sign = plane % 2 == 0 ? 1 : -1;
+            for (int col = 0; col < 4; ++col) {
+                planes[4 * plane + col] = matrix.getElement(3, col) + sign * matrix.getElement(row, col);
+            }
+        }
+        return planes;
+    }
+
+    // -1 - параллелепипед целиком снаружи одной из плоскостей, 1 - целиком внутри всех, 0 - пересекает границу
+    private static int classify(float[] planes, float[] box, int base) {
+        if (box[base] > box[base + 3]) {
+            return -1;
+        }
+        int result = 1;
+        for (int plane = 0; plane < 24; plane += 4) {
+            final float a = planes[plane];
+            final float b = planes[plane + 1];
+            final float c = planes[plane + 2];
+            final float d = planes[plane + 3];
+            // Вершина, дальше всех продвинутая внутрь плоскости, и противоположная ей
+            final float inner = a * box[base + (a >= 0 ? 3 : 0)] + b * box[base + (b >= 0 ? 4 : 1)]
+                    + c * box[base + (c >= 0 ? 5 : 2)] + d;
+            if (inner < 0) {
+                return -1;
+            }
+            final float outer = a * box[base + (a >= 0 ? 0 : 3)] + b * box[base + (b >= 0 ? 1 : 4)]
+                    + c * box[base + (c >= 0 ? 2 : 5)] + d;
+            if (outer < 0) {
+                result = 0;
+            }
+        }
+        return result;
+    }
+
+    // Параллелепипед полигона в result[base..base+6); false - у полигона нет вершин или ссылка за пределы модели
+    private static boolean computeFaceBounds(Vector3fList vertices, PolygonList polygons, int face,
+                                             float[] result, int base) {
+        final FloatStorage positions = vertices.getStorage();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final int vertexCount = vertices.size();
+        final int start = offsets.get(face);
+        final int end = offsets.get(face + 1);
+        setEmpty(result, base);
+        for (int corner = start; corner < end; ++corner) {
+            final int vertexIndex = vertexIndices.get(corner);
+            if (vertexIndex < 0 || vertexIndex >= vertexCount) {
+                return false;
+            }
+            for (int axis = 0; axis < 3; ++axis) {
+                final float value = positions.get(3 * vertexIndex + axis);
+                result[base + axis] = Math.min(result[base + axis], value);
+                result[base + 3 + axis] = Math.max(result[base + 3 + axis], value);
+            }
+        }
+        return end > start;
+    }
+
+    // Общие границы полигонов bounds[6from..6to) в result[base..base+6)
+    private static void computeBox(float[] bounds, int from, int to, float[] result, int base) {
+        setEmpty(result, base);
+        for (int i = from; i < to; ++i) {
+            include(result, base, bounds, 6 * i);
+        }
+    }
+
+    private static void setEmpty(float[] box, int base) {
+        Arrays.fill(box, base, base + 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(box, base + 3, base + 6, Float.NEGATIVE_INFINITY);
+    }
+
+    // Сравнения, а не Math.min/max: NaN в границах не бывает, а в сборке это самый горячий цикл
+    private static void include(float[] box, int base, float[] other, int otherBase) {
+        for (int axis = 0; axis < 3; ++axis) {
+            final float min = other[otherBase + axis];
+            final float max = other[otherBase + 3 + axis];
+            if (min < box[base + axis]) {
+                box[base + axis] = min;
+            }
+            if (max > box[base + 3 + axis]) {
+                box[base + 3 + axis] = max;
+            }
+        }
+    }
+
+    private static boolean overlaps(float[] box, int base, float[] other, int otherBase) {
+        for (int axis = 0; axis < 3; ++axis) {
+            if (box[base + axis] > other[otherBase + 3 + axis] || box[base + 3 + axis] < other[otherBase + axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // outer целиком содержит inner
+    private static boolean contains(float[] outer, float[] inner, int innerBase) {
+        for (int axis = 0; axis < 3; ++axis) {
+            if (inner[innerBase + axis] < outer[axis] || inner[innerBase + 3 + axis] > outer[3 + axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Половина площади поверхности параллелепипеда - для SAH масштаб не важен
+    private static float halfArea(float[] box, int base) {
+        final float dx = box[base + 3] - box[base];
+        final float dy = box[base + 4] - box[base + 1];
+        final float dz = box[base + 5] - box[base + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * Узлы во время сборки. Задачи выделяют их параллельно, поэтому память нарезана блоками,
+     * которые не переезжают при росте; по окончании узлы переписываются в плоские массивы.
+     */
+    private static final class NodeArena {
+        private static final int BLOCK_SHIFT = 14;
+        private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+        private final float[][] boundsBlocks;
+        private final int[][] dataBlocks;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NodeArena(int maxNodes) {
+            final int blockCount = (maxNodes >>> BLOCK_SHIFT) + 1;
+            boundsBlocks = new float[blockCount][];
+            dataBlocks = new int[blockCount][];
+        }
+
+        // Выделяет nodes подряд идущих узлов; блоки создаются здесь, до того как узлы отдадут другим задачам
+        int allocate(int nodes) {
+            final int first = count.getAndAdd(nodes);
+            for (int node = first; node < first + nodes; ++node) {
+                ensureBlock(node >>> BLOCK_SHIFT);
+            }
+            return first;
+        }
+
+        private synchronized void ensureBlock(int block) {
+            if (dataBlocks[block] == null) {
+                boundsBlocks[block] = new float[6 * BLOCK_SIZE];
+                dataBlocks[block] = new int[2 * BLOCK_SIZE];
+            }
+        }
+
+        void setNode(int node, float[] box, int first, int faceCount) {
+            final int block = node >>> BLOCK_SHIFT;
+            final int index = node & (BLOCK_SIZE - 1);
+            System.arraycopy(box, 0, boundsBlocks[block], 6 * index, 6);
+            dataBlocks[block][2 * index] = first;
+            dataBlocks[block][2 * index + 1] = faceCount;
+        }
+
+        // Перенумерация в порядок обхода в глубину: потомки узла - соседняя пара, левое поддерево идет сразу следом
+        FaceBvh flatten(Vector3fList vertices, PolygonList polygons, int root, int[] faces) {
+            final int nodeCount = count.get();
+            final float[] bounds = new float[6 * nodeCount];
+            final int[] data = new int[2 * nodeCount];
+            int[] stack = new int[128];
+            int top = 0;
+            stack[top++] = root;
+            stack[top++] = 0;
+            int next = 1;
+            while (top > 0) {
+                final int node = stack[--top];
+                final int old = stack[--top];
+                final int block = old >>> BLOCK_SHIFT;
+                final int index = old & (BLOCK_SIZE - 1);
+                System.arraycopy(boundsBlocks[block], 6 * index, bounds, 6 * node, 6);
+                final int first = dataBlocks[block][2 * index];
+                final int faceCount = dataBlocks[block][2 * index + 1];
+                data[2 * node + 1] = faceCount;
+                if (faceCount != INNER) {
+                    data[2 * node] = first;
+                    continue;
+                }
+                final int left = next;
+                next += 2;
+                data[2 * node] = left;
+                if (stack.length < top + 4) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[top++] = first + 1;
+                stack[top++] = left + 1;
+                stack[top++] = first;
+                stack[top++] = left;
+            }
+            return new FaceBvh(vertices, polygons, bounds, data, faces);
+        }
+    }
+
+    /**
+     * Сборка поддерева над faces[from..to); faceBounds[6i..6i+6) - границы полигона faces[i].
+     * Узлы обрабатываются в цикле со своим стеком, а не рекурсией: у неудачных моделей дерево может быть глубоким.
+     * Границы потомков собираются из корзин родителя, так что полигоны узла читаются дважды: в корзины и при разделении.
+     * Большие поддеревья отдаются отдельным задачам.
+     */
+    private static final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final NodeArena arena;
+        private final float[] faceBounds;
+        private final int[] faces;
+        private final int root;
+        private final int rootFrom;
+        private final int rootTo;
+        private final float[] rootBox;
+        private final ForkJoinPool pool;
+
+        // Счетчики и параллелепипеды корзин по трем осям, множители перевода центра в корзину
+        // и накопленные справа площади одной оси
+        private final int[] binCounts = new int[3 * BIN_COUNT];
+        private final float[] binBounds = new float[3 * 6 * BIN_COUNT];
+        private final float[] scales = new float[3];
+        private final float[] rightAreas = new float[BIN_COUNT];
+        private final float[] box = new float[6];
+        private final float[] centroidBox = new float[6];
+        private final float[] sweep = new float[6];
+        // Границы потомков после разбиения: сначала левого, затем правого
+        private final float[] childBoxes = new float[12];
+
+        BuildTask(NodeArena arena, float[] faceBounds, int[] faces, int root, int from, int to, float[] rootBox,
+                  ForkJoinPool pool) {
+            this.arena = arena;
+            this.faceBounds = faceBounds;
+            this.faces = faces;
+            this.root = root;
+            this.rootFrom = from;
+            this.rootTo = to;
+            this.rootBox = rootBox;
+            this.pool = pool;
+        }
+
+        @Override
+        protected void compute() {
+            final List<BuildTask> forked = new ArrayList<>();
+            // Узлы в очереди: номер и диапазон в stack, границы в boxStack
+            int[] stack = new int[96];
+            float[] boxStack = new float[192];
+            int top = 0;
+            stack[top++] = root;
+            stack[top++] = rootFrom;
+            stack[top++] = rootTo;
+            System.arraycopy(rootBox, 0, boxStack, 0, 6);
+            while (top > 0) {
+                final int to = stack[--top];
+                final int from = stack[--top];
+                final int node = stack[--top];
+                System.arraycopy(boxStack, 2 * top, box, 0, 6);
+                final int middle = split(node, from, to);
+                if (middle < 0) {
+                    continue;
+                }
+                final int left = arena.allocate(2);
+                arena.setNode(node, box, left, INNER);
+                if (stack.length < top + 6) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                    boxStack = Arrays.copyOf(boxStack, 2 * stack.length);
+                }
+                for (int child = 0; child < 2; ++child) {
+                    final int childFrom = child == 0 ? from : middle;
+                    final int childTo = child == 0 ? middle : to;
+                    if (ParallelRanges.isParallel(pool, childTo - childFrom)) {
+                        final BuildTask task = new BuildTask(arena, faceBounds, faces, left + child, childFrom, childTo,
+                                Arrays.copyOfRange(childBoxes, 6 * child, 6 * child + 6), pool);
+                        task.fork();
+                        forked.add(task);
+                    } else {
+                        System.arraycopy(childBoxes, 6 * child, boxStack, 2 * top, 6);
+                        stack[top++] = left + child;
+                        stack[top++] = childFrom;
+                        stack[top++] = childTo;
+                    }
+                }
+            }
+            for (BuildTask task : forked) {
+                task.join();
+            }
+        }
+
+        // Узел с границами box: делает лист и возвращает -1 или переставляет полигоны,
+        // записывает границы половин в childBoxes и возвращает начало правой половины
+        private int split(int node, int from, int to) {
+            // Центр полигона берется удвоенным (min + max): масштаб для корзин не важен. Центры лежат внутри
+            // удвоенных границ узла - диапазон грубее точного, но не требует еще одного прохода по полигонам
+            for (int axis = 0; axis < 6; ++axis) {
+                centroidBox[axis] = 2 * box[axis];
+            }
+            final int count = to - from;
+            if (count <= MIN_LEAF_SIZE) {
+                arena.setNode(node, box, from, count);
+                return -1;
+            }
+
+            // Корзины всех трех осей заполняются за один проход по полигонам. У маленьких узлов корзин
+            // не больше, чем полигонов: узлов внизу дерева большинство, и подготовка корзин стоила бы дороже разбиения
+            final int binCount = Math.min(BIN_COUNT, count);
+            Arrays.fill(binCounts, 0);
+            for (int bin = 0; bin < 3 * BIN_COUNT; ++bin) {
+                if (bin % BIN_COUNT < binCount) {
+                    setEmpty(binBounds, 6 * bin);
+                }
+            }
+            for (int axis = 0; axis < 3; ++axis) {
+                final float extent = centroidBox[3 + axis] - centroidBox[axis];
+                scales[axis] = extent > 0 ? binCount / extent : 0;
+            }
+            for (int i = from; i < to; ++i) {
+                for (int axis = 0; axis < 3; ++axis) {
+                    final int bin = axis * BIN_COUNT + binOf(i, axis, centroidBox[axis], scales[axis], binCount);
+                    ++binCounts[bin];
+                    include(binBounds, 6 * bin, faceBounds, 6 * i);
+                }
+            }
+
+            float bestCost = Float.POSITIVE_INFINITY;
+            int bestAxis = -1;
+            int bestBin = 0;
+            for (int axis = 0; axis < 3; ++axis) {
+                if (scales[axis] == 0) {
+                    continue;
+                }
+                final int firstBin = axis * BIN_COUNT;
+                // Справа налево копим площади, слева направо - выбираем лучшую границу между корзинами
+                setEmpty(sweep, 0);
+                for (int bin = binCount - 1; bin > 0; --bin) {
+                    include(sweep, 0, binBounds, 6 * (firstBin + bin));
+                    rightAreas[bin] = halfArea(sweep, 0);
+                }
+                setEmpty(sweep, 0);
+                int leftCount = 0;
+                for (int bin = 0; bin < binCount - 1; ++bin) {
+                    include(sweep, 0, binBounds, 6 * (firstBin + bin));
+                    leftCount += binCounts[firstBin + bin];
+                    final int rightCount = count - leftCount;
+                    if (leftCount == 0 || rightCount == 0) {
+                        continue;
+                    }
+                    final float cost = halfArea(sweep, 0) * leftCount + rightAreas[bin + 1] * rightCount;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestBin = bin + 1;
+                    }
+                }
+            }
+
+            if (bestAxis < 0) {
+                // Центры всех полигонов в одной корзине: разбивать по геометрии нечем, делим пополам по порядку
+                if (count <= MAX_LEAF_SIZE) {
+                    arena.setNode(node, box, from, count);
+                    return -1;
+                }
+                final int middle = from + count / 2;
+                computeBox(faceBounds, from, middle, childBoxes, 0);
+                computeBox(faceBounds, middle, to, childBoxes, 6);
+                return middle;
+            }
+            final float area = halfArea(box, 0);
+            if (count <= MAX_LEAF_SIZE && (area <= 0 || TRAVERSAL_COST + bestCost / area >= count)) {
+                arena.setNode(node, box, from, count);
+                return -1;
+            }
+
+            // Разделение на месте: полигоны из корзин левее bestBin - в начало
+            final int firstBin = bestAxis * BIN_COUNT;
+            setEmpty(childBoxes, 0);
+            setEmpty(childBoxes, 6);
+            for (int bin = 0; bin < binCount; ++bin) {
+                include(childBoxes, bin < bestBin ? 0 : 6, binBounds, 6 * (firstBin + bin));
+            }
+            final float minCentroid = centroidBox[bestAxis];
+            final float scale = scales[bestAxis];
+            int left = from;
+            int right = to - 1;
+            while (left <= right) {
+                if (binOf(left, bestAxis, minCentroid, scale, binCount) < bestBin) {
+                    ++left;
+                } else {
+                    swap(left, right--);
+                }
+            }
+            return left;
+        }
+
+        private int binOf(int i, int axis, float minCentroid, float scale, int binCount) {
+            final float centroid = faceBounds[6 * i + axis] + faceBounds[6 * i + 3 + axis];
+            return Math.min(binCount - 1, (int) ((centroid - minCentroid) * scale));
+        }
+
+        private void swap(int i, int j) {
+            final int face = faces[i];
+            faces[i] = faces[j];
+            faces[j] = face;
+            for (int k = 0; k < 6; ++k) {
+                final float value = faceBounds[6 * i + k];
+                faceBounds[6 * i + k] = faceBounds[6 * j + k];
+                faceBounds[6 * j + k] = value;
+            }
+        }
+    }
+}
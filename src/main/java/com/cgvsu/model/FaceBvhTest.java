@@ -0,0 +1,269 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+class FaceBvhTest {
+
+    // Квадрат [-1, 1] x [-1, 1] с волной по z, треугольники вперемешку с четырехугольниками
+    private static Model createGrid(int n) {
+        return TestModels.createGrid(n, -1, 1, 0.3F);
+    }
+
+    private static float[] faceBounds(Model model, int face) {
+        final PolygonList polygons = model.getPolygons();
+        final float[] box = {
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int corner = polygons.getOffsets().get(face); corner < polygons.getOffsets().get(face + 1); ++corner) {
+            final Vector3f vertex = model.getVertices().get(polygons.getVertexIndexStorage().get(corner));
+            final float[] coordinates = {vertex.getX(), vertex.getY(), vertex.getZ()};
+            for (int axis = 0; axis < 3; ++axis) {
+                box[axis] = Math.min(box[axis], coordinates[axis]);
+                box[3 + axis] = Math.max(box[3 + axis], coordinates[axis]);
+            }
+        }
+        return box;
+    }
+
+    // Ближайшее пересечение перебором всех полигонов: {полигон, t} или null
+    private static double[] bruteForceRay(Model model, double[] origin, double[] direction) {
+        double[] best = null;
+        for (int face = 0; face < model.getPolygons().size(); ++face) {
+            final double t = intersectFace(model, face, origin, direction);
+            if (t >= 0 && (best == null || t < best[1])) {
+                best = new double[]{face, t};
+            }
+        }
+        return best;
+    }
+
+    // Пересечение с веером треугольников полигона: t или -1
+    private static double intersectFace(Model model, int face, double[] origin, double[] direction) {
+        final PolygonList polygons = model.getPolygons();
+        final int start = polygons.getOffsets().get(face);
+        final int end = polygons.getOffsets().get(face + 1);
+        final double[] a = coordinates(model, polygons.getVertexIndexStorage().get(start));
+        double best = -1;
+        for (int corner = start + 2; corner < end; ++corner) {
+            final double[] b = coordinates(model, polygons.getVertexIndexStorage().get(corner - 1));
+            final double[] c = coordinates(model, polygons.getVertexIndexStorage().get(corner));
+            final double t = intersectTriangle(origin, direction, a, b, c);
+            if (t >= 0 && (best < 0 || t < best)) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private static double[] coordinates(Model model, int vertexIndex) {
+        final Vector3f vertex = model.getVertices().get(vertexIndex);
+        return new double[]{vertex.getX(), vertex.getY(), vertex.getZ()};
+    }
+
+    // Решение origin + t * direction = a + u * (b - a) + v * (c - a) по правилу Крамера: t или -1
+    private static double intersectTriangle(double[] origin, double[] direction, double[] a, double[] b, double[] c) {
+        final double[] e1 = {b[0] - a[0], b[1] - a[1], b[2] - a[2]};
+        final double[] e2 = {c[0] - a[0], c[1] - a[1], c[2] - a[2]};
+        final double[] s = {origin[0] - a[0], origin[1] - a[1], origin[2] - a[2]};
+        final double[] minusDirection = {-direction[0], -direction[1], -direction[2]};
+        final double determinant = determinant(e1, e2, minusDirection);
+        if (Math.abs(determinant) < 1e-12) {
+            return -1;
+        }
+        final double u = determinant(s, e2, minusDirection) / determinant;
+        final double v = determinant(e1, s, minusDirection) / determinant;
+        final double t = determinant(e1, e2, s) / determinant;
+        return u >= 0 && v >= 0 && u + v <= 1 && t >= 0 ? t : -1;
+    }
+
+    private static double determinant(double[] col0, double[] col1, double[] col2) {
+        return col0[0] * (col1[1] * col2[2] - col1[2] * col2[1])
+                - col1[0] * (col0[1] * col2[2] - col0[2] * col2[1])
+                + col2[0] * (col0[1] * col1[2] - col0[2] * col1[1]);
+    }
+
+    private static void assertRaysMatch(Model model, FaceBvh bvh, long seed) {
+        final Random random = new Random(seed);
+        int hits = 0;
+        for (int ray = 0; ray < 300; ++ray) {
+            // Лучи сверху и снизу: полигоны двусторонние; часть лучей проходит мимо сетки
+            final double side = ray % 2 == 0 ? 1 : -1;
+            final double[] origin = {2.6 * random.nextDouble() - 1.3, 2.6 * random.nextDouble() - 1.3, 2 * side};
+            final double[] direction = {random.nextDouble() - 0.5, random.nextDouble() - 0.5, -side};
+            final double[] expected = bruteForceRay(model, origin, direction);
+            final RayHit actual = bvh.intersectRay(
+                    new Vector3f((float) origin[0], (float) origin[1], (float) origin[2]),
+                    new Vector3f((float) direction[0], (float) direction[1], (float) direction[2]));
+            if (expected == null) {
+                Assertions.assertNull(actual, "ray " + ray);
+                continue;
+            }
+            Assertions.assertNotNull(actual, "ray " + ray);
+            Assertions.assertEquals(expected[1], actual.getDistance(), 1e-4, "ray " + ray);
+            // На общем ребре годится любой из соседних полигонов - проверяем, что попали именно в найденный
+            Assertions.assertEquals(expected[1], intersectFace(model, actual.getFace(), origin, direction), 1e-4);
+            ++hits;
+        }
+        Assertions.assertTrue(hits > 50 && hits < 300, "hits: " + hits);
+    }
+
+    private static void assertBoxesMatch(Model model, FaceBvh bvh, long seed) {
+        final Random random = new Random(seed);
+        for (int query = 0; query < 50; ++query) {
+            final float[] box = new float[6];
+            for (int axis = 0; axis < 3; ++axis) {
+                final float a = 2.4F * random.nextFloat() - 1.2F;
+                final float b = a + 0.6F * random.nextFloat();
+                box[axis] = a;
+                box[3 + axis] = b;
+            }
+            final BitSet expected = new BitSet();
+            for (int face = 0; face < model.getPolygons().size(); ++face) {
+                final float[] faceBox = faceBounds(model, face);
+                boolean overlaps = true;
+                for (int axis = 0; axis < 3; ++axis) {
+                    overlaps &= faceBox[axis] <= box[3 + axis] && faceBox[3 + axis] >= box[axis];
+                }
+                if (overlaps) {
+                    expected.set(face);
+                }
+            }
+            final BitSet actual = new BitSet();
+            bvh.queryBox(box[0], box[1], box[2], box[3], box[4], box[5], actual);
+            Assertions.assertEquals(expected, actual, "query " + query);
+        }
+    }
+
+    // Полигон отбрасывается, только если его параллелепипед целиком снаружи одной из плоскостей
+    private static void assertFrustumMatches(Model model, FaceBvh bvh, Matrix4f matrix) {
+        final float[] planes = FaceBvh.frustumPlanes(matrix);
+        final BitSet expected = new BitSet();
+        for (int face = 0; face < model.getPolygons().size(); ++face) {
+            final float[] box = faceBounds(model, face);
+            boolean visible = true;
+            for (int plane = 0; plane < 24; plane += 4) {
+                boolean anyInside = false;
+                for (int cornerMask = 0; cornerMask < 8; ++cornerMask) {
+                    final float x = box[(cornerMask & 1) == 0 ? 0 : 3];
+                    final float y = box[(cornerMask & 2) == 0 ? 1 : 4];
+                    final float z = box[(cornerMask & 4) == 0 ? 2 : 5];
+                    anyInside |= planes[plane] * x + planes[plane + 1] * y + planes[plane + 2] * z + planes[plane + 3] >= 0;
+                }
+                visible &= anyInside;
+            }
+            if (visible) {
+                expected.set(face);
+            }
+        }
+        final BitSet actual = new BitSet();
+        bvh.queryFrustum(matrix, actual);
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertTrue(!expected.isEmpty() && expected.cardinality() < model.getPolygons().size());
+    }
+
+    // Пирамида видимости: |2x| <= w, |2y| <= w, |z| <= w при w = 1 + 0.5 z
+    private static Matrix4f createFrustum() {
+        return new Matrix4f(
+                2, 0, 0, 0.3F,
+                0, 2, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0.5F, 1);
+    }
+
+    @Test
+    public void testIntersectRay01() {
+        Model model = createGrid(24);
+        assertRaysMatch(model, FaceBvh.build(model, null), 1);
+    }
+
+    @Test
+    public void testIntersectRay02() {
+        // Дерево из пула отвечает так же
+        Model model = createGrid(24);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertRaysMatch(model, FaceBvh.build(model, pool), 2);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testIntersectRay03() {
+        Model model = createGrid(4);
+        FaceBvh bvh = FaceBvh.build(model, null);
+        Assertions.assertNull(bvh.intersectRay(new Vector3f(0, 0, 2), new Vector3f(0, 0, 1)));
+        Assertions.assertNull(bvh.intersectRay(0, 0, 2, 0, 0, -1, 1.0F));
+        Assertions.assertNotNull(bvh.intersectRay(0, 0, 2, 0, 0, -1, 3.0F));
+    }
+
+    @Test
+    public void testQueryBox01() {
+        Model model = createGrid(24);
+        assertBoxesMatch(model, FaceBvh.build(model, null), 3);
+    }
+
+    @Test
+    public void testQueryFrustum01() {
+        Model model = createGrid(24);
+        assertFrustumMatches(model, FaceBvh.build(model, null), createFrustum());
+    }
+
+    @Test
+    public void testRemoveFaces01() {
+        // Дерево из модели переживает удаление полигонов: номера сдвигаются, запросы совпадают с перебором
+        Model model = createGrid(24);
+        FaceBvh bvh = model.getFaceBvh();
+        final int faceCount = bvh.getFaceCount();
+        BitSet deleted = new BitSet();
+        for (int face = 0; face < model.getPolygons().size(); face += 7) {
+            deleted.set(face);
+        }
+        PolygonsRemover.removePolygons(model, deleted, false);
+        Assertions.assertSame(bvh, model.getFaceBvh());
+        Assertions.assertEquals(faceCount - deleted.cardinality(), bvh.getFaceCount());
+
+        assertRaysMatch(model, bvh, 4);
+        assertBoxesMatch(model, bvh, 5);
+        assertFrustumMatches(model, bvh, createFrustum());
+    }
+
+    @Test
+    public void testRefit01() {
+        // После удаления и перемещения вершин refit() подтягивает параллелепипеды к новым положениям
+        Model model = createGrid(24);
+        FaceBvh bvh = model.getFaceBvh();
+        BitSet deleted = new BitSet();
+        deleted.set(0, model.getPolygons().size() / 4);
+        PolygonsRemover.removePolygons(model, deleted, true);
+        Assertions.assertSame(bvh, model.getFaceBvh());
+
+        final Vector3fList vertices = model.getVertices();
+        for (int i = 0; i < vertices.size(); ++i) {
+            final Vector3f vertex = vertices.get(i);
+            vertices.set(i, vertex.getX(), vertex.getY(), 2 * vertex.getZ() + 0.25F * vertex.getX());
+        }
+        bvh.refit();
+        final float[] bounds = bvh.getBounds();
+        final float[] expected = faceBounds(model, 0);
+        for (int face = 1; face < model.getPolygons().size(); ++face) {
+            final float[] box = faceBounds(model, face);
+            for (int axis = 0; axis < 3; ++axis) {
+                expected[axis] = Math.min(expected[axis], box[axis]);
+                expected[3 + axis] = Math.max(expected[3 + axis], box[3 + axis]);
+            }
+        }
+        Assertions.assertArrayEquals(expected, bounds);
+
+        assertRaysMatch(model, bvh, 6);
+        assertBoxesMatch(model, bvh, 7);
+        assertFrustumMatches(model, bvh, createFrustum());
+    }
+}
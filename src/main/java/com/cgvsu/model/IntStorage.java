@@ -0,0 +1,356 @@
+package com.cgvsu.model;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Массив int фиксированной емкости: в куче (int[]) или вне ее (прямые ByteBuffer).
+ * Данные вне кучи режутся на сегменты по 1 ГБ, потому что один ByteBuffer не может быть больше 2 ГБ.
+ * Списки модели (PolygonList) хранят данные в нем и при росте заменяют на больший.
+ */
+public abstract class IntStorage {
+    // Сегмент вне кучи - 2^28 элементов, 1 ГБ
+    static final int SEGMENT_SHIFT = 28;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // Снимок списка ссылается на это же хранилище, поэтому при росте его нельзя освобождать сразу
+    private boolean shared = false;
+
+    public abstract int get(int index);
+
+    public abstract void set(int index, int value);
+
+    public abstract int capacity();
+
+    public abstract ModelStorage getKind();
+
+    /**
+     * Копирует length элементов начиная с index в destination.
+     */
+    public abstract void get(int index, int[] destination, int offset, int length);
+
+    /**
+     * Записывает length элементов из source начиная с index.
+     */
+    public abstract void set(int index, int[] source, int offset, int length);
+
+    public void fill(int from, int to, int value) {
+        for (int i = from; i < to; ++i) {
+            set(i, value);
+        }
+    }
+
+    /**
+     * Сдвиг внутри хранилища, как System.arraycopy для одного массива.
+     */
+    abstract void move(int from, int to, int length);
+
+    /**
+     * Освобождает память вне кучи. Дальше обращаться к хранилищу нельзя.
+     */
+    abstract void release();
+
+    public static IntStorage allocate(ModelStorage kind, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
+        return kind == ModelStorage.HEAP ? new Heap(new int[capacity]) : Direct.allocate(capacity);
+    }
+
+    public static IntStorage wrap(int[] array) {
+        return new Heap(array);
+    }
+
+    /**
+     * Отображает length элементов файла с позиции position (little-endian) как хранилище вне кучи.
+     * Файл отображается только для чтения: при первой записи в сегмент тот копируется в собственную память,
+     * так что изменения модели в файл не попадают. Канал после этого можно закрыть.
+     */
+    public static IntStorage map(FileChannel channel, long position, int length) throws IOException {
+        return Direct.mapFile(channel, position, length);
+    }
+
+    /**
+     * Новое хранилище того же вида емкостью capacity с первыми length элементами этого.
+     * Старое освобождается сразу, если на него не смотрит ни один снимок.
+     */
+    IntStorage grow(int capacity, int length) {
+        IntStorage grown = allocate(getKind(), capacity);
+        copy(this, 0, grown, 0, length);
+        releaseUnlessShared();
+        return grown;
+    }
+
+    /**
+     * Освобождает хранилище, если на него не смотрит ни один снимок (иначе его освободит сборщик мусора).
+     */
+    void releaseUnlessShared() {
+        if (!shared) {
+            release();
+        }
+    }
+
+    void markShared() {
+        shared = true;
+    }
+
+    static void copy(IntStorage source, int sourceIndex, IntStorage target, int targetIndex, int length) {
+        if (source instanceof Heap heapSource) {
+            target.set(targetIndex, heapSource.array, sourceIndex, length);
+            return;
+        }
+        if (target instanceof Heap heapTarget) {
+            source.get(sourceIndex, heapTarget.array, targetIndex, length);
+            return;
+        }
+        // Между двумя хранилищами вне кучи - через небольшой промежуточный массив
+        final int[] block = new int[Math.min(length, 1 << 16)];
+        int done = 0;
+        while (done < length) {
+            final int count = Math.min(block.length, length - done);
+            source.get(sourceIndex + done, block, 0, count);
+            target.set(targetIndex + done, block, 0, count);
+            done += count;
+        }
+    }
+
+    private static final class Heap extends IntStorage {
+        private final int[] array;
+
+        Heap(int[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int get(int index) {
+            return array[index];
+        }
+
+        @Override
+        public void set(int index, int value) {
+            array[index] = value;
+        }
+
+        @Override
+        public int capacity() {
+            return array.length;
+        }
+
+        @Override
+        public ModelStorage getKind() {
+            return ModelStorage.HEAP;
+        }
+
+        @Override
+        public void get(int index, int[] destination, int offset, int length) {
+            System.arraycopy(array, index, destination, offset, length);
+        }
+
+        @Override
+        public void set(int index, int[] source, int offset, int length) {
+            System.arraycopy(source, offset, array, index, length);
+        }
+
+        @Override
+        public void fill(int from, int to, int value) {
+            Arrays.fill(array, from, to, value);
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            System.arraycopy(array, from, array, to, length);
+        }
+
+        @Override
+        IntStorage grow(int capacity, int length) {
+            return new Heap(Arrays.copyOf(array, capacity));
+        }
+
+        @Override
+        void release() {
+        }
+    }
+
+    private static final class Direct extends IntStorage {
+        // Чтение и запись элементов views с барьерами - только для замены сегмента при первой записи
+        private static final VarHandle VIEWS = MethodHandles.arrayElementVarHandle(IntBuffer[].class);
+
+        // buffers - для освобождения, views - для доступа; после release() оба null
+        private ByteBuffer[] buffers;
+        private IntBuffer[] views;
+        private final int capacity;
+        // Есть сегменты, отображенные из файла только для чтения
+        private boolean mapped = false;
+        // Отображения, замененные копиями при записи. Другие потоки могли успеть взять из views старый вид
+        // и читать через него, поэтому отображение освобождается только вместе со всем хранилищем в release()
+        private List<ByteBuffer> replaced = null;
+
+        private Direct(ByteBuffer[] buffers, int capacity) {
+            this.buffers = buffers;
+            this.capacity = capacity;
+            this.views = new IntBuffer[buffers.length];
+            for (int i = 0; i < buffers.length; ++i) {
+                views[i] = buffers[i].asIntBuffer();
+            }
+        }
+
+        static Direct allocate(int capacity) {
+            ByteBuffer[] buffers = new ByteBuffer[segmentCount(capacity)];
+            for (int i = 0; i < buffers.length; ++i) {
+                buffers[i] = ByteBuffer.allocateDirect(4 * segmentLength(capacity, i)).order(ByteOrder.nativeOrder());
+            }
+            return new Direct(buffers, capacity);
+        }
+
+        static Direct mapFile(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer[] buffers = new ByteBuffer[segmentCount(length)];
+            for (int i = 0; i < buffers.length; ++i) {
+                final long segmentPosition = position + 4L * i * SEGMENT_SIZE;
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentPosition, 4L * segmentLength(length, i))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            Direct storage = new Direct(buffers, length);
+            storage.mapped = true;
+            return storage;
+        }
+
+        @Override
+        public int get(int index) {
+            return views[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+        }
+
+        @Override
+        public void set(int index, int value) {
+            writable(index >>> SEGMENT_SHIFT).put(index & SEGMENT_MASK, value);
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public ModelStorage getKind() {
+            return ModelStorage.OFF_HEAP;
+        }
+
+        @Override
+        public void get(int index, int[] destination, int offset, int length) {
+            while (length > 0) {
+                final int inSegment = index & SEGMENT_MASK;
+                final int count = Math.min(length, SEGMENT_SIZE - inSegment);
+                views[index >>> SEGMENT_SHIFT].get(inSegment, destination, offset, count);
+                index += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void set(int index, int[] source, int offset, int length) {
+            while (length > 0) {
+                final int inSegment = index & SEGMENT_MASK;
+                final int count = Math.min(length, SEGMENT_SIZE - inSegment);
+                writable(index >>> SEGMENT_SHIFT).put(inSegment, source, offset, count);
+                index += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            if (length <= 0 || from == to) {
+                return;
+            }
+            if ((from >>> SEGMENT_SHIFT) == ((from + length - 1) >>> SEGMENT_SHIFT)
+                    && (to >>> SEGMENT_SHIFT) == ((to + length - 1) >>> SEGMENT_SHIFT)
+                    && (from >>> SEGMENT_SHIFT) == (to >>> SEGMENT_SHIFT)) {
+                // Внутри одного сегмента - одним копированием: put из того же буфера учитывает перекрытие
+                IntBuffer view = writable(from >>> SEGMENT_SHIFT);
+                view.put(to & SEGMENT_MASK, view, from & SEGMENT_MASK, length);
+                return;
+            }
+            // Через промежуточный массив, в порядке, при котором перекрытие не портит данные
+            final int[] block = new int[Math.min(length, 1 << 16)];
+            if (to < from) {
+                for (int done = 0; done < length; done += block.length) {
+                    final int count = Math.min(block.length, length - done);
+                    get(from + done, block, 0, count);
+                    set(to + done, block, 0, count);
+                }
+            } else {
+                for (int done = length; done > 0; done -= block.length) {
+                    final int count = Math.min(block.length, done);
+                    get(from + done - count, block, 0, count);
+                    set(to + done - count, block, 0, count);
+                }
+            }
+        }
+
+        @Override
+        synchronized void release() {
+            ByteBuffer[] released = buffers;
+            buffers = null;
+            views = null;
+            if (released != null) {
+                for (ByteBuffer buffer : released) {
+                    DirectBuffers.free(buffer);
+                }
+            }
+            if (replaced != null) {
+                for (ByteBuffer buffer : replaced) {
+                    DirectBuffers.free(buffer);
+                }
+                replaced = null;
+            }
+        }
+
+        // Сегмент-отображение перед первой записью заменяется своей копией вне кучи.
+        // В одно хранилище пишут сразу несколько потоков (ParallelRanges), поэтому замена идет под блокировкой,
+        // а новый вид публикуется с барьером: кто увидел записываемый вид, видит и скопированные в него данные
+        private IntBuffer writable(int segment) {
+            if (!mapped) {
+                return views[segment];
+            }
+            final IntBuffer view = (IntBuffer) VIEWS.getAcquire(views, segment);
+            if (!view.isReadOnly()) {
+                return view;
+            }
+            synchronized (this) {
+                final IntBuffer current = (IntBuffer) VIEWS.getAcquire(views, segment);
+                if (!current.isReadOnly()) {
+                    return current;
+                }
+                final ByteBuffer source = buffers[segment];
+                ByteBuffer copy = ByteBuffer.allocateDirect(source.capacity()).order(source.order());
+                copy.put(0, source, 0, source.capacity());
+                if (replaced == null) {
+                    replaced = new ArrayList<>();
+                }
+                replaced.add(source);
+                buffers[segment] = copy;
+                final IntBuffer copyView = copy.asIntBuffer();
+                VIEWS.setRelease(views, segment, copyView);
+                return copyView;
+            }
+        }
+
+        private static int segmentCount(int capacity) {
+            return Math.max(1, (int) (((long) capacity + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT));
+        }
+
+        private static int segmentLength(int capacity, int segment) {
+            return (int) Math.min(SEGMENT_SIZE, (long) capacity - ((long) segment << SEGMENT_SHIFT));
+        }
+    }
+}
@@ -0,0 +1,1294 @@
+package com.cgvsu.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Упрощение модели стягиванием ребер по квадрикам ошибки (Garland, Heckbert) - для уровней детализации.
+ * Ребро стягивается в одну из своих вершин (без новых положений), поэтому вершины, текстурные вершины и нормали
+ * упрощенной модели - подмножество исходных. Ребра выбираются из кучи по наименьшей ошибке.
+ * Края модели сохраняются: вершина края стягивается только вдоль края. Швы текстурных координат и нормалей
+ * тоже: вершина стягивается, только если каждому ее индексу текстуры (нормали) есть пара у оставшейся вершины
+ * в общих полигонах стягиваемого ребра. Стягивание, которое перевернуло бы полигон или склеило бы
+ * несмежные части модели, пропускается.
+ * Большая модель делится решеткой на участки, которые упрощаются параллельно; вершины на границах участков
+ * при этом не трогаются, их стягивает последний общий проход. Деление зависит только от модели,
+ * поэтому результат от пула не зависит.
+ * Результат - новая модель из треугольников (многоугольники разбиваются веером), исходная не меняется.
+ */
+public final class MeshSimplifier {
+    // Примерно столько треугольников на участок: куча участка тогда умещается в кэше.
+    // Модель меньше двух участков упрощается одним проходом
+    private static final int PATCH_TRIANGLES = 1 << 15;
+    // Ячеек на ось решетки, по которой модель делится на участки: 2^PARTITION_BITS
+    private static final int PARTITION_BITS = 6;
+    // Вес плоскостей, которые удерживают края на месте, относительно плоскостей полигонов
+    private static final float BORDER_WEIGHT = 10;
+    // Вес длины ребра в ошибке стягивания, см. Collapser.cost
+    private static final float EDGE_LENGTH_WEIGHT = 1e-4F;
+    // Косинус наибольшего допустимого поворота треугольника относительно исходного положения
+    private static final float MAX_ROTATION_COS = 0.2F;
+    // Квадрика на вершину: верхний треугольник A (6), b (3), c
+    private static final int QUADRIC_SIZE = 10;
+
+    // Виды вершин
+    private static final byte INTERIOR = 0;
+    private static final byte BORDER = 1;
+    // Не стягивается: неманифолдная вершина или стык нескольких краев
+    private static final byte LOCKED = 2;
+    private static final byte REMOVED = 3;
+
+    // Участок вершины, которая есть в треугольниках разных участков, и вершины без треугольников
+    private static final int SHARED = -1;
+    private static final int UNUSED = -2;
+
+    // Через сколько шагов стягивания (или вершин при построении кучи) проверяется отмена
+    private static final int CANCEL_CHECK_INTERVAL = 1 << 12;
+    // Параллельные проходы по всем вершинам или треугольникам идут такими порциями с проверкой отмены между ними
+    private static final int CANCEL_CHECK_RANGE = 1 << 18;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * Упрощение в общем пуле fork/join, см. simplify(Model, int, ForkJoinPool).
+     */
+    public static Model simplify(Model model, int targetFaceCount) {
+        return simplify(model, targetFaceCount, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Копия модели, упрощенная до targetFaceCount треугольников или до того, дальше которого стягивать нечего.
+     * pool == null - в текущем потоке.
+     */
+    public static Model simplify(Model model, int targetFaceCount, ForkJoinPool pool) {
+        return simplify(model, targetFaceCount, pool, null, () -> false);
+    }
+
+    /**
+     * То же, что simplify(Model, int, ForkJoinPool), и, если deviation != null, в deviation[0] - оценка
+     * отклонения результата от модели в единицах модели (см. DetailLevels).
+     * cancelled проверяется между этапами и через каждые CANCEL_CHECK_INTERVAL шагов стягивания в каждом
+     * участке; если он вернул true - бросается CancellationException, и модель больше не читается.
+     */
+    static Model simplify(Model model, int targetFaceCount, ForkJoinPool pool, float[] deviation,
+                          BooleanSupplier cancelled) {
+        if (targetFaceCount < 0) {
+            throw new IllegalArgumentException("Target face count cannot be negative: " + targetFaceCount);
+        }
+        final Decimation decimation = new Decimation(model, pool, cancelled);
+        decimation.run(targetFaceCount);
+        if (deviation != null) {
+            deviation[0] = decimation.getDeviation();
+        }
+        decimation.checkCancelled();
+        return decimation.toModel();
+    }
+
+    /**
+     * Цепочка уровней детализации в общем пуле, см. simplifyLevels(Model, ForkJoinPool, int...).
+     */
+    public static Model[] simplifyLevels(Model model, int... targetFaceCounts) {
+        return simplifyLevels(model, ForkJoinPool.commonPool(), targetFaceCounts);
+    }
+
+    /**
+     * Уровни детализации с числами треугольников targetFaceCounts по убыванию.
+     * Каждый следующий уровень упрощается из предыдущего, а не из исходной модели, - так цепочка строится
+     * почти за время первого уровня.
+     */
+    public static Model[] simplifyLevels(Model model, ForkJoinPool pool, int... targetFaceCounts) {
+        for (int i = 1; i < targetFaceCounts.length; ++i) {
+            if (targetFaceCounts[i] > targetFaceCounts[i - 1]) {
+                throw new IllegalArgumentException("Target face counts must be in descending order");
+            }
+        }
+        final Model[] levels = new Model[targetFaceCounts.length];
+        Model previous = model;
+        for (int i = 0; i < targetFaceCounts.length; ++i) {
+            levels[i] = simplify(previous, targetFaceCounts[i], pool);
+            previous = levels[i];
+        }
+        return levels;
+    }
+
+    /**
+     * Рабочая копия модели: треугольники, квадрики и списки треугольников вершин.
+     * Положения вершин не меняются, стягивание только переписывает углы треугольников.
+     */
+    private static final class Decimation {
+        private final Model source;
+        private final ForkJoinPool pool;
+        private final BooleanSupplier cancelled;
+        private final int vertexCount;
+        // Положения, сдвинутые и масштабированные в единичный куб: квадрики во float так не теряют точность
+        private final float[] positions;
+        // Масштаб единичного куба: наибольший размер модели по осям
+        private float extent;
+
+        private int triangleCount;
+        // Вершины углов; у удаленного треугольника первая вершина -1
+        private int[] triangles;
+        // Индексы текстурных вершин и нормалей углов, null - их нет (или нормали считаются заново)
+        private int[] textureIndices;
+        private int[] normalIndices;
+        // Единичные нормали треугольников до упрощения: поворот проверяется от них, а не от текущих,
+        // иначе мелкие повороты за много стягиваний складываются в складку
+        private float[] originalNormals;
+        private int liveTriangles;
+        // Наибольший средний квадрат отклонения стягиваний всех участков, в единичном кубе
+        private float maxDeviationSquared;
+
+        private final float[] quadrics;
+        private final byte[] kinds;
+        // Плоскости края уже добавлены в квадрику вершины
+        private final boolean[] borderPlanes;
+        private final int[] owners;
+
+        // Треугольники вершины: adjacency[start..start + count) или, если start < 0, переписанный при стягивании
+        // список в overflow участка, которому принадлежит вершина, с начала ~start
+        private int[] adjacency;
+        private final int[] adjacencyStarts;
+        private final int[] adjacencyCounts;
+
+        // Вершина, в которую лучше всего стянуть вершину, и место вершины в куче ее участка
+        private final int[] targets;
+        private final int[] heapPositions;
+
+        Decimation(Model model, ForkJoinPool pool, BooleanSupplier cancelled) {
+            this.source = model;
+            this.pool = pool;
+            this.cancelled = cancelled;
+            final Vector3fList vertices = model.getVertices();
+            final PolygonList polygons = model.getPolygons();
+            vertexCount = vertices.size();
+            positions = normalizedPositions(vertices);
+            triangulate(polygons, model.hasVertexNormals());
+            checkCancelled();
+            originalNormals = new float[3 * triangleCount];
+            forEachChecked(triangleCount, (from, to) -> {
+                for (int t = from; t < to; ++t) {
+                    if (triangles[3 * t] >= 0) {
+                        computeNormal(t, originalNormals, 3 * t);
+                    }
+                }
+            });
+
+            quadrics = new float[QUADRIC_SIZE * vertexCount];
+            kinds = new byte[vertexCount];
+            borderPlanes = new boolean[vertexCount];
+            owners = new int[vertexCount];
+            adjacencyStarts = new int[vertexCount];
+            adjacencyCounts = new int[vertexCount];
+            targets = new int[vertexCount];
+            heapPositions = new int[vertexCount];
+            Arrays.fill(heapPositions, -1);
+
+            buildAdjacency();
+            checkCancelled();
+            // Каждая вершина собирает плоскости своих треугольников сама - без общих сумм между потоками
+            forEachChecked(vertexCount, (from, to) -> {
+                for (int v = from; v < to; ++v) {
+                    final int start = adjacencyStarts[v];
+                    final int end = start + adjacencyCounts[v];
+                    for (int i = start; i < end; ++i) {
+                        addTriangleQuadric(v, adjacency[i]);
+                    }
+                }
+            });
+        }
+
+        void checkCancelled() {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+        }
+
+        // ParallelRanges.forEach порциями по CANCEL_CHECK_RANGE: и в одном потоке проход по большой модели
+        // не задерживает отмену. Границы порций кратны 64, как и у ParallelRanges
+        private void forEachChecked(int count, ParallelRanges.RangeBody body) {
+            for (int start = 0; start < count; start += CANCEL_CHECK_RANGE) {
+                checkCancelled();
+                final int offset = start;
+                ParallelRanges.forEach(pool, Math.min(CANCEL_CHECK_RANGE, count - start),
+                        (from, to) -> body.run(offset + from, offset + to));
+            }
+        }
+
+        private float[] normalizedPositions(Vector3fList vertices) {
+            final FloatStorage storage = vertices.getStorage();
+            final float[] result = new float[3 * vertexCount];
+            storage.get(0, result, 0, 3 * vertexCount);
+            final float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+            for (int axis = 0; axis < 3; ++axis) {
+                float max = Float.NEGATIVE_INFINITY;
+                for (int i = axis; i < result.length; i += 3) {
+                    if (result[i] < min[axis]) {
+                        min[axis] = result[i];
+                    }
+                    if (result[i] > max) {
+                        max = result[i];
+                    }
+                }
+                if (max - min[axis] > extent) {
+                    extent = max - min[axis];
+                }
+            }
+            final float scale = extent > 0 ? 1 / extent : 1;
+            forEachChecked(vertexCount, (from, to) -> {
+                for (int i = 3 * from; i < 3 * to; i += 3) {
+                    result[i] = (result[i] - min[0]) * scale;
+                    result[i + 1] = (result[i + 1] - min[1]) * scale;
+                    result[i + 2] = (result[i + 2] - min[2]) * scale;
+                }
+            });
+            return result;
+        }
+
+        // Многоугольники разбиваются веером; у многоугольника из c углов c - 2 треугольника,
+        // так что треугольники p-го начинаются с offsets[p] - 2p. Вырожденные треугольники сразу удаляются
+        private void triangulate(PolygonList polygons, boolean recalculateNormals) {
+            final IntStorage offsets = polygons.getOffsets();
+            final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+            final IntStorage textures = polygons.getTextureVertexIndexStorage();
+            final IntStorage normals = recalculateNormals ? null : polygons.getNormalIndexStorage();
+            final int polygonCount = polygons.size();
+            triangleCount = polygons.getCornerCount() - 2 * polygonCount;
+            triangles = new int[3 * triangleCount];
+            textureIndices = textures == null ? null : new int[3 * triangleCount];
+            normalIndices = normals == null ? null : new int[3 * triangleCount];
+
+            forEachChecked(polygonCount, (from, to) -> {
+                for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                    final int start = offsets.get(polygonInd);
+                    final int end = offsets.get(polygonInd + 1);
+                    int triangle = start - 2 * polygonInd;
+                    for (int corner = start + 1; corner + 1 < end; ++corner, ++triangle) {
+                        final int base = 3 * triangle;
+                        final int a = vertexIndices.get(start);
+                        final int b = vertexIndices.get(corner);
+                        final int c = vertexIndices.get(corner + 1);
+                        if (a == b || b == c || a == c || !isVertex(a) || !isVertex(b) || !isVertex(c)) {
+                            triangles[base] = triangles[base + 1] = triangles[base + 2] = -1;
+                            continue;
+                        }
+                        triangles[base] = a;
+                        triangles[base + 1] = b;
+                        triangles[base + 2] = c;
+                        if (textureIndices != null) {
+                            textureIndices[base] = textures.get(start);
+                            textureIndices[base + 1] = textures.get(corner);
+                            textureIndices[base + 2] = textures.get(corner + 1);
+                        }
+                        if (normalIndices != null) {
+                            normalIndices[base] = normals.get(start);
+                            normalIndices[base + 1] = normals.get(corner);
+                            normalIndices[base + 2] = normals.get(corner + 1);
+                        }
+                    }
+                }
+            });
+            liveTriangles = countLiveTriangles();
+        }
+
+        private boolean isVertex(int vertexIndex) {
+            return vertexIndex >= 0 && vertexIndex < vertexCount;
+        }
+
+        private int countLiveTriangles() {
+            int count = 0;
+            for (int t = 0; t < triangleCount; ++t) {
+                if (triangles[3 * t] >= 0) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        // Списки треугольников вершин по текущим треугольникам; удаленные в них не попадают
+        private void buildAdjacency() {
+            final int[] offsets = new int[triangleCount + 1];
+            for (int t = 0; t <= triangleCount; ++t) {
+                offsets[t] = 3 * t;
+            }
+            final VertexFaceAdjacency built = VertexFaceAdjacency.build(
+                    new PolygonList(offsets, triangles, null, null, triangleCount), vertexCount, pool);
+            final int[] builtOffsets = built.getOffsets();
+            adjacency = built.getFaces();
+            for (int v = 0; v < vertexCount; ++v) {
+                adjacencyStarts[v] = builtOffsets[v];
+                adjacencyCounts[v] = builtOffsets[v + 1] - builtOffsets[v];
+            }
+        }
+
+        // Удаленные треугольники выбрасываются, а списки вершин строятся заново - для общего прохода
+        private void compactTriangles() {
+            final int[] compacted = new int[3 * liveTriangles];
+            final int[] compactedTextures = textureIndices == null ? null : new int[3 * liveTriangles];
+            final int[] compactedNormals = normalIndices == null ? null : new int[3 * liveTriangles];
+            final float[] compactedOriginalNormals = new float[3 * liveTriangles];
+            int next = 0;
+            for (int t = 0; t < triangleCount; ++t) {
+                if (triangles[3 * t] < 0) {
+                    continue;
+                }
+                System.arraycopy(triangles, 3 * t, compacted, 3 * next, 3);
+                if (compactedTextures != null) {
+                    System.arraycopy(textureIndices, 3 * t, compactedTextures, 3 * next, 3);
+                }
+                if (compactedNormals != null) {
+                    System.arraycopy(normalIndices, 3 * t, compactedNormals, 3 * next, 3);
+                }
+                System.arraycopy(originalNormals, 3 * t, compactedOriginalNormals, 3 * next, 3);
+                ++next;
+            }
+            triangleCount = liveTriangles;
+            triangles = compacted;
+            textureIndices = compactedTextures;
+            normalIndices = compactedNormals;
+            originalNormals = compactedOriginalNormals;
+            buildAdjacency();
+        }
+
+        void run(int targetTriangles) {
+            if (liveTriangles <= targetTriangles) {
+                return;
+            }
+            if (liveTriangles >= 2 * PATCH_TRIANGLES) {
+                runPatches(targetTriangles);
+                checkCancelled();
+                compactTriangles();
+            }
+            checkCancelled();
+
+            // Общий проход: все вершины в одном участке, в том числе бывшие границы участков
+            Arrays.fill(owners, UNUSED);
+            Arrays.fill(heapPositions, -1);
+            int used = 0;
+            for (int v = 0; v < vertexCount; ++v) {
+                if (adjacencyCounts[v] > 0) {
+                    owners[v] = 0;
+                    ++used;
+                }
+            }
+            final int[] vertices = new int[used];
+            used = 0;
+            for (int v = 0; v < vertexCount; ++v) {
+                if (owners[v] == 0) {
+                    vertices[used++] = v;
+                }
+            }
+            final Collapser collapser = new Collapser(this, 0, vertices, 0, used);
+            liveTriangles -= collapser.run(liveTriangles - targetTriangles);
+            addDeviation(collapser);
+        }
+
+        private void addDeviation(Collapser collapser) {
+            if (collapser.maxDeviationSquared > maxDeviationSquared) {
+                maxDeviationSquared = collapser.maxDeviationSquared;
+            }
+        }
+
+        // Оценка отклонения упрощенной модели от исходной в единицах модели: наибольшее среди стягиваний
+        // среднеквадратичное расстояние от оставшейся вершины до плоскостей стянутых полигонов
+        float getDeviation() {
+            return (float) Math.sqrt(maxDeviationSquared) * (extent > 0 ? extent : 1);
+        }
+
+        // Треугольник относится к ячейке решетки своей первой вершины, а ячейки по порядку кривой Мортона
+        // набираются в участки примерно по PATCH_TRIANGLES треугольников: так участки равные и компактные,
+        // даже если модель - тонкая поверхность. Вершина, треугольники которой в разных участках,
+        // на этом этапе не стягивается. Каждый участок упрощается в той же доле, что и вся модель
+        private void runPatches(int targetTriangles) {
+            final int[] cellPatches = new int[1 << (3 * PARTITION_BITS)];
+            for (int t = 0; t < triangleCount; ++t) {
+                if (triangles[3 * t] >= 0) {
+                    ++cellPatches[cellOf(triangles[3 * t])];
+                }
+            }
+            int patchCount = 0;
+            int accumulated = 0;
+            for (int cell = 0; cell < cellPatches.length; ++cell) {
+                accumulated += cellPatches[cell];
+                cellPatches[cell] = patchCount;
+                if (accumulated >= PATCH_TRIANGLES) {
+                    ++patchCount;
+                    accumulated = 0;
+                }
+            }
+            if (accumulated > 0) {
+                ++patchCount;
+            }
+
+            final int[] patchTriangles = new int[patchCount];
+            Arrays.fill(owners, UNUSED);
+            for (int t = 0; t < triangleCount; ++t) {
+                if (triangles[3 * t] < 0) {
+                    continue;
+                }
+                final int patch = cellPatches[cellOf(triangles[3 * t])];
+                ++patchTriangles[patch];
+                for (int corner = 0; corner < 3; ++corner) {
+                    final int v = triangles[3 * t + corner];
+                    if (owners[v] == UNUSED) {
+                        owners[v] = patch;
+                    } else if (owners[v] != patch) {
+                        owners[v] = SHARED;
+                    }
+                }
+            }
+
+            // Вершины участков подряд: vertices[patchStarts[p]..patchStarts[p + 1])
+            final int[] patchStarts = new int[patchCount + 1];
+            for (int v = 0; v < vertexCount; ++v) {
+                if (owners[v] >= 0) {
+                    ++patchStarts[owners[v] + 1];
+                }
+            }
+            for (int p = 0; p < patchCount; ++p) {
+                patchStarts[p + 1] += patchStarts[p];
+            }
+            final int[] vertices = new int[patchStarts[patchCount]];
+            final int[] cursor = Arrays.copyOf(patchStarts, patchCount);
+            for (int v = 0; v < vertexCount; ++v) {
+                if (owners[v] >= 0) {
+                    vertices[cursor[owners[v]]++] = v;
+                }
+            }
+
+            final double ratio = (double) targetTriangles / liveTriangles;
+            final List<PatchTask> tasks = new ArrayList<>();
+            for (int p = 0; p < patchCount; ++p) {
+                if (patchStarts[p + 1] > patchStarts[p]) {
+                    final int removals = patchTriangles[p] - (int) Math.ceil(patchTriangles[p] * ratio);
+                    tasks.add(new PatchTask(
+                            new Collapser(this, p, vertices, patchStarts[p], patchStarts[p + 1]), removals));
+                }
+            }
+            if (pool == null) {
+                for (PatchTask task : tasks) {
+                    task.compute();
+                }
+            } else {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            }
+            for (PatchTask task : tasks) {
+                liveTriangles -= task.removed;
+                addDeviation(task.collapser);
+            }
+        }
+
+        // Код Мортона ячейки вершины: биты координат ячейки по трем осям вперемешку
+        private int cellOf(int v) {
+            final int cellsPerAxis = 1 << PARTITION_BITS;
+            int cell = 0;
+            for (int axis = 0; axis < 3; ++axis) {
+                int coordinate = (int) (positions[3 * v + axis] * cellsPerAxis);
+                if (coordinate >= cellsPerAxis) {
+                    coordinate = cellsPerAxis - 1;
+                }
+                for (int bit = 0; bit < PARTITION_BITS; ++bit) {
+                    cell |= ((coordinate >>> bit) & 1) << (3 * bit + axis);
+                }
+            }
+            return cell;
+        }
+
+        // Квадрика плоскости треугольника с весом его площади
+        private void addTriangleQuadric(int v, int t) {
+            final float[] normal = new float[3];
+            final float area = computeNormal(t, normal, 0);
+            if (area > 0) {
+                addPlane(v, normal[0], normal[1], normal[2], triangles[3 * t], area);
+            }
+        }
+
+        // Единичная нормаль треугольника t в normal[base..base + 3); возвращает площадь,
+        // у вырожденного - 0, и нормаль не трогает
+        private float computeNormal(int t, float[] normal, int base) {
+            final int a = 3 * triangles[3 * t];
+            final int b = 3 * triangles[3 * t + 1];
+            final int c = 3 * triangles[3 * t + 2];
+            final float abX = positions[b] - positions[a];
+            final float abY = positions[b + 1] - positions[a + 1];
+            final float abZ = positions[b + 2] - positions[a + 2];
+            final float acX = positions[c] - positions[a];
+            final float acY = positions[c + 1] - positions[a + 1];
+            final float acZ = positions[c + 2] - positions[a + 2];
+            final float nX = abY * acZ - abZ * acY;
+            final float nY = abZ * acX - abX * acZ;
+            final float nZ = abX * acY - abY * acX;
+            final float length = (float) Math.sqrt(nX * nX + nY * nY + nZ * nZ);
+            if (length == 0) {
+                return 0;
+            }
+            normal[base] = nX / length;
+            normal[base + 1] = nY / length;
+            normal[base + 2] = nZ / length;
+            return 0.5F * length;
+        }
+
+        // Плоскость через ребро (a, b) треугольника t перпендикулярно ему: удерживает край от сдвига внутрь
+        private void addBorderQuadric(int v, int a, int b, int t) {
+            final int c = triangles[3 * t] + triangles[3 * t + 1] + triangles[3 * t + 2] - a - b;
+            final float abX = positions[3 * b] - positions[3 * a];
+            final float abY = positions[3 * b + 1] - positions[3 * a + 1];
+            final float abZ = positions[3 * b + 2] - positions[3 * a + 2];
+            final float acX = positions[3 * c] - positions[3 * a];
+            final float acY = positions[3 * c + 1] - positions[3 * a + 1];
+            final float acZ = positions[3 * c + 2] - positions[3 * a + 2];
+            final float nX = abY * acZ - abZ * acY;
+            final float nY = abZ * acX - abX * acZ;
+            final float nZ = abX * acY - abY * acX;
+            final float mX = abY * nZ - abZ * nY;
+            final float mY = abZ * nX - abX * nZ;
+            final float mZ = abX * nY - abY * nX;
+            final float length = (float) Math.sqrt(mX * mX + mY * mY + mZ * mZ);
+            if (length == 0) {
+                return;
+            }
+            addPlane(v, mX / length, mY / length, mZ / length, a,
+                    BORDER_WEIGHT * (abX * abX + abY * abY + abZ * abZ));
+        }
+
+        private void addPlane(int v, float nX, float nY, float nZ, int pointOnPlane, float weight) {
+            final float d = -(nX * positions[3 * pointOnPlane] + nY * positions[3 * pointOnPlane + 1]
+                    + nZ * positions[3 * pointOnPlane + 2]);
+            final int q = QUADRIC_SIZE * v;
+            quadrics[q] += weight * nX * nX;
+            quadrics[q + 1] += weight * nX * nY;
+            quadrics[q + 2] += weight * nX * nZ;
+            quadrics[q + 3] += weight * nY * nY;
+            quadrics[q + 4] += weight * nY * nZ;
+            quadrics[q + 5] += weight * nZ * nZ;
+            quadrics[q + 6] += weight * d * nX;
+            quadrics[q + 7] += weight * d * nY;
+            quadrics[q + 8] += weight * d * nZ;
+            quadrics[q + 9] += weight * d * d;
+        }
+
+        // Ошибка квадрики вершины v в точке вершины p
+        private float error(int v, int p) {
+            final int q = QUADRIC_SIZE * v;
+            final float x = positions[3 * p];
+            final float y = positions[3 * p + 1];
+            final float z = positions[3 * p + 2];
+            return x * (quadrics[q] * x + 2 * (quadrics[q + 1] * y + quadrics[q + 2] * z + quadrics[q + 6]))
+                    + y * (quadrics[q + 3] * y + 2 * (quadrics[q + 4] * z + quadrics[q + 7]))
+                    + z * (quadrics[q + 5] * z + 2 * quadrics[q + 8])
+                    + quadrics[q + 9];
+        }
+
+        Model toModel() {
+            final int[] vertexMap = new int[vertexCount];
+            final int[] textureMap = textureIndices == null ? null : new int[source.getTextureVertices().size()];
+            final int[] normalMap = normalIndices == null ? null : new int[source.getNormals().size()];
+            for (int t = 0; t < triangleCount; ++t) {
+                if (triangles[3 * t] < 0) {
+                    continue;
+                }
+                for (int corner = 3 * t; corner < 3 * t + 3; ++corner) {
+                    vertexMap[triangles[corner]] = 1;
+                    markUsed(textureMap, textureIndices, corner);
+                    markUsed(normalMap, normalIndices, corner);
+                }
+            }
+            final float[] vertices = compactVectors(source.getVertices(), vertexMap);
+            final float[] textureVertices = textureMap == null ? null
+                    : compactVectors(source.getTextureVertices(), textureMap);
+            final float[] normals = normalMap == null ? null : compactVectors(source.getNormals(), normalMap);
+
+            final int[] offsets = new int[liveTriangles + 1];
+            final int[] vertexIndices = new int[3 * liveTriangles];
+            final int[] textures = textureMap == null ? null : new int[3 * liveTriangles];
+            final int[] normalIndexArray = normalMap == null ? null : new int[3 * liveTriangles];
+            int next = 0;
+            for (int t = 0; t < triangleCount; ++t) {
+                if (triangles[3 * t] < 0) {
+                    continue;
+                }
+                for (int corner = 0; corner < 3; ++corner) {
+                    vertexIndices[3 * next + corner] = vertexMap[triangles[3 * t + corner]];
+                    if (textures != null) {
+                        textures[3 * next + corner] = remap(textureMap, textureIndices[3 * t + corner]);
+                    }
+                    if (normalIndexArray != null) {
+                        normalIndexArray[3 * next + corner] = remap(normalMap, normalIndices[3 * t + corner]);
+                    }
+                }
+                ++next;
+                offsets[next] = 3 * next;
+            }
+
+            final Model result = new Model();
+            result.setVertices(new Vector3fList(vertices, vertices.length / 3));
+            if (textureVertices != null) {
+                result.setTextureVertices(new Vector2fList(textureVertices, textureVertices.length / 2));
+            }
+            if (normals != null) {
+                result.setNormals(new Vector3fList(normals, normals.length / 3));
+            }
+            result.setPolygons(new PolygonList(offsets, vertexIndices, textures, normalIndexArray, liveTriangles));
+            if (source.hasVertexNormals()) {
+                NormalCalculator.recalculateNormals(result, pool);
+            }
+            return result;
+        }
+
+        private static void markUsed(int[] map, int[] indices, int corner) {
+            if (map != null && indices[corner] >= 0 && indices[corner] < map.length) {
+                map[indices[corner]] = 1;
+            }
+        }
+
+        private static int remap(int[] map, int index) {
+            return index >= 0 && index < map.length ? map[index] : PolygonList.NO_INDEX;
+        }
+
+        // Оставляет отмеченные в map векторы по порядку, а в map записывает их новые номера
+        private static float[] compactVectors(PackedVectorList<?> list, int[] map) {
+            final FloatStorage storage = list.getStorage();
+            final int stride = list.getStride();
+            int count = 0;
+            for (int i = 0; i < map.length; ++i) {
+                if (map[i] != 0) {
+                    ++count;
+                }
+            }
+            final float[] result = new float[stride * count];
+            int next = 0;
+            for (int i = 0; i < map.length; ++i) {
+                if (map[i] != 0) {
+                    storage.get(stride * i, result, stride * next, stride);
+                    map[i] = next++;
+                } else {
+                    map[i] = PolygonList.NO_INDEX;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class PatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Collapser collapser;
+        private final int removals;
+        private int removed;
+
+        PatchTask(Collapser collapser, int removals) {
+            this.collapser = collapser;
+            this.removals = removals;
+        }
+
+        @Override
+        protected void compute() {
+            removed = collapser.run(removals);
+        }
+    }
+
+    /**
+     * Стягивание ребер в одном участке. Меняет только свои вершины и их треугольники, поэтому участки
+     * не мешают друг другу. Куча - по вершинам: у каждой своей вершины ошибка лучшего стягивания
+     * в соседнюю. Дорогие проверки (переворот полигонов, склейка) делаются, только когда вершина
+     * доходит до вершины кучи.
+     */
+    private static final class Collapser {
+        private final Decimation mesh;
+        private final int patch;
+        private final int[] vertices;
+        private final int from;
+        private final int to;
+
+        // Куча вершин по ошибке лучшего стягивания; ошибки лежат рядом с вершинами, а не в общем массиве,
+        // чтобы просеивание не прыгало по памяти
+        private final int[] heap;
+        private final float[] heapCosts;
+        private int heapSize;
+        // Списки треугольников стянутых вершин
+        private int[] overflow = new int[1024];
+        private int overflowSize;
+
+        // Треугольники вершины v и вершины u стягиваемого ребра
+        private int[] trianglesV = new int[32];
+        private int[] trianglesU = new int[32];
+        private int countV;
+        private int countU;
+        // Сколько треугольников собрал последний gather
+        private int gathered;
+        // Соседи вершины, сколько треугольников у ребра с каждым и один из этих треугольников
+        private int[] neighbours = new int[32];
+        private int[] edgeTriangles = new int[32];
+        private int[] edgeTriangle = new int[32];
+        private int neighbourCount;
+        private int[] otherNeighbours = new int[32];
+        // Кандидаты для полной проверки
+        private int[] candidates = new int[32];
+        private float[] candidateCosts = new float[32];
+        // Пары индексов текстуры (нормали) v -> u из общих треугольников ребра, см. isValid
+        private final int[] textureFrom = new int[2];
+        private final int[] textureTo = new int[2];
+        private final int[] normalFrom = new int[2];
+        private final int[] normalTo = new int[2];
+        private int textureMapSize;
+        private int normalMapSize;
+        // Ошибка, найденная последним findCandidate
+        private float candidateCost;
+        // Шагов до следующей проверки отмены
+        private int untilCancelCheck = CANCEL_CHECK_INTERVAL;
+        // Наибольший средний квадрат отклонения среди сделанных стягиваний, в единичном кубе
+        private float maxDeviationSquared;
+
+        Collapser(Decimation mesh, int patch, int[] vertices, int from, int to) {
+            this.mesh = mesh;
+            this.patch = patch;
+            this.vertices = vertices;
+            this.from = from;
+            this.to = to;
+            this.heap = new int[to - from];
+            this.heapCosts = new float[to - from];
+        }
+
+        // Стягивает, пока не удалит removals треугольников (стягивание удаляет один или два) или пока есть что;
+        // возвращает, сколько удалено
+        int run(int removals) {
+            for (int i = from; i < to; ++i) {
+                pollCancelled();
+                classify(vertices[i]);
+            }
+            // Куча строится сразу целиком снизу вверх - быстрее, чем вставлять вершины по одной
+            for (int i = from; i < to; ++i) {
+                pollCancelled();
+                final int v = vertices[i];
+                if (findCandidate(v)) {
+                    heap[heapSize] = v;
+                    heapCosts[heapSize] = candidateCost;
+                    mesh.heapPositions[v] = heapSize++;
+                }
+            }
+            for (int position = (heapSize >>> 1) - 1; position >= 0; --position) {
+                siftDown(position);
+            }
+            int removed = 0;
+            while (removed < removals && heapSize > 0) {
+                pollCancelled();
+                final int v = heap[0];
+                final int u = mesh.targets[v];
+                if (mesh.kinds[u] == REMOVED || !isValid(v, u)) {
+                    evaluateValid(v);
+                    continue;
+                }
+                removed += collapse(v, u);
+            }
+            return removed;
+        }
+
+        private void pollCancelled() {
+            if (--untilCancelCheck == 0) {
+                untilCancelCheck = CANCEL_CHECK_INTERVAL;
+                mesh.checkCancelled();
+            }
+        }
+
+        private void classify(int v) {
+            collectNeighbours(v);
+            int borderEdges = 0;
+            boolean manifold = true;
+            for (int i = 0; i < neighbourCount; ++i) {
+                if (edgeTriangles[i] == 1) {
+                    ++borderEdges;
+                } else if (edgeTriangles[i] > 2) {
+                    manifold = false;
+                }
+            }
+            final byte kind;
+            if (!manifold || (borderEdges != 0 && borderEdges != 2)) {
+                kind = LOCKED;
+            } else {
+                kind = borderEdges == 0 ? INTERIOR : BORDER;
+            }
+            mesh.kinds[v] = kind;
+            if (kind == BORDER && !mesh.borderPlanes[v]) {
+                mesh.borderPlanes[v] = true;
+                for (int i = 0; i < neighbourCount; ++i) {
+                    if (edgeTriangles[i] == 1) {
+                        mesh.addBorderQuadric(v, v, neighbours[i], edgeTriangle[i]);
+                    }
+                }
+            }
+        }
+
+        // Можно ли стянуть v в соседа u, судя по видам вершин и числу треугольников у ребра
+        private boolean isAllowed(int v, int u, int edgeTriangleCount) {
+            if (mesh.owners[u] != patch) {
+                return false;
+            }
+            final byte kindU = mesh.kinds[u];
+            if (kindU == LOCKED || kindU == REMOVED) {
+                return false;
+            }
+            if (mesh.kinds[v] == BORDER) {
+                // Вершина края уходит только вдоль края
+                return edgeTriangleCount == 1 && kindU == BORDER;
+            }
+            return edgeTriangleCount == 2;
+        }
+
+        // Ошибка квадрик плюс малая добавка за длину ребра: на плоских участках ошибка нулевая у всех ребер,
+        // и без добавки стягивания копились бы в одной вершине, вытягивая треугольники веером
+        private float cost(int v, int u) {
+            final float[] positions = mesh.positions;
+            final float dx = positions[3 * u] - positions[3 * v];
+            final float dy = positions[3 * u + 1] - positions[3 * v + 1];
+            final float dz = positions[3 * u + 2] - positions[3 * v + 2];
+            final float lengthSquared = dx * dx + dy * dy + dz * dz;
+            return mesh.error(v, u) + mesh.error(u, u) + EDGE_LENGTH_WEIGHT * lengthSquared * lengthSquared;
+        }
+
+        // Лучший по ошибке сосед без дорогих проверок
+        private void evaluate(int v) {
+            if (findCandidate(v)) {
+                heapUpdate(v, candidateCost);
+            } else {
+                heapRemove(v);
+            }
+        }
+
+        // Записывает в targets[v] лучшего по ошибке соседа, а ошибку - в candidateCost; false - стягивать некуда
+        private boolean findCandidate(int v) {
+            mesh.targets[v] = -1;
+            if (mesh.kinds[v] != INTERIOR && mesh.kinds[v] != BORDER) {
+                return false;
+            }
+            collectNeighbours(v);
+            float best = Float.POSITIVE_INFINITY;
+            int target = -1;
+            for (int i = 0; i < neighbourCount; ++i) {
+                final int u = neighbours[i];
+                if (isAllowed(v, u, edgeTriangles[i])) {
+                    final float cost = cost(v, u);
+                    if (cost < best) {
+                        best = cost;
+                        target = u;
+                    }
+                }
+            }
+            mesh.targets[v] = target;
+            candidateCost = best;
+            return target >= 0;
+        }
+
+        // Лучший сосед, стягивание в которого проходит все проверки
+        private void evaluateValid(int v) {
+            collectNeighbours(v);
+            if (candidates.length < neighbourCount) {
+                candidates = new int[neighbours.length];
+                candidateCosts = new float[neighbours.length];
+            }
+            int candidateCount = 0;
+            for (int i = 0; i < neighbourCount; ++i) {
+                final int u = neighbours[i];
+                if (isAllowed(v, u, edgeTriangles[i])) {
+                    candidates[candidateCount] = u;
+                    candidateCosts[candidateCount++] = cost(v, u);
+                }
+            }
+            while (candidateCount > 0) {
+                int best = 0;
+                for (int i = 1; i < candidateCount; ++i) {
+                    if (candidateCosts[i] < candidateCosts[best]) {
+                        best = i;
+                    }
+                }
+                final int u = candidates[best];
+                if (isValid(v, u)) {
+                    setCandidate(v, u, candidateCosts[best]);
+                    return;
+                }
+                candidates[best] = candidates[--candidateCount];
+                candidateCosts[best] = candidateCosts[candidateCount];
+            }
+            setCandidate(v, -1, Float.POSITIVE_INFINITY);
+        }
+
+        private void setCandidate(int v, int target, float cost) {
+            mesh.targets[v] = target;
+            if (target < 0) {
+                heapRemove(v);
+            } else {
+                heapUpdate(v, cost);
+            }
+        }
+
+        // Полные проверки стягивания v в u; заодно запоминает пары индексов текстуры и нормалей для collapse
+        private boolean isValid(int v, int u) {
+            trianglesV = gather(v, trianglesV);
+            countV = gathered;
+            final int[] triangles = mesh.triangles;
+            final int[] textures = mesh.textureIndices;
+            final int[] normals = mesh.normalIndices;
+            textureMapSize = 0;
+            normalMapSize = 0;
+            int shared = 0;
+            for (int i = 0; i < countV; ++i) {
+                final int base = 3 * trianglesV[i];
+                final int cornerU = cornerOf(triangles, base, u);
+                if (cornerU < 0) {
+                    continue;
+                }
+                if (++shared > 2) {
+                    return false;
+                }
+                final int cornerV = cornerOf(triangles, base, v);
+                if (textures != null) {
+                    textureMapSize = addPair(textureFrom, textureTo, textureMapSize,
+                            textures[base + cornerV], textures[base + cornerU]);
+                    if (textureMapSize < 0) {
+                        return false;
+                    }
+                }
+                if (normals != null) {
+                    normalMapSize = addPair(normalFrom, normalTo, normalMapSize,
+                            normals[base + cornerV], normals[base + cornerU]);
+                    if (normalMapSize < 0) {
+                        return false;
+                    }
+                }
+            }
+            if (shared != (mesh.kinds[v] == BORDER ? 1 : 2)) {
+                return false;
+            }
+
+            final float[] positions = mesh.positions;
+            for (int i = 0; i < countV; ++i) {
+                final int base = 3 * trianglesV[i];
+                if (cornerOf(triangles, base, u) >= 0) {
+                    continue;
+                }
+                final int cornerV = cornerOf(triangles, base, v);
+                // Иначе по одну сторону шва у вершины не осталось бы индекса текстуры (нормали)
+                if (textures != null && find(textureFrom, textureMapSize, textures[base + cornerV]) < 0) {
+                    return false;
+                }
+                if (normals != null && find(normalFrom, normalMapSize, normals[base + cornerV]) < 0) {
+                    return false;
+                }
+                final int a = 3 * triangles[base + (cornerV + 1) % 3];
+                final int b = 3 * triangles[base + (cornerV + 2) % 3];
+                if (!keepsOrientation(positions, 3 * v, 3 * u, a, b, mesh.originalNormals, base)) {
+                    return false;
+                }
+            }
+            return commonNeighbours(v, u) == shared;
+        }
+
+        // Треугольник (p, a, b) при переносе p в q не переворачивается и остается в пределах
+        // arccos(MAX_ROTATION_COS) от исходной нормали original[base..base + 3)
+        private static boolean keepsOrientation(
+                float[] positions, int p, int q, int a, int b, float[] original, int base) {
+            final float aX = positions[a];
+            final float aY = positions[a + 1];
+            final float aZ = positions[a + 2];
+            final float abX = positions[b] - aX;
+            final float abY = positions[b + 1] - aY;
+            final float abZ = positions[b + 2] - aZ;
+            final float apX = positions[p] - aX;
+            final float apY = positions[p + 1] - aY;
+            final float apZ = positions[p + 2] - aZ;
+            final float aqX = positions[q] - aX;
+            final float aqY = positions[q + 1] - aY;
+            final float aqZ = positions[q + 2] - aZ;
+            final float n0X = abY * apZ - abZ * apY;
+            final float n0Y = abZ * apX - abX * apZ;
+            final float n0Z = abX * apY - abY * apX;
+            final float n1X = abY * aqZ - abZ * aqY;
+            final float n1Y = abZ * aqX - abX * aqZ;
+            final float n1Z = abX * aqY - abY * aqX;
+            if (n0X * n1X + n0Y * n1Y + n0Z * n1Z <= 0) {
+                return false;
+            }
+            final float dot = n1X * original[base] + n1Y * original[base + 1] + n1Z * original[base + 2];
+            return dot > 0 && dot * dot >= MAX_ROTATION_COS * MAX_ROTATION_COS * (n1X * n1X + n1Y * n1Y + n1Z * n1Z);
+        }
+
+        // Общие соседи v и u. У ребра внутри модели их ровно два, у ребра края - один; если больше,
+        // стягивание склеило бы разные части модели
+        private int commonNeighbours(int v, int u) {
+            // Соседи v - по уже собранным trianglesV; повторы в списке подсчету не мешают
+            final int[] triangles = mesh.triangles;
+            if (otherNeighbours.length < 2 * countV) {
+                otherNeighbours = new int[4 * countV];
+            }
+            int neighboursOfV = 0;
+            for (int i = 0; i < countV; ++i) {
+                final int t = trianglesV[i];
+                for (int corner = 3 * t; corner < 3 * t + 3; ++corner) {
+                    if (triangles[corner] != v) {
+                        otherNeighbours[neighboursOfV++] = triangles[corner];
+                    }
+                }
+            }
+            collectNeighbours(u);
+            int common = 0;
+            for (int i = 0; i < neighbourCount; ++i) {
+                final int w = neighbours[i];
+                if (w == v) {
+                    continue;
+                }
+                for (int j = 0; j < neighboursOfV; ++j) {
+                    if (otherNeighbours[j] == w) {
+                        ++common;
+                        break;
+                    }
+                }
+            }
+            return common;
+        }
+
+        // Стягивает v в u, проверенное isValid(v, u) только что; возвращает число удаленных треугольников
+        private int collapse(int v, int u) {
+            final int[] triangles = mesh.triangles;
+            final int[] textures = mesh.textureIndices;
+            final int[] normals = mesh.normalIndices;
+            int removed = 0;
+            for (int i = 0; i < countV; ++i) {
+                final int base = 3 * trianglesV[i];
+                if (cornerOf(triangles, base, u) >= 0) {
+                    triangles[base] = -1;
+                    ++removed;
+                    continue;
+                }
+                final int corner = base + cornerOf(triangles, base, v);
+                triangles[corner] = u;
+                if (textures != null) {
+                    textures[corner] = textureTo[find(textureFrom, textureMapSize, textures[corner])];
+                }
+                if (normals != null) {
+                    normals[corner] = normalTo[find(normalFrom, normalMapSize, normals[corner])];
+                }
+            }
+
+            // Новый список u - живые треугольники u и v; общие только что удалены, так что повторов нет
+            trianglesU = gather(u, trianglesU);
+            countU = gathered;
+            final int required = overflowSize + countU + countV;
+            if (required > overflow.length) {
+                overflow = Arrays.copyOf(overflow, Math.max(required, 2 * overflow.length));
+            }
+            final int start = overflowSize;
+            System.arraycopy(trianglesU, 0, overflow, overflowSize, countU);
+            overflowSize += countU;
+            for (int i = 0; i < countV; ++i) {
+                if (triangles[3 * trianglesV[i]] >= 0) {
+                    overflow[overflowSize++] = trianglesV[i];
+                }
+            }
+            mesh.adjacencyStarts[u] = ~start;
+            mesh.adjacencyCounts[u] = overflowSize - start;
+
+            final float[] quadrics = mesh.quadrics;
+            // Ошибка квадрик - сумма взвешенных квадратов расстояний до плоскостей, а след A - сумма весов,
+            // так что их отношение - средний квадрат отклонения u от плоскостей v и u
+            final float weight = quadrics[QUADRIC_SIZE * v] + quadrics[QUADRIC_SIZE * v + 3]
+                    + quadrics[QUADRIC_SIZE * v + 5] + quadrics[QUADRIC_SIZE * u] + quadrics[QUADRIC_SIZE * u + 3]
+                    + quadrics[QUADRIC_SIZE * u + 5];
+            if (weight > 0) {
+                final float deviationSquared = (mesh.error(v, u) + mesh.error(u, u)) / weight;
+                if (deviationSquared > maxDeviationSquared) {
+                    maxDeviationSquared = deviationSquared;
+                }
+            }
+            for (int k = 0; k < QUADRIC_SIZE; ++k) {
+                quadrics[QUADRIC_SIZE * u + k] += quadrics[QUADRIC_SIZE * v + k];
+            }
+            mesh.kinds[v] = REMOVED;
+            mesh.adjacencyCounts[v] = 0;
+            heapRemove(v);
+
+            // Ошибка стягивания зависит только от квадрик его концов, а поменялась только квадрика u.
+            // Поэтому пересчитываются u и соседи, которые собирались стянуться в v или u (или было некуда);
+            // у остальных оценка верна, разве что у них появился новый сосед u, а с ним, может, и лучший вариант
+            evaluate(u);
+            collectNeighbours(u);
+            final int count = neighbourCount;
+            if (otherNeighbours.length < count) {
+                otherNeighbours = new int[neighbours.length];
+            }
+            System.arraycopy(neighbours, 0, otherNeighbours, 0, count);
+            final int[] affected = otherNeighbours;
+            for (int i = 0; i < count; ++i) {
+                final int w = affected[i];
+                final int target = mesh.targets[w];
+                if (mesh.owners[w] == patch && (target == v || target == u || target < 0)) {
+                    evaluate(w);
+                }
+            }
+            return removed;
+        }
+
+        // Живые треугольники вершины в buffer (при нехватке места - в новый), их число в gathered
+        private int[] gather(int v, int[] buffer) {
+            final int start = mesh.adjacencyStarts[v];
+            final int count = mesh.adjacencyCounts[v];
+            final int[] source = start >= 0 ? mesh.adjacency : overflow;
+            final int offset = start >= 0 ? start : ~start;
+            if (buffer.length < count) {
+                buffer = new int[Math.max(count, 2 * buffer.length)];
+            }
+            final int[] triangles = mesh.triangles;
+            int live = 0;
+            for (int i = offset; i < offset + count; ++i) {
+                final int t = source[i];
+                if (triangles[3 * t] >= 0) {
+                    buffer[live++] = t;
+                }
+            }
+            gathered = live;
+            return buffer;
+        }
+
+        private void collectNeighbours(int v) {
+            trianglesU = gather(v, trianglesU);
+            final int count = gathered;
+            if (neighbours.length < 2 * count) {
+                neighbours = new int[4 * count];
+                edgeTriangles = new int[4 * count];
+                edgeTriangle = new int[4 * count];
+            }
+            neighbourCount = 0;
+            final int[] triangles = mesh.triangles;
+            for (int i = 0; i < count; ++i) {
+                final int t = trianglesU[i];
+                for (int corner = 3 * t; corner < 3 * t + 3; ++corner) {
+                    if (triangles[corner] != v) {
+                        addNeighbour(triangles[corner], t);
+                    }
+                }
+            }
+        }
+
+        private void addNeighbour(int w, int t) {
+            for (int i = 0; i < neighbourCount; ++i) {
+                if (neighbours[i] == w) {
+                    ++edgeTriangles[i];
+                    return;
+                }
+            }
+            neighbours[neighbourCount] = w;
+            edgeTriangles[neighbourCount] = 1;
+            edgeTriangle[neighbourCount++] = t;
+        }
+
+        private static int cornerOf(int[] triangles, int base, int v) {
+            if (triangles[base] == v) {
+                return 0;
+            }
+            if (triangles[base + 1] == v) {
+                return 1;
+            }
+            return triangles[base + 2] == v ? 2 : -1;
+        }
+
+        // Добавляет пару from -> to; -1, если from уже в паре с другим индексом
+        private static int addPair(int[] fromIndices, int[] toIndices, int size, int from, int to) {
+            final int existing = find(fromIndices, size, from);
+            if (existing >= 0) {
+                return toIndices[existing] == to ? size : -1;
+            }
+            fromIndices[size] = from;
+            toIndices[size] = to;
+            return size + 1;
+        }
+
+        private static int find(int[] indices, int size, int index) {
+            for (int i = 0; i < size; ++i) {
+                if (indices[i] == index) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void heapUpdate(int v, float cost) {
+            int position = mesh.heapPositions[v];
+            if (position < 0) {
+                position = heapSize++;
+                heap[position] = v;
+            }
+            heapCosts[position] = cost;
+            siftUp(position);
+            siftDown(mesh.heapPositions[v]);
+        }
+
+        private void heapRemove(int v) {
+            final int[] positions = mesh.heapPositions;
+            final int position = positions[v];
+            if (position < 0) {
+                return;
+            }
+            positions[v] = -1;
+            final int last = heap[--heapSize];
+            if (position < heapSize) {
+                heap[position] = last;
+                heapCosts[position] = heapCosts[heapSize];
+                positions[last] = position;
+                siftUp(position);
+                siftDown(positions[last]);
+            }
+        }
+
+        private void siftUp(int position) {
+            final int v = heap[position];
+            final float cost = heapCosts[position];
+            while (position > 0) {
+                final int parent = (position - 1) >>> 1;
+                if (heapCosts[parent] <= cost) {
+                    break;
+                }
+                moveHeapEntry(parent, position);
+                position = parent;
+            }
+            heap[position] = v;
+            heapCosts[position] = cost;
+            mesh.heapPositions[v] = position;
+        }
+
+        private void siftDown(int position) {
+            final int v = heap[position];
+            final float cost = heapCosts[position];
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heapCosts[child + 1] < heapCosts[child]) {
+                    ++child;
+                }
+                if (heapCosts[child] >= cost) {
+                    break;
+                }
+                moveHeapEntry(child, position);
+                position = child;
+            }
+            heap[position] = v;
+            heapCosts[position] = cost;
+            mesh.heapPositions[v] = position;
+        }
+
+        private void moveHeapEntry(int from, int to) {
+            heap[to] = heap[from];
+            heapCosts[to] = heapCosts[from];
+            mesh.heapPositions[heap[to]] = to;
+        }
+    }
+}
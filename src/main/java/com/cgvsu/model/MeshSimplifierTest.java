@@ -0,0 +1,103 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector2f;
+import com.cgvsu.math.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+class MeshSimplifierTest {
+
+    // Квадрат [0, 1] x [0, 1] с небольшой волной по z, текстурные вершины в паре с вершинами
+    private static Model createGrid(int n) {
+        return TestModels.createGrid(n, 0, 1, 0.02F);
+    }
+
+    private static void assertValidTriangles(Model model) {
+        final PolygonList polygons = model.getPolygons();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final IntStorage textureIndices = polygons.getTextureVertexIndexStorage();
+        final int vertexCount = model.getVertices().size();
+        final int textureCount = model.getTextureVertices().size();
+        Assertions.assertEquals(3 * polygons.size(), polygons.getCornerCount());
+        for (int polygonInd = 0; polygonInd < polygons.size(); ++polygonInd) {
+            final int a = vertexIndices.get(3 * polygonInd);
+            final int b = vertexIndices.get(3 * polygonInd + 1);
+            final int c = vertexIndices.get(3 * polygonInd + 2);
+            Assertions.assertTrue(a != b && b != c && a != c);
+            for (int corner = 3 * polygonInd; corner < 3 * polygonInd + 3; ++corner) {
+                Assertions.assertTrue(vertexIndices.get(corner) >= 0 && vertexIndices.get(corner) < vertexCount);
+                Assertions.assertTrue(textureIndices.get(corner) >= 0 && textureIndices.get(corner) < textureCount);
+            }
+        }
+    }
+
+    @Test
+    public void testSimplify01() {
+        Model result = MeshSimplifier.simplify(createGrid(40), 500, null);
+        final int faces = result.getPolygons().size();
+        Assertions.assertTrue(faces <= 500 && faces >= 490, "faces: " + faces);
+        assertValidTriangles(result);
+    }
+
+    @Test
+    public void testSimplify02() {
+        // Край стягивается только вдоль края: углы квадрата на месте, и вершины края не уходят внутрь
+        Model result = MeshSimplifier.simplify(createGrid(40), 300, null);
+        float minX = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        int corners = 0;
+        for (Vector3f vertex : result.getVertices()) {
+            minX = Math.min(minX, vertex.getX());
+            maxX = Math.max(maxX, vertex.getX());
+            minY = Math.min(minY, vertex.getY());
+            maxY = Math.max(maxY, vertex.getY());
+            if ((vertex.getX() == 0 || vertex.getX() == 1) && (vertex.getY() == 0 || vertex.getY() == 1)) {
+                ++corners;
+            }
+        }
+        Assertions.assertEquals(0, minX);
+        Assertions.assertEquals(1, maxX);
+        Assertions.assertEquals(0, minY);
+        Assertions.assertEquals(1, maxY);
+        Assertions.assertEquals(4, corners);
+    }
+
+    @Test
+    public void testSimplify03() {
+        // Текстурные вершины остаются в паре со своими вершинами
+        Model result = MeshSimplifier.simplify(createGrid(40), 400, null);
+        final PolygonList polygons = result.getPolygons();
+        for (int corner = 0; corner < polygons.getCornerCount(); ++corner) {
+            Vector3f vertex = result.getVertices().get(polygons.getVertexIndexStorage().get(corner));
+            Vector2f texture = result.getTextureVertices().get(polygons.getTextureVertexIndexStorage().get(corner));
+            Assertions.assertEquals(vertex.getX(), texture.getX());
+            Assertions.assertEquals(vertex.getY(), texture.getY());
+        }
+    }
+
+    @Test
+    public void testSimplify04() {
+        // Сетка достаточно большая, чтобы упрощаться по участкам; деление от пула не зависит, результат тоже
+        Model model = createGrid(200);
+        Model sequential = MeshSimplifier.simplify(model, 8000, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Model pooled;
+        try {
+            pooled = MeshSimplifier.simplify(model, 8000, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertValidTriangles(sequential);
+        Assertions.assertTrue(TestModels.sameModel(sequential, pooled));
+    }
+
+    @Test
+    public void testSimplify05() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> MeshSimplifier.simplify(createGrid(2), -1, null));
+    }
+}
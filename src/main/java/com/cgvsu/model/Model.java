@@ -2,43 +2,223 @@ package com.cgvsu.model;
 import com.cgvsu.math.Vector2f;
 import com.cgvsu.math.Vector3f;
 
-import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-public class Model {
-    private ArrayList<Vector3f> vertices = new ArrayList<Vector3f>();
-    private ArrayList<Vector2f> textureVertices = new ArrayList<Vector2f>();
-    private ArrayList<Vector3f> normals = new ArrayList<Vector3f>();
-    private ArrayList<Polygon> polygons = new ArrayList<Polygon>();
+/**
+ * Модель не потокобезопасна: читать ее из нескольких потоков можно, пока никто не меняет.
+ */
+public class Model implements AutoCloseable {
+    // Вершины, текстурные вершины и нормали хранятся упакованными, см. PackedVectorList,
+    // полигоны - в общих массивах индексов, см. PolygonList. Модель может быть и неизменяемым снимком
+    // частично прочитанного файла (см. ObjReaderOptions.setSnapshotInterval)
+    private Vector3fList vertices;
+    private Vector2fList textureVertices;
+    private Vector3fList normals;
+    private PolygonList polygons;
+    // Нормали посчитаны по вершинам (NormalCalculator): по одной на вершину,
+    // и индексы нормалей в полигонах совпадают с индексами вершин. Тогда нормали можно обновлять по частям
+    private boolean vertexNormals = false;
+    // Таблицы смежности строятся по первому запросу и годятся, пока не поменялись полигоны и число вершин
+    private VertexFaceAdjacency vertexFaceAdjacency;
+    private VertexNeighbours vertexNeighbours;
+    private PolygonList adjacencyPolygons;
+    private int adjacencyVersion;
+    private int adjacencyVertexCount;
+    // Дерево полигонов хранится так же; удаление через VertexRemover и PolygonsRemover его не сбрасывает, а обновляет
+    private FaceBvh faceBvh;
+    private int faceBvhVersion;
 
-    public ArrayList<Vector3f> getVertices() {
+    public Model() {
+        this(ModelStorage.HEAP);
+    }
+
+    /**
+     * Пустая модель, списки которой хранят данные в куче или вне ее.
+     */
+    public Model(ModelStorage storage) {
+        vertices = new Vector3fList(storage, 0);
+        textureVertices = new Vector2fList(storage, 0);
+        normals = new Vector3fList(storage, 0);
+        polygons = new PolygonList(storage, 0);
+    }
+
+    public Vector3fList getVertices() {
         return vertices;
     }
 
-    public void setVertices(ArrayList<Vector3f> vertices) {
-        this.vertices = vertices;
+    /**
+     * Vector3fList берется как есть, любой другой список копируется.
+     */
+    public void setVertices(List<Vector3f> vertices) {
+        this.vertices = toVector3fList(vertices);
+        vertexNormals = false;
     }
 
-    public ArrayList<Vector2f> getTextureVertices() {
+    public Vector2fList getTextureVertices() {
         return textureVertices;
     }
 
-    public void setTextureVertices(ArrayList<Vector2f> textureVertices) {
-        this.textureVertices = textureVertices;
+    public void setTextureVertices(List<Vector2f> textureVertices) {
+        if (textureVertices instanceof Vector2fList packed) {
+            this.textureVertices = packed;
+            return;
+        }
+        Vector2fList packed = new Vector2fList(textureVertices.size());
+        packed.addAll(textureVertices);
+        this.textureVertices = packed;
     }
 
-    public ArrayList<Vector3f> getNormals() {
+    public Vector3fList getNormals() {
         return normals;
     }
 
-    public void setNormals(ArrayList<Vector3f> normals) {
-        this.normals = normals;
+    public void setNormals(List<Vector3f> normals) {
+        this.normals = toVector3fList(normals);
+        vertexNormals = false;
     }
 
-    public ArrayList<Polygon> getPolygons() {
+    public PolygonList getPolygons() {
         return polygons;
     }
 
-    public void setPolygons(ArrayList<Polygon> polygons) {
-        this.polygons = polygons;
+    /**
+     * PolygonList берется как есть, любой другой список копируется.
+     */
+    public void setPolygons(List<Polygon> polygons) {
+        vertexNormals = false;
+        if (polygons instanceof PolygonList packed) {
+            this.polygons = packed;
+            return;
+        }
+        PolygonList packed = new PolygonList(polygons.size());
+        packed.addAll(polygons);
+        this.polygons = packed;
+    }
+
+    /**
+     * true - нормали посчитаны по вершинам и с тех пор модель менялась только через VertexRemover и PolygonsRemover.
+     * Кто меняет списки модели напрямую, сам отвечает за то, чтобы нормали пересчитать.
+     */
+    public boolean hasVertexNormals() {
+        return vertexNormals;
+    }
+
+    void setVertexNormals(boolean vertexNormals) {
+        this.vertexNormals = vertexNormals;
+    }
+
+    /**
+     * Полигоны каждой вершины, см. VertexFaceAdjacency. Таблица строится в общем пуле потоков и хранится
+     * до изменения полигонов или числа вершин, так что повторные запросы ничего не стоят.
+     */
+    public VertexFaceAdjacency getVertexFaceAdjacency() {
+        return vertexFaceAdjacency(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Соседи каждой вершины по ребрам, см. VertexNeighbours. Хранится так же, как getVertexFaceAdjacency().
+     */
+    public VertexNeighbours getVertexNeighbours() {
+        final VertexFaceAdjacency adjacency = getVertexFaceAdjacency();
+        if (vertexNeighbours == null) {
+            vertexNeighbours = VertexNeighbours.build(polygons, adjacency, ForkJoinPool.commonPool());
+        }
+        return vertexNeighbours;
+    }
+
+    // То же, что getVertexFaceAdjacency(), но недостающая таблица строится в пуле pool (null - в текущем потоке)
+    VertexFaceAdjacency vertexFaceAdjacency(ForkJoinPool pool) {
+        VertexFaceAdjacency adjacency = cachedVertexFaceAdjacency();
+        if (adjacency == null) {
+            adjacency = VertexFaceAdjacency.build(polygons, vertices.size(), pool);
+            vertexFaceAdjacency = adjacency;
+            vertexNeighbours = null;
+            adjacencyPolygons = polygons;
+            adjacencyVersion = polygons.getVersion();
+            adjacencyVertexCount = vertices.size();
+        }
+        return adjacency;
+    }
+
+    // Таблица смежности, если она уже построена и не устарела, иначе null
+    VertexFaceAdjacency cachedVertexFaceAdjacency() {
+        if (vertexFaceAdjacency != null
+                && adjacencyPolygons == polygons
+                && adjacencyVersion == polygons.getVersion()
+                && adjacencyVertexCount == vertices.size()) {
+            return vertexFaceAdjacency;
+        }
+        vertexFaceAdjacency = null;
+        vertexNeighbours = null;
+        adjacencyPolygons = null;
+        return null;
+    }
+
+    /**
+     * Дерево ограничивающих объемов над полигонами, см. FaceBvh. Строится в общем пуле потоков при первом запросе
+     * и хранится, пока полигоны меняются только через VertexRemover и PolygonsRemover.
+     * После перемещения вершин нужно вызвать getFaceBvh().refit().
+     */
+    public FaceBvh getFaceBvh() {
+        FaceBvh bvh = cachedFaceBvh();
+        if (bvh == null) {
+            bvh = FaceBvh.build(this);
+            setFaceBvh(bvh);
+        }
+        return bvh;
+    }
+
+    // Дерево, если оно уже построено и соответствует текущим спискам, иначе null
+    FaceBvh cachedFaceBvh() {
+        if (faceBvh != null
+                && faceBvh.getPolygons() == polygons
+                && faceBvh.getVertices() == vertices
+                && faceBvhVersion == polygons.getVersion()) {
+            return faceBvh;
+        }
+        faceBvh = null;
+        return null;
+    }
+
+    // Запоминает дерево, обновленное вслед за правкой модели, как соответствующее текущим полигонам
+    void setFaceBvh(FaceBvh bvh) {
+        faceBvh = bvh;
+        faceBvhVersion = polygons.getVersion();
+    }
+
+    private static Vector3fList toVector3fList(List<Vector3f> vectors) {
+        if (vectors instanceof Vector3fList packed) {
+            return packed;
+        }
+        Vector3fList packed = new Vector3fList(vectors.size());
+        packed.addAll(vectors);
+        return packed;
+    }
+
+    /**
+     * Сразу отдает память вне кучи (и отображения файла кэша), не дожидаясь сборщика мусора.
+     * После этого модель пуста, а ее снимки (см. ObjReaderOptions.setSnapshotInterval) использовать нельзя.
+     * Для модели в куче ничего не делает, кроме очистки.
+     */
+    @Override
+    public void close() {
+        vertexFaceAdjacency = null;
+        vertexNeighbours = null;
+        adjacencyPolygons = null;
+        faceBvh = null;
+        releaseIfWritable(vertices);
+        releaseIfWritable(textureVertices);
+        releaseIfWritable(normals);
+        if (!polygons.isReadOnly()) {
+            polygons.release();
+        }
+    }
+
+    // Снимок не владеет памятью: ее освобождает модель, из которой он сделан
+    private static void releaseIfWritable(PackedVectorList<?> list) {
+        if (!list.isReadOnly()) {
+            list.release();
+        }
     }
-}
\ No newline at end of file
+}
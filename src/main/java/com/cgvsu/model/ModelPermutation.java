@@ -0,0 +1,88 @@
+package com.cgvsu.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Новые номера вершин, текстурных вершин и нормалей модели с переиндексацией углов полигонов.
+ * Общая часть проходов, которые переставляют данные модели ради локальности в памяти.
+ */
+final class ModelPermutation {
+    private ModelPermutation() {
+    }
+
+    /**
+     * Номера по порядку первого использования в углах: первый встреченный индекс получает 0 и т.д.,
+     * неиспользуемые идут следом в прежнем порядке. Индексы вне [0, count) пропускаются.
+     */
+    static int[] firstUseNumbers(IntStorage indices, int cornerCount, int count) {
+        final int[] newIndices = new int[count];
+        Arrays.fill(newIndices, -1);
+        int next = 0;
+        if (indices != null) {
+            for (int corner = 0; corner < cornerCount; ++corner) {
+                final int index = indices.get(corner);
+                if (index >= 0 && index < count && newIndices[index] < 0) {
+                    newIndices[index] = next++;
+                }
+            }
+        }
+        for (int i = 0; i < count; ++i) {
+            if (newIndices[i] < 0) {
+                newIndices[i] = next++;
+            }
+        }
+        return newIndices;
+    }
+
+    /**
+     * Вершины по порядку первого использования в полигонах, текстурные вершины и нормали - так же.
+     * Нормали по вершинам (Model.hasVertexNormals()) переставляются вместе с вершинами.
+     */
+    static void renumberByFirstUse(Model model, ForkJoinPool pool) {
+        final PolygonList polygons = model.getPolygons();
+        renumberVertices(model, firstUseNumbers(
+                polygons.getVertexIndexStorage(), polygons.getCornerCount(), model.getVertices().size()), pool);
+    }
+
+    /**
+     * Вершины получают номера vertexNumbers, текстурные вершины и нормали - по порядку первого использования.
+     * Нормали по вершинам (Model.hasVertexNormals()) переставляются вместе с вершинами.
+     */
+    static void renumberVertices(Model model, int[] vertexNumbers, ForkJoinPool pool) {
+        final PolygonList polygons = model.getPolygons();
+        final int cornerCount = polygons.getCornerCount();
+        final boolean vertexNormals = model.hasVertexNormals()
+                && model.getNormals().size() == model.getVertices().size();
+
+        renumber(model.getVertices(), polygons.getVertexIndexStorage(), cornerCount, vertexNumbers, pool);
+        if (vertexNormals) {
+            renumber(model.getNormals(), polygons.getNormalIndexStorage(), cornerCount, vertexNumbers, pool);
+        } else {
+            renumber(model.getNormals(), polygons.getNormalIndexStorage(), cornerCount, firstUseNumbers(
+                    polygons.getNormalIndexStorage(), cornerCount, model.getNormals().size()), pool);
+        }
+        renumber(model.getTextureVertices(), polygons.getTextureVertexIndexStorage(), cornerCount, firstUseNumbers(
+                polygons.getTextureVertexIndexStorage(), cornerCount, model.getTextureVertices().size()), pool);
+        polygons.markModified();
+    }
+
+    /**
+     * Векторы list получают номера newIndices, индексы углов в indices (null - их нет) меняются на новые.
+     */
+    static void renumber(PackedVectorList<?> list, IntStorage indices, int cornerCount, int[] newIndices,
+                         ForkJoinPool pool) {
+        list.renumber(newIndices, pool);
+        if (indices == null) {
+            return;
+        }
+        ParallelRanges.forEach(pool, cornerCount, (from, to) -> {
+            for (int corner = from; corner < to; ++corner) {
+                final int index = indices.get(corner);
+                if (index >= 0 && index < newIndices.length) {
+                    indices.set(corner, newIndices[index]);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package com.cgvsu.model;
+
+/**
+ * Где лежат данные модели.
+ * HEAP - в обычных массивах Java. OFF_HEAP - в прямых ByteBuffer вне кучи: такие модели не нагружают сборщик мусора,
+ * могут быть больше кучи и отображаться прямо из файла кэша, а память отдается сразу по Model.close().
+ */
+public enum ModelStorage {
+    HEAP,
+    OFF_HEAP
+}
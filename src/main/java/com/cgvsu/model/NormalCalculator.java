@@ -0,0 +1,166 @@
+package com.cgvsu.model;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Нормали вершин: нормаль вершины - нормированная сумма нормалей полигонов, в которые она входит.
+ * Полный пересчет идет в два параллельных прохода без общих сумм, которые потокам пришлось бы делить:
+ * сначала нормали полигонов по диапазонам полигонов, затем каждая вершина собирает нормали своих полигонов
+ * по таблице смежности (VertexFaceAdjacency) в порядке возрастания их номеров.
+ * Поэтому результат не зависит от числа потоков и бит в бит совпадает с последовательным и частичным пересчетом.
+ */
+public final class NormalCalculator {
+    private NormalCalculator() {
+    }
+
+    /**
+     * Полный пересчет в общем пуле fork/join.
+     */
+    public static void recalculateNormals(Model model) {
+        recalculateNormals(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Полный пересчет в пуле pool; null - в текущем потоке.
+     * После него у каждой вершины одна нормаль, а индексы нормалей в полигонах равны индексам вершин.
+     */
+    public static void recalculateNormals(Model model, ForkJoinPool pool) {
+        final Vector3fList vertices = model.getVertices();
+        final Vector3fList normals = model.getNormals();
+        final PolygonList polygons = model.getPolygons();
+        normals.clear();
+
+        if (vertices.isEmpty() || polygons.isEmpty()) {
+            // Без полигонов нет и углов, которым нужны индексы нормалей
+            model.setVertexNormals(polygons.isEmpty());
+            return;
+        }
+
+        final int vertexCount = vertices.size();
+        final int polygonCount = polygons.size();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+
+        // Нормали полигонов; у вырожденного - нули, прибавление которых сумму не меняет
+        final float[] faceNormals = new float[3 * polygonCount];
+        ParallelRanges.forEach(pool, polygonCount, (from, to) -> {
+            final float[] faceNormal = new float[3];
+            for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                if (computeFaceNormal(vertices, offsets, vertexIndices, polygonInd, faceNormal)) {
+                    faceNormals[3 * polygonInd] = faceNormal[0];
+                    faceNormals[3 * polygonInd + 1] = faceNormal[1];
+                    faceNormals[3 * polygonInd + 2] = faceNormal[2];
+                }
+            }
+        });
+
+        final VertexFaceAdjacency adjacency = model.vertexFaceAdjacency(pool);
+        final int[] faceOffsets = adjacency.getOffsets();
+        final int[] faces = adjacency.getFaces();
+
+        // Каждая вершина пишет только свою нормаль, поэтому диапазоны вершин друг другу не мешают
+        normals.growUninitialized(vertexCount);
+        final FloatStorage result = normals.getStorage();
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int v = from; v < to; ++v) {
+                float x = 0;
+                float y = 0;
+                float z = 0;
+                for (int i = faceOffsets[v]; i < faceOffsets[v + 1]; ++i) {
+                    final int face = 3 * faces[i];
+                    x += faceNormals[face];
+                    y += faceNormals[face + 1];
+                    z += faceNormals[face + 2];
+                }
+                storeNormalized(result, v, x, y, z);
+            }
+        });
+
+        polygons.copyVertexIndicesToNormals();
+        model.setVertexNormals(true);
+    }
+
+    /**
+     * Пересчитывает нормали только у вершин из affectedVertices (номера с нуля) - тех, у которых поменялся
+     * набор полигонов или положение соседей. Для каждой такой вершины заново суммируются нормали ее полигонов
+     * из таблицы смежности, поэтому счет зависит от размера правки, а не всей модели.
+     * Если нормали модели не посчитаны по вершинам (Model.hasVertexNormals()), делается полный пересчет.
+     */
+    public static void updateNormals(Model model, BitSet affectedVertices) {
+        final Vector3fList vertices = model.getVertices();
+        final Vector3fList normals = model.getNormals();
+        final int vertexCount = vertices.size();
+        if (!model.hasVertexNormals() || normals.size() != vertexCount) {
+            recalculateNormals(model);
+            return;
+        }
+        if (model.getPolygons().isEmpty()) {
+            normals.clear();
+            return;
+        }
+
+        final PolygonList polygons = model.getPolygons();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final VertexFaceAdjacency adjacency = model.getVertexFaceAdjacency();
+        final int[] faceOffsets = adjacency.getOffsets();
+        final int[] faces = adjacency.getFaces();
+        final FloatStorage result = normals.getStorage();
+        final float[] faceNormal = new float[3];
+
+        for (int v = affectedVertices.nextSetBit(0); v >= 0 && v < vertexCount; v = affectedVertices.nextSetBit(v + 1)) {
+            float x = 0;
+            float y = 0;
+            float z = 0;
+            for (int i = faceOffsets[v]; i < faceOffsets[v + 1]; ++i) {
+                if (computeFaceNormal(vertices, offsets, vertexIndices, faces[i], faceNormal)) {
+                    x += faceNormal[0];
+                    y += faceNormal[1];
+                    z += faceNormal[2];
+                }
+            }
+            storeNormalized(result, v, x, y, z);
+        }
+    }
+
+    // Нормаль полигона по первым трем вершинам через векторное произведение сторон; false - полигон вырожден
+    static boolean computeFaceNormal(
+            Vector3fList vertices, IntStorage offsets, IntStorage vertexIndices, int polygonInd, float[] result) {
+        final FloatStorage positions = vertices.getStorage();
+        final int start = offsets.get(polygonInd);
+        final int i0 = 3 * vertexIndices.get(start);
+        final int i1 = 3 * vertexIndices.get(start + 1);
+        final int i2 = 3 * vertexIndices.get(start + 2);
+
+        final float e1x = positions.get(i1) - positions.get(i0);
+        final float e1y = positions.get(i1 + 1) - positions.get(i0 + 1);
+        final float e1z = positions.get(i1 + 2) - positions.get(i0 + 2);
+        final float e2x = positions.get(i2) - positions.get(i0);
+        final float e2y = positions.get(i2 + 1) - positions.get(i0 + 1);
+        final float e2z = positions.get(i2 + 2) - positions.get(i0 + 2);
+        final float nx = e1y * e2z - e1z * e2y;
+        final float ny = e1z * e2x - e1x * e2z;
+        final float nz = e1x * e2y - e1y * e2x;
+        final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return false;
+        }
+        result[0] = nx / length;
+        result[1] = ny / length;
+        result[2] = nz / length;
+        return true;
+    }
+
+    private static void storeNormalized(FloatStorage normals, int vertexIndex, float x, float y, float z) {
+        final float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 0) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+        normals.set(3 * vertexIndex, x);
+        normals.set(3 * vertexIndex + 1, y);
+        normals.set(3 * vertexIndex + 2, z);
+    }
+}
@@ -0,0 +1,262 @@
+package com.cgvsu.model;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Список векторов, хранящий компоненты подряд в одном FloatStorage (x0, y0, z0, x1, ...), без объекта на каждый вектор.
+ * Хранилище может быть как в куче, так и вне ее (см. ModelStorage).
+ * get() каждый раз создает новый вектор-копию, поэтому менять элементы нужно через set(), а не через get().setX().
+ * В горячих циклах лучше читать компоненты напрямую или через getStorage(); примитивные методы
+ * подклассов (getX(i), set(i, x, y, z)) проверяют индекс только по границам хранилища.
+ */
+public abstract class PackedVectorList<T> extends AbstractList<T> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Сколько float занимает один вектор
+    protected final int stride;
+    protected FloatStorage storage;
+    protected int size;
+    // Снимок разделяет хранилище с исходным списком и менять его нельзя
+    private final boolean readOnly;
+
+    protected PackedVectorList(int stride, ModelStorage kind, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
+        this.stride = stride;
+        this.storage = FloatStorage.allocate(kind, Math.multiplyExact(Math.max(capacity, DEFAULT_CAPACITY), stride));
+        this.readOnly = false;
+    }
+
+    protected PackedVectorList(int stride, FloatStorage storage, int size, boolean readOnly) {
+        if (size < 0 || (long) size * stride > storage.capacity()) {
+            throw new IllegalArgumentException("Size " + size + " does not fit into " + storage.capacity() + " floats");
+        }
+        this.stride = stride;
+        this.storage = storage;
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    protected abstract T createVector(int index);
+
+    protected abstract void storeVector(int index, T vector);
+
+    /**
+     * Хранилище компонент. Валидны первые size() * stride элементов; после роста списка хранилище может смениться.
+     */
+    public FloatStorage getStorage() {
+        return storage;
+    }
+
+    public ModelStorage getKind() {
+        return storage.getKind();
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public T get(int index) {
+        Objects.checkIndex(index, size);
+        return createVector(index);
+    }
+
+    @Override
+    public T set(int index, T vector) {
+        checkWritable();
+        Objects.checkIndex(index, size);
+        Objects.requireNonNull(vector, "Vector cannot be null");
+        T previous = createVector(index);
+        storeVector(index, vector);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, T vector) {
+        checkWritable();
+        Objects.checkIndex(index, size + 1);
+        Objects.requireNonNull(vector, "Vector cannot be null");
+        ensureCapacity(size + 1);
+        storage.move(index * stride, (index + 1) * stride, (size - index) * stride);
+        ++size;
+        ++modCount;
+        storeVector(index, vector);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> vectors) {
+        if (!(vectors instanceof PackedVectorList<?> other) || other.stride != stride) {
+            return super.addAll(vectors);
+        }
+        checkWritable();
+        final int count = other.size;
+        ensureCapacity(size + count);
+        FloatStorage.copy(other.storage, 0, storage, size * stride, count * stride);
+        size += count;
+        ++modCount;
+        return count != 0;
+    }
+
+    @Override
+    public T remove(int index) {
+        checkWritable();
+        Objects.checkIndex(index, size);
+        T previous = createVector(index);
+        storage.move((index + 1) * stride, index * stride, (size - index - 1) * stride);
+        --size;
+        ++modCount;
+        return previous;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        checkWritable();
+        storage.move(toIndex * stride, fromIndex * stride, (size - toIndex) * stride);
+        size -= toIndex - fromIndex;
+        ++modCount;
+    }
+
+    /**
+     * Оставляет только векторы, не отмеченные в removed, сохраняя порядок. Биты за size() не учитываются.
+     * Сплошные куски оставшихся векторов сдвигаются одним копированием.
+     */
+    public void retain(BitSet removed) {
+        checkWritable();
+        int newSize = 0;
+        int runStart = removed.nextClearBit(0);
+        while (runStart < size) {
+            int runEnd = removed.nextSetBit(runStart);
+            if (runEnd < 0 || runEnd > size) {
+                runEnd = size;
+            }
+            storage.move(runStart * stride, newSize * stride, (runEnd - runStart) * stride);
+            newSize += runEnd - runStart;
+            runStart = removed.nextClearBit(runEnd);
+        }
+        size = newSize;
+        ++modCount;
+    }
+
+    /**
+     * Дает векторам новые номера: прежний i-й становится newIndices[i]-м. newIndices - перестановка номеров.
+     * Векторы копируются в новое хранилище того же вида параллельно; pool == null - в текущем потоке.
+     */
+    void renumber(int[] newIndices, ForkJoinPool pool) {
+        checkWritable();
+        if (newIndices.length != size) {
+            throw new IllegalArgumentException("Index count " + newIndices.length + " does not match size " + size);
+        }
+        final FloatStorage source = storage;
+        final FloatStorage result = FloatStorage.allocate(source.getKind(), Math.max(size * stride, stride));
+        ParallelRanges.forEach(pool, size, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                FloatStorage.copy(source, i * stride, result, newIndices[i] * stride, stride);
+            }
+        });
+        source.releaseUnlessShared();
+        storage = result;
+        ++modCount;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        size = 0;
+        ++modCount;
+    }
+
+    /**
+     * Увеличивает размер до newSize без записи: новые элементы вызывающий обязан заполнить сам,
+     * например параллельно по диапазонам через getStorage().
+     */
+    void growUninitialized(int newSize) {
+        checkWritable();
+        ensureCapacity(newSize);
+        size = Math.max(size, newSize);
+        ++modCount;
+    }
+
+    /**
+     * Обрезает список до newSize элементов (удаление хвоста без сдвигов).
+     */
+    public void truncate(int newSize) {
+        checkWritable();
+        Objects.checkIndex(newSize, size + 1);
+        size = newSize;
+        ++modCount;
+    }
+
+    public void ensureCapacity(int capacity) {
+        final long required = (long) capacity * stride;
+        final int current = storage.capacity();
+        if (required <= current) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Too many vectors: " + capacity);
+        }
+        // Как в ArrayList - рост в полтора раза
+        long grown = current + (current >> 1);
+        storage = storage.grow((int) Math.min(Math.max(grown, required), Integer.MAX_VALUE - 8), size * stride);
+    }
+
+    public void trimToSize() {
+        checkWritable();
+        if (storage.capacity() > size * stride) {
+            storage = storage.grow(size * stride, size * stride);
+        }
+    }
+
+    /**
+     * Неизменяемый снимок текущего содержимого без копирования.
+     * Дальнейшие добавления в конец на снимок не влияют: они пишут за его границу или в новое хранилище.
+     * Изменение уже существующих элементов (set, remove) снимок увидит, поэтому так делать нельзя, пока снимок жив.
+     */
+    public abstract PackedVectorList<T> snapshot();
+
+    protected FloatStorage sharedStorage() {
+        storage.markShared();
+        return storage;
+    }
+
+    /**
+     * Освобождает память вне кучи (см. Model.close()). Список становится пустым.
+     */
+    public void release() {
+        checkWritable();
+        storage.release();
+        storage = FloatStorage.allocate(ModelStorage.HEAP, 0);
+        size = 0;
+        ++modCount;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    protected void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Snapshot cannot be modified");
+        }
+    }
+
+    // Место под один новый вектор в конце; возвращает смещение его первой компоненты
+    protected int appendSlot() {
+        checkWritable();
+        ensureCapacity(size + 1);
+        ++modCount;
+        return stride * size++;
+    }
+}
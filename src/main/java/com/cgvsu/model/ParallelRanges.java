@@ -0,0 +1,65 @@
+package com.cgvsu.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельный обход [0, count) непересекающимися диапазонами в пуле fork/join.
+ * Диапазоны делятся пополам, пока не станут не больше RANGE_SIZE. Все границы, кроме count, кратны 64:
+ * диапазон целиком владеет своими словами long[], и биты в них можно писать без синхронизации.
+ * Открыт и для render_engine, где по моделям ходят так же.
+ */
+public final class ParallelRanges {
+    // Меньше этого числа элементов обходим в одном потоке: запуск задач дороже самого счета
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // Размер диапазона, который одна задача обходит целиком
+    private static final int RANGE_SIZE = 1 << 13;
+
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private ParallelRanges() {
+    }
+
+    public static boolean isParallel(ForkJoinPool pool, int count) {
+        return pool != null && pool.getParallelism() > 1 && count >= PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * Выполняет body над [0, count): в пуле, если он есть и работы достаточно, иначе в текущем потоке.
+     * invoke() дожидается всех диапазонов, так что их записи видны после возврата.
+     */
+    public static void forEach(ForkJoinPool pool, int count, RangeBody body) {
+        if (!isParallel(pool, count)) {
+            body.run(0, count);
+            return;
+        }
+        pool.invoke(new RangeTask(body, 0, count));
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeBody body;
+        private final int from;
+        private final int to;
+
+        RangeTask(RangeBody body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RANGE_SIZE) {
+                body.run(from, to);
+                return;
+            }
+            final int middle = ((from + to) >>> 1) & ~63;
+            invokeAll(new RangeTask(body, from, middle), new RangeTask(body, middle, to));
+        }
+    }
+}
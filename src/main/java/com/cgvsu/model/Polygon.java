@@ -1,53 +1,151 @@
 package com.cgvsu.model;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
 
+/**
+ * Полигон бывает двух видов. new Polygon() хранит свои индексы сам, как раньше.
+ * Полигон, полученный из модели (PolygonList.get), - легкое окно в общие массивы списка по номеру полигона:
+ * списки индексов читают и пишут прямо в них. После удаления или вставки полигонов перед ним
+ * окно указывает уже на другой полигон, поэтому держать такие окна между изменениями списка нельзя.
+ */
 public class Polygon {
 
-    private ArrayList<Integer> vertexIndices;
-    private ArrayList<Integer> textureVertexIndices;
-    private ArrayList<Integer> normalIndices;
+    private final PolygonList owner;
+    private final int index;
+
+    private List<Integer> vertexIndices;
+    private List<Integer> textureVertexIndices;
+    private List<Integer> normalIndices;
 
 
     public Polygon() {
+        owner = null;
+        index = -1;
         vertexIndices = new ArrayList<Integer>();
         textureVertexIndices = new ArrayList<Integer>();
         normalIndices = new ArrayList<Integer>();
     }
 
-    public void setVertexIndices(ArrayList<Integer> vertexIndices) {
+    Polygon(PolygonList owner, int index) {
+        this.owner = owner;
+        this.index = index;
+    }
+
+    /**
+     * Отдельная копия полигона, не связанная ни с каким списком.
+     */
+    public static Polygon copyOf(Polygon polygon) {
+        Polygon copy = new Polygon();
+        copy.setVertexIndices(new ArrayList<>(polygon.getVertexIndices()));
+        copy.setTextureVertexIndices(copyOrNull(polygon.getTextureVertexIndices()));
+        copy.setNormalIndices(copyOrNull(polygon.getNormalIndices()));
+        return copy;
+    }
+
+    public void setVertexIndices(List<Integer> vertexIndices) {
         if (vertexIndices == null) {
             throw new IllegalArgumentException("Vertex indices cannot be null");
         }
         if (vertexIndices.size() < 3) {
             throw new IllegalArgumentException("Polygon must have at least 3 vertices, got: " + vertexIndices.size());
         }
+        if (owner != null) {
+            owner.setCorners(index, vertexIndices, getTextureVertexIndices(), getNormalIndices());
+            return;
+        }
         this.vertexIndices = vertexIndices;
     }
 
-    public void setTextureVertexIndices(ArrayList<Integer> textureVertexIndices) {
+    public void setTextureVertexIndices(List<Integer> textureVertexIndices) {
         if (textureVertexIndices != null && textureVertexIndices.size() < 3) {
             throw new IllegalArgumentException("Texture vertex indices must have at least 3 elements if provided, got: " + textureVertexIndices.size());
         }
+        if (owner != null) {
+            owner.setCorners(index, getVertexIndices(), textureVertexIndices, getNormalIndices());
+            return;
+        }
         this.textureVertexIndices = textureVertexIndices;
     }
 
-    public void setNormalIndices(ArrayList<Integer> normalIndices) {
+    public void setNormalIndices(List<Integer> normalIndices) {
         if (normalIndices != null && normalIndices.size() < 3) {
             throw new IllegalArgumentException("Normal indices must have at least 3 elements if provided, got: " + normalIndices.size());
         }
+        if (owner != null) {
+            owner.setCorners(index, getVertexIndices(), getTextureVertexIndices(), normalIndices);
+            return;
+        }
         this.normalIndices = normalIndices;
     }
 
-    public ArrayList<Integer> getVertexIndices() {
+    public List<Integer> getVertexIndices() {
+        if (owner != null) {
+            return new CornerList(Corner.VERTEX);
+        }
         return vertexIndices;
     }
 
-    public ArrayList<Integer> getTextureVertexIndices() {
+    // У полигона из модели без текстурных вершин (нормалей) здесь null
+    public List<Integer> getTextureVertexIndices() {
+        if (owner != null) {
+            return owner.hasTextureVertexIndices(index) ? new CornerList(Corner.TEXTURE) : null;
+        }
         return textureVertexIndices;
     }
 
-    public ArrayList<Integer> getNormalIndices() {
+    public List<Integer> getNormalIndices() {
+        if (owner != null) {
+            return owner.hasNormalIndices(index) ? new CornerList(Corner.NORMAL) : null;
+        }
         return normalIndices;
     }
-}
\ No newline at end of file
+
+    private static List<Integer> copyOrNull(List<Integer> indices) {
+        return indices == null ? null : new ArrayList<>(indices);
+    }
+
+    private enum Corner { VERTEX, TEXTURE, NORMAL }
+
+    // Индексы одного вида для углов полигона-окна. Массив берется у списка при каждом обращении: он мог вырасти
+    private class CornerList extends AbstractList<Integer> implements RandomAccess {
+        private final Corner corner;
+
+        CornerList(Corner corner) {
+            this.corner = corner;
+        }
+
+        private IntStorage data() {
+            switch (corner) {
+                case TEXTURE:
+                    return owner.getTextureVertexIndexStorage();
+                case NORMAL:
+                    return owner.getNormalIndexStorage();
+                default:
+                    return owner.getVertexIndexStorage();
+            }
+        }
+
+        @Override
+        public Integer get(int i) {
+            Objects.checkIndex(i, size());
+            return owner.getCorner(data(), index, i);
+        }
+
+        @Override
+        public Integer set(int i, Integer value) {
+            Objects.checkIndex(i, size());
+            final int previous = owner.getCorner(data(), index, i);
+            owner.setCorner(data(), index, i, value);
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return owner.getVertexCount(index);
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package com.cgvsu.model;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+/**
+ * Полигоны модели в сжатом построчном виде (CSR): углы всех полигонов лежат подряд в общих хранилищах int,
+ * а offsets[i]..offsets[i + 1] - углы i-го полигона. Вместо трех ArrayList и Integer на каждый угол -
+ * по int на угол в каждом хранилище. Хранилища могут быть как в куче, так и вне ее (см. ModelStorage).
+ * Индексы текстурных вершин и нормалей хранятся для всех углов сразу: хранилище создается, когда появляется
+ * первый полигон с ними, а у полигонов без них в углах стоит NO_INDEX.
+ * get() возвращает Polygon - окно в этот список по номеру полигона. В горячих циклах лучше работать
+ * с хранилищами напрямую: getOffsets(), getVertexIndexStorage() и т.д.
+ */
+public class PolygonList extends AbstractList<Polygon> implements RandomAccess {
+    public static final int NO_INDEX = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    // Углов на полигон при оценке емкости: модели в основном из треугольников
+    private static final int EXPECTED_CORNERS = 3;
+
+    private final ModelStorage kind;
+    private IntStorage offsets;
+    private IntStorage vertexIndices;
+    // null - ни у одного полигона нет текстурных вершин (нормалей)
+    private IntStorage textureVertexIndices;
+    private IntStorage normalIndices;
+    private int size;
+    private final boolean readOnly;
+    // Растет при любом изменении полигонов; по нему Model узнает, что таблицы смежности устарели
+    private int version = 0;
+
+    public PolygonList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PolygonList(int capacity) {
+        this(ModelStorage.HEAP, capacity);
+    }
+
+    public PolygonList(ModelStorage kind, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
+        this.kind = kind;
+        offsets = IntStorage.allocate(kind, capacity + 1);
+        vertexIndices = IntStorage.allocate(kind, Math.multiplyExact(capacity, EXPECTED_CORNERS));
+        readOnly = false;
+    }
+
+    /**
+     * Оборачивает готовые массивы без копирования. textureVertexIndices и normalIndices могут быть null.
+     */
+    public PolygonList(int[] offsets, int[] vertexIndices, int[] textureVertexIndices, int[] normalIndices, int size) {
+        this(IntStorage.wrap(offsets), IntStorage.wrap(vertexIndices),
+                textureVertexIndices == null ? null : IntStorage.wrap(textureVertexIndices),
+                normalIndices == null ? null : IntStorage.wrap(normalIndices), size);
+    }
+
+    /**
+     * Оборачивает готовые хранилища (например, отображенные из файла) без копирования.
+     * Все хранилища должны быть одного вида.
+     */
+    public PolygonList(IntStorage offsets, IntStorage vertexIndices, IntStorage textureVertexIndices,
+                       IntStorage normalIndices, int size) {
+        this(offsets, vertexIndices, textureVertexIndices, normalIndices, size, false);
+        if (size < 0 || size + 1 > offsets.capacity() || offsets.get(0) != 0) {
+            throw new IllegalArgumentException("Polygon offsets do not match polygon count");
+        }
+        final int cornerCount = offsets.get(size);
+        if (cornerCount > vertexIndices.capacity()
+                || (textureVertexIndices != null && cornerCount > textureVertexIndices.capacity())
+                || (normalIndices != null && cornerCount > normalIndices.capacity())) {
+            throw new IllegalArgumentException("Polygon offsets do not match index arrays");
+        }
+        for (int i = 0; i < size; ++i) {
+            final int count = offsets.get(i + 1) - offsets.get(i);
+            if (count < 3) {
+                throw new IllegalArgumentException("Polygon must have at least 3 vertices, got: " + count);
+            }
+        }
+    }
+
+    private PolygonList(IntStorage offsets, IntStorage vertexIndices, IntStorage textureVertexIndices,
+                        IntStorage normalIndices, int size, boolean readOnly) {
+        this.kind = vertexIndices.getKind();
+        this.offsets = offsets;
+        this.vertexIndices = vertexIndices;
+        this.textureVertexIndices = textureVertexIndices;
+        this.normalIndices = normalIndices;
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    // Прямой доступ к хранилищам. Валидны первые size() + 1 смещений и первые getCornerCount() индексов;
+    // после добавления полигонов хранилища могут смениться.
+
+    public IntStorage getOffsets() {
+        return offsets;
+    }
+
+    public IntStorage getVertexIndexStorage() {
+        return vertexIndices;
+    }
+
+    public IntStorage getTextureVertexIndexStorage() {
+        return textureVertexIndices;
+    }
+
+    public IntStorage getNormalIndexStorage() {
+        return normalIndices;
+    }
+
+    public ModelStorage getKind() {
+        return kind;
+    }
+
+    public int getCornerCount() {
+        return offsets.get(size);
+    }
+
+    public int getVertexCount(int polygonInd) {
+        Objects.checkIndex(polygonInd, size);
+        return offsets.get(polygonInd + 1) - offsets.get(polygonInd);
+    }
+
+    public boolean hasTextureVertexIndices(int polygonInd) {
+        Objects.checkIndex(polygonInd, size);
+        return textureVertexIndices != null && textureVertexIndices.get(offsets.get(polygonInd)) != NO_INDEX;
+    }
+
+    public boolean hasNormalIndices(int polygonInd) {
+        Objects.checkIndex(polygonInd, size);
+        return normalIndices != null && normalIndices.get(offsets.get(polygonInd)) != NO_INDEX;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Polygon get(int index) {
+        Objects.checkIndex(index, size);
+        return new Polygon(this, index);
+    }
+
+    /**
+     * Добавляет полигон из готовых массивов углов: count углов, начиная с from.
+     * textureVertexIndices и normalIndices могут быть null.
+     */
+    public void add(int[] vertexIndices, int[] textureVertexIndices, int[] normalIndices, int from, int count) {
+        checkWritable();
+        checkCorners(count, textureVertexIndices, normalIndices, from, false);
+        final int start = offsets.get(size);
+        ensureCapacity(size + 1, start + count);
+        this.vertexIndices.set(start, vertexIndices, from, count);
+        copyCorners(textureVertexIndices, from, start, count, true);
+        copyCorners(normalIndices, from, start, count, false);
+        // Смещение начала этого полигона уже записано, дописываем только конец: снимки видят не дальше своего size
+        offsets.set(size + 1, start + count);
+        ++size;
+        ++modCount;
+        ++version;
+    }
+
+    @Override
+    public boolean add(Polygon polygon) {
+        add(size, polygon);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Polygon polygon) {
+        checkWritable();
+        Objects.checkIndex(index, size + 1);
+        final int[] vertices = toArray(polygon.getVertexIndices());
+        final int[] textureVertices = toArray(polygon.getTextureVertexIndices());
+        final int[] normals = toArray(polygon.getNormalIndices());
+        final int count = vertices == null ? 0 : vertices.length;
+        checkCorners(count, textureVertices, normals, 0, true);
+        if (index == size) {
+            add(vertices, textureVertices, normals, 0, count);
+            return;
+        }
+        // Вставка в середину сдвигает хвост - редкая операция
+        final int start = offsets.get(index);
+        ensureCapacity(size + 1, offsets.get(size) + count);
+        shiftCorners(start, count);
+        offsets.move(index, index + 1, size + 1 - index);
+        for (int i = index + 1; i <= size + 1; ++i) {
+            offsets.set(i, offsets.get(i) + count);
+        }
+        ++size;
+        ++modCount;
+        ++version;
+        setCorners(index, vertices, textureVertices, normals);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Polygon> polygons) {
+        if (!(polygons instanceof PolygonList other)) {
+            return super.addAll(polygons);
+        }
+        checkWritable();
+        final int count = other.size;
+        final int start = offsets.get(size);
+        final int cornerCount = other.getCornerCount();
+        ensureCapacity(size + count, start + cornerCount);
+        IntStorage.copy(other.vertexIndices, 0, vertexIndices, start, cornerCount);
+        copyCorners(other.textureVertexIndices, start, cornerCount, true);
+        copyCorners(other.normalIndices, start, cornerCount, false);
+        for (int i = 1; i <= count; ++i) {
+            offsets.set(size + i, start + other.offsets.get(i));
+        }
+        size += count;
+        ++modCount;
+        ++version;
+        return count != 0;
+    }
+
+    /**
+     * Заменяет полигон. Если число углов не меняется, работает на месте, иначе сдвигает хвост.
+     */
+    @Override
+    public Polygon set(int index, Polygon polygon) {
+        checkWritable();
+        Objects.checkIndex(index, size);
+        Polygon previous = Polygon.copyOf(get(index));
+        setCorners(index, toArray(polygon.getVertexIndices()),
+                toArray(polygon.getTextureVertexIndices()), toArray(polygon.getNormalIndices()));
+        return previous;
+    }
+
+    @Override
+    public Polygon remove(int index) {
+        checkWritable();
+        Objects.checkIndex(index, size);
+        Polygon previous = Polygon.copyOf(get(index));
+        removeRange(index, index + 1);
+        return previous;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        checkWritable();
+        final int removed = offsets.get(toIndex) - offsets.get(fromIndex);
+        shiftCorners(offsets.get(toIndex), -removed);
+        for (int i = toIndex; i <= size; ++i) {
+            offsets.set(i - (toIndex - fromIndex), offsets.get(i) - removed);
+        }
+        size -= toIndex - fromIndex;
+        ++modCount;
+        ++version;
+    }
+
+    /**
+     * Удаление по условию за один линейный проход: оставшиеся полигоны сдвигаются к началу.
+     * Условию передается окно на полигон, действительное только во время вызова.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super Polygon> filter) {
+        checkWritable();
+        Objects.requireNonNull(filter);
+        final BitSet removed = new BitSet(size);
+        for (int i = 0; i < size; ++i) {
+            if (filter.test(new Polygon(this, i))) {
+                removed.set(i);
+            }
+        }
+        if (removed.isEmpty()) {
+            return false;
+        }
+        retain(removed);
+        return true;
+    }
+
+    /**
+     * Оставляет только полигоны, не отмеченные в removed, сохраняя порядок. Биты за size() не учитываются.
+     * Сплошные куски оставшихся полигонов сдвигаются одним копированием.
+     */
+    public void retain(BitSet removed) {
+        checkWritable();
+        int newSize = 0;
+        int writeCorner = 0;
+        int runStart = removed.nextClearBit(0);
+        while (runStart < size) {
+            int runEnd = removed.nextSetBit(runStart);
+            if (runEnd < 0 || runEnd > size) {
+                runEnd = size;
+            }
+            final int cornerStart = offsets.get(runStart);
+            final int cornerCount = offsets.get(runEnd) - cornerStart;
+            moveCorners(cornerStart, writeCorner, cornerCount);
+            // Смещения пишутся не дальше runEnd - 1, а следующий кусок читает их только начиная с runEnd + 1
+            final int delta = writeCorner - cornerStart;
+            for (int i = runStart; i < runEnd; ++i) {
+                offsets.set(newSize++, offsets.get(i) + delta);
+            }
+            writeCorner += cornerCount;
+            runStart = removed.nextClearBit(runEnd);
+        }
+        offsets.set(newSize, writeCorner);
+        size = newSize;
+        ++modCount;
+        ++version;
+    }
+
+    /**
+     * То же, что retain(removed), но из оставшихся полигонов удаляются еще и углы, отмеченные в removedCorners.
+     * У каждого оставшегося полигона должно остаться не меньше трех углов. Углы сдвигаются по одному.
+     */
+    void retain(BitSet removed, BitSet removedCorners) {
+        checkWritable();
+        int newSize = 0;
+        int writeCorner = 0;
+        // Смещения пишутся не дальше текущего полигона, а углы - не дальше текущего угла,
+        // так что все, что еще предстоит прочитать, цело
+        for (int polygonInd = 0; polygonInd < size; ++polygonInd) {
+            final int start = offsets.get(polygonInd);
+            final int end = offsets.get(polygonInd + 1);
+            if (removed.get(polygonInd)) {
+                continue;
+            }
+            offsets.set(newSize++, writeCorner);
+            for (int corner = start; corner < end; ++corner) {
+                if (removedCorners.get(corner)) {
+                    continue;
+                }
+                vertexIndices.set(writeCorner, vertexIndices.get(corner));
+                if (textureVertexIndices != null) {
+                    textureVertexIndices.set(writeCorner, textureVertexIndices.get(corner));
+                }
+                if (normalIndices != null) {
+                    normalIndices.set(writeCorner, normalIndices.get(corner));
+                }
+                ++writeCorner;
+            }
+        }
+        offsets.set(newSize, writeCorner);
+        size = newSize;
+        ++modCount;
+        ++version;
+    }
+
+    /**
+     * Переставляет полигоны: новый i-й полигон - прежний order[i]. order - перестановка номеров полигонов.
+     * Углы копируются в новые хранилища того же вида параллельно по диапазонам полигонов; pool == null -
+     * в текущем потоке.
+     */
+    void permute(int[] order, ForkJoinPool pool) {
+        checkWritable();
+        if (order.length != size) {
+            throw new IllegalArgumentException("Order length " + order.length + " does not match polygon count " + size);
+        }
+        final int cornerCount = offsets.get(size);
+        final IntStorage newOffsets = IntStorage.allocate(kind, size + 1);
+        int corner = 0;
+        for (int i = 0; i < size; ++i) {
+            newOffsets.set(i, corner);
+            corner += offsets.get(order[i] + 1) - offsets.get(order[i]);
+        }
+        newOffsets.set(size, corner);
+
+        final IntStorage newVertexIndices = permuteCorners(vertexIndices, newOffsets, order, cornerCount, pool);
+        final IntStorage newTextureVertexIndices = permuteCorners(textureVertexIndices, newOffsets, order, cornerCount, pool);
+        final IntStorage newNormalIndices = permuteCorners(normalIndices, newOffsets, order, cornerCount, pool);
+        offsets.releaseUnlessShared();
+        offsets = newOffsets;
+        vertexIndices = newVertexIndices;
+        textureVertexIndices = newTextureVertexIndices;
+        normalIndices = newNormalIndices;
+        ++modCount;
+        ++version;
+    }
+
+    private IntStorage permuteCorners(
+            IntStorage source, IntStorage newOffsets, int[] order, int cornerCount, ForkJoinPool pool) {
+        if (source == null) {
+            return null;
+        }
+        final IntStorage result = IntStorage.allocate(kind, Math.max(cornerCount, 1));
+        ParallelRanges.forEach(pool, size, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                final int start = newOffsets.get(i);
+                IntStorage.copy(source, offsets.get(order[i]), result, start, newOffsets.get(i + 1) - start);
+            }
+        });
+        source.releaseUnlessShared();
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        size = 0;
+        offsets.set(0, 0);
+        // Индексы текстур и нормалей больше не нужны: память вне кучи отдаем сразу, если ее не держит снимок
+        if (textureVertexIndices != null) {
+            textureVertexIndices.releaseUnlessShared();
+        }
+        if (normalIndices != null) {
+            normalIndices.releaseUnlessShared();
+        }
+        textureVertexIndices = null;
+        normalIndices = null;
+        ++modCount;
+        ++version;
+    }
+
+    /**
+     * Неизменяемый снимок без копирования. Дальнейшие добавления в конец на снимок не влияют.
+     * Менять уже существующие полигоны, пока снимок жив, нельзя.
+     */
+    public PolygonList snapshot() {
+        offsets.markShared();
+        vertexIndices.markShared();
+        if (textureVertexIndices != null) {
+            textureVertexIndices.markShared();
+        }
+        if (normalIndices != null) {
+            normalIndices.markShared();
+        }
+        return new PolygonList(offsets, vertexIndices, textureVertexIndices, normalIndices, size, true);
+    }
+
+    /**
+     * Освобождает память вне кучи (см. Model.close()). Список становится пустым.
+     */
+    public void release() {
+        checkWritable();
+        offsets.release();
+        vertexIndices.release();
+        if (textureVertexIndices != null) {
+            textureVertexIndices.release();
+        }
+        if (normalIndices != null) {
+            normalIndices.release();
+        }
+        offsets = IntStorage.allocate(ModelStorage.HEAP, 1);
+        vertexIndices = IntStorage.allocate(ModelStorage.HEAP, 0);
+        textureVertexIndices = null;
+        normalIndices = null;
+        size = 0;
+        ++modCount;
+        ++version;
+    }
+
+    public void trimToSize() {
+        checkWritable();
+        final int cornerCount = offsets.get(size);
+        offsets = offsets.grow(size + 1, size + 1);
+        vertexIndices = vertexIndices.grow(cornerCount, cornerCount);
+        if (textureVertexIndices != null) {
+            textureVertexIndices = textureVertexIndices.grow(cornerCount, cornerCount);
+        }
+        if (normalIndices != null) {
+            normalIndices = normalIndices.grow(cornerCount, cornerCount);
+        }
+    }
+
+    public void ensureCapacity(int polygonCapacity, int cornerCapacity) {
+        if (polygonCapacity + 1 > offsets.capacity()) {
+            offsets = offsets.grow(grow(offsets.capacity(), polygonCapacity + 1), size + 1);
+        }
+        if (cornerCapacity > vertexIndices.capacity()) {
+            final int cornerCount = offsets.get(size);
+            final int newCapacity = grow(vertexIndices.capacity(), cornerCapacity);
+            vertexIndices = vertexIndices.grow(newCapacity, cornerCount);
+            if (textureVertexIndices != null) {
+                textureVertexIndices = textureVertexIndices.grow(newCapacity, cornerCount);
+            }
+            if (normalIndices != null) {
+                normalIndices = normalIndices.grow(newCapacity, cornerCount);
+            }
+        }
+    }
+
+    /**
+     * Делает индексы нормалей во всех углах равными индексам вершин (нормали по вершинам).
+     */
+    void copyVertexIndicesToNormals() {
+        checkWritable();
+        final int cornerCount = offsets.get(size);
+        if (normalIndices == null) {
+            normalIndices = IntStorage.allocate(kind, vertexIndices.capacity());
+        }
+        IntStorage.copy(vertexIndices, 0, normalIndices, 0, cornerCount);
+    }
+
+    // Чтение и запись отдельных углов - для Polygon
+
+    int getCorner(IntStorage data, int polygonInd, int corner) {
+        return data.get(offsets.get(polygonInd) + corner);
+    }
+
+    void setCorner(IntStorage data, int polygonInd, int corner, int value) {
+        checkWritable();
+        ++version;
+        data.set(offsets.get(polygonInd) + corner, value);
+    }
+
+    void setCorners(int polygonInd, List<Integer> vertices, List<Integer> textureVertices, List<Integer> normals) {
+        setCorners(polygonInd, toArray(vertices), toArray(textureVertices), toArray(normals));
+    }
+
+    private void setCorners(int polygonInd, int[] vertices, int[] textureVertices, int[] normals) {
+        checkWritable();
+        checkCorners(vertices == null ? 0 : vertices.length, textureVertices, normals, 0, true);
+        final int start = offsets.get(polygonInd);
+        final int delta = vertices.length - (offsets.get(polygonInd + 1) - start);
+        if (delta != 0) {
+            ensureCapacity(size, offsets.get(size) + delta);
+            shiftCorners(offsets.get(polygonInd + 1), delta);
+            for (int i = polygonInd + 1; i <= size; ++i) {
+                offsets.set(i, offsets.get(i) + delta);
+            }
+            ++modCount;
+        }
+        ++version;
+        vertexIndices.set(start, vertices, 0, vertices.length);
+        copyCorners(textureVertices, 0, start, vertices.length, true);
+        copyCorners(normals, 0, start, vertices.length, false);
+    }
+
+    // Записывает индексы текстурных вершин (texture == true) или нормалей одного полигона; null - их нет
+    private void copyCorners(int[] source, int from, int start, int count, boolean texture) {
+        IntStorage target = texture ? textureVertexIndices : normalIndices;
+        if (source == null) {
+            if (target != null) {
+                target.fill(start, start + count, NO_INDEX);
+            }
+            return;
+        }
+        if (target == null) {
+            target = createCornerStorage(start, texture);
+        }
+        target.set(start, source, from, count);
+    }
+
+    // То же для углов другого списка, начиная с его первого угла
+    private void copyCorners(IntStorage source, int start, int count, boolean texture) {
+        IntStorage target = texture ? textureVertexIndices : normalIndices;
+        if (source == null) {
+            if (target != null) {
+                target.fill(start, start + count, NO_INDEX);
+            }
+            return;
+        }
+        if (target == null) {
+            target = createCornerStorage(start, texture);
+        }
+        IntStorage.copy(source, 0, target, start, count);
+    }
+
+    private IntStorage createCornerStorage(int existingCorners, boolean texture) {
+        IntStorage created = IntStorage.allocate(kind, vertexIndices.capacity());
+        created.fill(0, existingCorners, NO_INDEX);
+        if (texture) {
+            textureVertexIndices = created;
+        } else {
+            normalIndices = created;
+        }
+        return created;
+    }
+
+    // Сдвигает углы с позиции from до конца на delta (вставка или удаление)
+    private void shiftCorners(int from, int delta) {
+        moveCorners(from, from + delta, offsets.get(size) - from);
+    }
+
+    private void moveCorners(int from, int to, int length) {
+        vertexIndices.move(from, to, length);
+        if (textureVertexIndices != null) {
+            textureVertexIndices.move(from, to, length);
+        }
+        if (normalIndices != null) {
+            normalIndices.move(from, to, length);
+        }
+    }
+
+    // Проверка до любых изменений, чтобы неудачное добавление не оставило список в промежуточном состоянии.
+    // exact - массивы ровно на один полигон, иначе это буферы, в которых углов может быть и больше
+    private static void checkCorners(int count, int[] textureVertices, int[] normals, int from, boolean exact) {
+        if (count < 3) {
+            throw new IllegalArgumentException("Polygon must have at least 3 vertices, got: " + count);
+        }
+        if (!fits(textureVertices, from, count, exact) || !fits(normals, from, count, exact)) {
+            throw new IllegalArgumentException(
+                    "Polygon must have texture vertex and normal indices for all vertices or for none");
+        }
+    }
+
+    private static boolean fits(int[] indices, int from, int count, boolean exact) {
+        if (indices == null) {
+            return true;
+        }
+        return exact ? indices.length - from == count : indices.length - from >= count;
+    }
+
+    /**
+     * Номер версии содержимого: меняется при каждом изменении через методы списка.
+     * Кто пишет индексы прямо в хранилища (getVertexIndexStorage() и т.д.), после этого вызывает markModified().
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void markModified() {
+        ++version;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Snapshot cannot be modified");
+        }
+    }
+
+    private static int grow(int length, int required) {
+        if (required > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Too many polygons or polygon corners: " + required);
+        }
+        final long grown = length + (length >> 1);
+        return (int) Math.min(Math.max(grown, required), Integer.MAX_VALUE - 8);
+    }
+
+    // Пустой список, как и null, означает отсутствие индексов
+    private static int[] toArray(List<Integer> indices) {
+        if (indices == null || indices.isEmpty()) {
+            return null;
+        }
+        final int[] result = new int[indices.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = indices.get(i);
+        }
+        return result;
+    }
+}
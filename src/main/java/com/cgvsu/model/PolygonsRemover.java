@@ -1,11 +1,13 @@
 package com.cgvsu.model;
 
-import com.cgvsu.math.Vector3f;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 public class PolygonsRemover {
     /**
-     * Удаляет полигоны и (опционально) свободные вершины
+     * Удаляет полигоны и (опционально) свободные вершины.
+     * Номера полигонов - как в OBJ, с единицы; повторы и номера вне модели пропускаются.
      */
     public static void removePolygons(Model model, List<Integer> polygonIndicesToDelete,
                                       boolean removeOrphanedVertices) {
@@ -13,181 +15,138 @@ public class PolygonsRemover {
             return;
         }
 
-        // Удаляем дубликаты индексов
-        List<Integer> uniqueIndices = new ArrayList<>(new LinkedHashSet<>(polygonIndicesToDelete));
-
-        // Сортируем по убыванию для безопасного удаления
-        uniqueIndices.sort(Collections.reverseOrder());
-
-        // Удаляем выбранные полигоны
-        for (int polyIndex : uniqueIndices) {
+        final int polygonCount = model.getPolygons().size();
+        final BitSet deleted = new BitSet(polygonCount);
+        for (int polyIndex : polygonIndicesToDelete) {
             int internalIndex = polyIndex - 1; // OBJ -> внутренний индекс
-            if (internalIndex >= 0 && internalIndex < model.getPolygons().size()) {
-                model.getPolygons().remove(internalIndex);
+            if (internalIndex >= 0 && internalIndex < polygonCount) {
+                deleted.set(internalIndex);
             }
         }
+        removePolygons(model, deleted, removeOrphanedVertices);
+    }
+
+    /**
+     * То же для полигонов, отмеченных в deleted (номера с нуля, как в списках модели).
+     * Полигоны сжимаются за один проход, свободные вершины ищутся и удаляются тоже за линейное время.
+     */
+    public static void removePolygons(Model model, BitSet deleted, boolean removeOrphanedVertices) {
+        // Нормали меняются только у вершин удаленных полигонов
+        BitSet affected = collectFaceVertices(model.getPolygons(), deleted);
+        final FaceBvh bvh = model.cachedFaceBvh();
+        final int polygonCount = model.getPolygons().size();
+        model.getPolygons().retain(deleted);
 
         // Если нужно - находим и удаляем свободные вершины
         if (removeOrphanedVertices) {
-            removeOrphanedVertices(model);
+            affected = removeOrphanedVertices(model, affected);
         }
+        updateFaceBvh(model, bvh, deleted, polygonCount);
 
-        recalculateNormals(model);
+        recalculateNormals(model, affected);
+    }
+
+    // Дерево полигонов, построенное до удаления, дешевле обновить, чем строить заново
+    static void updateFaceBvh(Model model, FaceBvh bvh, BitSet deleted, int polygonCount) {
+        if (bvh != null && bvh.getVertices() == model.getVertices()) {
+            bvh.removeFaces(deleted, polygonCount);
+            model.setFaceBvh(bvh);
+        }
     }
 
     /**
-     * Находит и удаляет вершины, не принадлежащие ни одному полигону
+     * Находит и удаляет вершины, не принадлежащие ни одному полигону.
+     * Возвращает оставшиеся вершины из affected в новой нумерации.
      */
-    private static void removeOrphanedVertices(Model model) {
+    private static BitSet removeOrphanedVertices(Model model, BitSet affected) {
         if (model.getPolygons().isEmpty()) {
             // Если нет полигонов, все вершины становятся свободными
             model.getVertices().clear();
             model.getNormals().clear();
-            return;
-        }
-
-        // Собираем все индексы вершин, используемые в полигонах
-        Set<Integer> usedVertexIndices = new HashSet<>();
-        for (Polygon polygon : model.getPolygons()) {
-            usedVertexIndices.addAll(polygon.getVertexIndices());
+            return new BitSet();
         }
 
-        // Находим индексы вершин, которые не используются
-        List<Integer> orphanedIndices = new ArrayList<>();
-        for (int i = 1; i <= model.getVertices().size(); i++) {
-            if (!usedVertexIndices.contains(i)) {
-                orphanedIndices.add(i);
-            }
-        }
-
-        // Удаляем свободные вершины (с конца, чтобы не сбивались индексы)
-        orphanedIndices.sort(Collections.reverseOrder());
-        for (int vertexIndex : orphanedIndices) {
-            int internalIndex = vertexIndex - 1;
-            if (internalIndex >= 0 && internalIndex < model.getVertices().size()) {
-                model.getVertices().remove(internalIndex);
-                // Удаляем соответствующую нормаль, если есть
-                if (internalIndex < model.getNormals().size()) {
-                    model.getNormals().remove(internalIndex);
-                }
-            }
-        }
-
-        if (!orphanedIndices.isEmpty()) {
-            reindexPolygonsAfterVertexRemoval(model, orphanedIndices);
-        }
+        final BitSet orphaned = findOrphanedVertexSet(model);
+        affected.andNot(orphaned);
+        return VertexRemover.remapVertices(affected, VertexRemover.compactVertices(model, orphaned));
     }
 
     /**
-     * Переиндексация полигонов после удаления вершин
+     * Свободные вершины (номера с нуля): все вершины модели, на которые не ссылается ни один угол полигона.
      */
-    private static void reindexPolygonsAfterVertexRemoval(Model model, List<Integer> deletedVertexIndices) {
-        for (Polygon polygon : model.getPolygons()) {
-            // Переиндексируем вершины
-            List<Integer> newVertexIndices = new ArrayList<>();
-            for (int oldIndex : polygon.getVertexIndices()) {
-                int shift = 0;
-                for (int deletedIndex : deletedVertexIndices) {
-                    if (oldIndex > deletedIndex) {
-                        shift++;
-                    }
+    public static BitSet findOrphanedVertexSet(Model model) {
+        final int vertexCount = model.getVertices().size();
+        final BitSet orphaned = new BitSet(vertexCount);
+        orphaned.set(0, vertexCount);
+
+        final VertexFaceAdjacency adjacency = model.cachedVertexFaceAdjacency();
+        if (adjacency != null) {
+            // Вершина свободна, если у нее нет ни одного полигона
+            final int[] faceOffsets = adjacency.getOffsets();
+            for (int v = 0; v < vertexCount; ++v) {
+                if (faceOffsets[v + 1] != faceOffsets[v]) {
+                    orphaned.clear(v);
                 }
-                newVertexIndices.add(oldIndex - shift);
             }
-            polygon.setVertexIndices(new ArrayList<>(newVertexIndices));
-
-            // Переиндексируем нормали, если есть
-            if (polygon.getNormalIndices() != null && !polygon.getNormalIndices().isEmpty()) {
-                List<Integer> newNormalIndices = new ArrayList<>();
-                for (int oldIndex : polygon.getNormalIndices()) {
-                    int shift = 0;
-                    for (int deletedIndex : deletedVertexIndices) {
-                        if (oldIndex > deletedIndex) {
-                            shift++;
-                        }
-                    }
-                    newNormalIndices.add(oldIndex - shift);
-                }
-                polygon.setNormalIndices(new ArrayList<>(newNormalIndices));
+            return orphaned;
+        }
+
+        final PolygonList polygons = model.getPolygons();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final int cornerCount = polygons.getCornerCount();
+        for (int corner = 0; corner < cornerCount; ++corner) {
+            final int vertexIndex = vertexIndices.get(corner);
+            if (vertexIndex >= 0 && vertexIndex < vertexCount) {
+                orphaned.clear(vertexIndex);
             }
         }
+        return orphaned;
     }
 
     /**
-     * Пересчёт нормалей
+     * Пересчёт нормалей: нормаль вершины - нормированная сумма нормалей полигонов, в которые она входит.
+     * Большие модели считаются параллельно, см. NormalCalculator.
      */
     public static void recalculateNormals(Model model) {
-        model.getNormals().clear();
-
-        if (model.getVertices().isEmpty() || model.getPolygons().isEmpty()) {
-            return;
-        }
+        NormalCalculator.recalculateNormals(model);
+    }
 
-        // Временный список для сумм нормалей
-        List<Vector3f> vertexNormalSums = new ArrayList<>();
-        for (int i = 0; i < model.getVertices().size(); i++) {
-            vertexNormalSums.add(new Vector3f(0, 0, 0));
-        }
+    /**
+     * Пересчитывает нормали только у вершин из affectedVertices (номера с нуля), см. NormalCalculator.updateNormals.
+     */
+    public static void recalculateNormals(Model model, BitSet affectedVertices) {
+        NormalCalculator.updateNormals(model, affectedVertices);
+    }
 
-        // Вычисляем нормали для каждого полигона
-        for (Polygon polygon : model.getPolygons()) {
-            List<Integer> vertexIndices = polygon.getVertexIndices();
-            if (vertexIndices.size() < 3) continue;
-
-            // Берём первые три вершины полигона
-            Vector3f v0 = model.getVertices().get(vertexIndices.get(0) - 1);
-            Vector3f v1 = model.getVertices().get(vertexIndices.get(1) - 1);
-            Vector3f v2 = model.getVertices().get(vertexIndices.get(2) - 1);
-
-            // Вычисляем нормаль полигона через векторное произведение
-            Vector3f edge1 = v1.sub(v0);
-            Vector3f edge2 = v2.sub(v0);
-            Vector3f faceNormal = edge1.cross(edge2).normalizeV();
-
-            // Добавляем к каждой вершине полигона
-            for (int vertexIndex : vertexIndices) {
-                int internalIndex = vertexIndex - 1;
-                Vector3f currentSum = vertexNormalSums.get(internalIndex);
-                vertexNormalSums.set(internalIndex, currentSum.add(faceNormal));
+    /**
+     * Вершины полигонов из faces (номера с нуля) - их нормали меняются, если эти полигоны удалить или сдвинуть.
+     */
+    public static BitSet collectFaceVertices(PolygonList polygons, BitSet faces) {
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final BitSet result = new BitSet();
+        for (int polygonInd = faces.nextSetBit(0); polygonInd >= 0 && polygonInd < polygons.size();
+             polygonInd = faces.nextSetBit(polygonInd + 1)) {
+            final int end = offsets.get(polygonInd + 1);
+            for (int corner = offsets.get(polygonInd); corner < end; ++corner) {
+                final int vertexIndex = vertexIndices.get(corner);
+                if (vertexIndex >= 0) {
+                    result.set(vertexIndex);
+                }
             }
         }
-
-        // Нормализуем и сохраняем
-        for (Vector3f sum : vertexNormalSums) {
-            model.getNormals().add(sum.normalizeV());
-        }
-
-        // Обновляем индексы нормалей в полигонах
-        for (Polygon polygon : model.getPolygons()) {
-            polygon.setNormalIndices(new ArrayList<>(polygon.getVertexIndices()));
-        }
+        return result;
     }
 
     /**
-     * Вспомогательный метод: находит все свободные вершины
+     * Вспомогательный метод: находит все свободные вершины (номера как в OBJ, с единицы)
      */
     public static List<Integer> findOrphanedVertices(Model model) {
-        List<Integer> orphanedIndices = new ArrayList<>();
-
-        if (model.getPolygons().isEmpty()) {
-            // Все вершины свободные
-            for (int i = 1; i <= model.getVertices().size(); i++) {
-                orphanedIndices.add(i);
-            }
-            return orphanedIndices;
+        final BitSet orphaned = findOrphanedVertexSet(model);
+        List<Integer> orphanedIndices = new ArrayList<>(orphaned.cardinality());
+        for (int i = orphaned.nextSetBit(0); i >= 0; i = orphaned.nextSetBit(i + 1)) {
+            orphanedIndices.add(i + 1);
         }
-
-        Set<Integer> usedVertexIndices = new HashSet<>();
-        for (Polygon polygon : model.getPolygons()) {
-            usedVertexIndices.addAll(polygon.getVertexIndices());
-        }
-
-        for (int i = 1; i <= model.getVertices().size(); i++) {
-            if (!usedVertexIndices.contains(i)) {
-                orphanedIndices.add(i);
-            }
-        }
-
         return orphanedIndices;
     }
-}
\ No newline at end of file
+}
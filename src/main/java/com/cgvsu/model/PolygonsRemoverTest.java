@@ -0,0 +1,97 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+class PolygonsRemoverTest {
+
+    // Сетка 3 x 2 вершин в плоскости z = 0 и отдельная вершина 6 без полигонов:
+    // 3 4 5
+    // 0 1 2   6
+    // полигоны: четырехугольник 0 1 4 3, треугольники 1 2 5 и 1 5 4
+    private static Model createModel() {
+        Model model = new Model();
+        for (int y = 0; y < 2; ++y) {
+            for (int x = 0; x < 3; ++x) {
+                model.getVertices().add(new Vector3f(x, y, 0));
+            }
+        }
+        model.getVertices().add(new Vector3f(5, 0, 0));
+        PolygonList polygons = model.getPolygons();
+        polygons.add(new int[]{0, 1, 4, 3}, null, null, 0, 4);
+        polygons.add(new int[]{1, 2, 5}, null, null, 0, 3);
+        polygons.add(new int[]{1, 5, 4}, null, null, 0, 3);
+        return model;
+    }
+
+    private static int[] corners(PolygonList polygons, int polygonInd) {
+        int[] result = new int[polygons.getVertexCount(polygonInd)];
+        polygons.getVertexIndexStorage().get(polygons.getOffsets().get(polygonInd), result, 0, result.length);
+        return result;
+    }
+
+    private static BitSet bits(int... indices) {
+        BitSet result = new BitSet();
+        for (int index : indices) {
+            result.set(index);
+        }
+        return result;
+    }
+
+    @Test
+    public void testRemovePolygons01() {
+        // Номера с единицы: 2 - это треугольник 1 2 5; вершины остаются
+        Model model = createModel();
+        PolygonsRemover.removePolygons(model, List.of(2, 2, 0, 9), false);
+        PolygonList polygons = model.getPolygons();
+        Assertions.assertEquals(2, polygons.size());
+        Assertions.assertArrayEquals(new int[]{0, 1, 4, 3}, corners(polygons, 0));
+        Assertions.assertArrayEquals(new int[]{1, 5, 4}, corners(polygons, 1));
+        Assertions.assertEquals(7, model.getVertices().size());
+    }
+
+    @Test
+    public void testRemovePolygons02() {
+        // Свободные вершины 2 и 6 удаляются, номера остальных сдвигаются
+        Model model = createModel();
+        PolygonsRemover.removePolygons(model, bits(1), true);
+        PolygonList polygons = model.getPolygons();
+        Assertions.assertEquals(2, polygons.size());
+        Assertions.assertArrayEquals(new int[]{0, 1, 3, 2}, corners(polygons, 0));
+        Assertions.assertArrayEquals(new int[]{1, 4, 3}, corners(polygons, 1));
+        Assertions.assertEquals(5, model.getVertices().size());
+        Assertions.assertEquals(2, model.getVertices().get(4).getX());
+        Assertions.assertEquals(1, model.getVertices().get(4).getY());
+    }
+
+    @Test
+    public void testRemovePolygons03() {
+        // Удалены все полигоны - со свободными вершинами уходят все вершины
+        Model model = createModel();
+        PolygonsRemover.removePolygons(model, bits(0, 1, 2), true);
+        Assertions.assertEquals(0, model.getPolygons().size());
+        Assertions.assertEquals(0, model.getVertices().size());
+    }
+
+    @Test
+    public void testFindOrphanedVertexSet01() {
+        Model model = createModel();
+        PolygonsRemover.removePolygons(model, bits(1), false);
+        Assertions.assertEquals(bits(2, 6), PolygonsRemover.findOrphanedVertexSet(model));
+        Assertions.assertEquals(List.of(3, 7), PolygonsRemover.findOrphanedVertices(model));
+    }
+
+    @Test
+    public void testFindOrphanedVertexSet02() {
+        // Со смежностью, построенной заранее, свободные вершины берутся из нее - ответ тот же
+        Model model = createModel();
+        PolygonsRemover.removePolygons(model, bits(1), false);
+        model.getVertexFaceAdjacency();
+        Assertions.assertNotNull(model.cachedVertexFaceAdjacency());
+        Assertions.assertEquals(bits(2, 6), PolygonsRemover.findOrphanedVertexSet(model));
+    }
+}
@@ -0,0 +1,36 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector3f;
+
+/**
+ * Ближайшее пересечение луча с полигоном модели, см. FaceBvh.intersectRay.
+ */
+public final class RayHit {
+    private final int face;
+    private final float distance;
+    private final Vector3f point;
+
+    RayHit(int face, float distance, Vector3f point) {
+        this.face = face;
+        this.distance = distance;
+        this.point = point;
+    }
+
+    /**
+     * Номер полигона с нуля, как в списках модели.
+     */
+    public int getFace() {
+        return face;
+    }
+
+    /**
+     * Параметр t точки пересечения origin + t * direction: расстояние в длинах направления луча.
+     */
+    public float getDistance() {
+        return distance;
+    }
+
+    public Vector3f getPoint() {
+        return point;
+    }
+}
@@ -0,0 +1,238 @@
+package com.cgvsu.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Пространственный порядок модели: полигоны по коду Мортона (Z-кривая) их центров, вершины - по коду Мортона
+ * их положения, текстурные вершины и нормали - по порядку первого использования. Близкие в пространстве данные
+ * оказываются рядом в памяти, и отсечение, выбор и расчет нормалей на сканах с перемешанным порядком
+ * идут по памяти почти подряд. Ключи считаются и сортируются поразрядно параллельно;
+ * сортировка устойчива, так что результат от пула не зависит.
+ */
+public final class SpatialReorderer {
+    // Бит на ось в ключе: три оси укладываются в 63 бита
+    private static final int COORDINATE_BITS = 21;
+    private static final int MAX_COORDINATE = (1 << COORDINATE_BITS) - 1;
+
+    // Поразрядная сортировка: байт за проход; элементы делятся на блоки, у каждого блока своя гистограмма
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int SORT_BLOCK = 1 << 16;
+
+    private SpatialReorderer() {
+    }
+
+    /**
+     * Переупорядочивание в общем пуле fork/join, см. reorder(Model, ForkJoinPool).
+     */
+    public static void reorder(Model model) {
+        reorder(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Переставляет полигоны и перенумеровывает вершины, текстурные вершины и нормали модели.
+     * Сами полигоны и их углы не меняются. pool == null - в текущем потоке.
+     */
+    public static void reorder(Model model, ForkJoinPool pool) {
+        final Vector3fList vertices = model.getVertices();
+        if (vertices.isEmpty()) {
+            return;
+        }
+        final FloatStorage positions = vertices.getStorage();
+        final int vertexCount = vertices.size();
+
+        final double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double extent = 0;
+        for (int axis = 0; axis < 3; ++axis) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = axis; i < 3 * vertexCount; i += 3) {
+                final float value = positions.get(i);
+                if (value < min[axis]) {
+                    min[axis] = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            }
+            if (max - min[axis] > extent) {
+                extent = max - min[axis];
+            }
+        }
+        // Один масштаб на все оси, чтобы ячейки решетки были кубами
+        final double scale = extent > 0 ? MAX_COORDINATE / extent : 0;
+
+        final PolygonList polygons = model.getPolygons();
+        if (!polygons.isEmpty()) {
+            final IntStorage offsets = polygons.getOffsets();
+            final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+            final long[] keys = new long[polygons.size()];
+            ParallelRanges.forEach(pool, keys.length, (from, to) -> {
+                for (int p = from; p < to; ++p) {
+                    double x = 0;
+                    double y = 0;
+                    double z = 0;
+                    int count = 0;
+                    for (int corner = offsets.get(p); corner < offsets.get(p + 1); ++corner) {
+                        final int v = vertexIndices.get(corner);
+                        if (v >= 0 && v < vertexCount) {
+                            x += positions.get(3 * v);
+                            y += positions.get(3 * v + 1);
+                            z += positions.get(3 * v + 2);
+                            ++count;
+                        }
+                    }
+                    keys[p] = count == 0 ? 0 : mortonKey(x / count, y / count, z / count, min, scale);
+                }
+            });
+            polygons.permute(sortedIndices(keys, pool), pool);
+        }
+
+        final long[] keys = new long[vertexCount];
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int v = from; v < to; ++v) {
+                keys[v] = mortonKey(positions.get(3 * v), positions.get(3 * v + 1), positions.get(3 * v + 2), min, scale);
+            }
+        });
+        final int[] order = sortedIndices(keys, pool);
+        final int[] vertexNumbers = new int[vertexCount];
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                vertexNumbers[order[i]] = i;
+            }
+        });
+        ModelPermutation.renumberVertices(model, vertexNumbers, pool);
+    }
+
+    private static long mortonKey(double x, double y, double z, double[] min, double scale) {
+        return spreadBits(coordinate(x, min[0], scale))
+                | spreadBits(coordinate(y, min[1], scale)) << 1
+                | spreadBits(coordinate(z, min[2], scale)) << 2;
+    }
+
+    // NaN попадает в 0, бесконечности - на края решетки
+    private static int coordinate(double value, double min, double scale) {
+        final double cell = (value - min) * scale;
+        return cell >= MAX_COORDINATE ? MAX_COORDINATE : cell > 0 ? (int) cell : 0;
+    }
+
+    // Биты числа из COORDINATE_BITS разносятся через два: b2 b1 b0 -> b2 0 0 b1 0 0 b0
+    private static long spreadBits(int coordinate) {
+        long x = coordinate & MAX_COORDINATE;
+        x = (x | x << 32) & 0x1F00000000FFFFL;
+        x = (x | x << 16) & 0x1F0000FF0000FFL;
+        x = (x | x << 8) & 0x100F00F00F00F00FL;
+        x = (x | x << 4) & 0x10C30C30C30C30C3L;
+        x = (x | x << 2) & 0x1249249249249249L;
+        return x;
+    }
+
+    /**
+     * Номера 0..keys.length - 1 по возрастанию keys (неотрицательных), при равных ключах - по возрастанию номера.
+     * Поразрядная сортировка от младшего байта; байты, одинаковые у всех ключей, пропускаются.
+     * Массив keys используется как рабочий и портится.
+     */
+    static int[] sortedIndices(long[] keys, ForkJoinPool pool) {
+        final int count = keys.length;
+        int[] indices = new int[count];
+        final int[] initial = indices;
+        ParallelRanges.forEach(pool, count, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                initial[i] = i;
+            }
+        });
+        long varying = 0;
+        for (long key : keys) {
+            varying |= key ^ keys[0];
+        }
+
+        final int blockCount = (count + SORT_BLOCK - 1) / SORT_BLOCK;
+        final int[] counts = new int[blockCount * RADIX];
+        long[] sourceKeys = keys;
+        long[] targetKeys = new long[count];
+        int[] targetIndices = new int[count];
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            if ((varying >>> shift & (RADIX - 1)) == 0) {
+                continue;
+            }
+            final int digitShift = shift;
+            final long[] keysFrom = sourceKeys;
+            final int[] indicesFrom = indices;
+            final long[] keysTo = targetKeys;
+            final int[] indicesTo = targetIndices;
+
+            Arrays.fill(counts, 0);
+            forEachBlock(pool, count, block -> {
+                final int base = block * RADIX;
+                final int start = block * SORT_BLOCK;
+                final int end = start + Math.min(SORT_BLOCK, count - start);
+                for (int i = start; i < end; ++i) {
+                    ++counts[base + (int) (keysFrom[i] >>> digitShift & (RADIX - 1))];
+                }
+            });
+            // Место каждого блока в каждой цифре: цифры по возрастанию, внутри цифры - блоки по порядку
+            int offset = 0;
+            for (int digit = 0; digit < RADIX; ++digit) {
+                for (int block = 0; block < blockCount; ++block) {
+                    final int digitCount = counts[block * RADIX + digit];
+                    counts[block * RADIX + digit] = offset;
+                    offset += digitCount;
+                }
+            }
+            forEachBlock(pool, count, block -> {
+                final int base = block * RADIX;
+                final int start = block * SORT_BLOCK;
+                final int end = start + Math.min(SORT_BLOCK, count - start);
+                for (int i = start; i < end; ++i) {
+                    final int position = counts[base + (int) (keysFrom[i] >>> digitShift & (RADIX - 1))]++;
+                    keysTo[position] = keysFrom[i];
+                    indicesTo[position] = indicesFrom[i];
+                }
+            });
+
+            sourceKeys = keysTo;
+            targetKeys = keysFrom;
+            indices = indicesTo;
+            targetIndices = indicesFrom;
+        }
+        return indices;
+    }
+
+    // Блоки по SORT_BLOCK элементов из [0, count); деление на блоки не зависит от пула
+    private static void forEachBlock(ForkJoinPool pool, int count, IntConsumer body) {
+        final int blockCount = (count + SORT_BLOCK - 1) / SORT_BLOCK;
+        if (!ParallelRanges.isParallel(pool, count) || blockCount == 1) {
+            for (int block = 0; block < blockCount; ++block) {
+                body.accept(block);
+            }
+            return;
+        }
+        pool.invoke(new BlockTask(body, 0, blockCount));
+    }
+
+    private static final class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer body;
+        private final int from;
+        private final int to;
+
+        BlockTask(IntConsumer body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new BlockTask(body, from, middle), new BlockTask(body, middle, to));
+        }
+    }
+}
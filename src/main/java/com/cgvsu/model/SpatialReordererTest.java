@@ -0,0 +1,54 @@
+package com.cgvsu.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+class SpatialReordererTest {
+
+    @Test
+    public void testReorder01() {
+        // Перестановка: тот же набор полигонов по координатам, текстурам и нормалям, те же размеры списков
+        Model model = TestModels.createShuffledGrid(30, 1);
+        final List<String> before = TestModels.faces(model);
+        SpatialReorderer.reorder(model, null);
+        Assertions.assertEquals(before, TestModels.faces(model));
+        Assertions.assertEquals(31 * 31, model.getVertices().size());
+        Assertions.assertEquals(31 * 31, model.getTextureVertices().size());
+        Assertions.assertEquals(31 * 31, model.getNormals().size());
+    }
+
+    @Test
+    public void testReorder02() {
+        // Вершины по Z-кривой: первые четыре - угол сетки 2 x 2 у начала координат
+        Model model = TestModels.createShuffledGrid(8, 2);
+        SpatialReorderer.reorder(model, null);
+        for (int i = 0; i < 4; ++i) {
+            Assertions.assertTrue(model.getVertices().get(i).getX() <= 1 && model.getVertices().get(i).getY() <= 1);
+        }
+    }
+
+    @Test
+    public void testReorder03() {
+        // Порядок от пула не зависит: сетка больше блока поразрядной сортировки
+        Model sequential = TestModels.createShuffledGrid(300, 3);
+        Model pooled = TestModels.createShuffledGrid(300, 3);
+        SpatialReorderer.reorder(sequential, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SpatialReorderer.reorder(pooled, pool);
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertTrue(TestModels.sameModel(sequential, pooled));
+    }
+
+    @Test
+    public void testSortedIndices01() {
+        // Устойчивость: равные ключи остаются в исходном порядке
+        final long[] keys = {5, 1, 5, 0, 1L << 40, 1};
+        Assertions.assertArrayEquals(new int[]{3, 1, 5, 0, 2, 4}, SpatialReorderer.sortedIndices(keys, null));
+    }
+}
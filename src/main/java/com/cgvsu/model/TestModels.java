@@ -0,0 +1,176 @@
+package com.cgvsu.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Общие модели и сравнения для тестов пакета: сетки, перемешанные сетки и проверки перестановок.
+ */
+final class TestModels {
+
+    private TestModels() {
+    }
+
+    /**
+     * Сетка n x n ячеек на квадрате [min, max] x [min, max] с волной высоты amplitude по z.
+     * Каждая третья ячейка разбита на два треугольника, остальные - четырехугольники.
+     * Текстурная вершина i - это (u, v) вершины i на единичном квадрате, и ее номер совпадает с номером вершины,
+     * так что по углу сразу видно, парой ли остались индексы.
+     */
+    static Model createGrid(int n, float min, float max, float amplitude) {
+        Model model = new Model();
+        for (int i = 0; i <= n; ++i) {
+            for (int j = 0; j <= n; ++j) {
+                final float u = (float) i / n;
+                final float v = (float) j / n;
+                model.getVertices().add(min + (max - min) * u, min + (max - min) * v,
+                        (float) (amplitude * Math.sin(7 * u) * Math.cos(5 * v)));
+                model.getTextureVertices().add(u, v);
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                final int base = i * (n + 1) + j;
+                if ((i + j) % 3 == 0) {
+                    final int[] first = {base, base + n + 1, base + n + 2};
+                    final int[] second = {base, base + n + 2, base + 1};
+                    model.getPolygons().add(first, first, null, 0, 3);
+                    model.getPolygons().add(second, second, null, 0, 3);
+                } else {
+                    final int[] quad = {base, base + n + 1, base + n + 2, base + 1};
+                    model.getPolygons().add(quad, quad, null, 0, 4);
+                }
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Сетка n x n четырехугольников, у которой перемешаны вершины, текстурные вершины, нормали и сами полигоны.
+     * Текстурная вершина и нормаль выводятся из положения вершины, так что по углу видно, пара ли они ей.
+     * У каждого пятого полигона нет текстурных индексов, у каждого седьмого - нормалей.
+     */
+    static Model createShuffledGrid(int n, long seed) {
+        final Random random = new Random(seed);
+        final int count = (n + 1) * (n + 1);
+        final int[] vertexSlot = shuffled(count, random);
+        final int[] textureSlot = shuffled(count, random);
+        final int[] normalSlot = shuffled(count, random);
+        final float[][] positions = new float[count][];
+        final float[][] textures = new float[count][];
+        final float[][] normals = new float[count][];
+        for (int i = 0; i <= n; ++i) {
+            for (int j = 0; j <= n; ++j) {
+                final int gridInd = i * (n + 1) + j;
+                positions[vertexSlot[gridInd]] = new float[]{i, j, (i * j) % 5};
+                textures[textureSlot[gridInd]] = new float[]{i, j};
+                normals[normalSlot[gridInd]] = new float[]{j, i, 1};
+            }
+        }
+        Model model = new Model();
+        for (int i = 0; i < count; ++i) {
+            model.getVertices().add(positions[i][0], positions[i][1], positions[i][2]);
+            model.getTextureVertices().add(textures[i][0], textures[i][1]);
+            model.getNormals().add(normals[i][0], normals[i][1], normals[i][2]);
+        }
+
+        final int[] cells = shuffled(n * n, random);
+        for (int k = 0; k < cells.length; ++k) {
+            final int i = cells[k] / n;
+            final int j = cells[k] % n;
+            final int[] grid = {i * (n + 1) + j, (i + 1) * (n + 1) + j, (i + 1) * (n + 1) + j + 1, i * (n + 1) + j + 1};
+            final int[] vertices = new int[4];
+            final int[] textureVertices = new int[4];
+            final int[] normalIndices = new int[4];
+            for (int corner = 0; corner < 4; ++corner) {
+                vertices[corner] = vertexSlot[grid[corner]];
+                textureVertices[corner] = textureSlot[grid[corner]];
+                normalIndices[corner] = normalSlot[grid[corner]];
+            }
+            model.getPolygons().add(vertices, k % 5 == 0 ? null : textureVertices, k % 7 == 0 ? null : normalIndices, 0, 4);
+        }
+        return model;
+    }
+
+    private static int[] shuffled(int count, Random random) {
+        final int[] result = new int[count];
+        for (int i = 0; i < count; ++i) {
+            result[i] = i;
+        }
+        for (int i = count - 1; i > 0; --i) {
+            final int j = random.nextInt(i + 1);
+            final int swap = result[i];
+            result[i] = result[j];
+            result[j] = swap;
+        }
+        return result;
+    }
+
+    /**
+     * Полигоны как строки из координат их углов (вершина, текстурная вершина, нормаль - без номеров), отсортированные.
+     * Перестановка полигонов и перенумерация вершин этот список не меняют. Номер за пределами списка
+     * не проходит проверку индекса в get().
+     */
+    static List<String> faces(Model model) {
+        final PolygonList polygons = model.getPolygons();
+        final List<String> result = new ArrayList<>();
+        for (int polygonInd = 0; polygonInd < polygons.size(); ++polygonInd) {
+            final StringBuilder face = new StringBuilder();
+            for (int corner = polygons.getOffsets().get(polygonInd); corner < polygons.getOffsets().get(polygonInd + 1); ++corner) {
+                face.append(model.getVertices().get(polygons.getVertexIndexStorage().get(corner)));
+                if (polygons.hasTextureVertexIndices(polygonInd)) {
+                    face.append('/').append(model.getTextureVertices().get(polygons.getTextureVertexIndexStorage().get(corner)));
+                }
+                if (polygons.hasNormalIndices(polygonInd)) {
+                    face.append('/').append(model.getNormals().get(polygons.getNormalIndexStorage().get(corner)));
+                }
+                face.append(' ');
+            }
+            result.add(face.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Модели совпадают поэлементно: списки вершин и все индексы углов в том же порядке.
+     */
+    static boolean sameModel(Model expected, Model actual) {
+        if (!expected.getVertices().equals(actual.getVertices())
+                || !expected.getTextureVertices().equals(actual.getTextureVertices())
+                || !expected.getNormals().equals(actual.getNormals())
+                || expected.getPolygons().size() != actual.getPolygons().size()) {
+            return false;
+        }
+        final PolygonList expectedPolygons = expected.getPolygons();
+        final PolygonList actualPolygons = actual.getPolygons();
+        for (int polygonInd = 0; polygonInd <= expectedPolygons.size(); ++polygonInd) {
+            if (expectedPolygons.getOffsets().get(polygonInd) != actualPolygons.getOffsets().get(polygonInd)) {
+                return false;
+            }
+        }
+        for (int polygonInd = 0; polygonInd < expectedPolygons.size(); ++polygonInd) {
+            if (expectedPolygons.hasTextureVertexIndices(polygonInd) != actualPolygons.hasTextureVertexIndices(polygonInd)
+                    || expectedPolygons.hasNormalIndices(polygonInd) != actualPolygons.hasNormalIndices(polygonInd)) {
+                return false;
+            }
+        }
+        for (int corner = 0; corner < expectedPolygons.getCornerCount(); ++corner) {
+            if (expectedPolygons.getVertexIndexStorage().get(corner) != actualPolygons.getVertexIndexStorage().get(corner)
+                    || cornerIndex(expectedPolygons.getTextureVertexIndexStorage(), corner)
+                    != cornerIndex(actualPolygons.getTextureVertexIndexStorage(), corner)
+                    || cornerIndex(expectedPolygons.getNormalIndexStorage(), corner)
+                    != cornerIndex(actualPolygons.getNormalIndexStorage(), corner)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Хранилища текстурных индексов и нормалей может не быть вовсе
+    private static int cornerIndex(IntStorage indices, int corner) {
+        return indices == null ? PolygonList.NO_INDEX : indices.get(corner);
+    }
+}
@@ -0,0 +1,76 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector2f;
+
+/**
+ * Текстурные вершины модели: по два float на вектор в одном хранилище.
+ */
+public class Vector2fList extends PackedVectorList<Vector2f> {
+    private static final int STRIDE = 2;
+
+    public Vector2fList() {
+        super(STRIDE, ModelStorage.HEAP, 0);
+    }
+
+    public Vector2fList(int capacity) {
+        super(STRIDE, ModelStorage.HEAP, capacity);
+    }
+
+    public Vector2fList(ModelStorage kind, int capacity) {
+        super(STRIDE, kind, capacity);
+    }
+
+    /**
+     * Оборачивает готовый массив uv без копирования.
+     */
+    public Vector2fList(float[] data, int size) {
+        super(STRIDE, FloatStorage.wrap(data), size, false);
+    }
+
+    /**
+     * Оборачивает готовое хранилище (например, отображенное из файла) без копирования.
+     */
+    public Vector2fList(FloatStorage storage, int size) {
+        super(STRIDE, storage, size, false);
+    }
+
+    private Vector2fList(FloatStorage storage, int size, boolean readOnly) {
+        super(STRIDE, storage, size, readOnly);
+    }
+
+    public float getX(int index) {
+        return storage.get(STRIDE * index);
+    }
+
+    public float getY(int index) {
+        return storage.get(STRIDE * index + 1);
+    }
+
+    public void add(float x, float y) {
+        final int offset = appendSlot();
+        storage.set(offset, x);
+        storage.set(offset + 1, y);
+    }
+
+    public void set(int index, float x, float y) {
+        checkWritable();
+        final int offset = STRIDE * index;
+        storage.set(offset, x);
+        storage.set(offset + 1, y);
+    }
+
+    @Override
+    protected Vector2f createVector(int index) {
+        return new Vector2f(getX(index), getY(index));
+    }
+
+    @Override
+    protected void storeVector(int index, Vector2f vector) {
+        set(index, vector.getX(), vector.getY());
+    }
+
+    @Override
+    public Vector2fList snapshot() {
+        return new Vector2fList(sharedStorage(), size, true);
+    }
+}
@@ -0,0 +1,82 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector3f;
+
+/**
+ * Вершины или нормали модели: по три float на вектор в одном хранилище.
+ */
+public class Vector3fList extends PackedVectorList<Vector3f> {
+    private static final int STRIDE = 3;
+
+    public Vector3fList() {
+        super(STRIDE, ModelStorage.HEAP, 0);
+    }
+
+    public Vector3fList(int capacity) {
+        super(STRIDE, ModelStorage.HEAP, capacity);
+    }
+
+    public Vector3fList(ModelStorage kind, int capacity) {
+        super(STRIDE, kind, capacity);
+    }
+
+    /**
+     * Оборачивает готовый массив xyz без копирования.
+     */
+    public Vector3fList(float[] data, int size) {
+        super(STRIDE, FloatStorage.wrap(data), size, false);
+    }
+
+    /**
+     * Оборачивает готовое хранилище (например, отображенное из файла) без копирования.
+     */
+    public Vector3fList(FloatStorage storage, int size) {
+        super(STRIDE, storage, size, false);
+    }
+
+    private Vector3fList(FloatStorage storage, int size, boolean readOnly) {
+        super(STRIDE, storage, size, readOnly);
+    }
+
+    public float getX(int index) {
+        return storage.get(STRIDE * index);
+    }
+
+    public float getY(int index) {
+        return storage.get(STRIDE * index + 1);
+    }
+
+    public float getZ(int index) {
+        return storage.get(STRIDE * index + 2);
+    }
+
+    public void add(float x, float y, float z) {
+        final int offset = appendSlot();
+        storage.set(offset, x);
+        storage.set(offset + 1, y);
+        storage.set(offset + 2, z);
+    }
+
+    public void set(int index, float x, float y, float z) {
+        checkWritable();
+        final int offset = STRIDE * index;
+        storage.set(offset, x);
+        storage.set(offset + 1, y);
+        storage.set(offset + 2, z);
+    }
+
+    @Override
+    protected Vector3f createVector(int index) {
+        return new Vector3f(getX(index), getY(index), getZ(index));
+    }
+
+    @Override
+    protected void storeVector(int index, Vector3f vector) {
+        set(index, vector.getX(), vector.getY(), vector.getZ());
+    }
+
+    @Override
+    public Vector3fList snapshot() {
+        return new Vector3fList(sharedStorage(), size, true);
+    }
+}
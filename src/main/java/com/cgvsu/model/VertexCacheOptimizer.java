@@ -0,0 +1,281 @@
+package com.cgvsu.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Порядок полигонов и вершин для повторного использования вершин (Forsyth, "Linear-Speed Vertex Cache
+ * Optimisation"): полигоны выдаются жадно по оценке их вершин в модели кэша вершин из SCORED_CACHE_SIZE
+ * последних, после чего вершины (и текстурные вершины, нормали) нумеруются в порядке первого использования.
+ * Тогда и проекция вершин, и обход полигонов в RenderEngine идут по памяти почти подряд.
+ * Жадный выбор последователен по своей природе и идет одним проходом за линейное время; параллельно
+ * выполняются перестановка полигонов и перенумерация. Проверить выигрыш - averageCacheMissRatio до и после.
+ */
+public final class VertexCacheOptimizer {
+    // Размер кэша для averageCacheMissRatio по умолчанию
+    public static final int DEFAULT_CACHE_SIZE = 32;
+
+    // Оценка вершины по Форсайту: место в кэше и число еще не выданных полигонов вершины
+    private static final int SCORED_CACHE_SIZE = 32;
+    private static final float LAST_POLYGON_SCORE = 0.75F;
+    private static final double CACHE_DECAY_POWER = 1.5;
+    private static final float VALENCE_BOOST_SCALE = 2.0F;
+    private static final double VALENCE_BOOST_POWER = 0.5;
+    private static final int MAX_SCORED_VALENCE = 64;
+
+    private static final float[] CACHE_SCORES = new float[SCORED_CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_SCORED_VALENCE + 1];
+
+    static {
+        for (int position = 0; position < SCORED_CACHE_SIZE; ++position) {
+            // Вершины последнего полигона - фиксированная оценка, чтобы не выдавать его соседей по кругу
+            CACHE_SCORES[position] = position < 3 ? LAST_POLYGON_SCORE : (float) Math.pow(
+                    1 - (double) (position - 3) / (SCORED_CACHE_SIZE - 3), CACHE_DECAY_POWER);
+        }
+        for (int valence = 1; valence <= MAX_SCORED_VALENCE; ++valence) {
+            // Вершины, у которых осталось мало полигонов, выгоднее добрать: иначе они останутся одиночками
+            VALENCE_SCORES[valence] = VALENCE_BOOST_SCALE * (float) Math.pow(valence, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    private VertexCacheOptimizer() {
+    }
+
+    /**
+     * Упорядочивание в общем пуле fork/join, см. optimize(Model, ForkJoinPool).
+     */
+    public static void optimize(Model model) {
+        optimize(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Переставляет полигоны модели и перенумеровывает вершины, текстурные вершины и нормали.
+     * Сами полигоны и их углы не меняются. pool == null - перестановка в текущем потоке.
+     */
+    public static void optimize(Model model, ForkJoinPool pool) {
+        final PolygonList polygons = model.getPolygons();
+        if (polygons.isEmpty()) {
+            return;
+        }
+        polygons.permute(new Ordering(polygons, model.getVertices().size()).order(), pool);
+        ModelPermutation.renumberByFirstUse(model, pool);
+    }
+
+    /**
+     * Доля промахов кэша DEFAULT_CACHE_SIZE вершин на треугольник, см. averageCacheMissRatio(Model, int).
+     */
+    public static float averageCacheMissRatio(Model model) {
+        return averageCacheMissRatio(model, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Среднее число промахов на треугольник (ACMR) для кэша из cacheSize последних вершин, обновляемого
+     * по FIFO, при обходе полигонов по порядку. Многоугольник из c углов считается за c - 2 треугольника.
+     * 0.5 - предел для больших сеток, 3 - ни одна вершина не переиспользуется.
+     */
+    public static float averageCacheMissRatio(Model model, int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1, got: " + cacheSize);
+        }
+        final PolygonList polygons = model.getPolygons();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final int vertexCount = model.getVertices().size();
+        // Номер промаха, на котором вершина попала в кэш, + 1; 0 - не попадала.
+        // Вершина еще в кэше, если после нее было меньше cacheSize промахов
+        final long[] insertedAt = new long[vertexCount];
+        long misses = 0;
+        long triangles = 0;
+        for (int polygonInd = 0; polygonInd < polygons.size(); ++polygonInd) {
+            final int start = offsets.get(polygonInd);
+            final int end = offsets.get(polygonInd + 1);
+            for (int corner = start; corner < end; ++corner) {
+                final int vertexIndex = vertexIndices.get(corner);
+                if (vertexIndex < 0 || vertexIndex >= vertexCount) {
+                    continue;
+                }
+                if (insertedAt[vertexIndex] == 0 || misses - insertedAt[vertexIndex] >= cacheSize) {
+                    insertedAt[vertexIndex] = ++misses;
+                }
+            }
+            if (end - start > 2) {
+                triangles += end - start - 2;
+            }
+        }
+        return triangles == 0 ? 0 : (float) ((double) misses / triangles);
+    }
+
+    /**
+     * Жадное упорядочивание полигонов модели. Углы с индексом вершины вне модели в оценке не участвуют.
+     */
+    private static final class Ordering {
+        private final int polygonCount;
+        // Индексы вершин углов, -1 - вне модели; углы p-го полигона - corners[starts[p]..starts[p + 1])
+        private final int[] starts;
+        private final int[] corners;
+        private final int vertexCount;
+
+        // Еще не выданные полигоны вершины: faces[faceStarts[u]..faceStarts[u] + liveCounts[u])
+        private final int[] faceStarts;
+        private final int[] faces;
+        private final int[] liveCounts;
+
+        private final int[] cachePositions;
+        private final float[] vertexScores;
+        private final float[] polygonScores;
+        private final boolean[] emitted;
+
+        Ordering(PolygonList polygons, int vertexCount) {
+            this.polygonCount = polygons.size();
+            this.vertexCount = vertexCount;
+            starts = new int[polygonCount + 1];
+            polygons.getOffsets().get(0, starts, 0, polygonCount + 1);
+            corners = new int[starts[polygonCount]];
+            polygons.getVertexIndexStorage().get(0, corners, 0, corners.length);
+
+            liveCounts = new int[vertexCount];
+            for (int c = 0; c < corners.length; ++c) {
+                if (corners[c] < 0 || corners[c] >= vertexCount) {
+                    corners[c] = -1;
+                } else {
+                    ++liveCounts[corners[c]];
+                }
+            }
+            faceStarts = new int[vertexCount + 1];
+            for (int u = 0; u < vertexCount; ++u) {
+                faceStarts[u + 1] = faceStarts[u] + liveCounts[u];
+            }
+            faces = new int[faceStarts[vertexCount]];
+            final int[] cursor = Arrays.copyOf(faceStarts, vertexCount);
+            for (int p = 0; p < polygonCount; ++p) {
+                for (int c = starts[p]; c < starts[p + 1]; ++c) {
+                    if (corners[c] >= 0) {
+                        faces[cursor[corners[c]]++] = p;
+                    }
+                }
+            }
+
+            cachePositions = new int[vertexCount];
+            Arrays.fill(cachePositions, -1);
+            vertexScores = new float[vertexCount];
+            for (int u = 0; u < vertexCount; ++u) {
+                vertexScores[u] = score(u);
+            }
+            polygonScores = new float[polygonCount];
+            emitted = new boolean[polygonCount];
+        }
+
+        // Новый порядок полигонов: order[i] - прежний номер i-го
+        int[] order() {
+            final int[] order = new int[polygonCount];
+            int best = 0;
+            for (int p = 0; p < polygonCount; ++p) {
+                polygonScores[p] = polygonScore(p);
+                if (polygonScores[p] > polygonScores[best]) {
+                    best = p;
+                }
+            }
+
+            int maxCorners = 0;
+            for (int p = 0; p < polygonCount; ++p) {
+                maxCorners = Math.max(maxCorners, starts[p + 1] - starts[p]);
+            }
+            int[] cache = new int[SCORED_CACHE_SIZE + maxCorners];
+            int[] newCache = new int[SCORED_CACHE_SIZE + maxCorners];
+            int cacheSize = 0;
+            // Вершины выданного полигона помечаются номером выдачи, чтобы не ставить их в кэш дважды
+            final int[] stamps = new int[vertexCount];
+            int cursor = 0;
+
+            for (int emittedCount = 0; emittedCount < polygonCount; ++emittedCount) {
+                order[emittedCount] = best;
+                emitted[best] = true;
+
+                int newCacheSize = 0;
+                for (int c = starts[best]; c < starts[best + 1]; ++c) {
+                    final int u = corners[c];
+                    if (u < 0) {
+                        continue;
+                    }
+                    removeFace(u, best);
+                    if (stamps[u] != emittedCount + 1) {
+                        stamps[u] = emittedCount + 1;
+                        newCache[newCacheSize++] = u;
+                    }
+                }
+                for (int i = 0; i < cacheSize; ++i) {
+                    if (stamps[cache[i]] != emittedCount + 1) {
+                        newCache[newCacheSize++] = cache[i];
+                    }
+                }
+                // Вершины за пределами кэша вытеснены; их оценки тоже меняются
+                for (int i = 0; i < newCacheSize; ++i) {
+                    final int u = newCache[i];
+                    cachePositions[u] = i < SCORED_CACHE_SIZE ? i : -1;
+                    vertexScores[u] = score(u);
+                }
+
+                best = -1;
+                float bestScore = -1;
+                for (int i = 0; i < newCacheSize; ++i) {
+                    final int u = newCache[i];
+                    for (int k = faceStarts[u]; k < faceStarts[u] + liveCounts[u]; ++k) {
+                        final int p = faces[k];
+                        polygonScores[p] = polygonScore(p);
+                        if (polygonScores[p] > bestScore) {
+                            bestScore = polygonScores[p];
+                            best = p;
+                        }
+                    }
+                }
+
+                final int[] swap = cache;
+                cache = newCache;
+                newCache = swap;
+                cacheSize = newCacheSize < SCORED_CACHE_SIZE ? newCacheSize : SCORED_CACHE_SIZE;
+
+                // Тупик: у вершин кэша полигонов не осталось - берем следующий невыданный по исходному порядку
+                if (best < 0) {
+                    while (cursor < polygonCount && emitted[cursor]) {
+                        ++cursor;
+                    }
+                    best = cursor;
+                }
+            }
+            return order;
+        }
+
+        private void removeFace(int u, int p) {
+            final int start = faceStarts[u];
+            final int last = start + liveCounts[u] - 1;
+            for (int k = start; k <= last; ++k) {
+                if (faces[k] == p) {
+                    faces[k] = faces[last];
+                    faces[last] = p;
+                    --liveCounts[u];
+                    return;
+                }
+            }
+        }
+
+        private float score(int u) {
+            final int live = liveCounts[u];
+            if (live == 0) {
+                return -1;
+            }
+            final float cacheScore = cachePositions[u] < 0 ? 0 : CACHE_SCORES[cachePositions[u]];
+            return cacheScore + VALENCE_SCORES[live < MAX_SCORED_VALENCE ? live : MAX_SCORED_VALENCE];
+        }
+
+        // Средняя оценка вершин: многоугольники не получают преимущества перед треугольниками за число углов
+        private float polygonScore(int p) {
+            float sum = 0;
+            for (int c = starts[p]; c < starts[p + 1]; ++c) {
+                if (corners[c] >= 0) {
+                    sum += vertexScores[corners[c]];
+                }
+            }
+            return starts[p + 1] == starts[p] ? 0 : sum / (starts[p + 1] - starts[p]);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cgvsu.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+class VertexCacheOptimizerTest {
+
+    @Test
+    public void testOptimize01() {
+        // Перестановка: тот же набор полигонов по координатам, текстурам и нормалям, те же размеры списков
+        Model model = TestModels.createShuffledGrid(30, 1);
+        final List<String> before = TestModels.faces(model);
+        VertexCacheOptimizer.optimize(model, null);
+        Assertions.assertEquals(before, TestModels.faces(model));
+        Assertions.assertEquals(31 * 31, model.getVertices().size());
+        Assertions.assertEquals(31 * 31, model.getTextureVertices().size());
+        Assertions.assertEquals(31 * 31, model.getNormals().size());
+    }
+
+    @Test
+    public void testOptimize02() {
+        // Первый полигон начинается с вершины 0: номера выдаются по первому использованию
+        Model model = TestModels.createShuffledGrid(10, 2);
+        VertexCacheOptimizer.optimize(model, null);
+        Assertions.assertEquals(0, model.getPolygons().getVertexIndexStorage().get(0));
+        Assertions.assertEquals(1, model.getPolygons().getVertexIndexStorage().get(1));
+    }
+
+    @Test
+    public void testOptimize03() {
+        // Промахов кэша не больше, чем было, и заметно меньше, чем у перемешанной сетки
+        Model model = TestModels.createShuffledGrid(60, 3);
+        final float before = VertexCacheOptimizer.averageCacheMissRatio(model);
+        VertexCacheOptimizer.optimize(model, null);
+        final float after = VertexCacheOptimizer.averageCacheMissRatio(model);
+        Assertions.assertTrue(after <= before, before + " -> " + after);
+        Assertions.assertTrue(after < 1, "ACMR: " + after);
+    }
+
+    @Test
+    public void testOptimize04() {
+        // Порядок от пула не зависит
+        Model sequential = TestModels.createShuffledGrid(300, 4);
+        Model pooled = TestModels.createShuffledGrid(300, 4);
+        VertexCacheOptimizer.optimize(sequential, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            VertexCacheOptimizer.optimize(pooled, pool);
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertTrue(TestModels.sameModel(sequential, pooled));
+    }
+
+    @Test
+    public void testAverageCacheMissRatio01() {
+        // Один треугольник: три промаха; кэш меньше 1 не бывает
+        Model model = new Model();
+        model.getVertices().add(0, 0, 0);
+        model.getVertices().add(1, 0, 0);
+        model.getVertices().add(0, 1, 0);
+        model.getPolygons().add(new int[]{0, 1, 2}, null, null, 0, 3);
+        Assertions.assertEquals(3, VertexCacheOptimizer.averageCacheMissRatio(model));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VertexCacheOptimizer.averageCacheMissRatio(model, 0));
+    }
+}
@@ -0,0 +1,131 @@
+package com.cgvsu.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Для каждой вершины - полигоны, в которые она входит, в сжатом построчном виде (CSR):
+ * faces[offsets[v]..offsets[v + 1]) - номера полигонов вершины v по возрастанию.
+ * Полигон, в котором вершина встречается дважды, записан дважды - как и при обходе углов.
+ * Строится за два прохода по углам: подсчет и раскладка. Углы со ссылками за пределы вершин пропускаются.
+ * Обычно берется готовой из Model.getVertexFaceAdjacency(), где она хранится до изменения модели.
+ */
+public final class VertexFaceAdjacency {
+    private final int[] offsets;
+    private final int[] faces;
+
+    private VertexFaceAdjacency(int[] offsets, int[] faces) {
+        this.offsets = offsets;
+        this.faces = faces;
+    }
+
+    public static VertexFaceAdjacency build(PolygonList polygons, int vertexCount) {
+        return build(polygons, vertexCount, null);
+    }
+
+    /**
+     * Сборка в пуле pool (null - в текущем потоке). Результат от пула не зависит.
+     */
+    public static VertexFaceAdjacency build(PolygonList polygons, int vertexCount, ForkJoinPool pool) {
+        if (ParallelRanges.isParallel(pool, polygons.size())) {
+            return buildParallel(polygons, vertexCount, pool);
+        }
+        final IntStorage polygonOffsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final int polygonCount = polygons.size();
+        final int cornerCount = polygons.getCornerCount();
+
+        // Сначала считаем углы каждой вершины, затем превращаем счетчики в смещения
+        final int[] offsets = new int[vertexCount + 1];
+        for (int corner = 0; corner < cornerCount; ++corner) {
+            final int vertexIndex = vertexIndices.get(corner);
+            if (vertexIndex >= 0 && vertexIndex < vertexCount) {
+                ++offsets[vertexIndex + 1];
+            }
+        }
+        for (int i = 0; i < vertexCount; ++i) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        final int[] faces = new int[offsets[vertexCount]];
+        final int[] cursor = new int[vertexCount];
+        System.arraycopy(offsets, 0, cursor, 0, vertexCount);
+        for (int polygonInd = 0; polygonInd < polygonCount; ++polygonInd) {
+            final int end = polygonOffsets.get(polygonInd + 1);
+            for (int corner = polygonOffsets.get(polygonInd); corner < end; ++corner) {
+                final int vertexIndex = vertexIndices.get(corner);
+                if (vertexIndex >= 0 && vertexIndex < vertexCount) {
+                    faces[cursor[vertexIndex]++] = polygonInd;
+                }
+            }
+        }
+        return new VertexFaceAdjacency(offsets, faces);
+    }
+
+    // Параллельно: подсчет и раскладка по диапазонам полигонов с атомарными счетчиками, затем
+    // списки вершин сортируются - порядок раскладки между потоками произвольный, а результат должен быть как в одном
+    private static VertexFaceAdjacency buildParallel(PolygonList polygons, int vertexCount, ForkJoinPool pool) {
+        final IntStorage polygonOffsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+
+        final AtomicIntegerArray counts = new AtomicIntegerArray(vertexCount);
+        ParallelRanges.forEach(pool, polygons.size(), (from, to) -> {
+            final int end = polygonOffsets.get(to);
+            for (int corner = polygonOffsets.get(from); corner < end; ++corner) {
+                final int vertexIndex = vertexIndices.get(corner);
+                if (vertexIndex >= 0 && vertexIndex < vertexCount) {
+                    counts.getAndIncrement(vertexIndex);
+                }
+            }
+        });
+
+        final int[] offsets = new int[vertexCount + 1];
+        for (int i = 0; i < vertexCount; ++i) {
+            offsets[i + 1] = offsets[i] + counts.get(i);
+            // Дальше счетчик служит курсором раскладки
+            counts.set(i, offsets[i]);
+        }
+
+        final int[] faces = new int[offsets[vertexCount]];
+        ParallelRanges.forEach(pool, polygons.size(), (from, to) -> {
+            for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                final int end = polygonOffsets.get(polygonInd + 1);
+                for (int corner = polygonOffsets.get(polygonInd); corner < end; ++corner) {
+                    final int vertexIndex = vertexIndices.get(corner);
+                    if (vertexIndex >= 0 && vertexIndex < vertexCount) {
+                        faces[counts.getAndIncrement(vertexIndex)] = polygonInd;
+                    }
+                }
+            }
+        });
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int v = from; v < to; ++v) {
+                Arrays.sort(faces, offsets[v], offsets[v + 1]);
+            }
+        });
+        return new VertexFaceAdjacency(offsets, faces);
+    }
+
+    public int getVertexCount() {
+        return offsets.length - 1;
+    }
+
+    // Прямой доступ для горячих циклов: полигоны вершины v - faces[offsets[v]..offsets[v + 1])
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getFaces() {
+        return faces;
+    }
+
+    public int getFaceCount(int vertexIndex) {
+        return offsets[vertexIndex + 1] - offsets[vertexIndex];
+    }
+
+    public int getFace(int vertexIndex, int i) {
+        return faces[offsets[vertexIndex] + i];
+    }
+}
@@ -0,0 +1,121 @@
+package com.cgvsu.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Соседи вершин по ребрам полигонов в сжатом построчном виде (CSR):
+ * neighbours[offsets[v]..offsets[v + 1]) - вершины, соединенные с v ребром, по возрастанию и без повторов.
+ * Строится по VertexFaceAdjacency: у каждого полигона вершины берутся соседние по обходу углы.
+ * Обычно берется готовой из Model.getVertexNeighbours().
+ */
+public final class VertexNeighbours {
+    private final int[] offsets;
+    private final int[] neighbours;
+
+    private VertexNeighbours(int[] offsets, int[] neighbours) {
+        this.offsets = offsets;
+        this.neighbours = neighbours;
+    }
+
+    /**
+     * Сборка в пуле pool (null - в текущем потоке): каждая вершина обрабатывается независимо,
+     * сначала считаются размеры списков, затем они заполняются.
+     */
+    public static VertexNeighbours build(PolygonList polygons, VertexFaceAdjacency adjacency, ForkJoinPool pool) {
+        final int vertexCount = adjacency.getVertexCount();
+        final int[] counts = new int[vertexCount + 1];
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            int[] buffer = new int[16];
+            for (int v = from; v < to; ++v) {
+                buffer = collect(polygons, adjacency, v, buffer);
+                counts[v + 1] = buffer[0];
+            }
+        });
+
+        final int[] offsets = counts;
+        for (int i = 0; i < vertexCount; ++i) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        final int[] neighbours = new int[offsets[vertexCount]];
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            int[] buffer = new int[16];
+            for (int v = from; v < to; ++v) {
+                buffer = collect(polygons, adjacency, v, buffer);
+                System.arraycopy(buffer, 1, neighbours, offsets[v], buffer[0]);
+            }
+        });
+        return new VertexNeighbours(offsets, neighbours);
+    }
+
+    // Соседи v в buffer[1..buffer[0]], отсортированные и без повторов; при нехватке места buffer растет
+    private static int[] collect(PolygonList polygons, VertexFaceAdjacency adjacency, int v, int[] buffer) {
+        final IntStorage polygonOffsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final int vertexCount = adjacency.getVertexCount();
+        final int[] faceOffsets = adjacency.getOffsets();
+        final int[] faces = adjacency.getFaces();
+
+        int count = 0;
+        int previousFace = -1;
+        for (int i = faceOffsets[v]; i < faceOffsets[v + 1]; ++i) {
+            final int face = faces[i];
+            // Полигон с повторной вершиной записан дважды, а его углы нужно обойти один раз
+            if (face == previousFace) {
+                continue;
+            }
+            previousFace = face;
+            final int start = polygonOffsets.get(face);
+            final int end = polygonOffsets.get(face + 1);
+            for (int corner = start; corner < end; ++corner) {
+                if (vertexIndices.get(corner) != v) {
+                    continue;
+                }
+                final int previous = vertexIndices.get(corner == start ? end - 1 : corner - 1);
+                final int next = vertexIndices.get(corner == end - 1 ? start : corner + 1);
+                if (buffer.length < count + 3) {
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+                if (previous != v && previous >= 0 && previous < vertexCount) {
+                    buffer[1 + count++] = previous;
+                }
+                if (next != v && next >= 0 && next < vertexCount) {
+                    buffer[1 + count++] = next;
+                }
+            }
+        }
+
+        Arrays.sort(buffer, 1, 1 + count);
+        int unique = 0;
+        for (int i = 1; i <= count; ++i) {
+            if (unique == 0 || buffer[unique] != buffer[i]) {
+                buffer[++unique] = buffer[i];
+            }
+        }
+        buffer[0] = unique;
+        return buffer;
+    }
+
+    public int getVertexCount() {
+        return offsets.length - 1;
+    }
+
+    // Прямой доступ для горячих циклов: соседи вершины v - neighbours[offsets[v]..offsets[v + 1])
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getNeighbours() {
+        return neighbours;
+    }
+
+    public int getNeighbourCount(int vertexIndex) {
+        return offsets[vertexIndex + 1] - offsets[vertexIndex];
+    }
+
+    public int getNeighbour(int vertexIndex, int i) {
+        return neighbours[offsets[vertexIndex] + i];
+    }
+}
@@ -1,129 +1,142 @@
 package com.cgvsu.model;
 
-import com.cgvsu.math.Vector3f;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.BitSet;
 import java.util.List;
 
 public class VertexRemover {
     /**
-     *      ,   .
+     * Удаляет указанные вершины и все полигоны, которые их содержат.
+     * Номера вершин - как в OBJ, с единицы; повторы и номера вне модели пропускаются.
      */
     public static void removeVertices(Model model, List<Integer> vertexIndicesToDelete) {
         if (model == null || vertexIndicesToDelete == null || vertexIndicesToDelete.isEmpty()) {
             return;
         }
 
-        //  
-        List<Integer> uniqueIndices = new ArrayList<>(new LinkedHashSet<>(vertexIndicesToDelete));
-
-        //    ,   
-        List<Polygon> polygonsToRemove = new ArrayList<>();
-        for (Polygon polygon : model.getPolygons()) {
-            for (int vertexIndex : polygon.getVertexIndices()) {
-                if (uniqueIndices.contains(vertexIndex)) {
-                    polygonsToRemove.add(polygon);
-                    break; //   ,   
-                }
+        final int vertexCount = model.getVertices().size();
+        final BitSet deleted = new BitSet(vertexCount);
+        for (int objIndex : vertexIndicesToDelete) {
+            final int internalIndex = objIndex - 1;
+            if (internalIndex >= 0 && internalIndex < vertexCount) {
+                deleted.set(internalIndex);
             }
         }
-        model.getPolygons().removeAll(polygonsToRemove);
+        removeVertices(model, deleted);
+    }
 
-        //   
-        List<Integer> sortedIndices = new ArrayList<>(uniqueIndices);
-        sortedIndices.sort(Collections.reverseOrder());
-        for (int objIndex : sortedIndices) {
-            int internalIndex = objIndex - 1;
-            if (internalIndex >= 0 && internalIndex < model.getVertices().size()) {
-                model.getVertices().remove(internalIndex);
+    /**
+     * То же для вершин, отмеченных в deleted (номера с нуля, как в списках модели).
+     * Работает за O(V + F): вершины и полигоны сжимаются за один проход, индексы пересчитываются по таблице.
+     */
+    public static void removeVertices(Model model, BitSet deleted) {
+        final int vertexCount = model.getVertices().size();
+        final PolygonList polygons = model.getPolygons();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+
+        // Находим полигоны, содержащие удаляемые вершины
+        final BitSet removedPolygons = new BitSet(polygons.size());
+        final int firstDeleted = deleted.nextSetBit(0);
+        final VertexFaceAdjacency adjacency = model.cachedVertexFaceAdjacency();
+        if (adjacency != null) {
+            // Таблица смежности уже построена - берем полигоны удаляемых вершин из нее, без прохода по углам
+            for (int v = firstDeleted; v >= 0 && v < vertexCount; v = deleted.nextSetBit(v + 1)) {
+                for (int i = adjacency.getOffsets()[v]; i < adjacency.getOffsets()[v + 1]; ++i) {
+                    removedPolygons.set(adjacency.getFaces()[i]);
+                }
+            }
+        } else if (firstDeleted >= 0 && firstDeleted < vertexCount) {
+            for (int polygonInd = 0; polygonInd < polygons.size(); ++polygonInd) {
+                final int end = offsets.get(polygonInd + 1);
+                for (int corner = offsets.get(polygonInd); corner < end; ++corner) {
+                    final int vertexIndex = vertexIndices.get(corner);
+                    if (vertexIndex >= 0 && vertexIndex < vertexCount && deleted.get(vertexIndex)) {
+                        removedPolygons.set(polygonInd);
+                        break;
+                    }
+                }
             }
         }
+        // Нормали меняются только у оставшихся вершин удаленных полигонов
+        final BitSet affected = PolygonsRemover.collectFaceVertices(polygons, removedPolygons);
+        affected.andNot(deleted);
+        final FaceBvh bvh = model.cachedFaceBvh();
+        final int polygonCount = polygons.size();
+        if (!removedPolygons.isEmpty()) {
+            polygons.retain(removedPolygons);
+        }
 
-        reindexPolygons(model, uniqueIndices);
-        recalculateNormals(model);
+        final int[] remap = compactVertices(model, deleted);
+        PolygonsRemover.updateFaceBvh(model, bvh, removedPolygons, polygonCount);
+        PolygonsRemover.recalculateNormals(model, remapVertices(affected, remap));
     }
 
     /**
-     *   ,      .
+     * Удаляет отмеченные вершины, на которые уже не ссылается ни один полигон, и переиндексирует полигоны.
+     * Один проход по вершинам и один по углам: новый номер берется из таблицы префиксных сумм.
+     * Нормали, посчитанные по вершинам (Model.hasVertexNormals()), сжимаются и переиндексируются вместе с вершинами.
+     * Возвращает таблицу новых номеров или null, если удалять нечего.
      */
-    public static void recalculateNormals(Model model) {
-        //   
-        model.getNormals().clear();
-
-        //         
-        List<Vector3f> vertexNormalSums = new ArrayList<>();
-        for (int i = 0; i < model.getVertices().size(); i++) {
-            vertexNormalSums.add(new Vector3f(0, 0, 0));
+    static int[] compactVertices(Model model, BitSet deleted) {
+        final Vector3fList vertices = model.getVertices();
+        final int vertexCount = vertices.size();
+
+        // remap[i] - число оставшихся вершин перед i, то есть новый номер вершины i, если она остается
+        final int[] remap = new int[vertexCount];
+        int next = 0;
+        for (int i = 0; i < vertexCount; ++i) {
+            remap[i] = next;
+            if (!deleted.get(i)) {
+                ++next;
+            }
         }
+        final int removedCount = vertexCount - next;
+        if (removedCount == 0) {
+            return null;
+        }
+        vertices.retain(deleted);
 
-        //           
-        for (Polygon polygon : model.getPolygons()) {
-            List<Integer> vertexIndices = polygon.getVertexIndices();
-            if (vertexIndices.size() < 3) continue; //   
-
-            //   
-            Vector3f v0 = model.getVertices().get(vertexIndices.get(0) - 1);
-            Vector3f v1 = model.getVertices().get(vertexIndices.get(1) - 1);
-            Vector3f v2 = model.getVertices().get(vertexIndices.get(2) - 1);
-
-            //      
-            Vector3f edge1 = v1.sub(v0);  // : subtract(v0)
-            Vector3f edge2 = v2.sub(v0);  // : subtract(v0)
-            Vector3f faceNormal = edge1.cross(edge2).normalizeV();  // : normalized()
+        final PolygonList polygons = model.getPolygons();
+        remapCorners(polygons.getVertexIndexStorage(), polygons.getCornerCount(), remap, removedCount);
+        if (model.hasVertexNormals() && model.getNormals().size() == vertexCount) {
+            model.getNormals().retain(deleted);
+            remapCorners(polygons.getNormalIndexStorage(), polygons.getCornerCount(), remap, removedCount);
+        }
+        polygons.markModified();
+        return remap;
+    }
 
-            //       
-            for (int vertexObjIndex : vertexIndices) {
-                int internalIndex = vertexObjIndex - 1;
-                Vector3f currentSum = vertexNormalSums.get(internalIndex);
-                vertexNormalSums.set(internalIndex, currentSum.add(faceNormal));  // add() 
+    private static void remapCorners(IntStorage indices, int cornerCount, int[] remap, int removedCount) {
+        if (indices == null) {
+            return;
+        }
+        for (int corner = 0; corner < cornerCount; ++corner) {
+            final int index = indices.get(corner);
+            if (index >= remap.length) {
+                // Ссылка за пределы модели сдвигается на число удаленных вершин, как и раньше
+                indices.set(corner, index - removedCount);
+            } else if (index >= 0) {
+                indices.set(corner, remap[index]);
             }
         }
+    }
 
-        //  ,     ,    
-        for (Vector3f sum : vertexNormalSums) {
-            model.getNormals().add(sum.normalizeV());  // : normalized()
+    // Новые номера оставшихся вершин из набора; remap == null - номера не менялись
+    static BitSet remapVertices(BitSet vertices, int[] remap) {
+        if (remap == null) {
+            return vertices;
         }
-
-        //      (  1:1  )
-        for (Polygon polygon : model.getPolygons()) {
-            polygon.setNormalIndices(new ArrayList<>(polygon.getVertexIndices()));
+        final BitSet result = new BitSet(remap.length);
+        for (int v = vertices.nextSetBit(0); v >= 0 && v < remap.length; v = vertices.nextSetBit(v + 1)) {
+            result.set(remap[v]);
         }
+        return result;
     }
 
     /**
-     *        .
+     * Пересчитывает нормали модели, усредняя нормали граней для каждой вершины.
      */
-    private static void reindexPolygons(Model model, List<Integer> deletedObjIndices) {
-        for (Polygon polygon : model.getPolygons()) {
-            //  
-            ArrayList<Integer> newVertexIndices = new ArrayList<>();
-            for (int oldObjIndex : polygon.getVertexIndices()) {
-                int shift = 0;
-                for (int deletedIndex : deletedObjIndices) {
-                    if (oldObjIndex > deletedIndex) {
-                        shift++;
-                    }
-                }
-                newVertexIndices.add(oldObjIndex - shift);
-            }
-            polygon.setVertexIndices(newVertexIndices);
-
-            //   (  )
-            if (polygon.getNormalIndices() != null && !polygon.getNormalIndices().isEmpty()) {
-                ArrayList<Integer> newNormalIndices = new ArrayList<>();
-                for (int oldObjIndex : polygon.getNormalIndices()) {
-                    int shift = 0;
-                    for (int deletedIndex : deletedObjIndices) {
-                        if (oldObjIndex > deletedIndex) {
-                            shift++;
-                        }
-                    }
-                    newNormalIndices.add(oldObjIndex - shift);
-                }
-                polygon.setNormalIndices(newNormalIndices);
-            }
-        }
+    public static void recalculateNormals(Model model) {
+        PolygonsRemover.recalculateNormals(model);
     }
-}
\ No newline at end of file
+}
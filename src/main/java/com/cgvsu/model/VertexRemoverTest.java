@@ -0,0 +1,130 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+class VertexRemoverTest {
+
+    // Сетка 3 x 2 вершин в плоскости z = 0:
+    // 3 4 5
+    // 0 1 2
+    // и полигоны: четырехугольник 0 1 4 3, треугольники 1 2 5 и 1 5 4
+    private static Model createModel() {
+        Model model = new Model();
+        for (int y = 0; y < 2; ++y) {
+            for (int x = 0; x < 3; ++x) {
+                model.getVertices().add(new Vector3f(x, y, 0));
+            }
+        }
+        PolygonList polygons = model.getPolygons();
+        polygons.add(new int[]{0, 1, 4, 3}, null, null, 0, 4);
+        polygons.add(new int[]{1, 2, 5}, null, null, 0, 3);
+        polygons.add(new int[]{1, 5, 4}, null, null, 0, 3);
+        return model;
+    }
+
+    private static int[] corners(IntStorage indices, PolygonList polygons, int polygonInd) {
+        int[] result = new int[polygons.getVertexCount(polygonInd)];
+        indices.get(polygons.getOffsets().get(polygonInd), result, 0, result.length);
+        return result;
+    }
+
+    private static void assertVertexX(Model model, float... expectedX) {
+        Assertions.assertEquals(expectedX.length, model.getVertices().size());
+        for (int i = 0; i < expectedX.length; ++i) {
+            Assertions.assertEquals(expectedX[i], model.getVertices().get(i).getX());
+        }
+    }
+
+    // Удалена вершина 2 (с нуля): вместе с ней треугольник 1 2 5, номера вершин после нее сдвигаются
+    private static void assertVertex2Removed(Model model) {
+        assertVertexX(model, 0, 1, 0, 1, 2);
+        PolygonList polygons = model.getPolygons();
+        Assertions.assertEquals(2, polygons.size());
+        Assertions.assertArrayEquals(new int[]{0, 1, 3, 2}, corners(polygons.getVertexIndexStorage(), polygons, 0));
+        Assertions.assertArrayEquals(new int[]{1, 4, 3}, corners(polygons.getVertexIndexStorage(), polygons, 1));
+    }
+
+    @Test
+    public void testRemoveVertices01() {
+        Model model = createModel();
+        VertexRemover.removeVertices(model, List.of(3));
+        assertVertex2Removed(model);
+    }
+
+    @Test
+    public void testRemoveVertices02() {
+        // Номера с единицы: 1 - это вершина 0, а не 1
+        Model model = createModel();
+        VertexRemover.removeVertices(model, List.of(1));
+        assertVertexX(model, 1, 2, 0, 1, 2);
+        PolygonList polygons = model.getPolygons();
+        Assertions.assertEquals(2, polygons.size());
+        Assertions.assertArrayEquals(new int[]{0, 1, 4}, corners(polygons.getVertexIndexStorage(), polygons, 0));
+        Assertions.assertArrayEquals(new int[]{0, 4, 3}, corners(polygons.getVertexIndexStorage(), polygons, 1));
+    }
+
+    @Test
+    public void testRemoveVertices03() {
+        // Повторы и номера вне модели пропускаются
+        Model model = createModel();
+        VertexRemover.removeVertices(model, Arrays.asList(3, 3, 0, 7, -1));
+        assertVertex2Removed(model);
+    }
+
+    @Test
+    public void testRemoveVertices04() {
+        Model model = createModel();
+        VertexRemover.removeVertices(model, List.of(0, 7));
+        assertVertexX(model, 0, 1, 2, 0, 1, 2);
+        Assertions.assertEquals(3, model.getPolygons().size());
+    }
+
+    @Test
+    public void testRemoveVerticesBitSet01() {
+        Model model = createModel();
+        BitSet deleted = new BitSet();
+        deleted.set(2);
+        VertexRemover.removeVertices(model, deleted);
+        assertVertex2Removed(model);
+    }
+
+    @Test
+    public void testRemoveVerticesBitSet02() {
+        // Вершина 1 есть во всех полигонах: остаются вершины без полигонов
+        Model model = createModel();
+        BitSet deleted = new BitSet();
+        deleted.set(1);
+        deleted.set(10);
+        VertexRemover.removeVertices(model, deleted);
+        assertVertexX(model, 0, 2, 0, 1, 2);
+        Assertions.assertEquals(0, model.getPolygons().size());
+    }
+
+    @Test
+    public void testRemoveVerticesNormals01() {
+        // Нормали по вершинам удаляются и переиндексируются вместе с вершинами
+        Model model = createModel();
+        NormalCalculator.recalculateNormals(model);
+        Assertions.assertTrue(model.hasVertexNormals());
+        VertexRemover.removeVertices(model, List.of(3));
+        assertVertex2Removed(model);
+
+        Assertions.assertTrue(model.hasVertexNormals());
+        Assertions.assertEquals(model.getVertices().size(), model.getNormals().size());
+        PolygonList polygons = model.getPolygons();
+        for (int polygonInd = 0; polygonInd < polygons.size(); ++polygonInd) {
+            Assertions.assertArrayEquals(
+                    corners(polygons.getVertexIndexStorage(), polygons, polygonInd),
+                    corners(polygons.getNormalIndexStorage(), polygons, polygonInd));
+        }
+        for (Vector3f normal : model.getNormals()) {
+            Assertions.assertEquals(1, Math.abs(normal.getZ()), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.cgvsu.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Сварка вершин: вершины ближе tolerance друг к другу сливаются в одну, после чего из модели уходят
+ * вырожденные полигоны (меньше трех разных вершин) и повторы полигонов: те же вершины в том же порядке обхода,
+ * начиная с любой. Полигон с обратным обходом - обратная сторона тонкой двусторонней оболочки, он остается.
+ * Вершины раскладываются по решетке с ячейкой не меньше 2 * tolerance, так что соседи вершины лежат
+ * не больше чем в 8 ячейках вокруг нее (при tolerance = 0 - в ее же ячейке). Решетка - хеш-таблица с открытой адресацией на массивах long и int (без объектов
+ * на ключ), ячейки заполняются параллельно через CAS, а вершины ячейки связаны в список по массиву next.
+ * Вершина сливается с вершиной наименьшего номера в пределах tolerance (и дальше по цепочке), поэтому
+ * результат не зависит от числа потоков. Текстурные вершины и нормали из файла не трогаются; нормали,
+ * посчитанные по вершинам (Model.hasVertexNormals()), пересчитываются.
+ */
+public final class VertexWelder {
+    // Ячеек решетки на ось не больше 2^CELL_BITS: три координаты ячейки упаковываются в один long
+    private static final int CELL_BITS = 21;
+    private static final int MAX_CELL = (1 << CELL_BITS) - 1;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private VertexWelder() {
+    }
+
+    /**
+     * Сварка в общем пуле fork/join, см. weld(Model, float, ForkJoinPool).
+     */
+    public static void weld(Model model, float tolerance) {
+        weld(model, tolerance, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Сливает вершины model ближе tolerance (0 - только совпадающие) и удаляет вырожденные и повторные
+     * полигоны. pool == null - в текущем потоке.
+     */
+    public static void weld(Model model, float tolerance, ForkJoinPool pool) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Weld tolerance must be non-negative: " + tolerance);
+        }
+        final int vertexCount = model.getVertices().size();
+        final int[] representatives = findRepresentatives(model.getVertices(), tolerance, pool);
+
+        // Слитые вершины - те, у кого представитель не они сами; номера в углах меняются на представителей
+        final long[] mergedWords = new long[(vertexCount + 63) >>> 6];
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int v = from; v < to; ++v) {
+                if (representatives[v] != v) {
+                    mergedWords[v >>> 6] |= 1L << v;
+                }
+            }
+        });
+        final BitSet merged = BitSet.valueOf(mergedWords);
+        final PolygonList polygons = model.getPolygons();
+        final boolean vertexNormals = model.hasVertexNormals() && model.getNormals().size() == vertexCount;
+        if (!merged.isEmpty()) {
+            remapCorners(polygons.getVertexIndexStorage(), polygons.getCornerCount(), representatives, pool);
+            if (vertexNormals) {
+                remapCorners(polygons.getNormalIndexStorage(), polygons.getCornerCount(), representatives, pool);
+            }
+        }
+
+        final BitSet removedCorners = new BitSet();
+        final BitSet removedPolygons = findRemovedPolygons(polygons, removedCorners, pool);
+        if (!removedPolygons.isEmpty() || !removedCorners.isEmpty()) {
+            if (removedCorners.isEmpty()) {
+                polygons.retain(removedPolygons);
+            } else {
+                polygons.retain(removedPolygons, removedCorners);
+            }
+        } else if (!merged.isEmpty()) {
+            polygons.markModified();
+        }
+        if (merged.isEmpty() && removedPolygons.isEmpty() && removedCorners.isEmpty()) {
+            return;
+        }
+
+        // На слитые вершины больше никто не ссылается: сжимаем их вместе с нормалями по вершинам
+        VertexRemover.compactVertices(model, merged);
+        if (vertexNormals) {
+            NormalCalculator.recalculateNormals(model, pool);
+        }
+    }
+
+    // representatives[v] - вершина наименьшего номера, с которой сливается v (v, если не сливается)
+    private static int[] findRepresentatives(Vector3fList vertices, float tolerance, ForkJoinPool pool) {
+        final FloatStorage positions = vertices.getStorage();
+        final int vertexCount = vertices.size();
+        final int[] representatives = new int[vertexCount];
+        if (vertexCount == 0) {
+            return representatives;
+        }
+
+        final float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float extent = 0;
+        for (int axis = 0; axis < 3; ++axis) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = axis; i < 3 * vertexCount; i += 3) {
+                final float value = positions.get(i);
+                if (value < min[axis]) {
+                    min[axis] = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            }
+            if (max - min[axis] > extent) {
+                extent = max - min[axis];
+            }
+        }
+        // Ячейка не меньше 2 * tolerance - тогда куб tolerance вокруг вершины задевает не больше двух ячеек по оси,
+        // и не меньше extent / MAX_CELL - иначе координаты ячейки не уместятся в CELL_BITS
+        double cellSize = Math.max(2.0 * tolerance, (double) extent / MAX_CELL);
+        if (cellSize == 0) {
+            cellSize = 1;
+        }
+        final double inverseCell = 1 / cellSize;
+
+        final long[] cells = new long[vertexCount];
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int v = from; v < to; ++v) {
+                cells[v] = packCell(
+                        cellCoordinate(positions.get(3 * v), min[0], inverseCell),
+                        cellCoordinate(positions.get(3 * v + 1), min[1], inverseCell),
+                        cellCoordinate(positions.get(3 * v + 2), min[2], inverseCell));
+            }
+        });
+
+        // Таблица ячеек: ключ ячейки + 1 (0 - пусто) и первая вершина ее списка
+        final int capacity = tableCapacity(vertexCount);
+        final int mask = capacity - 1;
+        final long[] keys = new long[capacity];
+        final int[] heads = new int[capacity];
+        Arrays.fill(heads, -1);
+        final int[] next = new int[vertexCount];
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int v = from; v < to; ++v) {
+                final long key = cells[v] + 1;
+                int slot = slotOf(key, mask);
+                while (true) {
+                    final long current = (long) LONGS.getVolatile(keys, slot);
+                    if (current == key) {
+                        break;
+                    }
+                    if (current == 0) {
+                        if (LONGS.compareAndSet(keys, slot, 0L, key)) {
+                            break;
+                        }
+                        // Ячейку заняли одновременно с нами - перечитываем ту же
+                        continue;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                next[v] = (int) INTS.getAndSet(heads, slot, v);
+            }
+        });
+
+        final float toleranceSquared = tolerance * tolerance;
+        ParallelRanges.forEach(pool, vertexCount, (from, to) -> {
+            for (int v = from; v < to; ++v) {
+                final float x = positions.get(3 * v);
+                final float y = positions.get(3 * v + 1);
+                final float z = positions.get(3 * v + 2);
+                // Ячейки, которые задевает куб со стороной 2 * tolerance вокруг вершины
+                final int fromX = cellCoordinate((double) x - tolerance, min[0], inverseCell);
+                final int toX = cellCoordinate((double) x + tolerance, min[0], inverseCell);
+                final int fromY = cellCoordinate((double) y - tolerance, min[1], inverseCell);
+                final int toY = cellCoordinate((double) y + tolerance, min[1], inverseCell);
+                final int fromZ = cellCoordinate((double) z - tolerance, min[2], inverseCell);
+                final int toZ = cellCoordinate((double) z + tolerance, min[2], inverseCell);
+                int best = v;
+                for (int nx = fromX; nx <= toX; ++nx) {
+                    for (int ny = fromY; ny <= toY; ++ny) {
+                        for (int nz = fromZ; nz <= toZ; ++nz) {
+                            final int slot = findSlot(keys, mask, packCell(nx, ny, nz) + 1);
+                            if (slot < 0) {
+                                continue;
+                            }
+                            for (int u = heads[slot]; u >= 0; u = next[u]) {
+                                if (u >= best) {
+                                    continue;
+                                }
+                                final float dx = positions.get(3 * u) - x;
+                                final float dy = positions.get(3 * u + 1) - y;
+                                final float dz = positions.get(3 * u + 2) - z;
+                                if (dx * dx + dy * dy + dz * dz <= toleranceSquared) {
+                                    best = u;
+                                }
+                            }
+                        }
+                    }
+                }
+                representatives[v] = best;
+            }
+        });
+        // Представитель всегда с меньшим номером и уже разрешен: цепочки сворачиваются одним проходом
+        for (int v = 0; v < vertexCount; ++v) {
+            representatives[v] = representatives[representatives[v]];
+        }
+        return representatives;
+    }
+
+    // Считается в double: во float разность с min округлялась бы сильнее, чем бывает tolerance
+    private static int cellCoordinate(double value, float min, double inverseCell) {
+        final double coordinate = (value - min) * inverseCell;
+        if (coordinate < 0) {
+            return 0;
+        }
+        return coordinate > MAX_CELL ? MAX_CELL : (int) coordinate;
+    }
+
+    // Степень двойки, при которой таблица заполнена не больше чем на 2/3, даже если все ключи разные
+    private static int tableCapacity(int count) {
+        return Integer.highestOneBit(Math.max(count + (count >>> 1), 1)) << 1;
+    }
+
+    private static long packCell(int x, int y, int z) {
+        return x | ((long) y << CELL_BITS) | ((long) z << (2 * CELL_BITS));
+    }
+
+    // Перемешивание Фибоначчи: соседние ячейки не ложатся в соседние слоты
+    private static int slotOf(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static int findSlot(long[] keys, int mask, long key) {
+        int slot = slotOf(key, mask);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static void remapCorners(IntStorage indices, int cornerCount, int[] map, ForkJoinPool pool) {
+        if (indices == null) {
+            return;
+        }
+        ParallelRanges.forEach(pool, cornerCount, (from, to) -> {
+            for (int corner = from; corner < to; ++corner) {
+                final int index = indices.get(corner);
+                if (index >= 0 && index < map.length) {
+                    indices.set(corner, map[index]);
+                }
+            }
+        });
+    }
+
+    // Полигоны, которые нужно удалить: вырожденные и повторы (остается повтор с наименьшим номером).
+    // В removedCorners - углы, повторяющие предыдущий угол своего полигона
+    private static BitSet findRemovedPolygons(
+            PolygonList polygons, BitSet removedCorners, ForkJoinPool pool) {
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final int polygonCount = polygons.size();
+        final long[] removedWords = new long[(polygonCount + 63) >>> 6];
+        // Диапазоны полигонов выровнены по 64, а диапазоны их углов - нет, поэтому слова углов пишутся атомарно
+        final long[] cornerWords = new long[(polygons.getCornerCount() + 63) >>> 6];
+
+        ParallelRanges.forEach(pool, polygonCount, (from, to) -> {
+            for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                final int start = offsets.get(polygonInd);
+                final int end = offsets.get(polygonInd + 1);
+                int kept = 0;
+                int previous = end > start ? vertexIndices.get(end - 1) : -1;
+                for (int corner = start; corner < end; ++corner) {
+                    final int vertexIndex = vertexIndices.get(corner);
+                    if (vertexIndex == previous) {
+                        LONGS.getAndBitwiseOr(cornerWords, corner >>> 6, 1L << corner);
+                    } else {
+                        ++kept;
+                    }
+                    previous = vertexIndex;
+                }
+                if (kept < 3) {
+                    removedWords[polygonInd >>> 6] |= 1L << polygonInd;
+                }
+            }
+        });
+
+        // Вырожденные полигоны, у которых углы не повторяются подряд (a, b, a, b), и повторы: таблица
+        // по обходу полигона (см. canonicalCycle) хранит номер + 1 наименьшего из полигонов с этим обходом
+        final int capacity = tableCapacity(polygonCount);
+        final int mask = capacity - 1;
+        final int[] table = new int[capacity];
+        final int[] slots = new int[polygonCount];
+        ParallelRanges.forEach(pool, polygonCount, (from, to) -> {
+            int[] buffer = new int[8];
+            int[] own = new int[8];
+            int[] other = new int[8];
+            for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                if ((removedWords[polygonInd >>> 6] & (1L << polygonInd)) != 0) {
+                    continue;
+                }
+                final int count = offsets.get(polygonInd + 1) - offsets.get(polygonInd);
+                if (own.length < count) {
+                    own = new int[2 * count];
+                    buffer = new int[2 * count];
+                }
+                if (sortedVertices(offsets, vertexIndices, polygonInd, buffer) < 3) {
+                    removedWords[polygonInd >>> 6] |= 1L << polygonInd;
+                    continue;
+                }
+                final int length = canonicalCycle(offsets, vertexIndices, polygonInd, buffer, own);
+                int slot = (int) ((hash(own, length) * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+                while (true) {
+                    final int current = (int) INTS.getVolatile(table, slot);
+                    if (current == 0) {
+                        if (INTS.compareAndSet(table, slot, 0, polygonInd + 1)) {
+                            break;
+                        }
+                        continue;
+                    }
+                    final int otherCount = offsets.get(current) - offsets.get(current - 1);
+                    if (other.length < otherCount) {
+                        other = new int[2 * otherCount];
+                    }
+                    if (buffer.length < otherCount) {
+                        buffer = new int[2 * otherCount];
+                    }
+                    if (canonicalCycle(offsets, vertexIndices, current - 1, buffer, other) == length) {
+                        if (Arrays.equals(own, 0, length, other, 0, length)) {
+                            // Тот же обход: в слоте остается меньший номер
+                            if (polygonInd + 1 >= current
+                                    || INTS.compareAndSet(table, slot, current, polygonInd + 1)) {
+                                break;
+                            }
+                            continue;
+                        }
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                slots[polygonInd] = slot;
+            }
+        });
+        ParallelRanges.forEach(pool, polygonCount, (from, to) -> {
+            for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                if ((removedWords[polygonInd >>> 6] & (1L << polygonInd)) == 0 && table[slots[polygonInd]] != polygonInd + 1) {
+                    removedWords[polygonInd >>> 6] |= 1L << polygonInd;
+                }
+            }
+        });
+
+        removedCorners.or(BitSet.valueOf(cornerWords));
+        // Углы удаляемых полигонов уходят вместе с ними
+        for (int polygonInd = 0; polygonInd < polygonCount; ++polygonInd) {
+            if ((removedWords[polygonInd >>> 6] & (1L << polygonInd)) != 0) {
+                removedCorners.clear(offsets.get(polygonInd), offsets.get(polygonInd + 1));
+            }
+        }
+        return BitSet.valueOf(removedWords);
+    }
+
+    // Разные вершины полигона по возрастанию в начале result; возвращает их число
+    private static int sortedVertices(IntStorage offsets, IntStorage vertexIndices, int polygonInd, int[] result) {
+        final int start = offsets.get(polygonInd);
+        final int count = offsets.get(polygonInd + 1) - start;
+        vertexIndices.get(start, result, 0, count);
+        Arrays.sort(result, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; ++i) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return distinct;
+    }
+
+    // Обход полигона без углов, повторяющих предыдущий, со сдвигом, при котором последовательность наименьшая
+    // (начинается с наименьшей вершины). Направление обхода сохраняется: 1 2 3 и 2 3 1 дают одно, 3 2 1 - другое.
+    // buffer - рабочий массив не короче полигона; возвращает длину обхода в начале result
+    private static int canonicalCycle(
+            IntStorage offsets, IntStorage vertexIndices, int polygonInd, int[] buffer, int[] result) {
+        final int start = offsets.get(polygonInd);
+        final int count = offsets.get(polygonInd + 1) - start;
+        vertexIndices.get(start, buffer, 0, count);
+        int length = 0;
+        int previous = buffer[count - 1];
+        for (int i = 0; i < count; ++i) {
+            final int vertexIndex = buffer[i];
+            if (vertexIndex != previous) {
+                buffer[length++] = vertexIndex;
+            }
+            previous = vertexIndex;
+        }
+        int best = 0;
+        for (int shift = 1; shift < length; ++shift) {
+            if (buffer[shift] <= buffer[best] && compareShifts(buffer, length, shift, best) < 0) {
+                best = shift;
+            }
+        }
+        for (int i = 0; i < length; ++i) {
+            result[i] = buffer[(best + i) % length];
+        }
+        return length;
+    }
+
+    private static int compareShifts(int[] cycle, int length, int first, int second) {
+        for (int i = 0; i < length; ++i) {
+            final int difference = Integer.compare(cycle[(first + i) % length], cycle[(second + i) % length]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private static long hash(int[] values, int count) {
+        long hash = count;
+        for (int i = 0; i < count; ++i) {
+            hash = hash * 31 + values[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,159 @@
+package com.cgvsu.model;
+
+import com.cgvsu.math.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+class VertexWelderTest {
+
+    private static Model createModel(float[][] vertices, int[]... polygons) {
+        Model model = new Model();
+        for (float[] vertex : vertices) {
+            model.getVertices().add(vertex[0], vertex[1], vertex[2]);
+        }
+        for (int[] polygon : polygons) {
+            model.getPolygons().add(polygon, null, null, 0, polygon.length);
+        }
+        return model;
+    }
+
+    // Сетка n x n четырехугольников, где у каждого свои четыре вершины, сдвинутые не больше чем на jitter / 2
+    private static Model createSoup(int n, float jitter, long seed) {
+        final Random random = new Random(seed);
+        Model model = new Model();
+        int vertexInd = 0;
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                final int[][] cell = {{i, j}, {i, j + 1}, {i + 1, j + 1}, {i + 1, j}};
+                final int[] quad = new int[4];
+                for (int corner = 0; corner < 4; ++corner) {
+                    model.getVertices().add(
+                            cell[corner][0] + (random.nextFloat() - 0.5F) * jitter,
+                            (float) Math.sin(0.1 * cell[corner][0]),
+                            cell[corner][1] + (random.nextFloat() - 0.5F) * jitter);
+                    quad[corner] = vertexInd++;
+                }
+                model.getPolygons().add(quad, null, null, 0, 4);
+            }
+        }
+        return model;
+    }
+
+    private static int[] corners(PolygonList polygons, int polygonInd) {
+        int[] result = new int[polygons.getVertexCount(polygonInd)];
+        polygons.getVertexIndexStorage().get(polygons.getOffsets().get(polygonInd), result, 0, result.length);
+        return result;
+    }
+
+    @Test
+    public void testWeld01() {
+        // Два треугольника с общим ребром, но каждый со своими копиями его вершин
+        Model model = createModel(
+                new float[][]{{0, 0, 0}, {1, 0, 0}, {0, 1, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0}},
+                new int[]{0, 1, 2}, new int[]{3, 4, 5});
+        VertexWelder.weld(model, 0, null);
+        Assertions.assertEquals(4, model.getVertices().size());
+        Assertions.assertArrayEquals(new int[]{0, 1, 2}, corners(model.getPolygons(), 0));
+        Assertions.assertArrayEquals(new int[]{1, 3, 2}, corners(model.getPolygons(), 1));
+    }
+
+    @Test
+    public void testWeld02() {
+        // В пределах допуска вершина сливается с вершиной меньшего номера и берет ее положение
+        Model model = createModel(
+                new float[][]{{0, 0, 0}, {1, 0, 0}, {0, 1, 0}, {1.0004F, 0, 0}, {1, 1, 0}, {0, 1.0004F, 0}},
+                new int[]{0, 1, 2}, new int[]{3, 4, 5});
+        VertexWelder.weld(model, 0.001F, null);
+        Assertions.assertEquals(4, model.getVertices().size());
+        Assertions.assertEquals(new Vector3f(1, 0, 0), model.getVertices().get(1));
+        Assertions.assertEquals(new Vector3f(0, 1, 0), model.getVertices().get(2));
+        Assertions.assertArrayEquals(new int[]{1, 3, 2}, corners(model.getPolygons(), 1));
+
+        // Без допуска близкие, но не совпадающие вершины остаются
+        Model exact = createModel(
+                new float[][]{{0, 0, 0}, {1, 0, 0}, {0, 1, 0}, {1.0004F, 0, 0}, {1, 1, 0}, {0, 1.0004F, 0}},
+                new int[]{0, 1, 2}, new int[]{3, 4, 5});
+        VertexWelder.weld(exact, 0, null);
+        Assertions.assertEquals(6, exact.getVertices().size());
+    }
+
+    @Test
+    public void testWeld03() {
+        // Цепочка a ~ b ~ c: a и c дальше допуска друг от друга, но сливаются через b
+        Model model = createModel(
+                new float[][]{{0, 0, 0}, {0.8F, 0, 0}, {1.6F, 0, 0}, {10, 0, 0}, {10, 10, 0}, {0, 10, 0}},
+                new int[]{0, 3, 4}, new int[]{1, 4, 5}, new int[]{2, 5, 3});
+        VertexWelder.weld(model, 1, null);
+        Assertions.assertEquals(4, model.getVertices().size());
+        Assertions.assertEquals(new Vector3f(0, 0, 0), model.getVertices().get(0));
+        Assertions.assertArrayEquals(new int[]{0, 1, 2}, corners(model.getPolygons(), 0));
+        Assertions.assertArrayEquals(new int[]{0, 2, 3}, corners(model.getPolygons(), 1));
+        Assertions.assertArrayEquals(new int[]{0, 3, 1}, corners(model.getPolygons(), 2));
+    }
+
+    @Test
+    public void testWeld04() {
+        // Треугольник, две вершины которого слились, удаляется; у четырехугольника слившиеся соседние углы
+        // становятся одним, и он остается треугольником
+        Model model = createModel(
+                new float[][]{{0, 0, 0}, {1, 0, 0}, {1, 0.0001F, 0}, {0, 1, 0}},
+                new int[]{0, 1, 2}, new int[]{0, 1, 2, 3});
+        VertexWelder.weld(model, 0.001F, null);
+        Assertions.assertEquals(3, model.getVertices().size());
+        Assertions.assertEquals(1, model.getPolygons().size());
+        Assertions.assertArrayEquals(new int[]{0, 1, 2}, corners(model.getPolygons(), 0));
+    }
+
+    @Test
+    public void testWeld05() {
+        // Повтор с другого угла удаляется, полигон с обратным обходом - обратная сторона оболочки - остается
+        Model model = createModel(
+                new float[][]{{0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0}},
+                new int[]{0, 1, 2, 3}, new int[]{2, 3, 0, 1}, new int[]{3, 2, 1, 0}, new int[]{1, 0, 3, 2});
+        VertexWelder.weld(model, 0, null);
+        Assertions.assertEquals(2, model.getPolygons().size());
+        Assertions.assertArrayEquals(new int[]{0, 1, 2, 3}, corners(model.getPolygons(), 0));
+        Assertions.assertArrayEquals(new int[]{3, 2, 1, 0}, corners(model.getPolygons(), 1));
+    }
+
+    @Test
+    public void testWeld06() {
+        // Нормали по вершинам переиндексируются вместе с вершинами и пересчитываются по сваренной сетке
+        Model model = createSoup(4, 0, 1);
+        NormalCalculator.recalculateNormals(model);
+        Assertions.assertTrue(model.hasVertexNormals());
+        VertexWelder.weld(model, 0, null);
+        Assertions.assertEquals(25, model.getVertices().size());
+        Assertions.assertEquals(16, model.getPolygons().size());
+
+        Assertions.assertTrue(model.hasVertexNormals());
+        Assertions.assertEquals(model.getVertices().size(), model.getNormals().size());
+        final PolygonList polygons = model.getPolygons();
+        for (int corner = 0; corner < polygons.getCornerCount(); ++corner) {
+            Assertions.assertEquals(polygons.getVertexIndexStorage().get(corner), polygons.getNormalIndexStorage().get(corner));
+        }
+        for (Vector3f normal : model.getNormals()) {
+            Assertions.assertEquals(1, normal.length(), 1e-5);
+        }
+    }
+
+    @Test
+    public void testWeld07() {
+        // Результат от пула не зависит: вершин больше порога параллельного прохода
+        Model sequential = createSoup(150, 0.01F, 2);
+        Model pooled = createSoup(150, 0.01F, 2);
+        VertexWelder.weld(sequential, 0.05F, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            VertexWelder.weld(pooled, 0.05F, pool);
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertEquals(151 * 151, sequential.getVertices().size());
+        Assertions.assertEquals(150 * 150, sequential.getPolygons().size());
+        Assertions.assertTrue(TestModels.sameModel(sequential, pooled));
+    }
+}
@@ -0,0 +1,311 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.FloatStorage;
+import com.cgvsu.model.IntStorage;
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ModelStorage;
+import com.cgvsu.model.PolygonList;
+import com.cgvsu.model.Vector2fList;
+import com.cgvsu.model.Vector3fList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Компактный двоичный формат модели для кэша:
+ * заголовок, затем плоские массивы вершин, текстурных вершин, нормалей
+ * и массивы индексов полигонов (смещения полигонов + индексы по углам, -1 - индекса нет).
+ * Все числа little-endian, массивы выровнены на 4 байта, поэтому читаются из отображения пачкой.
+ */
+class BinaryModelFormat {
+
+	// "S3DVCACH"
+	private static final long MAGIC = 0x5333445643414348L;
+	private static final int VERSION = 1;
+	private static final int FIXED_HEADER_SIZE = 64;
+
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	private static final int NO_INDEX = PolygonList.NO_INDEX;
+
+	/**
+	 * Ключ, которым кэш привязан к исходному файлу.
+	 */
+	static class SourceKey {
+		final String path;
+		final long size;
+		final long lastModified;
+		final long contentHash;
+
+		SourceKey(String path, long size, long lastModified, long contentHash) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+		}
+
+		boolean matches(SourceKey other) {
+			return path.equals(other.path) && size == other.size
+					&& lastModified == other.lastModified && contentHash == other.contentHash;
+		}
+	}
+
+	static void write(Model model, SourceKey key, FileChannel channel) throws IOException {
+		final Vector3fList vertices = model.getVertices();
+		final Vector2fList textureVertices = model.getTextureVertices();
+		final Vector3fList normals = model.getNormals();
+		final PolygonList polygons = model.getPolygons();
+		final int cornerCount = polygons.getCornerCount();
+
+		ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		final byte[] path = key.path.getBytes(StandardCharsets.UTF_8);
+		buffer.putLong(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(path.length);
+		buffer.putLong(key.size);
+		buffer.putLong(key.lastModified);
+		buffer.putLong(key.contentHash);
+		buffer.putInt(vertices.size());
+		buffer.putInt(textureVertices.size());
+		buffer.putInt(normals.size());
+		buffer.putInt(polygons.size());
+		buffer.putInt(cornerCount);
+		buffer.position(FIXED_HEADER_SIZE);
+		flush(channel, buffer);
+		channel.write(ByteBuffer.wrap(path));
+		channel.write(ByteBuffer.allocate(padding(path.length)));
+
+		// Упакованные списки лежат в памяти в том же порядке, что и в файле
+		writeFloats(channel, buffer, vertices.getStorage(), 3 * vertices.size());
+		writeFloats(channel, buffer, textureVertices.getStorage(), 2 * textureVertices.size());
+		writeFloats(channel, buffer, normals.getStorage(), 3 * normals.size());
+
+		// Полигоны тоже лежат в памяти так же, как в файле (см. PolygonList)
+		writeInts(channel, buffer, polygons.getOffsets(), polygons.size() + 1);
+		writeInts(channel, buffer, polygons.getVertexIndexStorage(), cornerCount);
+		writeInts(channel, buffer, polygons.getTextureVertexIndexStorage(), cornerCount);
+		writeInts(channel, buffer, polygons.getNormalIndexStorage(), cornerCount);
+		flush(channel, buffer);
+	}
+
+	/**
+	 * Читает ключ из заголовка, не трогая остальной файл. null - если это не наш файл или другая версия.
+	 */
+	static SourceKey readKey(FileChannel channel) throws IOException {
+		ByteBuffer header = readHeader(channel);
+		if (header == null) {
+			return null;
+		}
+		final int pathLength = header.getInt(12);
+		if (pathLength < 0 || FIXED_HEADER_SIZE + (long) pathLength > channel.size()) {
+			return null;
+		}
+		ByteBuffer path = ByteBuffer.allocate(pathLength);
+		readFully(channel, path, FIXED_HEADER_SIZE);
+		return new SourceKey(new String(path.array(), StandardCharsets.UTF_8),
+				header.getLong(16), header.getLong(24), header.getLong(32));
+	}
+
+	static Model read(FileChannel channel) throws IOException {
+		return read(channel, ModelStorage.HEAP);
+	}
+
+	/**
+	 * OFF_HEAP - массивы модели не читаются, а отображаются прямо из файла (см. FloatStorage.map):
+	 * модель готова сразу, а страницы подгружаются системой по мере обращения.
+	 * Отображение не держит канал открытым, файл можно закрыть сразу после чтения.
+	 */
+	static Model read(FileChannel channel, ModelStorage storage) throws IOException {
+		ByteBuffer header = readHeader(channel);
+		if (header == null) {
+			throw new IOException("Not a model cache file");
+		}
+		final int pathLength = header.getInt(12);
+		final int vertexCount = header.getInt(40);
+		final int textureVertexCount = header.getInt(44);
+		final int normalCount = header.getInt(48);
+		final int polygonCount = header.getInt(52);
+		final int cornerCount = header.getInt(56);
+
+		long position = FIXED_HEADER_SIZE + pathLength + padding(pathLength);
+		final long expectedSize = position
+				+ 4L * (3L * vertexCount + 2L * textureVertexCount + 3L * normalCount + polygonCount + 1 + 3L * cornerCount);
+		if (vertexCount < 0 || textureVertexCount < 0 || normalCount < 0 || polygonCount < 0 || cornerCount < 0
+				|| channel.size() != expectedSize) {
+			throw new IOException("Model cache file is truncated or corrupted");
+		}
+
+		final boolean mapped = storage == ModelStorage.OFF_HEAP;
+		FloatStorage vertexData = floats(channel, position, 3 * vertexCount, mapped);
+		position += 4L * 3 * vertexCount;
+		FloatStorage textureData = floats(channel, position, 2 * textureVertexCount, mapped);
+		position += 4L * 2 * textureVertexCount;
+		FloatStorage normalData = floats(channel, position, 3 * normalCount, mapped);
+		position += 4L * 3 * normalCount;
+		IntStorage offsets = ints(channel, position, polygonCount + 1, mapped);
+		position += 4L * (polygonCount + 1);
+		IntStorage vertexIndices = ints(channel, position, cornerCount, mapped);
+		position += 4L * cornerCount;
+		IntStorage textureIndices = ints(channel, position, cornerCount, mapped);
+		position += 4L * cornerCount;
+		IntStorage normalIndices = ints(channel, position, cornerCount, mapped);
+
+		Model model = new Model();
+		Vector3fList vertices = new Vector3fList(vertexData, vertexCount);
+		Vector2fList textureVertices = new Vector2fList(textureData, textureVertexCount);
+		Vector3fList normals = new Vector3fList(normalData, normalCount);
+		if (offsets.get(polygonCount) != cornerCount) {
+			throw new IOException("Model cache file is corrupted");
+		}
+		PolygonList polygons;
+		try {
+			polygons = new PolygonList(offsets, vertexIndices,
+					allAbsent(textureIndices, cornerCount) ? null : textureIndices,
+					allAbsent(normalIndices, cornerCount) ? null : normalIndices,
+					polygonCount);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Model cache file is corrupted", e);
+		}
+		model.setVertices(vertices);
+		model.setTextureVertices(textureVertices);
+		model.setNormals(normals);
+		model.setPolygons(polygons);
+		return model;
+	}
+
+	private static FloatStorage floats(FileChannel channel, long position, int length, boolean mapped)
+			throws IOException {
+		if (mapped) {
+			return FloatStorage.map(channel, position, length);
+		}
+		float[] data = new float[length];
+		readFloats(channel, position, data);
+		return FloatStorage.wrap(data);
+	}
+
+	private static IntStorage ints(FileChannel channel, long position, int length, boolean mapped)
+			throws IOException {
+		if (mapped) {
+			return IntStorage.map(channel, position, length);
+		}
+		int[] data = new int[length];
+		readInts(channel, position, data);
+		return IntStorage.wrap(data);
+	}
+
+	// Модель без текстур (нормалей) хранит в файле NO_INDEX во всех углах, в памяти для нее массив не нужен
+	private static boolean allAbsent(IntStorage indices, int length) {
+		// Обычно первый же угол показывает, что индексы есть; целиком проходим только файл без них
+		for (int i = 0; i < length; ++i) {
+			if (indices.get(i) != NO_INDEX) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// null - индексов нет, пишется NO_INDEX на каждый угол
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, IntStorage data, int length)
+			throws IOException {
+		final int[] block = data == null ? null : new int[WRITE_BUFFER_SIZE / 4];
+		int written = 0;
+		while (written < length) {
+			ensureRemaining(channel, buffer, 4);
+			final int count = Math.min(length - written, buffer.remaining() / 4);
+			if (data == null) {
+				for (int i = 0; i < count; ++i) {
+					buffer.putInt(NO_INDEX);
+				}
+			} else {
+				data.get(written, block, 0, count);
+				buffer.asIntBuffer().put(block, 0, count);
+				buffer.position(buffer.position() + 4 * count);
+			}
+			written += count;
+		}
+	}
+
+	private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+		if (channel.size() < FIXED_HEADER_SIZE) {
+			return null;
+		}
+		ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, header, 0);
+		if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+			return null;
+		}
+		return header;
+	}
+
+	private static long readFloats(FileChannel channel, long position, float[] destination) throws IOException {
+		int done = 0;
+		while (done < destination.length) {
+			final int count = (int) Math.min(destination.length - done, ObjReader.MAX_MAP_WINDOW / 4);
+			map(channel, position, 4L * count).asFloatBuffer().get(destination, done, count);
+			done += count;
+			position += 4L * count;
+		}
+		return position;
+	}
+
+	private static long readInts(FileChannel channel, long position, int[] destination) throws IOException {
+		int done = 0;
+		while (done < destination.length) {
+			final int count = (int) Math.min(destination.length - done, ObjReader.MAX_MAP_WINDOW / 4);
+			map(channel, position, 4L * count).asIntBuffer().get(destination, done, count);
+			done += count;
+			position += 4L * count;
+		}
+		return position;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		return window.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of model cache file");
+			}
+		}
+	}
+
+	private static void writeFloats(FileChannel channel, ByteBuffer buffer, FloatStorage data, int length)
+			throws IOException {
+		final float[] block = new float[WRITE_BUFFER_SIZE / 4];
+		int written = 0;
+		while (written < length) {
+			ensureRemaining(channel, buffer, 4);
+			final int count = Math.min(length - written, buffer.remaining() / 4);
+			data.get(written, block, 0, count);
+			buffer.asFloatBuffer().put(block, 0, count);
+			buffer.position(buffer.position() + 4 * count);
+			written += count;
+		}
+	}
+
+	private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush(channel, buffer);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static int padding(int length) {
+		return (4 - (length & 3)) & 3;
+	}
+}
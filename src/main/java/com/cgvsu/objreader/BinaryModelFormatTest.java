@@ -0,0 +1,85 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ModelStorage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class BinaryModelFormatTest {
+
+    private static final BinaryModelFormat.SourceKey KEY = new BinaryModelFormat.SourceKey("/models/grid.obj", 123, 456, 789);
+
+    @TempDir
+    Path directory;
+
+    private Path write(Model model) throws IOException {
+        final Path file = directory.resolve("grid.s3dcache");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            BinaryModelFormat.write(model, KEY, channel);
+        }
+        return file;
+    }
+
+    private static Model read(Path file, ModelStorage storage) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return BinaryModelFormat.read(channel, storage);
+        }
+    }
+
+    // Полигоны без текстурных индексов и без нормалей вперемешку с полными
+    private static Model createModel() {
+        return ObjReader.read(TestObjFiles.createGrid(40));
+    }
+
+    @Test
+    public void testReadKey01() throws IOException {
+        final Path file = write(createModel());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryModelFormat.SourceKey key = BinaryModelFormat.readKey(channel);
+            Assertions.assertNotNull(key);
+            Assertions.assertTrue(KEY.matches(key));
+            Assertions.assertFalse(new BinaryModelFormat.SourceKey("/models/grid.obj", 123, 456, 788).matches(key));
+        }
+    }
+
+    @Test
+    public void testRead01() throws IOException {
+        // Модель в куче и отображенная из файла совпадают с записанной
+        final Model expected = createModel();
+        final Path file = write(expected);
+        Assertions.assertTrue(TestObjFiles.sameModel(expected, read(file, ModelStorage.HEAP)));
+        try (Model mapped = read(file, ModelStorage.OFF_HEAP)) {
+            Assertions.assertTrue(TestObjFiles.sameModel(expected, mapped));
+        }
+    }
+
+    @Test
+    public void testRead02() throws IOException {
+        // Правка отображенной модели не попадает в файл кэша
+        final Model expected = createModel();
+        final Path file = write(expected);
+        try (Model mapped = read(file, ModelStorage.OFF_HEAP)) {
+            mapped.getVertices().set(0, 7, 8, 9);
+            Assertions.assertEquals(new Vector3f(7, 8, 9), mapped.getVertices().get(0));
+        }
+        Assertions.assertTrue(TestObjFiles.sameModel(expected, read(file, ModelStorage.HEAP)));
+    }
+
+    @Test
+    public void testRead03() throws IOException {
+        // Обрезанный файл не читается
+        final Path file = write(createModel());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+        Assertions.assertThrows(IOException.class, () -> read(file, ModelStorage.HEAP));
+        Assertions.assertThrows(IOException.class, () -> read(file, ModelStorage.OFF_HEAP));
+    }
+}
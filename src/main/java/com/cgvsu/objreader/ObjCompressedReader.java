@@ -0,0 +1,162 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Чтение сжатых OBJ (.obj.gz и .zip с одним файлом) без распаковки на диск.
+ * Распаковка идет в отдельном потоке и передает блоки парсеру через небольшую очередь,
+ * так что распаковка и разбор перекрываются, а в памяти одновременно лежит лишь несколько блоков.
+ */
+class ObjCompressedReader {
+
+	// Сколько распакованных блоков может ждать парсера. Больше не нужно: кто-то из двух потоков все равно медленнее
+	private static final int QUEUE_CAPACITY = 4;
+
+	private static final String GZIP_EXTENSION = ".gz";
+	private static final String ZIP_EXTENSION = ".zip";
+
+	static boolean isCompressed(Path path) {
+		final String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+		return name.endsWith(GZIP_EXTENSION) || name.endsWith(ZIP_EXTENSION);
+	}
+
+	/**
+	 * Прогресс считается по сжатым байтам, прочитанным из файла.
+	 */
+	static Model read(FileChannel channel, Path path, ObjReaderOptions options, ObjReadProgress progress)
+			throws IOException {
+		final boolean zip = path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(ZIP_EXTENSION);
+
+		// Пустые буферы возвращаются распаковщику, поэтому новые массивы во время чтения не создаются
+		BlockingQueue<Block> filled = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 1);
+		BlockingQueue<Block> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 1);
+		for (int i = 0; i <= QUEUE_CAPACITY; ++i) {
+			free.add(new Block());
+		}
+
+		Decompressor decompressor = new Decompressor(channel, zip, filled, free);
+		Thread thread = new Thread(decompressor, "obj-decompressor");
+		thread.setDaemon(true);
+		thread.start();
+
+		ObjStreamParser parser = new ObjStreamParser(new Model(options.getStorage()), ObjReader.createSnapshotPublisher(options));
+		long reportedPosition = 0;
+		try {
+			while (true) {
+				Block block = filled.take();
+				if (block.length < 0) {
+					break;
+				}
+				parser.feed(block.data, 0, block.length);
+				free.add(block);
+
+				final long position = channel.position();
+				parser.afterBlock(position - reportedPosition, progress);
+				reportedPosition = position;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("OBJ reading was interrupted");
+		} finally {
+			// При ошибке разбора или отмене распаковщик может стоять на пустой очереди свободных буферов
+			thread.interrupt();
+		}
+
+		if (decompressor.error != null) {
+			throw decompressor.error;
+		}
+		return parser.finish();
+	}
+
+	private static class Block {
+		private final byte[] data = new byte[ObjReader.READ_BUFFER_SIZE];
+		// -1 - конец данных
+		private int length;
+	}
+
+	private static class Decompressor implements Runnable {
+		private final FileChannel channel;
+		private final boolean zip;
+		private final BlockingQueue<Block> filled;
+		private final BlockingQueue<Block> free;
+
+		// Пишется до последнего блока в очереди, поэтому парсер видит его после take()
+		private IOException error;
+
+		Decompressor(FileChannel channel, boolean zip, BlockingQueue<Block> filled, BlockingQueue<Block> free) {
+			this.channel = channel;
+			this.zip = zip;
+			this.filled = filled;
+			this.free = free;
+		}
+
+		@Override
+		public void run() {
+			try {
+				// Канал закрывает ObjReader, поэтому поток-обертку не закрываем
+				InputStream fileStream = Channels.newInputStream(channel);
+				if (zip) {
+					decompressZip(new ZipInputStream(fileStream));
+				} else {
+					pump(new GZIPInputStream(fileStream, ObjReader.READ_BUFFER_SIZE));
+				}
+			} catch (IOException e) {
+				error = e;
+			} catch (InterruptedException e) {
+				// Парсер больше не ждет данных
+				return;
+			}
+
+			try {
+				Block end = free.take();
+				end.length = -1;
+				filled.put(end);
+			} catch (InterruptedException ignored) {
+			}
+		}
+
+		private void decompressZip(ZipInputStream zipStream) throws IOException, InterruptedException {
+			ZipEntry entry = nextFileEntry(zipStream);
+			if (entry == null) {
+				throw new IOException("ZIP archive does not contain a file");
+			}
+			pump(zipStream);
+			if (nextFileEntry(zipStream) != null) {
+				throw new IOException("ZIP archive must contain a single OBJ file");
+			}
+		}
+
+		private static ZipEntry nextFileEntry(ZipInputStream zipStream) throws IOException {
+			ZipEntry entry = zipStream.getNextEntry();
+			while (entry != null && entry.isDirectory()) {
+				entry = zipStream.getNextEntry();
+			}
+			return entry;
+		}
+
+		private void pump(InputStream stream) throws IOException, InterruptedException {
+			while (true) {
+				Block block = free.take();
+				block.length = stream.readNBytes(block.data, 0, block.data.length);
+				if (block.length == 0) {
+					free.add(block);
+					return;
+				}
+				filled.put(block);
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class ObjCompressedReaderTest {
+
+    @TempDir
+    Path directory;
+
+    private Path writeGzip(String fileName, String content) throws IOException {
+        final Path file = directory.resolve(fileName);
+        try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(file))) {
+            stream.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    // entries - попеременно имя записи и ее содержимое; имя с / на конце - папка
+    private Path writeZip(String fileName, String... entries) throws IOException {
+        final Path file = directory.resolve(fileName);
+        try (ZipOutputStream stream = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                stream.putNextEntry(new ZipEntry(entries[i]));
+                stream.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                stream.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testIsCompressed01() {
+        Assertions.assertTrue(ObjCompressedReader.isCompressed(Path.of("model.obj.gz")));
+        Assertions.assertTrue(ObjCompressedReader.isCompressed(Path.of("MODEL.ZIP")));
+        Assertions.assertFalse(ObjCompressedReader.isCompressed(Path.of("model.obj")));
+    }
+
+    @Test
+    public void testReadGzip01() throws IOException {
+        // Распакованного текста на много блоков: модель та же, что из несжатого файла
+        final String content = TestObjFiles.createGrid(120);
+        final Model expected = ObjReader.read(TestObjFiles.write(directory, "grid.obj", content));
+        final Model actual = ObjReader.read(writeGzip("grid.obj.gz", content));
+        Assertions.assertEquals(121 * 121, actual.getVertices().size());
+        Assertions.assertTrue(TestObjFiles.sameModel(expected, actual));
+    }
+
+    @Test
+    public void testReadZip01() throws IOException {
+        // Архив с одним файлом, папки не считаются
+        final String content = TestObjFiles.createGrid(120);
+        final Model expected = ObjReader.read(TestObjFiles.write(directory, "grid.obj", content));
+        final Model actual = ObjReader.read(writeZip("grid.zip", "models/", "", "models/grid.obj", content));
+        Assertions.assertTrue(TestObjFiles.sameModel(expected, actual));
+    }
+
+    @Test
+    public void testReadZip02() throws IOException {
+        // Архив с несколькими файлами не читается: непонятно, какой из них модель
+        final Path file = writeZip("two.zip", "a.obj", TestObjFiles.createGrid(3), "b.obj", TestObjFiles.createGrid(3));
+        IOException exception = Assertions.assertThrows(IOException.class, () -> ObjReader.read(file));
+        Assertions.assertEquals("ZIP archive must contain a single OBJ file", exception.getMessage());
+    }
+
+    @Test
+    public void testReadZip03() throws IOException {
+        final Path file = writeZip("empty.zip", "models/", "");
+        IOException exception = Assertions.assertThrows(IOException.class, () -> ObjReader.read(file));
+        Assertions.assertEquals("ZIP archive does not contain a file", exception.getMessage());
+    }
+
+    @Test
+    public void testReadError01() throws IOException {
+        // Ошибка разбора в сжатом файле сообщает номер строки распакованного текста
+        final Path file = writeGzip("broken.obj.gz", "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2\n");
+        ObjReaderException exception = Assertions.assertThrows(ObjReaderException.class, () -> ObjReader.read(file));
+        Assertions.assertEquals(4, exception.getLineInd());
+    }
+}
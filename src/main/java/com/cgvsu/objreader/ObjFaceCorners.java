@@ -0,0 +1,31 @@
+package com.cgvsu.objreader;
+
+import java.util.Arrays;
+
+/**
+ * Индексы углов одного разбираемого полигона. Живет вместе с токенайзером и переиспользуется
+ * от строки к строке, так что разбор полигона не создает ни списков, ни Integer.
+ */
+class ObjFaceCorners {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	int[] vertexIndices = new int[INITIAL_CAPACITY];
+	int[] textureVertexIndices = new int[INITIAL_CAPACITY];
+	int[] normalIndices = new int[INITIAL_CAPACITY];
+	int vertexCount;
+	int textureVertexCount;
+	int normalCount;
+
+	void reset(int maxCorners) {
+		if (maxCorners > vertexIndices.length) {
+			final int capacity = Math.max(maxCorners, vertexIndices.length * 2);
+			vertexIndices = Arrays.copyOf(vertexIndices, capacity);
+			textureVertexIndices = Arrays.copyOf(textureVertexIndices, capacity);
+			normalIndices = Arrays.copyOf(normalIndices, capacity);
+		}
+		vertexCount = 0;
+		textureVertexCount = 0;
+		normalCount = 0;
+	}
+}
@@ -0,0 +1,92 @@
+package com.cgvsu.objreader;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Делит строку на слова прямо в байтовом буфере, не создавая подстрок.
+ * Для каждого слова запоминаются только границы [start, end) в буфере.
+ * Массивы границ переиспользуются от строки к строке, поэтому в установившемся режиме память не выделяется.
+ * Буфер - массив в куче (через ByteBuffer.wrap) или окно отображенного в память файла; границы - абсолютные индексы в нем.
+ */
+class ObjLineTokenizer {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private ByteBuffer buffer;
+	private int[] starts = new int[INITIAL_CAPACITY];
+	private int[] ends = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	private final ObjFaceCorners faceCorners = new ObjFaceCorners();
+
+	void tokenize(ByteBuffer buffer, int from, int to) {
+		this.buffer = buffer;
+		size = 0;
+
+		int i = from;
+		while (i < to) {
+			while (i < to && isWhitespace(buffer.get(i))) {
+				++i;
+			}
+			if (i == to) {
+				break;
+			}
+			final int wordStart = i;
+			while (i < to && !isWhitespace(buffer.get(i))) {
+				++i;
+			}
+			addWord(wordStart, i);
+		}
+	}
+
+	// Буфер углов для разбора полигона из текущей строки
+	ObjFaceCorners faceCorners() {
+		return faceCorners;
+	}
+
+	ByteBuffer buffer() {
+		return buffer;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int start(int wordInd) {
+		return starts[wordInd];
+	}
+
+	int end(int wordInd) {
+		return ends[wordInd];
+	}
+
+	boolean wordEquals(int wordInd, byte[] expected) {
+		final int start = starts[wordInd];
+		final int length = ends[wordInd] - start;
+		if (length != expected.length) {
+			return false;
+		}
+		for (int i = 0; i < length; ++i) {
+			if (buffer.get(start + i) != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addWord(int start, int end) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		++size;
+	}
+
+	// Те же символы, что и \s в регулярных выражениях
+	static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f' || b == 0x0B;
+	}
+}
@@ -0,0 +1,166 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ModelStorage;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Кэш разобранных OBJ-файлов в двоичном виде.
+ * Повторное открытие того же файла не разбирает текст, а читает готовые массивы из отображенного в память кэша,
+ * поэтому упирается в скорость диска, а не парсера. Модель вне кучи (ObjReaderOptions.setStorage) не читается из кэша
+ * вовсе, а отображается из него напрямую.
+ * Кэш привязан к пути, размеру, времени изменения и контрольной сумме содержимого исходного файла.
+ * Если что-то из этого не совпало или кэш поврежден - файл просто разбирается заново, и кэш перезаписывается.
+ */
+public class ObjModelCache {
+    public static final String CACHE_FILE_EXTENSION = ".s3dcache";
+
+    // Маленькие файлы разбираются быстрее, чем проверяется кэш
+    public static final long DEFAULT_MIN_SOURCE_SIZE = 16L << 20;
+
+    // Столько байтов хэшируется между сообщениями о прогрессе и проверками отмены
+    private static final int HASH_PROGRESS_STEP = 16 << 20;
+
+    private final Path cacheDirectory;
+    private long minSourceSize = DEFAULT_MIN_SOURCE_SIZE;
+
+    /**
+     * Кэш кладется рядом с исходным файлом: model.obj -> model.obj.s3dcache
+     */
+    public ObjModelCache() {
+        this.cacheDirectory = null;
+    }
+
+    /**
+     * Все файлы кэша кладутся в одну папку, имя файла кэша строится из полного пути исходника.
+     */
+    public ObjModelCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public long getMinSourceSize() {
+        return minSourceSize;
+    }
+
+    public void setMinSourceSize(long minSourceSize) {
+        this.minSourceSize = minSourceSize;
+    }
+
+    public Model load(Path objFile) throws IOException {
+        return load(objFile, new ObjReaderOptions());
+    }
+
+    public Model load(Path objFile, ObjReaderOptions options) throws IOException {
+        final long size = Files.size(objFile);
+        if (size < minSourceSize) {
+            return ObjReader.read(objFile, options);
+        }
+
+        // Прогресс идет по двум проходам: первая половина - хэш содержимого, вторая - разбор.
+        // Если кэш подошел, разбора нет, и вторая половина засчитывается сразу
+        ObjReadProgress progress = new ObjReadProgress(options.getMonitor(), 2 * size);
+        final BinaryModelFormat.SourceKey key = computeKey(objFile, progress);
+        final Path cacheFile = getCacheFile(objFile);
+
+        Model cached = tryReadCache(cacheFile, key, options.getStorage());
+        if (cached != null) {
+            progress.advance(key.size);
+            return ObjReader.completeModel(cached, options);
+        }
+
+        // В кэш идет модель ровно такой, как в файле, а достраивается она уже после записи
+        Model model = ObjReader.readModel(objFile, options, progress);
+        // Файл мог поменяться, пока мы его читали, - тогда такой кэш сохранять нельзя.
+        // Второй раз содержимое не хэшируется: правку во время чтения выдают размер и время изменения
+        if (isUnchanged(objFile, key)) {
+            tryWriteCache(cacheFile, model, key);
+        }
+        return ObjReader.completeModel(model, options);
+    }
+
+    public Path getCacheFile(Path objFile) {
+        final Path absolute = objFile.toAbsolutePath().normalize();
+        final String fileName = absolute.getFileName().toString();
+        if (cacheDirectory == null) {
+            return absolute.resolveSibling(fileName + CACHE_FILE_EXTENSION);
+        }
+        CRC32C pathHash = new CRC32C();
+        pathHash.update(absolute.toString().getBytes(StandardCharsets.UTF_8));
+        return cacheDirectory.resolve(String.format("%s.%08x%s", fileName, pathHash.getValue(), CACHE_FILE_EXTENSION));
+    }
+
+    private static Model tryReadCache(Path cacheFile, BinaryModelFormat.SourceKey key, ModelStorage storage) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            BinaryModelFormat.SourceKey cachedKey = BinaryModelFormat.readKey(channel);
+            if (cachedKey == null || !cachedKey.matches(key)) {
+                return null;
+            }
+            return BinaryModelFormat.read(channel, storage);
+        } catch (IOException | RuntimeException e) {
+            // Поврежденный кэш - не ошибка загрузки, просто разберем исходник заново
+            return null;
+        }
+    }
+
+    private static void tryWriteCache(Path cacheFile, Model model, BinaryModelFormat.SourceKey key) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            temporary = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                BinaryModelFormat.write(model, key, channel);
+            }
+            // Читатель никогда не увидит наполовину записанный кэш
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (IOException | RuntimeException e) {
+            // Кэш - только ускорение: если записать не вышло (нет прав, нет места), модель все равно загружена
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static boolean isUnchanged(Path objFile, BinaryModelFormat.SourceKey key) throws IOException {
+        return Files.size(objFile) == key.size
+                && Files.getLastModifiedTime(objFile).toMillis() == key.lastModified;
+    }
+
+    private static BinaryModelFormat.SourceKey computeKey(Path objFile, ObjReadProgress progress) throws IOException {
+        final Path absolute = objFile.toAbsolutePath().normalize();
+        try (FileChannel channel = FileChannel.open(absolute, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long lastModified = Files.getLastModifiedTime(absolute).toMillis();
+
+            CRC32C hash = new CRC32C();
+            for (long windowStart = 0; windowStart < size; windowStart += ObjReader.MAX_MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        windowStart, Math.min(ObjReader.MAX_MAP_WINDOW, size - windowStart));
+                while (window.hasRemaining()) {
+                    final int step = Math.min(HASH_PROGRESS_STEP, window.remaining());
+                    window.limit(window.position() + step);
+                    hash.update(window);
+                    window.limit(window.capacity());
+                    progress.advance(step);
+                }
+            }
+            return new BinaryModelFormat.SourceKey(absolute.toString(), size, lastModified, hash.getValue());
+        }
+    }
+}
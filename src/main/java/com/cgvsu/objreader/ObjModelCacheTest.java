@@ -0,0 +1,133 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ModelStorage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+class ObjModelCacheTest {
+
+    // Время изменения кэша, по которому видно, что его не перезаписали
+    private static final FileTime OLD_TIME = FileTime.fromMillis(1_000_000_000_000L);
+
+    @TempDir
+    Path directory;
+
+    private ObjModelCache createCache() {
+        ObjModelCache cache = new ObjModelCache(directory.resolve("cache"));
+        cache.setMinSourceSize(0);
+        return cache;
+    }
+
+    private static ObjReaderOptions createOptions(ModelStorage storage) {
+        ObjReaderOptions options = new ObjReaderOptions();
+        options.setStorage(storage);
+        return options;
+    }
+
+    // Загружает модель и сообщает, взята ли она из кэша: при разборе файл кэша пишется заново
+    private static boolean loadsFromCache(ObjModelCache cache, Path source, Model expected) throws IOException {
+        final Path cacheFile = cache.getCacheFile(source);
+        Files.setLastModifiedTime(cacheFile, OLD_TIME);
+        final Model model = cache.load(source);
+        Assertions.assertTrue(TestObjFiles.sameModel(expected, model));
+        return Files.getLastModifiedTime(cacheFile).equals(OLD_TIME);
+    }
+
+    @Test
+    public void testLoad01() throws IOException {
+        // Первая загрузка пишет кэш, следующие в куче и вне ее дают ту же модель, что и разбор
+        final Path source = TestObjFiles.write(directory, "grid.obj", TestObjFiles.createGrid(60));
+        final Model expected = ObjReader.read(source);
+        ObjModelCache cache = createCache();
+        Assertions.assertTrue(TestObjFiles.sameModel(expected, cache.load(source)));
+        Assertions.assertTrue(Files.isRegularFile(cache.getCacheFile(source)));
+
+        Assertions.assertTrue(loadsFromCache(cache, source, expected));
+        Files.setLastModifiedTime(cache.getCacheFile(source), OLD_TIME);
+        try (Model mapped = cache.load(source, createOptions(ModelStorage.OFF_HEAP))) {
+            Assertions.assertTrue(TestObjFiles.sameModel(expected, mapped));
+        }
+        Assertions.assertEquals(OLD_TIME, Files.getLastModifiedTime(cache.getCacheFile(source)));
+    }
+
+    @Test
+    public void testLoad02() throws IOException {
+        // Модель вне кучи тоже пишется в кэш и читается из него в кучу
+        final Path source = TestObjFiles.write(directory, "grid.obj", TestObjFiles.createGrid(60));
+        final Model expected = ObjReader.read(source);
+        ObjModelCache cache = createCache();
+        try (Model parsed = cache.load(source, createOptions(ModelStorage.OFF_HEAP))) {
+            Assertions.assertTrue(TestObjFiles.sameModel(expected, parsed));
+        }
+        Assertions.assertTrue(loadsFromCache(cache, source, expected));
+    }
+
+    @Test
+    public void testInvalidate01() throws IOException {
+        // Другой размер: файл разбирается заново
+        final Path source = TestObjFiles.write(directory, "grid.obj", TestObjFiles.createGrid(20));
+        ObjModelCache cache = createCache();
+        cache.load(source);
+        Files.write(source, "v 9 9 9\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final Model expected = ObjReader.read(source);
+        Assertions.assertEquals(new Vector3f(9, 9, 9), expected.getVertices().get(expected.getVertices().size() - 1));
+        Assertions.assertFalse(loadsFromCache(cache, source, expected));
+        Assertions.assertTrue(loadsFromCache(cache, source, expected));
+    }
+
+    @Test
+    public void testInvalidate02() throws IOException {
+        // То же содержимое, но другое время изменения
+        final Path source = TestObjFiles.write(directory, "grid.obj", TestObjFiles.createGrid(20));
+        final Model expected = ObjReader.read(source);
+        ObjModelCache cache = createCache();
+        cache.load(source);
+        Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() - 60_000));
+
+        Assertions.assertFalse(loadsFromCache(cache, source, expected));
+        Assertions.assertTrue(loadsFromCache(cache, source, expected));
+    }
+
+    @Test
+    public void testInvalidate03() throws IOException {
+        // Другое содержимое того же размера с прежним временем изменения ловит только контрольная сумма
+        final String content = TestObjFiles.createGrid(20);
+        final Path source = TestObjFiles.write(directory, "grid.obj", content);
+        ObjModelCache cache = createCache();
+        cache.load(source);
+        final FileTime modified = Files.getLastModifiedTime(source);
+        final int vertexStart = content.indexOf("\nv ") + 1;
+        final String changed = content.substring(0, vertexStart) + "v 5" + content.substring(vertexStart + 3);
+        Assertions.assertEquals(content.length(), changed.length());
+        Files.write(source, changed.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(source, modified);
+
+        final Model expected = ObjReader.read(source);
+        Assertions.assertEquals(5, expected.getVertices().get(0).getX());
+        Assertions.assertFalse(loadsFromCache(cache, source, expected));
+    }
+
+    @Test
+    public void testInvalidate04() throws IOException {
+        // Испорченный кэш - не ошибка: файл разбирается заново, кэш перезаписывается
+        final Path source = TestObjFiles.write(directory, "grid.obj", TestObjFiles.createGrid(20));
+        final Model expected = ObjReader.read(source);
+        ObjModelCache cache = createCache();
+        cache.load(source);
+        Files.write(cache.getCacheFile(source), new byte[]{1, 2, 3}, StandardOpenOption.TRUNCATE_EXISTING);
+
+        Assertions.assertFalse(loadsFromCache(cache, source, expected));
+        Assertions.assertTrue(loadsFromCache(cache, source, expected));
+    }
+}
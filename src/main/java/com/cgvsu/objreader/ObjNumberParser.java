@@ -0,0 +1,178 @@
+package com.cgvsu.objreader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Разбор чисел прямо из диапазона байтов строки, без создания подстрок.
+ * Строка - ByteBuffer, чтобы одинаково читать и массив в куче (ByteBuffer.wrap), и отображенный в память файл.
+ * На обычных для OBJ записях (1.234, -0.5e-3) результат совпадает с Float.parseFloat до бита,
+ * все остальное (hex, NaN, Infinity, суффиксы f/d, слишком длинные мантиссы) отдается Float.parseFloat.
+ */
+class ObjNumberParser {
+
+	// 18 десятичных цифр гарантированно помещаются в long без переполнения
+	private static final int MAX_MANTISSA_DIGITS = 18;
+
+	// Степени десяти, которые представимы в double точно
+	private static final double[] EXACT_POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+
+	// Младшие 29 бит мантиссы double, которые теряются при округлении до float
+	private static final long FLOAT_ROUNDING_BITS_MASK = (1L << 29) - 1;
+	private static final long FLOAT_ROUNDING_HALFWAY = 1L << 28;
+
+	private static final int MAX_EXPONENT_DIGITS_VALUE = 100_000;
+
+	static float parseFloat(byte[] line, int from, int to) {
+		return parseFloat(ByteBuffer.wrap(line), from, to);
+	}
+
+	static float parseFloat(ByteBuffer line, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (line.get(i) == '-' || line.get(i) == '+')) {
+			negative = line.get(i) == '-';
+			++i;
+		}
+
+		long mantissa = 0;
+		int mantissaDigits = 0;
+		int exponent = 0;
+		boolean hasDigits = false;
+
+		for (; i < to && isDigit(line.get(i)); ++i) {
+			hasDigits = true;
+			final int digit = line.get(i) - '0';
+			if (mantissa == 0 && digit == 0) {
+				continue;
+			}
+			if (mantissaDigits == MAX_MANTISSA_DIGITS) {
+				return parseFloatSlow(line, from, to);
+			}
+			mantissa = mantissa * 10 + digit;
+			++mantissaDigits;
+		}
+
+		if (i < to && line.get(i) == '.') {
+			++i;
+			for (; i < to && isDigit(line.get(i)); ++i) {
+				hasDigits = true;
+				final int digit = line.get(i) - '0';
+				--exponent;
+				if (mantissa == 0 && digit == 0) {
+					continue;
+				}
+				if (mantissaDigits == MAX_MANTISSA_DIGITS) {
+					return parseFloatSlow(line, from, to);
+				}
+				mantissa = mantissa * 10 + digit;
+				++mantissaDigits;
+			}
+		}
+
+		if (!hasDigits) {
+			return parseFloatSlow(line, from, to);
+		}
+
+		if (i < to && (line.get(i) == 'e' || line.get(i) == 'E')) {
+			++i;
+			boolean negativeExponent = false;
+			if (i < to && (line.get(i) == '-' || line.get(i) == '+')) {
+				negativeExponent = line.get(i) == '-';
+				++i;
+			}
+			if (i == to || !isDigit(line.get(i))) {
+				return parseFloatSlow(line, from, to);
+			}
+			int exponentValue = 0;
+			for (; i < to && isDigit(line.get(i)); ++i) {
+				if (exponentValue < MAX_EXPONENT_DIGITS_VALUE) {
+					exponentValue = exponentValue * 10 + (line.get(i) - '0');
+				}
+			}
+			exponent += negativeExponent ? -exponentValue : exponentValue;
+		}
+
+		if (i != to) {
+			return parseFloatSlow(line, from, to);
+		}
+
+		if (mantissa == 0) {
+			return negative ? -0.0f : 0.0f;
+		}
+
+		// Быстрый путь Клингера: мантисса и степень десяти точны в double,
+		// поэтому одно умножение или деление дает правильно округленный double
+		if (mantissa < MAX_EXACT_DOUBLE_MANTISSA && exponent >= -22 && exponent <= 22) {
+			final double value = exponent >= 0
+					? (double) mantissa * EXACT_POWERS_OF_TEN[exponent]
+					: (double) mantissa / EXACT_POWERS_OF_TEN[-exponent];
+
+			// Второе округление (double -> float) может ошибиться, только если double
+			// попал ровно в середину между соседними float. Такие случаи разбираем честно.
+			final long bits = Double.doubleToRawLongBits(value);
+			if ((bits & FLOAT_ROUNDING_BITS_MASK) != FLOAT_ROUNDING_HALFWAY) {
+				final float result = (float) value;
+				return negative ? -result : result;
+			}
+		}
+
+		return parseFloatSlow(line, from, to);
+	}
+
+	/**
+	 * Разбор целого со знаком с той же семантикой, что у Integer.parseInt.
+	 */
+	static int parseInt(byte[] line, int from, int to) {
+		return parseInt(ByteBuffer.wrap(line), from, to);
+	}
+
+	static int parseInt(ByteBuffer line, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (line.get(i) == '-' || line.get(i) == '+')) {
+			negative = line.get(i) == '-';
+			++i;
+		}
+		if (i == to) {
+			throw numberFormatException(line, from, to);
+		}
+
+		// Копим отрицательное значение, как Integer.parseInt, чтобы поместился Integer.MIN_VALUE
+		int value = 0;
+		for (; i < to; ++i) {
+			final int digit = line.get(i) - '0';
+			if (digit < 0 || digit > 9 || value < (Integer.MIN_VALUE + digit) / 10) {
+				throw numberFormatException(line, from, to);
+			}
+			value = value * 10 - digit;
+		}
+		if (!negative && value == Integer.MIN_VALUE) {
+			throw numberFormatException(line, from, to);
+		}
+		return negative ? value : -value;
+	}
+
+	private static float parseFloatSlow(ByteBuffer line, int from, int to) {
+		return Float.parseFloat(text(line, from, to));
+	}
+
+	private static NumberFormatException numberFormatException(ByteBuffer line, int from, int to) {
+		return new NumberFormatException("For input string: \"" + text(line, from, to) + "\"");
+	}
+
+	private static String text(ByteBuffer line, int from, int to) {
+		final byte[] bytes = new byte[to - from];
+		line.get(from, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+}
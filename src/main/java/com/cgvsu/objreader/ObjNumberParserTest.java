@@ -0,0 +1,59 @@
+package com.cgvsu.objreader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+class ObjNumberParserTest {
+
+    private static float parseFloat(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        return ObjNumberParser.parseFloat(bytes, 0, bytes.length);
+    }
+
+    private static int parseInt(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        return ObjNumberParser.parseInt(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void testParseFloat01() {
+        String[] values = {"0", "-0", "1.01", "-0.000123", ".5", "1.", "1e10", "-2.5E-7", "3.4028235e38", "16777217"};
+        for (String value : values) {
+            Assertions.assertEquals(Float.floatToRawIntBits(Float.parseFloat(value)),
+                    Float.floatToRawIntBits(parseFloat(value)), value);
+        }
+    }
+
+    @Test
+    public void testParseFloat02() {
+        // Ровно посередине между соседними float: двойное округление через double здесь ошиблось бы
+        String value = "1.00000005960464477539062";
+        Assertions.assertEquals(Float.parseFloat(value), parseFloat(value));
+    }
+
+    @Test
+    public void testParseFloat03() {
+        // Редкие записи уходят в Float.parseFloat
+        Assertions.assertEquals(8.0f, parseFloat("0x1p3"));
+        Assertions.assertTrue(Float.isNaN(parseFloat("NaN")));
+        Assertions.assertEquals(1.0f, parseFloat("1f"));
+    }
+
+    @Test
+    public void testParseFloat04() {
+        Assertions.assertThrows(NumberFormatException.class, () -> parseFloat("1.0.0"));
+        Assertions.assertThrows(NumberFormatException.class, () -> parseFloat("1e"));
+        Assertions.assertThrows(NumberFormatException.class, () -> parseFloat("-"));
+    }
+
+    @Test
+    public void testParseInt01() {
+        Assertions.assertEquals(42, parseInt("42"));
+        Assertions.assertEquals(-7, parseInt("-7"));
+        Assertions.assertEquals(Integer.MIN_VALUE, parseInt("-2147483648"));
+        Assertions.assertThrows(NumberFormatException.class, () -> parseInt("2147483648"));
+        Assertions.assertThrows(NumberFormatException.class, () -> parseInt("1a"));
+    }
+}
@@ -0,0 +1,202 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.model.PackedVectorList;
+import com.cgvsu.model.PolygonList;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Многопоточное чтение большого файла.
+ * Файл режется на куски по границам строк, каждый кусок разбирается в свою маленькую модель,
+ * а потом модели склеиваются в порядке следования в файле.
+ * Индексы в OBJ абсолютные, поэтому при склейке их править не нужно - важен только порядок.
+ */
+class ObjParallelReader {
+
+	// Кусков больше, чем потоков, чтобы быстрые потоки не простаивали в конце
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	private static final int LINE_PROBE_SIZE = 4096;
+
+	private static class ChunkResult {
+		private Model model;
+		private int lineCount;
+		private RuntimeException error;
+	}
+
+	static Model read(FileChannel channel, ObjReaderOptions options, ObjReadProgress progress) throws IOException {
+		final long[] bounds = splitIntoChunks(channel, channel.size(), options.getParallelism());
+		final int chunkCount = bounds.length - 1;
+		final boolean mapped = channel.size() >= options.getMappedThreshold();
+
+		// Куски после первого упавшего уже не влияют на результат, их можно не разбирать
+		final AtomicInteger firstFailedChunk = new AtomicInteger(Integer.MAX_VALUE);
+
+		List<Callable<ChunkResult>> tasks = new ArrayList<>(chunkCount);
+		for (int chunkInd = 0; chunkInd < chunkCount; ++chunkInd) {
+			final int currentChunk = chunkInd;
+			tasks.add(() -> parseChunk(channel, bounds[currentChunk], bounds[currentChunk + 1], mapped,
+					progress, currentChunk, firstFailedChunk));
+		}
+
+		final ObjSnapshotPublisher publisher = ObjReader.createSnapshotPublisher(options);
+
+		ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
+		Model merged = new Model(options.getStorage());
+		try {
+			List<Future<ChunkResult>> futures = new ArrayList<>(chunkCount);
+			for (Callable<ChunkResult> task : tasks) {
+				futures.add(pool.submit(task));
+			}
+			// Куски дописываются в итоговую модель строго по порядку, как только готовы: снимок - это snapshot()
+			// ее списков, всегда начало файла и без отдельной копии уже опубликованного
+			int lineOffset = 0;
+			for (int chunkInd = 0; chunkInd < chunkCount; ++chunkInd) {
+				ChunkResult chunk = futures.get(chunkInd).get();
+				if (chunk.error != null) {
+					throw shiftLineInd(chunk.error, lineOffset);
+				}
+				lineOffset += chunk.lineCount;
+				append(merged, chunk.model, (double) bounds[chunkInd + 1] / bounds[chunkCount]);
+				if (publisher != null) {
+					publisher.update(merged);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("OBJ reading was interrupted");
+		} catch (ExecutionException e) {
+			// Ошибки виртуальной машины и непроверяемые исключения пробрасываются как есть, в IOException
+			// заворачиваются только проверяемые
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException ioException) {
+				throw ioException;
+			}
+			if (cause instanceof Error error) {
+				throw error;
+			}
+			if (cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new UncheckedIOException(new IOException(cause));
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return merged;
+	}
+
+	private static ChunkResult parseChunk(
+			FileChannel channel, long start, long end, boolean mapped, ObjReadProgress progress,
+			int chunkInd, AtomicInteger firstFailedChunk) throws IOException {
+		ChunkResult result = new ChunkResult();
+		if (chunkInd > firstFailedChunk.get()) {
+			return result;
+		}
+
+		ObjStreamParser parser = new ObjStreamParser(new Model());
+		try {
+			parser.feed(channel, start, end, mapped, progress);
+			result.model = parser.finish();
+			result.lineCount = parser.getLineCount();
+
+		} catch (RuntimeException e) {
+			result.error = e;
+			firstFailedChunk.accumulateAndGet(chunkInd, Math::min);
+		}
+		return result;
+	}
+
+	/**
+	 * Дописывает кусок в конец итоговой модели; mergedFraction - какая доля файла будет склеена вместе с ним.
+	 * Списки заранее растягиваются до оценки итогового размера по этой доле, чтобы не расти много раз понемногу.
+	 */
+	private static void append(Model merged, Model chunk, double mergedFraction) {
+		reserve(merged.getVertices(), chunk.getVertices().size(), mergedFraction, 3);
+		reserve(merged.getTextureVertices(), chunk.getTextureVertices().size(), mergedFraction, 2);
+		reserve(merged.getNormals(), chunk.getNormals().size(), mergedFraction, 3);
+		final PolygonList polygons = merged.getPolygons();
+		polygons.ensureCapacity(
+				estimate(polygons.size() + chunk.getPolygons().size(), mergedFraction, Integer.MAX_VALUE - 9),
+				estimate(polygons.getCornerCount() + chunk.getPolygons().getCornerCount(), mergedFraction,
+						Integer.MAX_VALUE - 8));
+
+		merged.getVertices().addAll(chunk.getVertices());
+		merged.getTextureVertices().addAll(chunk.getTextureVertices());
+		merged.getNormals().addAll(chunk.getNormals());
+		polygons.addAll(chunk.getPolygons());
+	}
+
+	private static void reserve(PackedVectorList<?> list, int added, double mergedFraction, int stride) {
+		list.ensureCapacity(estimate(list.size() + added, mergedFraction, (Integer.MAX_VALUE - 8) / stride));
+	}
+
+	// Итоговое число элементов, если их столько же на байт файла, сколько в уже склеенной части
+	private static int estimate(int mergedCount, double mergedFraction, int limit) {
+		return (int) Math.min(limit, Math.max(mergedCount, (long) Math.ceil(mergedCount / mergedFraction)));
+	}
+
+	// Номер строки внутри куска превращается в номер строки в файле
+	private static RuntimeException shiftLineInd(RuntimeException error, int lineOffset) {
+		if (error instanceof ObjReaderException objError) {
+			return new ObjReaderException(objError.getErrorMessage(), lineOffset + objError.getLineInd());
+		}
+		return error;
+	}
+
+	/**
+	 * Границы кусков: каждая граница, кроме последней, стоит сразу после символа перевода строки.
+	 */
+	private static long[] splitIntoChunks(FileChannel channel, long size, int parallelism) throws IOException {
+		final long chunkSize = Math.max(MIN_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_THREAD));
+
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		long previous = 0;
+		while (previous + chunkSize < size) {
+			final long next = nextLineStart(channel, previous + chunkSize, size);
+			if (next >= size) {
+				break;
+			}
+			bounds.add(next);
+			previous = next;
+		}
+		bounds.add(size);
+
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer probe = ByteBuffer.allocate(LINE_PROBE_SIZE);
+		while (position < size) {
+			probe.clear();
+			final int read = channel.read(probe, position);
+			if (read <= 0) {
+				return size;
+			}
+			for (int i = 0; i < read; ++i) {
+				if (probe.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+}
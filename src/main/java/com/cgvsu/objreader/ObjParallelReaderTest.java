@@ -0,0 +1,93 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ModelStorage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ObjParallelReaderTest {
+
+    @TempDir
+    Path directory;
+
+    private static ObjReaderOptions createOptions(int parallelism) {
+        ObjReaderOptions options = new ObjReaderOptions();
+        options.setParallelism(parallelism);
+        options.setParallelThreshold(0);
+        return options;
+    }
+
+    // Каждый кусок разбирается прямо из отображенного в память файла
+    private static ObjReaderOptions createMappedOptions(int parallelism) {
+        ObjReaderOptions options = createOptions(parallelism);
+        options.setMappedThreshold(0);
+        return options;
+    }
+
+    private static int lineCount(String content) {
+        return (int) content.lines().count();
+    }
+
+    @Test
+    public void testRead01() throws IOException {
+        // Несколько кусков по мегабайту дают ту же модель, что и чтение в одном потоке
+        final Path file = TestObjFiles.write(directory, "grid.obj", TestObjFiles.createGrid(250));
+        Assertions.assertTrue(Files.size(file) > 3 * (1 << 20));
+
+        final Model sequential = ObjReader.read(file, createOptions(1));
+        final Model parallel = ObjReader.read(file, createOptions(4));
+        Assertions.assertEquals(251 * 251, parallel.getVertices().size());
+        Assertions.assertTrue(TestObjFiles.sameModel(sequential, parallel));
+        Assertions.assertTrue(TestObjFiles.sameModel(sequential, ObjReader.read(file, createMappedOptions(1))));
+        Assertions.assertTrue(TestObjFiles.sameModel(sequential, ObjReader.read(file, createMappedOptions(4))));
+    }
+
+    @Test
+    public void testRead02() throws IOException {
+        // То же для модели вне кучи
+        final Path file = TestObjFiles.write(directory, "grid.obj", TestObjFiles.createGrid(250));
+        ObjReaderOptions options = createOptions(4);
+        options.setStorage(ModelStorage.OFF_HEAP);
+        try (Model parallel = ObjReader.read(file, options)) {
+            Assertions.assertTrue(TestObjFiles.sameModel(ObjReader.read(file, createOptions(1)), parallel));
+        }
+    }
+
+    @Test
+    public void testReadError01() throws IOException {
+        // Ошибка в одном из последних кусков: номер строки считается от начала файла, а не куска
+        final String head = TestObjFiles.createGrid(250);
+        final Path file = TestObjFiles.write(directory, "broken.obj", head + "f 1 2\n" + TestObjFiles.createGrid(10));
+
+        ObjReaderException sequential = Assertions.assertThrows(ObjReaderException.class,
+                () -> ObjReader.read(file, createOptions(1)));
+        ObjReaderException parallel = Assertions.assertThrows(ObjReaderException.class,
+                () -> ObjReader.read(file, createOptions(4)));
+        Assertions.assertEquals(lineCount(head) + 1, sequential.getLineInd());
+        Assertions.assertEquals(sequential.getLineInd(), parallel.getLineInd());
+        Assertions.assertEquals(sequential.getMessage(), parallel.getMessage());
+        ObjReaderException mapped = Assertions.assertThrows(ObjReaderException.class,
+                () -> ObjReader.read(file, createMappedOptions(4)));
+        Assertions.assertEquals(sequential.getLineInd(), mapped.getLineInd());
+    }
+
+    @Test
+    public void testReadError02() throws IOException {
+        // Из двух ошибок в разных кусках сообщается первая по файлу
+        final String head = TestObjFiles.createGrid(150);
+        final String middle = TestObjFiles.createGrid(150);
+        final Path file = TestObjFiles.write(directory, "broken.obj",
+                head + "v 1 x 3\n" + middle + "f 1 2\n" + TestObjFiles.createGrid(10));
+
+        ObjReaderException parallel = Assertions.assertThrows(ObjReaderException.class,
+                () -> ObjReader.read(file, createOptions(4)));
+        Assertions.assertEquals(lineCount(head) + 1, parallel.getLineInd());
+        Assertions.assertEquals("Error parsing OBJ file on line: " + (lineCount(head) + 1) + ". Failed to parse float value.",
+                parallel.getMessage());
+    }
+}
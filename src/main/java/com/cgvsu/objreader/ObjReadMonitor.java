@@ -0,0 +1,31 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+
+/**
+ * Наблюдатель за чтением OBJ-файла: получает прогресс в байтах и может попросить остановить чтение.
+ * При параллельном чтении методы вызываются из разных потоков, так что реализация должна быть к этому готова.
+ */
+public interface ObjReadMonitor {
+    ObjReadMonitor NONE = new ObjReadMonitor() {};
+
+    /**
+     * totalBytes равен -1, если размер входа заранее неизвестен.
+     */
+    default void onProgress(long bytesRead, long totalBytes) {
+    }
+
+    /**
+     * Если вернуть true, чтение прервется с CancellationException на ближайшей границе буфера.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * Неизменяемый снимок уже прочитанной части модели, если включен ObjReaderOptions.setSnapshotInterval.
+     * Списки снимка нельзя менять; полигоны снимка могут ссылаться на вершины, которых в нем еще нет.
+     */
+    default void onSnapshot(Model snapshot) {
+    }
+}
@@ -0,0 +1,30 @@
+package com.cgvsu.objreader;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общий на все потоки чтения счетчик прочитанных байтов. Сообщает монитору о прогрессе и проверяет отмену.
+ */
+class ObjReadProgress {
+
+	private final ObjReadMonitor monitor;
+	private final long totalBytes;
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	ObjReadProgress(ObjReadMonitor monitor, long totalBytes) {
+		this.monitor = monitor;
+		this.totalBytes = totalBytes;
+	}
+
+	void advance(long bytes) {
+		monitor.onProgress(bytesRead.addAndGet(bytes), totalBytes);
+		checkCancelled();
+	}
+
+	void checkCancelled() {
+		if (monitor.isCancelled()) {
+			throw new CancellationException("OBJ reading was cancelled");
+		}
+	}
+}
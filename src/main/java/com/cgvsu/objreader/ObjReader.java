@@ -3,168 +3,372 @@ package com.cgvsu.objreader;
 import com.cgvsu.math.Vector2f;
 import com.cgvsu.math.Vector3f;
 import com.cgvsu.model.Model;
+import com.cgvsu.model.NormalCalculator;
 import com.cgvsu.model.Polygon;
+import com.cgvsu.model.PolygonList;
+import com.cgvsu.model.SpatialReorderer;
+import com.cgvsu.model.Vector2fList;
+import com.cgvsu.model.Vector3fList;
+import com.cgvsu.model.VertexCacheOptimizer;
+import com.cgvsu.model.VertexWelder;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 public class ObjReader {
 
-	private static final String OBJ_VERTEX_TOKEN = "v";
-	private static final String OBJ_TEXTURE_TOKEN = "vt";
-	private static final String OBJ_NORMAL_TOKEN = "vn";
-	private static final String OBJ_FACE_TOKEN = "f";
+	private static final byte[] OBJ_VERTEX_TOKEN = {'v'};
+	private static final byte[] OBJ_TEXTURE_TOKEN = {'v', 't'};
+	private static final byte[] OBJ_NORMAL_TOKEN = {'v', 'n'};
+	private static final byte[] OBJ_FACE_TOKEN = {'f'};
 
-	public static Model read(String fileContent) {
-		Model result = new Model();
-
-		int lineInd = 0;
-		Scanner scanner = new Scanner(fileContent);
-		while (scanner.hasNextLine()) {
-			final String line = scanner.nextLine();
-			ArrayList<String> wordsInLine = new ArrayList<String>(Arrays.asList(line.split("\\s+")));
-			if (wordsInLine.isEmpty()) {
-				continue;
-			}
+	// Размер буфера, через который файл прокачивается в парсер. Весь файл в память целиком не попадает.
+	static final int READ_BUFFER_SIZE = 1 << 16;
+	// Наибольшее окно отображения файла в память: одно отображение ограничено 2 ГБ.
+	// Кратно 4, чтобы окно не резало пополам число в двоичном кэше
+	static final long MAX_MAP_WINDOW = 1L << 30;
 
-			final String token = wordsInLine.getFirst();
-			wordsInLine.removeFirst();
-
-			++lineInd;
-			switch (token) {
-				// Для структур типа вершин методы написаны так, чтобы ничего не знать о внешней среде.
-				// Они принимают только то, что им нужно для работы, а возвращают только то, что могут создать.
-				// Исключение - индекс строки. Он прокидывается, чтобы выводить сообщение об ошибке.
-				// Могло быть иначе. Например, метод parseVertex мог вместо возвращения вершины принимать вектор вершин
-				// модели или сам класс модели, работать с ним.
-				// Но такой подход может привести к большему количеству ошибок в коде. Например, в нем что-то может
-				// тайно сделаться с классом модели.
-				// А еще это портит читаемость
-				// И не стоит забывать про тесты. Чем проще вам задать данные для теста, проверить, что метод рабочий,
-				// тем лучше.
-				case OBJ_VERTEX_TOKEN -> result.getVertices().add(parseVertex(wordsInLine, lineInd));
-				case OBJ_TEXTURE_TOKEN -> result.getTextureVertices().add(parseTextureVertex(wordsInLine, lineInd));
-				case OBJ_NORMAL_TOKEN -> result.getNormals().add(parseNormal(wordsInLine, lineInd));
-				case OBJ_FACE_TOKEN -> result.getPolygons().add(parseFace(wordsInLine, lineInd));
-				default -> {}
-			}
+	public static Model read(String fileContent) {
+		try {
+			return read(new ByteArrayInputStream(fileContent.getBytes(StandardCharsets.UTF_8)));
+		} catch (IOException e) {
+			// Чтение из массива в памяти не может завершиться ошибкой ввода-вывода
+			throw new UncheckedIOException(e);
 		}
+	}
 
-		return result;
+	public static Model read(Path path) throws IOException {
+		return read(path, new ObjReaderOptions());
 	}
 
-	// Всем методам кроме основного я поставил модификатор доступа protected, чтобы обращаться к ним в тестах
-	protected static Vector3f parseVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
-		try {
-			return new Vector3f(
-					Float.parseFloat(wordsInLineWithoutToken.get(0)),
-					Float.parseFloat(wordsInLineWithoutToken.get(1)),
-					Float.parseFloat(wordsInLineWithoutToken.get(2)));
+	/**
+	 * Файлы не меньше options.getParallelThreshold() разбираются параллельно, остальные - потоково в одном потоке.
+	 * Файлы не меньше options.getMappedThreshold() читаются через отображение в память, а не через read().
+	 * Файлы .gz и .zip (с одним OBJ внутри) распаковываются на лету в отдельном потоке.
+	 * Результат и номера строк в ошибках от режима не зависят.
+	 * Модель хранится в куче или вне ее в зависимости от options.getStorage().
+	 * Если options.isWeldVertices(), совпадающие вершины после чтения свариваются (VertexWelder).
+	 * Если options.isReorderSpatially() или options.isOptimizeVertexCache(), полигоны и вершины
+	 * переупорядочиваются (SpatialReorderer, VertexCacheOptimizer).
+	 * Если options.isComputeMissingNormals(), а нормалей в файле нет, они считаются после чтения.
+	 * Прогресс и отмена - через options.getMonitor(); отмена выбрасывает CancellationException.
+	 */
+	public static Model read(Path path, ObjReaderOptions options) throws IOException {
+		return completeModel(readModel(path, options), options);
+	}
 
-		} catch(NumberFormatException e) {
-			throw new ObjReaderException("Failed to parse float value.", lineInd);
+	static Model readModel(Path path, ObjReaderOptions options) throws IOException {
+		return readModel(path, options, new ObjReadProgress(options.getMonitor(), Files.size(path)));
+	}
 
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few vertex arguments.", lineInd);
+	/**
+	 * Чтение с уже начатым счетчиком прогресса: разбор продолжает его, а не начинает с нуля.
+	 */
+	static Model readModel(Path path, ObjReaderOptions options, ObjReadProgress progress) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			progress.checkCancelled();
+			if (ObjCompressedReader.isCompressed(path)) {
+				return ObjCompressedReader.read(channel, path, options, progress);
+			}
+			if (options.getParallelism() > 1 && size >= options.getParallelThreshold()) {
+				return ObjParallelReader.read(channel, options, progress);
+			}
+			ObjStreamParser parser = new ObjStreamParser(new Model(options.getStorage()), createSnapshotPublisher(options));
+			parser.feed(channel, 0, size, size >= options.getMappedThreshold(), progress);
+			return parser.finish();
 		}
 	}
 
-	protected static Vector2f parseTextureVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
-		try {
-			return new Vector2f(
-					Float.parseFloat(wordsInLineWithoutToken.get(0)),
-					Float.parseFloat(wordsInLineWithoutToken.get(1)));
+	/**
+	 * Достраивает прочитанную модель по настройкам: сварка вершин, пространственный порядок, порядок для кэша
+	 * вершин и нормали, если в файле их нет. Сварка идет первой, чтобы порядок и нормали считались уже
+	 * по сваренным полигонам. Порядок для кэша после пространственного сохраняет его в целом: в тупиках
+	 * жадный выбор берет следующий полигон по текущему порядку.
+	 */
+	static Model completeModel(Model model, ObjReaderOptions options) {
+		final ForkJoinPool pool = options.getParallelism() > 1 ? ForkJoinPool.commonPool() : null;
+		if (options.isWeldVertices()) {
+			VertexWelder.weld(model, options.getWeldTolerance(), pool);
+		}
+		if (options.isReorderSpatially()) {
+			SpatialReorderer.reorder(model, pool);
+		}
+		if (options.isOptimizeVertexCache()) {
+			VertexCacheOptimizer.optimize(model, pool);
+		}
+		if (options.isComputeMissingNormals() && model.getNormals().isEmpty() && !model.getPolygons().isEmpty()) {
+			NormalCalculator.recalculateNormals(model, pool);
+		}
+		return model;
+	}
 
-		} catch(NumberFormatException e) {
-			throw new ObjReaderException("Failed to parse float value.", lineInd);
+	public static Model read(InputStream inputStream) throws IOException {
+		return read(Channels.newChannel(inputStream));
+	}
 
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few texture vertex arguments.", lineInd);
+	/**
+	 * Потоковое чтение: байты идут через буфер фиксированного размера, модель строится по мере чтения строк.
+	 * Канал не закрывается - этим занимается тот, кто его открыл.
+	 */
+	public static Model read(ReadableByteChannel channel) throws IOException {
+		ObjStreamParser parser = new ObjStreamParser(new Model());
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		while (channel.read(buffer) != -1) {
+			parser.feed(buffer.array(), 0, buffer.position());
+			buffer.clear();
 		}
+		return parser.finish();
 	}
 
-	protected static Vector3f parseNormal(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
-		try {
-			return new Vector3f(
-					Float.parseFloat(wordsInLineWithoutToken.get(0)),
-					Float.parseFloat(wordsInLineWithoutToken.get(1)),
-					Float.parseFloat(wordsInLineWithoutToken.get(2)));
+	static ObjSnapshotPublisher createSnapshotPublisher(ObjReaderOptions options) {
+		if (options.getSnapshotInterval() == 0) {
+			return null;
+		}
+		return new ObjSnapshotPublisher(options.getMonitor(), options.getSnapshotInterval());
+	}
 
-		} catch(NumberFormatException e) {
-			throw new ObjReaderException("Failed to parse float value.", lineInd);
+	static void parseLine(final ObjLineTokenizer wordsInLine, final Model result, int lineInd) {
+		if (wordsInLine.size() == 0) {
+			return;
+		}
 
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few normal arguments.", lineInd);
+		// Для структур типа вершин методы написаны так, чтобы ничего не знать о внешней среде.
+		// Они принимают только то, что им нужно для работы, а возвращают только то, что могут создать.
+		// Исключение - индекс строки. Он прокидывается, чтобы выводить сообщение об ошибке.
+		// Могло быть иначе. Например, метод parseVertex мог вместо возвращения вершины принимать вектор вершин
+		// модели или сам класс модели, работать с ним.
+		// Но такой подход может привести к большему количеству ошибок в коде. Например, в нем что-то может
+		// тайно сделаться с классом модели.
+		// А еще это портит читаемость
+		// И не стоит забывать про тесты. Чем проще вам задать данные для теста, проверить, что метод рабочий,
+		// тем лучше.
+		// Координаты кладутся в упакованные списки модели напрямую, без промежуточного Vector3f на каждую строку
+		if (wordsInLine.wordEquals(0, OBJ_VERTEX_TOKEN)) {
+			parseVertex(wordsInLine, 1, result.getVertices(), lineInd);
+		} else if (wordsInLine.wordEquals(0, OBJ_TEXTURE_TOKEN)) {
+			parseTextureVertex(wordsInLine, 1, result.getTextureVertices(), lineInd);
+		} else if (wordsInLine.wordEquals(0, OBJ_NORMAL_TOKEN)) {
+			parseNormal(wordsInLine, 1, result.getNormals(), lineInd);
+		} else if (wordsInLine.wordEquals(0, OBJ_FACE_TOKEN)) {
+			parseFace(wordsInLine, 1, result.getPolygons(), lineInd);
 		}
 	}
 
+	// Всем методам кроме основного я поставил модификатор доступа protected, чтобы обращаться к ним в тестах.
+	// Методы от списка строк оставлены для тестов и просто перекладывают слова в токенайзер.
+	protected static Vector3f parseVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
+		return parseVertex(tokenize(wordsInLineWithoutToken), 0, lineInd);
+	}
+
+	protected static Vector2f parseTextureVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
+		return parseTextureVertex(tokenize(wordsInLineWithoutToken), 0, lineInd);
+	}
+
+	protected static Vector3f parseNormal(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
+		return parseNormal(tokenize(wordsInLineWithoutToken), 0, lineInd);
+	}
+
 	protected static Polygon parseFace(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
-		ArrayList<Integer> onePolygonVertexIndices = new ArrayList<Integer>();
-		ArrayList<Integer> onePolygonTextureVertexIndices = new ArrayList<Integer>();
-		ArrayList<Integer> onePolygonNormalIndices = new ArrayList<Integer>();
+		return parseFace(tokenize(wordsInLineWithoutToken), 0, lineInd);
+	}
 
-		for (String s : wordsInLineWithoutToken) {
-			parseFaceWord(s, onePolygonVertexIndices, onePolygonTextureVertexIndices, onePolygonNormalIndices, lineInd);
-		}
+	protected static void parseFaceWord(
+			String wordInLine,
+			ArrayList<Integer> onePolygonVertexIndices,
+			ArrayList<Integer> onePolygonTextureVertexIndices,
+			ArrayList<Integer> onePolygonNormalIndices,
+			int lineInd) {
+		final byte[] word = wordInLine.getBytes(StandardCharsets.UTF_8);
+		parseFaceWord(word, 0, word.length,
+				onePolygonVertexIndices, onePolygonTextureVertexIndices, onePolygonNormalIndices, lineInd);
+	}
 
-		if (onePolygonVertexIndices.size() < 3) {
-			throw new ObjReaderException("Polygon must have at least 3 vertices.", lineInd);
-		}
+	// Дальше - разбор прямо по границам слов в буфере строки. firstWord - индекс первого слова после токена.
+	protected static Vector3f parseVertex(final ObjLineTokenizer wordsInLine, int firstWord, int lineInd) {
+		Vector3fList result = new Vector3fList(1);
+		parseVertex(wordsInLine, firstWord, result, lineInd);
+		return result.get(0);
+	}
+
+	protected static Vector2f parseTextureVertex(final ObjLineTokenizer wordsInLine, int firstWord, int lineInd) {
+		Vector2fList result = new Vector2fList(1);
+		parseTextureVertex(wordsInLine, firstWord, result, lineInd);
+		return result.get(0);
+	}
+
+	protected static Vector3f parseNormal(final ObjLineTokenizer wordsInLine, int firstWord, int lineInd) {
+		Vector3fList result = new Vector3fList(1);
+		parseNormal(wordsInLine, firstWord, result, lineInd);
+		return result.get(0);
+	}
+
+	// Исключение из правила выше: ради памяти и скорости координаты дописываются прямо в список, который передали
+	protected static void parseVertex(
+			final ObjLineTokenizer wordsInLine, int firstWord, Vector3fList vertices, int lineInd) {
+		final float x = parseFloat(wordsInLine, firstWord, "Too few vertex arguments.", lineInd);
+		final float y = parseFloat(wordsInLine, firstWord + 1, "Too few vertex arguments.", lineInd);
+		final float z = parseFloat(wordsInLine, firstWord + 2, "Too few vertex arguments.", lineInd);
+		vertices.add(x, y, z);
+	}
+
+	protected static void parseTextureVertex(
+			final ObjLineTokenizer wordsInLine, int firstWord, Vector2fList textureVertices, int lineInd) {
+		final float u = parseFloat(wordsInLine, firstWord, "Too few texture vertex arguments.", lineInd);
+		final float v = parseFloat(wordsInLine, firstWord + 1, "Too few texture vertex arguments.", lineInd);
+		textureVertices.add(u, v);
+	}
+
+	protected static void parseNormal(
+			final ObjLineTokenizer wordsInLine, int firstWord, Vector3fList normals, int lineInd) {
+		final float x = parseFloat(wordsInLine, firstWord, "Too few normal arguments.", lineInd);
+		final float y = parseFloat(wordsInLine, firstWord + 1, "Too few normal arguments.", lineInd);
+		final float z = parseFloat(wordsInLine, firstWord + 2, "Too few normal arguments.", lineInd);
+		normals.add(x, y, z);
+	}
+
+	protected static Polygon parseFace(final ObjLineTokenizer wordsInLine, int firstWord, int lineInd) {
+		PolygonList result = new PolygonList(1);
+		parseFace(wordsInLine, firstWord, result, lineInd);
+		return Polygon.copyOf(result.get(0));
+	}
 
-		Polygon result = new Polygon();
-		result.setVertexIndices(onePolygonVertexIndices);
+	// Как и вершины, углы полигона собираются в переиспользуемый буфер и сразу дописываются в список модели
+	protected static void parseFace(
+			final ObjLineTokenizer wordsInLine, int firstWord, PolygonList polygons, int lineInd) {
+		ObjFaceCorners corners = wordsInLine.faceCorners();
+		corners.reset(wordsInLine.size() - firstWord);
 
-		result.setTextureVertexIndices(onePolygonTextureVertexIndices.isEmpty() ? null : onePolygonTextureVertexIndices);
+		for (int wordInd = firstWord; wordInd < wordsInLine.size(); ++wordInd) {
+			parseFaceWord(wordsInLine.buffer(), wordsInLine.start(wordInd), wordsInLine.end(wordInd), corners, lineInd);
+		}
 
-		result.setNormalIndices(onePolygonNormalIndices.isEmpty() ? null : onePolygonNormalIndices);
+		final int count = corners.vertexCount;
+		if (count < 3) {
+			throw new ObjReaderException("Polygon must have at least 3 vertices.", lineInd);
+		}
+		if ((corners.textureVertexCount != 0 && corners.textureVertexCount != count)
+				|| (corners.normalCount != 0 && corners.normalCount != count)) {
+			throw new ObjReaderException("Polygon must have texture vertex and normal indices for all vertices or for none.", lineInd);
+		}
 
-		return result;
+		polygons.add(corners.vertexIndices,
+				corners.textureVertexCount == 0 ? null : corners.textureVertexIndices,
+				corners.normalCount == 0 ? null : corners.normalIndices,
+				0, count);
 	}
 
 	// Обратите внимание, что для чтения полигонов я выделил еще один вспомогательный метод.
 	// Это бывает очень полезно и с точки зрения структурирования алгоритма в голове, и с точки зрения тестирования.
 	// В радикальных случаях не бойтесь выносить в отдельные методы и тестировать код из одной-двух строчек.
+	// Слово вида v, v/vt, v/vt/vn или v//vn разбирается на месте, без split("/").
 	protected static void parseFaceWord(
-			String wordInLine,
+			byte[] line,
+			int wordStart,
+			int wordEnd,
 			ArrayList<Integer> onePolygonVertexIndices,
 			ArrayList<Integer> onePolygonTextureVertexIndices,
 			ArrayList<Integer> onePolygonNormalIndices,
 			int lineInd) {
-		try {
-			String[] wordIndices = wordInLine.split("/");
-			switch (wordIndices.length) {
-				case 1 -> {
-					// f v1 v2 v3
-					onePolygonVertexIndices.add(Integer.parseInt(wordIndices[0]) - 1);
-				}
-				case 2 -> {
-					// f v1/vt1 v2/vt2 v3/vt3
-					onePolygonVertexIndices.add(Integer.parseInt(wordIndices[0]) - 1);
-					onePolygonTextureVertexIndices.add(Integer.parseInt(wordIndices[1]) - 1);
-				}
-				case 3 -> {
-					// f v1/vt1/vn1 v2/vt2/vn2 v3/vt3/vn3
-					//  f v1//vn1 v2//vn2 v3//vn3
-					onePolygonVertexIndices.add(Integer.parseInt(wordIndices[0]) - 1);
-
-					if (!wordIndices[1].isEmpty()) {
-						onePolygonTextureVertexIndices.add(Integer.parseInt(wordIndices[1]) - 1);
-					}
-
-					if (!wordIndices[2].isEmpty()) {
-						onePolygonNormalIndices.add(Integer.parseInt(wordIndices[2]) - 1);
-					}
-				}
-				default ->
-						throw new ObjReaderException("Invalid element size.", lineInd);
+		ObjFaceCorners corners = new ObjFaceCorners();
+		parseFaceWord(ByteBuffer.wrap(line), wordStart, wordEnd, corners, lineInd);
+		for (int i = 0; i < corners.vertexCount; ++i) {
+			onePolygonVertexIndices.add(corners.vertexIndices[i]);
+		}
+		for (int i = 0; i < corners.textureVertexCount; ++i) {
+			onePolygonTextureVertexIndices.add(corners.textureVertexIndices[i]);
+		}
+		for (int i = 0; i < corners.normalCount; ++i) {
+			onePolygonNormalIndices.add(corners.normalIndices[i]);
+		}
+	}
+
+	// Дописывает индексы одного угла в буфер corners
+	static void parseFaceWord(ByteBuffer line, int wordStart, int wordEnd, ObjFaceCorners corners, int lineInd) {
+		// Как и split("/"), пустые части в конце слова не считаются
+		while (wordEnd > wordStart && line.get(wordEnd - 1) == '/') {
+			--wordEnd;
+		}
+
+		int firstSlash = -1;
+		int secondSlash = -1;
+		for (int i = wordStart; i < wordEnd; ++i) {
+			if (line.get(i) != '/') {
+				continue;
 			}
+			if (firstSlash == -1) {
+				firstSlash = i;
+			} else if (secondSlash == -1) {
+				secondSlash = i;
+			} else {
+				throw new ObjReaderException("Invalid element size.", lineInd);
+			}
+		}
+
+		if (wordEnd == wordStart) {
+			throw new ObjReaderException("Invalid element size.", lineInd);
+		}
+
+		if (firstSlash == -1) {
+			// f v1 v2 v3
+			corners.vertexIndices[corners.vertexCount++] = parseIndex(line, wordStart, wordEnd, lineInd);
+		} else if (secondSlash == -1) {
+			// f v1/vt1 v2/vt2 v3/vt3
+			corners.vertexIndices[corners.vertexCount++] = parseIndex(line, wordStart, firstSlash, lineInd);
+			corners.textureVertexIndices[corners.textureVertexCount++] = parseIndex(line, firstSlash + 1, wordEnd, lineInd);
+		} else {
+			// f v1/vt1/vn1 v2/vt2/vn2 v3/vt3/vn3
+			//  f v1//vn1 v2//vn2 v3//vn3
+			corners.vertexIndices[corners.vertexCount++] = parseIndex(line, wordStart, firstSlash, lineInd);
+
+			if (secondSlash > firstSlash + 1) {
+				corners.textureVertexIndices[corners.textureVertexCount++] =
+						parseIndex(line, firstSlash + 1, secondSlash, lineInd);
+			}
+
+			corners.normalIndices[corners.normalCount++] = parseIndex(line, secondSlash + 1, wordEnd, lineInd);
+		}
+	}
+
+	private static float parseFloat(
+			final ObjLineTokenizer wordsInLine, int wordInd, String tooFewArgumentsMessage, int lineInd) {
+		if (wordInd >= wordsInLine.size()) {
+			throw new ObjReaderException(tooFewArgumentsMessage, lineInd);
+		}
+		try {
+			return ObjNumberParser.parseFloat(wordsInLine.buffer(), wordsInLine.start(wordInd), wordsInLine.end(wordInd));
 
 		} catch(NumberFormatException e) {
-			throw new ObjReaderException("Failed to parse int value.", lineInd);
+			throw new ObjReaderException("Failed to parse float value.", lineInd);
+		}
+	}
 
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few arguments.", lineInd);
+	// OBJ-индексы начинаются с единицы, в модели - с нуля
+	private static int parseIndex(ByteBuffer line, int from, int to, int lineInd) {
+		try {
+			return ObjNumberParser.parseInt(line, from, to) - 1;
+
+		} catch(NumberFormatException e) {
+			throw new ObjReaderException("Failed to parse int value.", lineInd);
 		}
 	}
-}
\ No newline at end of file
+
+	private static ObjLineTokenizer tokenize(final ArrayList<String> words) {
+		final byte[] line = String.join(" ", words).getBytes(StandardCharsets.UTF_8);
+		ObjLineTokenizer tokenizer = new ObjLineTokenizer();
+		tokenizer.tokenize(ByteBuffer.wrap(line), 0, line.length);
+		return tokenizer;
+	}
+}
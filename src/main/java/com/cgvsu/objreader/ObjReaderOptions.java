@@ -0,0 +1,159 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.ModelStorage;
+
+/**
+ * Настройки чтения OBJ-файлов. Значения по умолчанию подходят для большинства случаев.
+ */
+public class ObjReaderOptions {
+    // Файлы меньше этого размера читаются в одном потоке: на них запуск пула дороже самого разбора
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 64L << 20;
+
+    // С этого размера файл не читается через read(), а отображается в память
+    public static final long DEFAULT_MAPPED_THRESHOLD = 256L << 20;
+
+    private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private long mappedThreshold = DEFAULT_MAPPED_THRESHOLD;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private ObjReadMonitor monitor = ObjReadMonitor.NONE;
+    // 0 - снимки не публикуются
+    private int snapshotInterval = 0;
+    private ModelStorage storage = ModelStorage.HEAP;
+    private boolean computeMissingNormals = false;
+    private boolean weldVertices = false;
+    private float weldTolerance = 0;
+    private boolean reorderSpatially = false;
+    private boolean optimizeVertexCache = false;
+
+    public long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(long parallelThreshold) {
+        if (parallelThreshold < 0) {
+            throw new IllegalArgumentException("Parallel threshold cannot be negative: " + parallelThreshold);
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public long getMappedThreshold() {
+        return mappedThreshold;
+    }
+
+    /**
+     * Файлы не меньше этого размера разбираются прямо из отображенного в память файла (FileChannel.map),
+     * окнами не больше 1 ГБ. Сжатые файлы так не читаются.
+     */
+    public void setMappedThreshold(long mappedThreshold) {
+        if (mappedThreshold < 0) {
+            throw new IllegalArgumentException("Mapped threshold cannot be negative: " + mappedThreshold);
+        }
+        this.mappedThreshold = mappedThreshold;
+    }
+
+    public ObjReadMonitor getMonitor() {
+        return monitor;
+    }
+
+    public void setMonitor(ObjReadMonitor monitor) {
+        this.monitor = monitor == null ? ObjReadMonitor.NONE : monitor;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Публиковать снимок модели в монитор каждые snapshotInterval прочитанных полигонов.
+     */
+    public void setSnapshotInterval(int snapshotInterval) {
+        if (snapshotInterval < 0) {
+            throw new IllegalArgumentException("Snapshot interval cannot be negative: " + snapshotInterval);
+        }
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public ModelStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Где хранить прочитанную модель. OFF_HEAP - для моделей, сравнимых с размером кучи;
+     * такую модель нужно закрыть (Model.close()), когда она больше не нужна.
+     */
+    public void setStorage(ModelStorage storage) {
+        this.storage = storage == null ? ModelStorage.HEAP : storage;
+    }
+
+    public boolean isComputeMissingNormals() {
+        return computeMissingNormals;
+    }
+
+    /**
+     * Если в файле нет ни одной нормали, посчитать нормали вершин после чтения (параллельно, см. NormalCalculator).
+     */
+    public void setComputeMissingNormals(boolean computeMissingNormals) {
+        this.computeMissingNormals = computeMissingNormals;
+    }
+
+    public boolean isWeldVertices() {
+        return weldVertices;
+    }
+
+    /**
+     * Сварить вершины после чтения (до расчета нормалей): слить вершины ближе getWeldTolerance()
+     * и удалить вырожденные и повторные полигоны, см. VertexWelder.
+     */
+    public void setWeldVertices(boolean weldVertices) {
+        this.weldVertices = weldVertices;
+    }
+
+    public float getWeldTolerance() {
+        return weldTolerance;
+    }
+
+    /**
+     * Расстояние, ближе которого вершины сливаются; 0 - сливаются только совпадающие.
+     */
+    public void setWeldTolerance(float weldTolerance) {
+        if (!(weldTolerance >= 0)) {
+            throw new IllegalArgumentException("Weld tolerance must be non-negative: " + weldTolerance);
+        }
+        this.weldTolerance = weldTolerance;
+    }
+
+    public boolean isReorderSpatially() {
+        return reorderSpatially;
+    }
+
+    /**
+     * Переупорядочить полигоны и вершины после чтения по положению в пространстве, см. SpatialReorderer.
+     * Идет после сварки; если задан и isOptimizeVertexCache(), то до него.
+     */
+    public void setReorderSpatially(boolean reorderSpatially) {
+        this.reorderSpatially = reorderSpatially;
+    }
+
+    public boolean isOptimizeVertexCache() {
+        return optimizeVertexCache;
+    }
+
+    /**
+     * Переупорядочить полигоны и вершины после чтения для повторного использования вершин,
+     * см. VertexCacheOptimizer. Идет после сварки и до расчета нормалей.
+     */
+    public void setOptimizeVertexCache(boolean optimizeVertexCache) {
+        this.optimizeVertexCache = optimizeVertexCache;
+    }
+}
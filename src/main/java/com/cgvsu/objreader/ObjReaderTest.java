@@ -1,6 +1,7 @@
 package com.cgvsu.objreader;
 
 import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Polygon;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -63,4 +64,33 @@ class ObjReaderTest {
             Assertions.assertEquals(expectedError, exception.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseFace01() {
+        ArrayList<String> wordsInLineWithoutToken = new ArrayList<>(Arrays.asList("1/1/1", "2/2/2", "3/3/3"));
+        Polygon result = ObjReader.parseFace(wordsInLineWithoutToken, 5);
+        Assertions.assertEquals(Arrays.asList(0, 1, 2), result.getVertexIndices());
+        Assertions.assertEquals(Arrays.asList(0, 1, 2), result.getTextureVertexIndices());
+        Assertions.assertEquals(Arrays.asList(0, 1, 2), result.getNormalIndices());
+    }
+
+    @Test
+    public void testParseFace02() {
+        ArrayList<String> wordsInLineWithoutToken = new ArrayList<>(Arrays.asList("1/1", "2", "3/3"));
+        ObjReaderException exception = Assertions.assertThrows(ObjReaderException.class,
+                () -> ObjReader.parseFace(wordsInLineWithoutToken, 10));
+        String expectedError = "Error parsing OBJ file on line: 10. "
+                + "Polygon must have texture vertex and normal indices for all vertices or for none.";
+        Assertions.assertEquals(expectedError, exception.getMessage());
+    }
+
+    @Test
+    public void testParseFace03() {
+        ArrayList<String> wordsInLineWithoutToken = new ArrayList<>(Arrays.asList("1//1", "2//2", "3"));
+        ObjReaderException exception = Assertions.assertThrows(ObjReaderException.class,
+                () -> ObjReader.parseFace(wordsInLineWithoutToken, 10));
+        String expectedError = "Error parsing OBJ file on line: 10. "
+                + "Polygon must have texture vertex and normal indices for all vertices or for none.";
+        Assertions.assertEquals(expectedError, exception.getMessage());
+    }
+}
@@ -0,0 +1,40 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+
+/**
+ * Публикует неизменяемые снимки модели, пока файл еще читается.
+ * Списки снимка - это snapshot() списков модели: ссылка на массивы и длина, без копирования.
+ * Чтение снимка из другого потока не пересекается с дописыванием новых элементов за его концом.
+ */
+class ObjSnapshotPublisher {
+
+	private final ObjReadMonitor monitor;
+	private final int polygonInterval;
+
+	private int publishedPolygonCount = 0;
+
+	ObjSnapshotPublisher(ObjReadMonitor monitor, int polygonInterval) {
+		this.monitor = monitor;
+		this.polygonInterval = polygonInterval;
+	}
+
+	/**
+	 * Публикует снимок растущей модели, если набралось достаточно полигонов. При последовательном чтении
+	 * модель растет построчно, при параллельном - целыми кусками файла, дописанными по порядку.
+	 */
+	void update(Model source) {
+		final int polygonCount = source.getPolygons().size();
+		if (polygonCount - publishedPolygonCount < polygonInterval) {
+			return;
+		}
+		publishedPolygonCount = polygonCount;
+
+		Model snapshot = new Model();
+		snapshot.setVertices(source.getVertices().snapshot());
+		snapshot.setTextureVertices(source.getTextureVertices().snapshot());
+		snapshot.setNormals(source.getNormals().snapshot());
+		snapshot.setPolygons(source.getPolygons().snapshot());
+		monitor.onSnapshot(snapshot);
+	}
+}
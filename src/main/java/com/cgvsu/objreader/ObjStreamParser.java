@@ -0,0 +1,158 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Собирает строки из кусков байтов произвольного размера и отдает их парсеру по одной.
+ * Строка, разрезанная границей буфера, докапливается во внутреннем буфере строки.
+ */
+class ObjStreamParser {
+
+	private static final int INITIAL_LINE_CAPACITY = 256;
+
+	private final Model result;
+
+	// Хвост незаконченной строки из предыдущего куска
+	private byte[] pendingLine = new byte[INITIAL_LINE_CAPACITY];
+	private ByteBuffer pendingView = ByteBuffer.wrap(pendingLine);
+	private int pendingLength = 0;
+
+	private final ObjLineTokenizer tokenizer = new ObjLineTokenizer();
+
+	private int lineInd = 0;
+
+	// null - снимки не нужны
+	private final ObjSnapshotPublisher publisher;
+
+	ObjStreamParser(Model result) {
+		this(result, null);
+	}
+
+	ObjStreamParser(Model result, ObjSnapshotPublisher publisher) {
+		this.result = result;
+		this.publisher = publisher;
+	}
+
+	void feed(byte[] buffer, int offset, int length) {
+		feed(ByteBuffer.wrap(buffer), offset, offset + length);
+	}
+
+	/**
+	 * Байты [from, to) по абсолютным индексам буфера; его позиция и предел не используются.
+	 */
+	void feed(ByteBuffer buffer, int from, int to) {
+		int lineStart = from;
+		for (int i = from; i < to; ++i) {
+			if (buffer.get(i) != '\n') {
+				continue;
+			}
+			if (pendingLength == 0) {
+				// Строка целиком лежит в пришедшем куске - разбираем прямо из него, без копирования
+				acceptLine(buffer, lineStart, i);
+			} else {
+				appendPending(buffer, lineStart, i);
+				acceptLine(pendingView, 0, pendingLength);
+				pendingLength = 0;
+			}
+			lineStart = i + 1;
+		}
+		appendPending(buffer, lineStart, to);
+	}
+
+	/**
+	 * Прокачивает через парсер байты [start, end) файла.
+	 * Без mapped - блоками по ObjReader.READ_BUFFER_SIZE через read() в один буфер в куче.
+	 * В режиме mapped файл отображается в память окнами не больше ObjReader.MAX_MAP_WINDOW (одно отображение
+	 * ограничено 2 ГБ), и токенайзер и разбор чисел читают прямо из MappedByteBuffer, без копии в массив.
+	 * Строки, разрезанные границей окна, склеиваются так же, как и на границе блока.
+	 * В обоих режимах байты идут в парсер как есть - без копии всего файла в куче и без декодирования в String.
+	 * После каждого блока сообщает о прогрессе, проверяет отмену и при необходимости публикует снимок.
+	 */
+	void feed(FileChannel channel, long start, long end, boolean mapped, ObjReadProgress progress) throws IOException {
+		if (mapped) {
+			for (long windowStart = start; windowStart < end; windowStart += ObjReader.MAX_MAP_WINDOW) {
+				feedWindow(channel.map(FileChannel.MapMode.READ_ONLY,
+						windowStart, Math.min(ObjReader.MAX_MAP_WINDOW, end - windowStart)), progress);
+			}
+			return;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(ObjReader.READ_BUFFER_SIZE);
+		long position = start;
+		while (position < end) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - position));
+			final int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			feed(buffer, 0, read);
+			position += read;
+			afterBlock(read, progress);
+		}
+	}
+
+	// Окно разбирается шагами около ObjReader.READ_BUFFER_SIZE ради прогресса и отмены. Шаг продлевается
+	// до конца строки, так что во внутренний буфер строки попадают только строки на границе окна
+	private void feedWindow(MappedByteBuffer window, ObjReadProgress progress) {
+		final int size = window.capacity();
+		int position = 0;
+		while (position < size) {
+			int stepEnd = Math.min(position + ObjReader.READ_BUFFER_SIZE, size);
+			while (stepEnd < size && window.get(stepEnd - 1) != '\n') {
+				++stepEnd;
+			}
+			feed(window, position, stepEnd);
+			afterBlock(stepEnd - position, progress);
+			position = stepEnd;
+		}
+	}
+
+	/**
+	 * Вызывается после каждого скормленного блока: consumedBytes - сколько байт источника он занял
+	 * (для сжатого файла это не длина блока).
+	 */
+	void afterBlock(long consumedBytes, ObjReadProgress progress) {
+		progress.advance(consumedBytes);
+		if (publisher != null) {
+			publisher.update(result);
+		}
+	}
+
+	Model finish() {
+		if (pendingLength > 0) {
+			acceptLine(pendingView, 0, pendingLength);
+			pendingLength = 0;
+		}
+		return result;
+	}
+
+	int getLineCount() {
+		return lineInd;
+	}
+
+	private void appendPending(ByteBuffer buffer, int from, int to) {
+		final int length = to - from;
+		if (length == 0) {
+			return;
+		}
+		if (pendingLength + length > pendingLine.length) {
+			pendingLine = Arrays.copyOf(pendingLine, Math.max(pendingLine.length * 2, pendingLength + length));
+			pendingView = ByteBuffer.wrap(pendingLine);
+		}
+		buffer.get(from, pendingLine, pendingLength, length);
+		pendingLength += length;
+	}
+
+	private void acceptLine(ByteBuffer buffer, int from, int to) {
+		++lineInd;
+		tokenizer.tokenize(buffer, from, to);
+		ObjReader.parseLine(tokenizer, result, lineInd);
+	}
+}
@@ -0,0 +1,161 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+class ObjStreamParserTest {
+
+    @TempDir
+    Path directory;
+
+    // Весь текст одним куском
+    private static ObjStreamParser parseWhole(String content) {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ObjStreamParser parser = new ObjStreamParser(new Model());
+        parser.feed(bytes, 0, bytes.length);
+        parser.finish();
+        return parser;
+    }
+
+    // Куски по pieceSize байт: почти каждая строка собирается из нескольких кусков
+    private static Model parseInPieces(String content, int pieceSize) {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ObjStreamParser parser = new ObjStreamParser(new Model());
+        for (int offset = 0; offset < bytes.length; offset += pieceSize) {
+            parser.feed(bytes, offset, Math.min(pieceSize, bytes.length - offset));
+        }
+        return parser.finish();
+    }
+
+    // Из файла блоками по ObjReader.READ_BUFFER_SIZE или прямо из отображенного в память окна
+    private ObjStreamParser parseFile(String content, boolean mapped) throws IOException {
+        final Path file = TestObjFiles.write(directory, "model.obj", content);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ObjStreamParser parser = new ObjStreamParser(new Model());
+            parser.feed(channel, 0, channel.size(), mapped, new ObjReadProgress(ObjReadMonitor.NONE, channel.size()));
+            parser.finish();
+            return parser;
+        }
+    }
+
+    // Строка-комментарий ровно из length байт вместе с переводом строки
+    private static String comment(int length) {
+        return "#" + "-".repeat(length - 2) + "\n";
+    }
+
+    @Test
+    public void testBlockEdge01() throws IOException {
+        // Граница первого блока делит число "1.25" пополам
+        final String content = comment(ObjReader.READ_BUFFER_SIZE - 4) + "v 1.25 2.5 -3.75\n" + TestObjFiles.createGrid(60);
+        Assertions.assertEquals('.', content.charAt(ObjReader.READ_BUFFER_SIZE - 1));
+        Assertions.assertTrue(content.length() > 3 * ObjReader.READ_BUFFER_SIZE);
+
+        final ObjStreamParser whole = parseWhole(content);
+        for (boolean mapped : List.of(false, true)) {
+            final ObjStreamParser file = parseFile(content, mapped);
+            Assertions.assertEquals(new Vector3f(1.25F, 2.5F, -3.75F), file.finish().getVertices().get(0));
+            Assertions.assertTrue(TestObjFiles.sameModel(whole.finish(), file.finish()), "mapped " + mapped);
+            Assertions.assertEquals(whole.getLineCount(), file.getLineCount());
+        }
+    }
+
+    @Test
+    public void testBlockEdge02() {
+        // Строки, собранные из кусков любого размера, разбираются так же, как целые
+        final String content = TestObjFiles.createGrid(20);
+        final Model expected = parseWhole(content).finish();
+        for (int pieceSize : List.of(1, 2, 3, 7, 64, 1000)) {
+            Assertions.assertTrue(TestObjFiles.sameModel(expected, parseInPieces(content, pieceSize)), "piece " + pieceSize);
+        }
+    }
+
+    @Test
+    public void testBlockEdge03() {
+        // Ошибка в строке, собранной из двух кусков, сообщает номер строки в файле
+        final String content = "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2\nv 1 1 1\n";
+        ObjReaderException exception = Assertions.assertThrows(ObjReaderException.class,
+                () -> parseInPieces(content, 26));
+        Assertions.assertEquals(4, exception.getLineInd());
+    }
+
+    @Test
+    public void testCrlf01() throws IOException {
+        // Перевод строки \r\n дает ту же модель и то же число строк, что и \n
+        final String content = TestObjFiles.createGrid(60);
+        final String crlfContent = content.replace("\n", "\r\n");
+        final ObjStreamParser expected = parseWhole(content);
+        for (boolean mapped : List.of(false, true)) {
+            final ObjStreamParser actual = parseFile(crlfContent, mapped);
+            Assertions.assertTrue(TestObjFiles.sameModel(expected.finish(), actual.finish()), "mapped " + mapped);
+            Assertions.assertEquals(expected.getLineCount(), actual.getLineCount());
+        }
+        Assertions.assertTrue(TestObjFiles.sameModel(expected.finish(), parseInPieces(crlfContent, 5)));
+    }
+
+    @Test
+    public void testCrlf02() throws IOException {
+        // \r - последний байт первого блока, \n - первый байт второго
+        final String content = comment(ObjReader.READ_BUFFER_SIZE - 8) + "v 1 2 3\r\nv 4 5 6\r\nv 7 8 9\r\nf 1 2 3\r\n";
+        Assertions.assertEquals('\r', content.charAt(ObjReader.READ_BUFFER_SIZE - 1));
+
+        final ObjStreamParser parser = parseFile(content, false);
+        final Model model = parser.finish();
+        Assertions.assertEquals(5, parser.getLineCount());
+        Assertions.assertEquals(new Vector3f(1, 2, 3), model.getVertices().get(0));
+        Assertions.assertEquals(3, model.getVertices().size());
+        Assertions.assertEquals(List.of(0, 1, 2), model.getPolygons().get(0).getVertexIndices());
+    }
+
+    @Test
+    public void testLastLine01() throws IOException {
+        // Последняя строка без перевода строки не теряется
+        final String content = "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3";
+        for (ObjStreamParser parser : List.of(parseWhole(content), parseFile(content, false), parseFile(content, true))) {
+            final Model model = parser.finish();
+            Assertions.assertEquals(4, parser.getLineCount());
+            Assertions.assertEquals(1, model.getPolygons().size());
+            Assertions.assertEquals(List.of(0, 1, 2), model.getPolygons().get(0).getVertexIndices());
+        }
+        Assertions.assertEquals(1, parseInPieces(content, 3).getPolygons().size());
+        Assertions.assertEquals(1, parseInPieces(content + "\r", 3).getPolygons().size());
+    }
+
+    @Test
+    public void testLastLine02() {
+        // Ошибка в последней строке без перевода строки находится в finish()
+        final byte[] bytes = "v 0 0 0\nv x 0 0".getBytes(StandardCharsets.UTF_8);
+        ObjStreamParser parser = new ObjStreamParser(new Model());
+        parser.feed(bytes, 0, bytes.length);
+        ObjReaderException exception = Assertions.assertThrows(ObjReaderException.class, parser::finish);
+        Assertions.assertEquals(2, exception.getLineInd());
+    }
+
+    @Test
+    public void testMapped01() {
+        // Окно отображения - такой же буфер, как и массив: строка с границы предыдущего окна дописывается
+        // к первой строке следующего, а строки внутри окна разбираются прямо из него
+        final byte[] bytes = ("v 1 2 3\nv 4.5 -6 7e1\nvn 0 0 1\nf 1//1 2//1 3//1\nv 7 8").getBytes(StandardCharsets.UTF_8);
+        final int edge = 12;
+        ObjStreamParser parser = new ObjStreamParser(new Model());
+        parser.feed(ByteBuffer.allocateDirect(edge).put(0, bytes, 0, edge), 0, edge);
+        parser.feed(ByteBuffer.allocateDirect(bytes.length - edge).put(0, bytes, edge, bytes.length - edge),
+                0, bytes.length - edge);
+        parser.feed(ByteBuffer.wrap(" 9\n".getBytes(StandardCharsets.UTF_8)), 0, 3);
+        final Model model = parser.finish();
+        Assertions.assertEquals(new Vector3f(4.5F, -6, 70), model.getVertices().get(1));
+        Assertions.assertEquals(new Vector3f(7, 8, 9), model.getVertices().get(2));
+        Assertions.assertEquals(List.of(0, 0, 0), model.getPolygons().get(0).getNormalIndices());
+        Assertions.assertEquals(5, parser.getLineCount());
+    }
+}
@@ -0,0 +1,87 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.model.Polygon;
+import com.cgvsu.model.PolygonList;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Общие OBJ-файлы и сравнения для тестов пакета.
+ */
+final class TestObjFiles {
+
+    private TestObjFiles() {
+    }
+
+    /**
+     * Сетка n x n четырехугольников с текстурными координатами и нормалями.
+     * Полигоны записаны по очереди во всех формах: v, v/vt, v//vn и v/vt/vn, между ними попадаются комментарии.
+     */
+    static String createGrid(int n) {
+        final StringBuilder result = new StringBuilder("# grid ").append(n).append('\n');
+        for (int i = 0; i <= n; ++i) {
+            for (int j = 0; j <= n; ++j) {
+                result.append("v ").append(i * 0.125F).append(' ').append(j * -0.25F).append(' ')
+                        .append((i * j) % 7 * 1.5e-3F).append('\n');
+                result.append("vt ").append((float) i / n).append(' ').append((float) j / n).append('\n');
+                result.append("vn ").append(j % 3).append(' ').append(i % 5).append(" 1").append('\n');
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                final int base = i * (n + 1) + j + 1;
+                final int[] quad = {base, base + n + 1, base + n + 2, base + 1};
+                final int form = (i + j) % 4;
+                result.append('f');
+                for (int index : quad) {
+                    result.append(' ').append(index);
+                    if (form == 1) {
+                        result.append('/').append(index);
+                    } else if (form == 2) {
+                        result.append("//").append(index);
+                    } else if (form == 3) {
+                        result.append('/').append(index).append('/').append(index);
+                    }
+                }
+                result.append('\n');
+                if (j % 10 == 0) {
+                    result.append("# row ").append(i).append('\n');
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    static Path write(Path directory, String fileName, String content) throws IOException {
+        return Files.write(directory.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Модели совпадают поэлементно: списки вершин и индексы всех полигонов в том же порядке.
+     */
+    static boolean sameModel(Model expected, Model actual) {
+        if (!expected.getVertices().equals(actual.getVertices())
+                || !expected.getTextureVertices().equals(actual.getTextureVertices())
+                || !expected.getNormals().equals(actual.getNormals())
+                || expected.getPolygons().size() != actual.getPolygons().size()) {
+            return false;
+        }
+        final PolygonList expectedPolygons = expected.getPolygons();
+        final PolygonList actualPolygons = actual.getPolygons();
+        for (int polygonInd = 0; polygonInd < expectedPolygons.size(); ++polygonInd) {
+            final Polygon expectedPolygon = expectedPolygons.get(polygonInd);
+            final Polygon actualPolygon = actualPolygons.get(polygonInd);
+            if (!expectedPolygon.getVertexIndices().equals(actualPolygon.getVertexIndices())
+                    || !Objects.equals(expectedPolygon.getTextureVertexIndices(), actualPolygon.getTextureVertexIndices())
+                    || !Objects.equals(expectedPolygon.getNormalIndices(), actualPolygon.getNormalIndices())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.DetailLevels;
+
+/**
+ * Выбор уровня детализации для кадра: самый грубый уровень, отклонение которого (DetailLevels.getError)
+ * на экране не больше допуска в пикселях. Отклонение переводится в пиксели по ближайшей к камере точке
+ * ограничивающей сферы модели и масштабу перспективы камеры (угол обзора), так что оценка берется с запасом.
+ * Чтобы уровни не мигали, когда камера стоит на границе, у выбора гистерезис: текущий уровень держится,
+ * пока его ошибка не больше допуска, а на более грубый переходим, только когда его ошибка не больше
+ * COARSEN_FRACTION от допуска. Выбор помнит текущий уровень, поэтому на каждую модель свой LevelSelector.
+ */
+public class LevelSelector {
+    public static final float DEFAULT_PIXEL_TOLERANCE = 1.0F;
+    // Доля допуска, до которой должна упасть ошибка более грубого уровня, чтобы на него перейти
+    private static final float COARSEN_FRACTION = 0.5F;
+
+    private float pixelTolerance = DEFAULT_PIXEL_TOLERANCE;
+    private DetailLevels levels;
+    private int current;
+
+    public float getPixelTolerance() {
+        return pixelTolerance;
+    }
+
+    public void setPixelTolerance(float pixelTolerance) {
+        if (!(pixelTolerance >= 0)) {
+            throw new IllegalArgumentException("Pixel tolerance must be non-negative: " + pixelTolerance);
+        }
+        this.pixelTolerance = pixelTolerance;
+    }
+
+    /**
+     * Номер уровня levels для кадра высотой height пикселей.
+     */
+    public int select(final Camera camera, final DetailLevels levels, final int height) {
+        final float pixelsPerUnit = pixelsPerUnit(camera, levels, height);
+        if (levels != this.levels) {
+            // Новые уровни: выбираем без гистерезиса, начиная с самого грубого
+            this.levels = levels;
+            current = levels.getLevelCount() - 1;
+        }
+        while (current > 0 && levels.getError(current) * pixelsPerUnit > pixelTolerance) {
+            --current;
+        }
+        while (current + 1 < levels.getLevelCount()
+                && levels.getError(current + 1) * pixelsPerUnit <= COARSEN_FRACTION * pixelTolerance) {
+            ++current;
+        }
+        return current;
+    }
+
+    /**
+     * Текущий уровень, выбранный последним select(), или 0, если выбора еще не было.
+     */
+    public int getCurrentLevel() {
+        return levels == null ? 0 : current;
+    }
+
+    // Сколько пикселей по вертикали занимает единица длины в ближайшей к камере точке сферы модели.
+    // Камера внутри сферы - бесконечность, тогда выбирается уровень 0
+    private static float pixelsPerUnit(final Camera camera, final DetailLevels levels, final int height) {
+        final Vector3f position = camera.getPosition();
+        final Vector3f center = levels.getCenter();
+        final float dx = position.getX() - center.getX();
+        final float dy = position.getY() - center.getY();
+        final float dz = position.getZ() - center.getZ();
+        final float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - levels.getRadius();
+        if (distance <= 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        // Элемент (1, 1) перспективы - 1 / tan(fov / 2): переводит высоту на расстоянии 1 в половины экрана
+        return camera.getProjectionMatrix().getElement(1, 1) * height / (2 * distance);
+    }
+}
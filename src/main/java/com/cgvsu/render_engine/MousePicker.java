@@ -0,0 +1,84 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.FaceBvh;
+import com.cgvsu.model.FloatStorage;
+import com.cgvsu.model.IntStorage;
+import com.cgvsu.model.Model;
+import com.cgvsu.model.PolygonList;
+import com.cgvsu.model.RayHit;
+
+/**
+ * Выбор полигонов и вершин мышью: луч из камеры через точку экрана пересекается с деревом полигонов модели
+ * (Model.getFaceBvh()), так что выбор не зависит от размера модели. Модель рисуется без своей матрицы
+ * (см. RenderEngine), поэтому луч строится сразу в координатах модели.
+ */
+public class MousePicker {
+
+    /**
+     * Ближайший к камере полигон под точкой (x, y) холста размером width x height, или null.
+     */
+    public static RayHit pickPolygon(
+            final Camera camera, final Model mesh, final double x, final double y, final int width, final int height) {
+        final float[] ray = screenRay(camera, x, y, width, height);
+        final FaceBvh bvh = mesh.getFaceBvh();
+        return bvh.intersectRay(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Вершина выбранного полигона, ближайшая к точке попадания (номер с нуля), или -1, если hit == null.
+     */
+    public static int pickVertex(final Model mesh, final RayHit hit) {
+        if (hit == null) {
+            return -1;
+        }
+        final PolygonList polygons = mesh.getPolygons();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final FloatStorage positions = mesh.getVertices().getStorage();
+        final Vector3f point = hit.getPoint();
+
+        int nearest = -1;
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        final int end = offsets.get(hit.getFace() + 1);
+        for (int corner = offsets.get(hit.getFace()); corner < end; ++corner) {
+            final int vertexIndex = vertexIndices.get(corner);
+            final float dx = positions.get(3 * vertexIndex) - point.getX();
+            final float dy = positions.get(3 * vertexIndex + 1) - point.getY();
+            final float dz = positions.get(3 * vertexIndex + 2) - point.getZ();
+            final float distance = dx * dx + dy * dy + dz * dz;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = vertexIndex;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Луч из камеры через точку экрана: начало (x, y, z) и направление (x, y, z) подряд.
+     * Обратное к проекции RenderEngine: точка экрана переводится в нормированные координаты, делится
+     * на масштабы перспективы и поворачивается осями камеры - без обращения всей матрицы.
+     */
+    static float[] screenRay(final Camera camera, final double x, final double y, final int width, final int height) {
+        final float ndcX = (float) (2 * x / width - 1);
+        final float ndcY = (float) (1 - 2 * y / height);
+
+        // Матрицы камеры собраны для вектора-строки: оси камеры лежат в столбцах вида
+        final Matrix4f view = camera.getViewMatrix();
+        final Matrix4f projection = camera.getProjectionMatrix();
+        final float viewX = ndcX / projection.getElement(0, 0);
+        final float viewY = ndcY / projection.getElement(1, 1);
+
+        final float[] ray = new float[6];
+        final Vector3f position = camera.getPosition();
+        ray[0] = position.getX();
+        ray[1] = position.getY();
+        ray[2] = position.getZ();
+        for (int axis = 0; axis < 3; ++axis) {
+            ray[3 + axis] = view.getElement(axis, 0) * viewX + view.getElement(axis, 1) * viewY + view.getElement(axis, 2);
+        }
+        return ray;
+    }
+}
@@ -0,0 +1,149 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.FaceBvh;
+import com.cgvsu.model.FloatStorage;
+import com.cgvsu.model.IntStorage;
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ParallelRanges;
+import com.cgvsu.model.PolygonList;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Выделение вершин и полигонов областью экрана (прямоугольник или лассо, см. ScreenRegion).
+ * Вершины проецируются той же матрицей, что и в RenderEngine, параллельно диапазонами по 64 вершины:
+ * каждый диапазон пишет свои слова маски, так что результат собирается без синхронизации.
+ * Результат - BitSet с номерами с нуля, его принимают VertexRemover и PolygonsRemover.
+ */
+public class RegionSelector {
+
+    /**
+     * Какие вершины внутри области выделяются.
+     */
+    public enum Filter {
+        // Все, в том числе на обратной стороне модели
+        ALL,
+        // Только те, чья нормаль смотрит на камеру. Нужны нормали по вершинам (Model.hasVertexNormals()),
+        // без них проверка пропускается
+        FRONT_FACING,
+        // Обращенные к камере и не заслоненные другими полигонами: для каждой вершины в области
+        // пускается луч по дереву полигонов, поэтому на больших выделениях это заметно дольше
+        VISIBLE
+    }
+
+    // Доля расстояния до вершины, на которой заслоняющий полигон уже не учитывается: иначе вершину
+    // заслоняли бы ее же полигоны из-за погрешности
+    private static final float OCCLUSION_EPSILON = 1e-3F;
+
+    public static BitSet selectVertices(
+            final Camera camera, final Model mesh, final int width, final int height,
+            final ScreenRegion region, final Filter filter) {
+        return selectVertices(camera, mesh, width, height, region, filter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Вершины, экранные координаты которых попали в region; вершины позади камеры не выделяются.
+     * pool == null - в текущем потоке.
+     */
+    public static BitSet selectVertices(
+            final Camera camera, final Model mesh, final int width, final int height,
+            final ScreenRegion region, final Filter filter, final ForkJoinPool pool) {
+        Matrix4f modelViewProjectionMatrix = new Matrix4f(1);
+        modelViewProjectionMatrix.multiply(camera.getViewMatrix());
+        modelViewProjectionMatrix.multiply(camera.getProjectionMatrix());
+        modelViewProjectionMatrix.transposition();
+        final Matrix4f matrix = modelViewProjectionMatrix;
+        final float m00 = matrix.getElement(0, 0), m01 = matrix.getElement(0, 1);
+        final float m02 = matrix.getElement(0, 2), m03 = matrix.getElement(0, 3);
+        final float m10 = matrix.getElement(1, 0), m11 = matrix.getElement(1, 1);
+        final float m12 = matrix.getElement(1, 2), m13 = matrix.getElement(1, 3);
+        final float m30 = matrix.getElement(3, 0), m31 = matrix.getElement(3, 1);
+        final float m32 = matrix.getElement(3, 2), m33 = matrix.getElement(3, 3);
+
+        final Vector3f eye = camera.getPosition();
+        final float eyeX = eye.getX();
+        final float eyeY = eye.getY();
+        final float eyeZ = eye.getZ();
+
+        final FloatStorage positions = mesh.getVertices().getStorage();
+        final int nVertices = mesh.getVertices().size();
+        final boolean frontFacing = filter != Filter.ALL && mesh.hasVertexNormals()
+                && mesh.getNormals().size() == nVertices;
+        final FloatStorage normals = frontFacing ? mesh.getNormals().getStorage() : null;
+        // Дерево берется заранее: его построение в модели не потокобезопасно, а запросы к готовому - да
+        final FaceBvh bvh = filter == Filter.VISIBLE ? mesh.getFaceBvh() : null;
+
+        final long[] words = new long[(nVertices + 63) >>> 6];
+        ParallelRanges.forEach(pool, nVertices, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                final float x = positions.get(3 * i);
+                final float y = positions.get(3 * i + 1);
+                final float z = positions.get(3 * i + 2);
+                final float w = m30 * x + m31 * y + m32 * z + m33;
+                if (w <= 0) {
+                    continue;
+                }
+                final float screenX = ((m00 * x + m01 * y + m02 * z + m03) / w + 1) * 0.5f * width;
+                final float screenY = (1 - ((m10 * x + m11 * y + m12 * z + m13) / w + 1) * 0.5f) * height;
+                if (!region.inBounds(screenX, screenY) || !region.contains(screenX, screenY)) {
+                    continue;
+                }
+                final float toEyeX = eyeX - x;
+                final float toEyeY = eyeY - y;
+                final float toEyeZ = eyeZ - z;
+                if (normals != null && normals.get(3 * i) * toEyeX + normals.get(3 * i + 1) * toEyeY
+                        + normals.get(3 * i + 2) * toEyeZ <= 0) {
+                    continue;
+                }
+                if (bvh != null && bvh.intersectRay(eyeX, eyeY, eyeZ, -toEyeX, -toEyeY, -toEyeZ,
+                        1 - OCCLUSION_EPSILON) != null) {
+                    continue;
+                }
+                words[i >>> 6] |= 1L << i;
+            }
+        });
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Полигоны по выделенным вершинам: все вершины полигона выделены (allVertices) или хотя бы одна.
+     */
+    public static BitSet selectPolygons(final Model mesh, final BitSet vertices, final boolean allVertices) {
+        return selectPolygons(mesh, vertices, allVertices, ForkJoinPool.commonPool());
+    }
+
+    public static BitSet selectPolygons(
+            final Model mesh, final BitSet vertices, final boolean allVertices, final ForkJoinPool pool) {
+        final PolygonList polygons = mesh.getPolygons();
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        final int nPolygons = polygons.size();
+
+        final long[] words = new long[(nPolygons + 63) >>> 6];
+        ParallelRanges.forEach(pool, nPolygons, (from, to) -> {
+            for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                final int start = offsets.get(polygonInd);
+                final int end = offsets.get(polygonInd + 1);
+                if (end == start) {
+                    continue;
+                }
+                // Для allVertices ищем невыделенную вершину, иначе - выделенную
+                boolean selected = allVertices;
+                for (int corner = start; corner < end; ++corner) {
+                    final int vertexIndex = vertexIndices.get(corner);
+                    if ((vertexIndex >= 0 && vertices.get(vertexIndex)) != allVertices) {
+                        selected = !allVertices;
+                        break;
+                    }
+                }
+                if (selected) {
+                    words[polygonInd >>> 6] |= 1L << polygonInd;
+                }
+            }
+        });
+        return BitSet.valueOf(words);
+    }
+}
@@ -1,15 +1,50 @@
 package com.cgvsu.render_engine;
 
-import java.util.ArrayList;
-import com.cgvsu.math.Vector3f;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
 
+import com.cgvsu.model.DetailLevels;
 import com.cgvsu.model.Model;
+import com.cgvsu.model.FloatStorage;
+import com.cgvsu.model.IntStorage;
+import com.cgvsu.model.PolygonList;
+import com.cgvsu.model.Vector3fList;
 import com.cgvsu.math.Matrix4f;
-import static com.cgvsu.render_engine.GraphicConveyor.*;
+
+import java.util.BitSet;
 
 public class RenderEngine {
 
+    // Экранные координаты вершин текущего кадра (x, y подряд). Рендер идет только из потока JavaFX,
+    // поэтому буфер один на всех и переиспользуется между кадрами
+    private static float[] screenPoints = new float[0];
+    // Чьи вершины сейчас в screenPoints и сколько их: уровень детализации может быть не той моделью,
+    // выделение которой рисуется
+    private static Vector3fList projectedVertices;
+    private static int projectedCount;
+
+    /**
+     * Рисует уровень детализации mesh, который выбирает selector (см. LevelSelector), или саму mesh,
+     * если уровней еще нет (levels == null) или они построены по другому ее состоянию.
+     * Возвращает нарисованную модель.
+     */
+    public static Model render(
+            final GraphicsContext graphicsContext,
+            final Camera camera,
+            final Model mesh,
+            final DetailLevels levels,
+            final LevelSelector selector,
+            final int width,
+            final int height)
+    {
+        Model drawn = mesh;
+        if (levels != null && levels.isCurrentFor(mesh)) {
+            drawn = levels.getLevel(selector.select(camera, levels, height));
+        }
+        render(graphicsContext, camera, drawn, width, height);
+        return drawn;
+    }
+
     public static void render(
             final GraphicsContext graphicsContext,
             final Camera camera,
@@ -26,51 +61,151 @@ public class RenderEngine {
         Matrix4f modelViewProjectionMatrix = new Matrix4f(modelMatrix);
         modelViewProjectionMatrix.multiply(viewMatrix);
         modelViewProjectionMatrix.multiply(projectionMatrix);
+        // Матрицы выше собраны для вектора-строки, а проекция ниже умножает на вектор-столбец
+        modelViewProjectionMatrix.transposition();
 
-        final int nPolygons = mesh.getPolygons().size();
-        for (int polygonInd = 0; polygonInd < nPolygons; ++polygonInd) {
-            final int nVerticesInPolygon = mesh.getPolygons().get(polygonInd).getVertexIndices().size();
+        final Vector3fList vertices = mesh.getVertices();
+        final PolygonList polygons = mesh.getPolygons();
+        final int nVertices = vertices.size();
+        final int nPolygons = polygons.size();
 
-            ArrayList<javax.vecmath.Point2f> resultPoints = new ArrayList<>();
-            for (int vertexInPolygonInd = 0; vertexInPolygonInd < nVerticesInPolygon; ++vertexInPolygonInd) {
-                int vertexIndex = mesh.getPolygons().get(polygonInd).getVertexIndices().get(vertexInPolygonInd);
-                Vector3f vertex = mesh.getVertices().get(vertexIndex - 1);
-
-                javax.vecmath.Vector3f vertexVecmath = new javax.vecmath.Vector3f(
-                        vertex.getX(),
-                        vertex.getY(),
-                        vertex.getZ());
+        // Каждая вершина проецируется один раз за кадр, а не в каждом полигоне, где она встречается
+        if (screenPoints.length < 2 * nVertices) {
+            screenPoints = new float[2 * nVertices];
+        }
+        final float[] points = screenPoints;
+        projectVertices(modelViewProjectionMatrix, vertices, width, height, points);
+        projectedVertices = vertices;
+        projectedCount = nVertices;
 
-                javax.vecmath.Matrix4f matrix4f = convertToVecmathMatrix4f(modelViewProjectionMatrix);
+        // Полигоны читаются прямо из хранилищ PolygonList, без окон Polygon и Integer
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+        for (int polygonInd = 0; polygonInd < nPolygons; ++polygonInd) {
+            final int start = offsets.get(polygonInd);
+            final int end = offsets.get(polygonInd + 1);
 
-                javax.vecmath.Point2f resultPoint = vertexToPoint(
-                        multiplyMatrix4ByVector3(matrix4f, vertexVecmath), width, height);
-                resultPoints.add(resultPoint);
+            // Снимок частично прочитанной модели может ссылаться на вершины, которые еще не дочитаны
+            boolean complete = true;
+            for (int corner = start; corner < end; ++corner) {
+                final int vertexIndex = vertexIndices.get(corner);
+                if (vertexIndex < 0 || vertexIndex >= nVertices) {
+                    complete = false;
+                    break;
+                }
+            }
+            if (!complete || end == start) {
+                continue;
             }
 
-            for (int vertexInPolygonInd = 1; vertexInPolygonInd < nVerticesInPolygon; ++vertexInPolygonInd) {
+            int previous = vertexIndices.get(end - 1);
+            for (int corner = start; corner < end; ++corner) {
+                final int current = vertexIndices.get(corner);
                 graphicsContext.strokeLine(
-                        resultPoints.get(vertexInPolygonInd - 1).x,
-                        resultPoints.get(vertexInPolygonInd - 1).y,
-                        resultPoints.get(vertexInPolygonInd).x,
-                        resultPoints.get(vertexInPolygonInd).y);
+                        points[2 * previous],
+                        points[2 * previous + 1],
+                        points[2 * current],
+                        points[2 * current + 1]);
+                previous = current;
+            }
+        }
+    }
+
+    /**
+     * Подсвечивает выбранные полигоны (контуром) и вершины (квадратиками) поверх кадра.
+     * Вызывается сразу после render(): если он рисовал эту же модель, экранные координаты вершин берутся
+     * из него, а если уровень детализации - вершины mesh проецируются заново.
+     */
+    public static void renderSelection(
+            final GraphicsContext graphicsContext,
+            final Camera camera,
+            final Model mesh,
+            final BitSet selectedPolygons,
+            final BitSet selectedVertices,
+            final int width,
+            final int height)
+    {
+        final PolygonList polygons = mesh.getPolygons();
+        final Vector3fList vertices = mesh.getVertices();
+        final int nVertices = vertices.size();
+        if (projectedVertices != vertices || projectedCount != nVertices) {
+            if (screenPoints.length < 2 * nVertices) {
+                screenPoints = new float[2 * nVertices];
+            }
+            projectVertices(modelViewProjection(camera), vertices, width, height, screenPoints);
+            projectedVertices = vertices;
+            projectedCount = nVertices;
+        }
+        final float[] points = screenPoints;
+        final IntStorage offsets = polygons.getOffsets();
+        final IntStorage vertexIndices = polygons.getVertexIndexStorage();
+
+        graphicsContext.save();
+        graphicsContext.setStroke(Color.RED);
+        for (int polygonInd = selectedPolygons.nextSetBit(0);
+             polygonInd >= 0 && polygonInd < polygons.size();
+             polygonInd = selectedPolygons.nextSetBit(polygonInd + 1)) {
+            final int start = offsets.get(polygonInd);
+            final int end = offsets.get(polygonInd + 1);
+            if (end == start) {
+                continue;
+            }
+            int previous = vertexIndices.get(end - 1);
+            for (int corner = start; corner < end; ++corner) {
+                final int current = vertexIndices.get(corner);
+                if (previous >= 0 && previous < nVertices && current >= 0 && current < nVertices) {
+                    graphicsContext.strokeLine(
+                            points[2 * previous],
+                            points[2 * previous + 1],
+                            points[2 * current],
+                            points[2 * current + 1]);
+                }
+                previous = current;
             }
+        }
 
-            if (nVerticesInPolygon > 0)
-                graphicsContext.strokeLine(
-                        resultPoints.get(nVerticesInPolygon - 1).x,
-                        resultPoints.get(nVerticesInPolygon - 1).y,
-                        resultPoints.get(0).x,
-                        resultPoints.get(0).y);
+        graphicsContext.setFill(Color.RED);
+        for (int vertexInd = selectedVertices.nextSetBit(0);
+             vertexInd >= 0 && vertexInd < nVertices;
+             vertexInd = selectedVertices.nextSetBit(vertexInd + 1)) {
+            graphicsContext.fillRect(points[2 * vertexInd] - 2, points[2 * vertexInd + 1] - 2, 4, 4);
         }
+        graphicsContext.restore();
     }
 
-    private static javax.vecmath.Matrix4f convertToVecmathMatrix4f(Matrix4f matrix) {
-        float[][] elements = matrix.getElements();
-        return new javax.vecmath.Matrix4f(
-                elements[0][0], elements[0][1], elements[0][2], elements[0][3],
-                elements[1][0], elements[1][1], elements[1][2], elements[1][3],
-                elements[2][0], elements[2][1], elements[2][2], elements[2][3],
-                elements[3][0], elements[3][1], elements[3][2], elements[3][3]);
+    // Матрица модель-вид-проекция для вектора-столбца, как в render()
+    private static Matrix4f modelViewProjection(final Camera camera) {
+        Matrix4f modelViewProjectionMatrix = new Matrix4f(1);
+        modelViewProjectionMatrix.multiply(camera.getViewMatrix());
+        modelViewProjectionMatrix.multiply(camera.getProjectionMatrix());
+        modelViewProjectionMatrix.transposition();
+        return modelViewProjectionMatrix;
+    }
+
+    /**
+     * То же, что vertexToPoint(multiplyMatrix4ByVector3(matrix, vertex)) для всех вершин сразу,
+     * но без создания векторов: компоненты читаются прямо из упакованного списка.
+     */
+    static void projectVertices(
+            final Matrix4f matrix, final Vector3fList vertices, final int width, final int height, final float[] result) {
+        final float m00 = matrix.getElement(0, 0), m01 = matrix.getElement(0, 1);
+        final float m02 = matrix.getElement(0, 2), m03 = matrix.getElement(0, 3);
+        final float m10 = matrix.getElement(1, 0), m11 = matrix.getElement(1, 1);
+        final float m12 = matrix.getElement(1, 2), m13 = matrix.getElement(1, 3);
+        final float m30 = matrix.getElement(3, 0), m31 = matrix.getElement(3, 1);
+        final float m32 = matrix.getElement(3, 2), m33 = matrix.getElement(3, 3);
+
+        final FloatStorage data = vertices.getStorage();
+        final int nVertices = vertices.size();
+        for (int i = 0; i < nVertices; ++i) {
+            final float x = data.get(3 * i);
+            final float y = data.get(3 * i + 1);
+            final float z = data.get(3 * i + 2);
+            final float w = m30 * x + m31 * y + m32 * z + m33;
+            final float projectedX = (m00 * x + m01 * y + m02 * z + m03) / w;
+            final float projectedY = (m10 * x + m11 * y + m12 * z + m13) / w;
+            result[2 * i] = (projectedX + 1) * 0.5f * width;
+            result[2 * i + 1] = (1 - (projectedY + 1) * 0.5f) * height;
+        }
     }
-}
\ No newline at end of file
+}
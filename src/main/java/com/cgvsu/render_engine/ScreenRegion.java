@@ -0,0 +1,123 @@
+package com.cgvsu.render_engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Область экрана для выделения: прямоугольник или лассо (замкнутая ломаная).
+ * Проверка точки должна быть дешевой - ее делают для каждой вершины модели, поэтому лассо
+ * один раз растеризуется в маску пикселей по правилу чет-нечет, и дальше точка проверяется за O(1).
+ */
+public abstract class ScreenRegion {
+    protected final float minX;
+    protected final float minY;
+    protected final float maxX;
+    protected final float maxY;
+
+    protected ScreenRegion(float minX, float minY, float maxX, float maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Прямоугольник с противоположными углами (x0, y0) и (x1, y1) в пикселях холста.
+     */
+    public static ScreenRegion rectangle(float x0, float y0, float x1, float y1) {
+        return new Rectangle(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1));
+    }
+
+    /**
+     * Лассо по точкам points (x, y подряд) на холсте width x height; последняя точка соединяется с первой.
+     */
+    public static ScreenRegion lasso(float[] points, int width, int height) {
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            minX = Math.min(minX, points[i]);
+            minY = Math.min(minY, points[i + 1]);
+            maxX = Math.max(maxX, points[i]);
+            maxY = Math.max(maxY, points[i + 1]);
+        }
+        return new Lasso(points, width, height, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Быстрая проверка по границам области; contains() зовется только для точек внутри них.
+     */
+    public final boolean inBounds(float x, float y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    public abstract boolean contains(float x, float y);
+
+    private static final class Rectangle extends ScreenRegion {
+        Rectangle(float minX, float minY, float maxX, float maxY) {
+            super(minX, minY, maxX, maxY);
+        }
+
+        @Override
+        public boolean contains(float x, float y) {
+            return inBounds(x, y);
+        }
+    }
+
+    private static final class Lasso extends ScreenRegion {
+        private final int width;
+        // Бит y * width + x - центр пикселя (x, y) внутри лассо
+        private final BitSet mask;
+
+        Lasso(float[] points, int width, int height, float minX, float minY, float maxX, float maxY) {
+            super(minX, minY, maxX, maxY);
+            this.width = width;
+            this.mask = new BitSet(width * height);
+            final int pointCount = points.length / 2;
+            if (pointCount < 3) {
+                return;
+            }
+
+            // Для каждой строки - пересечения ее центра с ребрами; между парами пересечений пиксели внутри
+            float[] crossings = new float[16];
+            final int lastRow = Math.min(height, (int) Math.ceil(maxY));
+            for (int y = Math.max(0, (int) minY); y < lastRow; ++y) {
+                final float centerY = y + 0.5F;
+                int count = 0;
+                for (int i = 0; i < pointCount; ++i) {
+                    final int j = (i + 1) % pointCount;
+                    final float y0 = points[2 * i + 1];
+                    final float y1 = points[2 * j + 1];
+                    // Полуоткрытый интервал: вершина на строке считается одним пересечением, а не двумя
+                    if ((y0 <= centerY) == (y1 <= centerY)) {
+                        continue;
+                    }
+                    final float x0 = points[2 * i];
+                    final float x1 = points[2 * j];
+                    if (count == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, 2 * count);
+                    }
+                    crossings[count++] = x0 + (centerY - y0) / (y1 - y0) * (x1 - x0);
+                }
+                Arrays.sort(crossings, 0, count);
+                for (int k = 0; k + 1 < count; k += 2) {
+                    // Пиксели, центр которых между пересечениями
+                    final int from = Math.max(0, (int) Math.ceil(crossings[k] - 0.5F));
+                    final int to = Math.min(width, (int) Math.ceil(crossings[k + 1] - 0.5F));
+                    if (from < to) {
+                        mask.set(y * width + from, y * width + to);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean contains(float x, float y) {
+            if (x < 0 || y < 0 || x >= width) {
+                return false;
+            }
+            return mask.get((int) y * width + (int) x);
+        }
+    }
+}